@@ -0,0 +1,138 @@
+package net.susnjar.paniql.analytics;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min sketch of non-negative weights in fixed memory: {@code depth}
+ * rows of {@code width} cells each, regardless of how many distinct keys are
+ * added. {@link #estimate(String)} never underestimates; it overestimates by
+ * at most {@code e / width} of the {@linkplain #getTotal() total} with
+ * probability {@code 1 - exp(-depth)}.
+ *
+ * <p>Cells hold {@code double} bits updated with CAS, so concurrent adds
+ * do not block each other. Keys are hashed with a per-sketch seed so that
+ * colliding keys cannot be precomputed to inflate someone else's estimate.</p>
+ */
+public class CountMinSketch {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int width;
+    private final int depth;
+    private final long seed;
+    private final AtomicLongArray cells;
+    private final AtomicLongArray total = new AtomicLongArray(1);
+
+    public CountMinSketch(final int width, final int depth) {
+        this(width, depth, ThreadLocalRandom.current().nextLong());
+    }
+
+    public CountMinSketch(final int width, final int depth, final long seed) {
+        if (width < 1) throw new IllegalArgumentException("Sketch width must be positive.");
+        if (depth < 1) throw new IllegalArgumentException("Sketch depth must be positive.");
+        if ((long) width * depth > Integer.MAX_VALUE) throw new IllegalArgumentException("Sketch too large.");
+        this.width = width;
+        this.depth = depth;
+        this.seed = seed;
+        this.cells = new AtomicLongArray(width * depth);
+    }
+
+    /**
+     * Sizes the sketch so that estimates exceed true values by at most
+     * {@code epsilon} times the total with probability {@code 1 - delta}.
+     */
+    public static CountMinSketch withAccuracy(final double epsilon, final double delta) {
+        if (!(epsilon > 0.0d) || !(delta > 0.0d) || (delta >= 1.0d)) {
+            throw new IllegalArgumentException("Accuracy must satisfy epsilon > 0 and 0 < delta < 1.");
+        }
+        final int width = (int) Math.ceil(Math.E / epsilon);
+        final int depth = (int) Math.ceil(Math.log(1.0d / delta));
+        return new CountMinSketch(width, Math.max(1, depth));
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public void add(final String key, final double weight) {
+        add(hash(key), weight);
+    }
+
+    public void add(final long hash, final double weight) {
+        if (!(weight > 0.0d)) return;
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            addToCell(row * width + index(h1, h2, row), weight);
+        }
+        addToCell(total, 0, weight);
+    }
+
+    public double estimate(final String key) {
+        return estimate(hash(key));
+    }
+
+    public double estimate(final long hash) {
+        final int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32);
+        double estimate = Double.POSITIVE_INFINITY;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, Double.longBitsToDouble(cells.get(row * width + index(h1, h2, row))));
+        }
+        return estimate;
+    }
+
+    /**
+     * Returns the sum of all weights ever added.
+     */
+    public double getTotal() {
+        return Double.longBitsToDouble(total.get(0));
+    }
+
+    public void clear() {
+        for (int i = 0; i < cells.length(); i++) {
+            cells.set(i, 0L);
+        }
+        total.set(0, 0L);
+    }
+
+    /**
+     * Returns a seeded 64-bit FNV-1a hash of the key characters.
+     */
+    public long hash(final String key) {
+        long hash = FNV_OFFSET_BASIS ^ seed;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        // FNV alone mixes the high bits poorly, finish as in MurmurHash3.
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private int index(final int h1, final int h2, final int row) {
+        final int combined = h1 + row * h2;
+        return Math.floorMod(combined, width);
+    }
+
+    private void addToCell(final int index, final double weight) {
+        addToCell(cells, index, weight);
+    }
+
+    private static void addToCell(final AtomicLongArray array, final int index, final double weight) {
+        long current;
+        do {
+            current = array.get(index);
+        } while (!array.compareAndSet(index, current, Double.doubleToRawLongBits(Double.longBitsToDouble(current) + weight)));
+    }
+}
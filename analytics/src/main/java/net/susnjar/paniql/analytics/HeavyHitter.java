@@ -0,0 +1,47 @@
+package net.susnjar.paniql.analytics;
+
+/**
+ * One key reported by {@link SpaceSavingTopK}: its estimated weight and how
+ * much of that estimate may have been inherited from an evicted key.
+ */
+public final class HeavyHitter {
+    private final String key;
+    private final double estimate;
+    private final double error;
+
+    HeavyHitter(final String key, final double estimate, final double error) {
+        this.key = key;
+        this.estimate = estimate;
+        this.error = error;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the upper bound of the weight this key accumulated.
+     */
+    public double getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * Returns the maximum overestimation included in {@link #getEstimate()}.
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * Returns the weight this key is guaranteed to have accumulated.
+     */
+    public double getGuaranteed() {
+        return estimate - error;
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + estimate + " (+-" + error + ")";
+    }
+}
@@ -0,0 +1,156 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streams {@link Invoice invoices} into fixed-size summaries that answer which
+ * clients, operations, resources and fields account for the most work of each
+ * tracked {@link WorkType}. Each invoice is weighted by its
+ * {@linkplain Bound#MAXIMUM maximum} quantity of the work type.
+ *
+ * <p>Every (dimension, work type) pair has a {@link CountMinSketch} for point
+ * estimates of any key and a {@link SpaceSavingTopK} for the heaviest keys,
+ * which only admits a new key when its sketch estimate exceeds the lightest
+ * monitored one.
+ * Memory is fixed at construction, so a flood of random client or operation
+ * names cannot grow it; it can only push light keys out of the top-K.</p>
+ */
+public class HeavyHitterTracker {
+    public enum Dimension {
+        CLIENT,
+        OPERATION,
+        RESOURCE,
+        FIELD
+    }
+
+    public static final int DEFAULT_SKETCH_WIDTH = 2048;
+    public static final int DEFAULT_SKETCH_DEPTH = 4;
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private final EnumSet<WorkType> workTypes;
+    private final CountMinSketch[][] sketches = new CountMinSketch[Dimension.values().length][WorkType.values().length];
+    private final SpaceSavingTopK[][] tops = new SpaceSavingTopK[Dimension.values().length][WorkType.values().length];
+
+    /**
+     * Tracks remote work only: bulk joins, efficient and inefficient remote calls.
+     */
+    public HeavyHitterTracker() {
+        this(
+                EnumSet.of(WorkType.BULK_JOIN, WorkType.EFFICIENT_REMOTE_API_CALL, WorkType.INEFFICIENT_REMOTE_API_CALL),
+                DEFAULT_SKETCH_WIDTH,
+                DEFAULT_SKETCH_DEPTH,
+                DEFAULT_CAPACITY
+        );
+    }
+
+    public HeavyHitterTracker(final Collection<WorkType> workTypes, final int sketchWidth, final int sketchDepth, final int capacity) {
+        if (workTypes.isEmpty()) throw new IllegalArgumentException("At least one work type must be tracked.");
+        this.workTypes = EnumSet.copyOf(workTypes);
+        for (final Dimension dimension: Dimension.values()) {
+            for (final WorkType workType: this.workTypes) {
+                sketches[dimension.ordinal()][workType.ordinal()] = new CountMinSketch(sketchWidth, sketchDepth);
+                tops[dimension.ordinal()][workType.ordinal()] = new SpaceSavingTopK(capacity);
+            }
+        }
+    }
+
+    public boolean isTracked(final WorkType workType) {
+        return workTypes.contains(workType);
+    }
+
+    /**
+     * Accounts the invoice to the client, the operation and each of the resources and fields it lists.
+     *
+     * @param client    client key, skipped if {@code null}.
+     * @param operation operation key, e.g. an {@link OperationFingerprint}, skipped if {@code null}.
+     */
+    public void record(final String client, final String operation, final Invoice invoice) {
+        final double[] totals = new double[WorkType.values().length];
+        record(Dimension.RESOURCE, invoice.getResourceCosts(), totals);
+        record(Dimension.RESOURCE, invoice.getPartCosts(), totals);
+        record(Dimension.FIELD, invoice.getFieldCosts(), totals);
+
+        for (final WorkType workType: workTypes) {
+            final double weight = totals[workType.ordinal()];
+            if (client != null) add(Dimension.CLIENT, workType, client, weight);
+            if (operation != null) add(Dimension.OPERATION, workType, operation, weight);
+        }
+    }
+
+    private void record(final Dimension dimension, final Map<? extends ElementModel, Price> costs, final double[] totals) {
+        for (final Map.Entry<? extends ElementModel, Price> entry: costs.entrySet()) {
+            final Price price = entry.getValue();
+            String key = null;
+            for (final WorkType workType: workTypes) {
+                final double weight = price.get(workType).getMaximum();
+                if (!(weight > 0.0d)) continue;
+                totals[workType.ordinal()] += weight;
+                if (key == null) key = entry.getKey().getFullyQualifiedName();
+                add(dimension, workType, key, weight);
+            }
+        }
+    }
+
+    private void add(final Dimension dimension, final WorkType workType, final String key, final double weight) {
+        if (!(weight > 0.0d)) return;
+        final CountMinSketch sketch = sketches[dimension.ordinal()][workType.ordinal()];
+        final long hash = sketch.hash(key);
+        sketch.add(hash, weight);
+        tops[dimension.ordinal()][workType.ordinal()].offer(key, weight, sketch.estimate(hash));
+    }
+
+    /**
+     * Returns an upper bound of the work accounted to the key, whether or not it is among the heaviest.
+     */
+    public double estimate(final Dimension dimension, final WorkType workType, final String key) {
+        return sketch(dimension, workType).estimate(key);
+    }
+
+    /**
+     * Returns the total work accounted in the dimension.
+     */
+    public double getTotal(final Dimension dimension, final WorkType workType) {
+        return sketch(dimension, workType).getTotal();
+    }
+
+    /**
+     * Returns the heaviest keys of the dimension, heaviest first. Each estimate is
+     * the tighter of the top-K and the sketch upper bounds.
+     */
+    public List<HeavyHitter> getTop(final Dimension dimension, final WorkType workType) {
+        final CountMinSketch sketch = sketch(dimension, workType);
+        final List<HeavyHitter> top = tops[dimension.ordinal()][workType.ordinal()].getTop();
+        final List<HeavyHitter> refined = new ArrayList<>(top.size());
+        for (final HeavyHitter hitter: top) {
+            final double estimate = Math.min(hitter.getEstimate(), sketch.estimate(hitter.getKey()));
+            refined.add(new HeavyHitter(hitter.getKey(), estimate, Math.max(0.0d, estimate - hitter.getGuaranteed())));
+        }
+        refined.sort(Comparator.comparingDouble(HeavyHitter::getEstimate).reversed().thenComparing(HeavyHitter::getKey));
+        return refined;
+    }
+
+    public void clear() {
+        for (final Dimension dimension: Dimension.values()) {
+            for (final WorkType workType: workTypes) {
+                sketches[dimension.ordinal()][workType.ordinal()].clear();
+                tops[dimension.ordinal()][workType.ordinal()].clear();
+            }
+        }
+    }
+
+    private CountMinSketch sketch(final Dimension dimension, final WorkType workType) {
+        if (!workTypes.contains(workType)) throw new IllegalArgumentException("Work type not tracked: " + workType);
+        return sketches[dimension.ordinal()][workType.ordinal()];
+    }
+}
@@ -0,0 +1,155 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Sums invoices from any number of threads without locks, e.g. to report the
+ * predicted work per resource type each minute.
+ *
+ * <p>Like {@link java.util.concurrent.atomic.DoubleAdder}, it spreads updates
+ * over stripes and only sums them when read. Each stripe is one dense array
+ * with a cell per model id, {@link WorkType} and {@link Bound}, plus a request
+ * counter, i.e. about 200 bytes per model. Only the first stripe exists
+ * upfront; the others are allocated when a CAS fails, so memory only grows
+ * with actual contention. A thread starts at the stripe chosen by its identity
+ * hash, or the first one if that was not allocated yet, and moves on to the
+ * next stripe whenever a CAS fails.</p>
+ */
+public class InvoiceAggregator {
+    private static final int MAX_STRIPES = 8;
+
+    private final Environment environment;
+    private final AtomicReferenceArray<AtomicLongArray> stripes;
+    private final int stripeCount;
+    private final int requestCountIndex;
+
+    public InvoiceAggregator(final Environment environment) {
+        this(environment, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param stripes rounded up to a power of two, at most 8.
+     */
+    public InvoiceAggregator(final Environment environment, final int stripes) {
+        if (stripes < 1) throw new IllegalArgumentException("At least one stripe is required.");
+        int stripeCount = 1;
+        while (stripeCount < Math.min(stripes, MAX_STRIPES)) {
+            stripeCount <<= 1;
+        }
+        this.environment = environment;
+        this.requestCountIndex = environment.getModelCount() * InvoiceTotals.CELLS_PER_MODEL;
+        this.stripeCount = stripeCount;
+        this.stripes = new AtomicReferenceArray<>(stripeCount);
+        this.stripes.set(0, new AtomicLongArray(requestCountIndex + 1));
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public int getStripeCount() {
+        return stripeCount;
+    }
+
+    /**
+     * Returns the number of stripes allocated so far due to contention.
+     */
+    public int getAllocatedStripeCount() {
+        int allocated = 0;
+        for (int i = 0; i < stripeCount; i++) {
+            if (stripes.get(i) != null) allocated++;
+        }
+        return allocated;
+    }
+
+    public void add(final Invoice invoice) {
+        int stripe = initialStripe();
+        stripe = add(invoice.getResourceCosts(), stripe);
+        stripe = add(invoice.getPartCosts(), stripe);
+        stripe = add(invoice.getFieldCosts(), stripe);
+        stripes.get(stripe).getAndIncrement(requestCountIndex);
+    }
+
+    private int add(final Map<? extends ElementModel, Price> costs, int stripe) {
+        for (final Map.Entry<? extends ElementModel, Price> entry: costs.entrySet()) {
+            final int modelId = entry.getKey().getId();
+            final Price price = entry.getValue();
+            for (final WorkType workType: WorkType.values()) {
+                final Bounds bounds = price.get(workType);
+                if (bounds.getMaximum() == 0.0d) continue;
+                for (final Bound bound: Bound.values()) {
+                    stripe = add(stripe, InvoiceTotals.cellIndex(modelId, workType, bound), bound.get(bounds));
+                }
+            }
+        }
+        return stripe;
+    }
+
+    private int add(int stripe, final int index, final double value) {
+        if (value == 0.0d) return stripe;
+        while (true) {
+            final AtomicLongArray cells = stripes.get(stripe);
+            final long current = cells.get(index);
+            final long updated = Double.doubleToRawLongBits(Double.longBitsToDouble(current) + value);
+            if (cells.compareAndSet(index, current, updated)) return stripe;
+            stripe = (stripe + 1) & (stripeCount - 1);
+            if (stripes.get(stripe) == null) {
+                stripes.compareAndSet(stripe, null, new AtomicLongArray(requestCountIndex + 1));
+            }
+        }
+    }
+
+    /**
+     * Returns the sums of everything added so far.
+     */
+    public InvoiceTotals snapshot() {
+        return collect(false);
+    }
+
+    /**
+     * Returns the sums of everything added since the last reset and starts over.
+     * Each cell is taken and cleared atomically, so no concurrent addition is lost
+     * or counted twice, though one invoice may be split across two snapshots.
+     */
+    public InvoiceTotals snapshotAndReset() {
+        return collect(true);
+    }
+
+    public void reset() {
+        collect(true);
+    }
+
+    private InvoiceTotals collect(final boolean reset) {
+        final double[] totals = new double[requestCountIndex];
+        long requestCount = 0;
+        for (int stripe = 0; stripe < stripeCount; stripe++) {
+            final AtomicLongArray cells = stripes.get(stripe);
+            if (cells == null) continue;
+            for (int i = 0; i < requestCountIndex; i++) {
+                final long bits = reset ? cells.getAndSet(i, 0L) : cells.get(i);
+                if (bits != 0L) totals[i] += Double.longBitsToDouble(bits);
+            }
+            requestCount += reset ? cells.getAndSet(requestCountIndex, 0L) : cells.get(requestCountIndex);
+        }
+        return new InvoiceTotals(environment, totals, requestCount);
+    }
+
+    private int initialStripe() {
+        int h = System.identityHashCode(Thread.currentThread());
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        final int stripe = h & (stripeCount - 1);
+        return (stripes.get(stripe) == null) ? 0 : stripe;
+    }
+}
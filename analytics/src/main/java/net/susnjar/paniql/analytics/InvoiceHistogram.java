@@ -0,0 +1,278 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Distribution of per-request quantities for every type and field of an
+ * {@link Environment}, each {@link WorkType} and each {@link Bound}, e.g. the
+ * 99th percentile of the maximum number of {@code File} instance accesses a
+ * request is invoiced for.
+ *
+ * <p>Each series is a log-linear histogram: every power of two is split into
+ * {@code 2^precisionBits} equal buckets, so values are reported within a
+ * relative error of {@code 2^-precisionBits}. Bucket indexes are taken
+ * straight from the exponent and top mantissa bits of the {@code double}.
+ * Series are allocated on their first non-zero value, so models an invoice
+ * never mentions cost nothing; requests that do not mention a model count as
+ * zeros for it.</p>
+ *
+ * <p>Recording is lock-free. Histograms over equal environments and layouts
+ * can be {@linkplain #merge(InvoiceHistogram) merged}, also after travelling
+ * between nodes via {@link #writeTo(OutputStream)} and
+ * {@link #readFrom(InputStream, Environment)}.</p>
+ */
+public class InvoiceHistogram {
+    public static final int DEFAULT_PRECISION_BITS = 4;
+    public static final int DEFAULT_MIN_EXPONENT = -8;
+    public static final int DEFAULT_MAX_EXPONENT = 40;
+
+    private static final int MAGIC = 0x50514948; // "PQIH"
+    private static final byte VERSION = 1;
+    private static final int MANTISSA_BITS = 52;
+    private static final long MANTISSA_MASK = (1L << MANTISSA_BITS) - 1;
+    private static final int WORK_TYPE_COUNT = WorkType.values().length;
+    private static final int BOUND_COUNT = Bound.values().length;
+
+    private final Environment environment;
+    private final int precisionBits;
+    private final int minExponent;
+    private final int maxExponent;
+    private final int bucketCount;
+    private final AtomicReferenceArray<AtomicLongArray> series;
+    private final AtomicLong requestCount = new AtomicLong();
+
+    public InvoiceHistogram(final Environment environment) {
+        this(environment, DEFAULT_PRECISION_BITS, DEFAULT_MIN_EXPONENT, DEFAULT_MAX_EXPONENT);
+    }
+
+    /**
+     * @param precisionBits number of mantissa bits distinguished within each power of two, 0 to 10.
+     * @param minExponent   values below {@code 2^minExponent} share the lowest bucket.
+     * @param maxExponent   values at or above {@code 2^(maxExponent + 1)} share the highest bucket.
+     */
+    public InvoiceHistogram(final Environment environment, final int precisionBits, final int minExponent, final int maxExponent) {
+        if ((precisionBits < 0) || (precisionBits > 10)) throw new IllegalArgumentException("Precision bits must be between 0 and 10.");
+        if (minExponent > maxExponent) throw new IllegalArgumentException("Minimum exponent must not exceed the maximum.");
+        if ((minExponent < Double.MIN_EXPONENT) || (maxExponent > Double.MAX_EXPONENT)) {
+            throw new IllegalArgumentException("Exponents must be within the range of normal doubles.");
+        }
+        this.environment = environment;
+        this.precisionBits = precisionBits;
+        this.minExponent = minExponent;
+        this.maxExponent = maxExponent;
+        this.bucketCount = 1 + ((maxExponent - minExponent + 1) << precisionBits);
+        this.series = new AtomicReferenceArray<>(environment.getModelCount() * WORK_TYPE_COUNT * BOUND_COUNT);
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public void record(final Invoice invoice) {
+        record(invoice.getResourceCosts());
+        record(invoice.getPartCosts());
+        record(invoice.getFieldCosts());
+        requestCount.incrementAndGet();
+    }
+
+    private void record(final Map<? extends ElementModel, Price> costs) {
+        for (final Map.Entry<? extends ElementModel, Price> entry: costs.entrySet()) {
+            final int modelId = entry.getKey().getId();
+            final Price price = entry.getValue();
+            for (final WorkType workType: WorkType.values()) {
+                final Bounds bounds = price.get(workType);
+                for (final Bound bound: Bound.values()) {
+                    final double value = bound.get(bounds);
+                    if (value > 0.0d) {
+                        getOrCreateSeries(seriesIndex(modelId, workType, bound)).incrementAndGet(bucketIndex(value));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest recorded value such that the requested fraction of all
+     * requests had at most that value, reported as the upper edge of its bucket.
+     *
+     * @param percentile between 0 and 100.
+     */
+    public double getValueAtPercentile(final ElementModel<?> model, final WorkType workType, final Bound bound, final double percentile) {
+        if ((percentile < 0.0d) || (percentile > 100.0d)) throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        final long requests = requestCount.get();
+        if (requests == 0) return 0.0d;
+
+        final AtomicLongArray buckets = series.get(seriesIndex(model.getId(), workType, bound));
+        if (buckets == null) return 0.0d;
+
+        final long target = Math.max(1L, (long) Math.ceil(percentile / 100.0d * requests));
+        long seen = Math.max(0L, requests - count(buckets));
+        if (seen >= target) return 0.0d;
+
+        for (int i = 0; i < bucketCount; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) return bucketUpperEdge(i);
+        }
+        return bucketUpperEdge(bucketCount - 1);
+    }
+
+    /**
+     * Returns the number of requests with a non-zero value of the series.
+     */
+    public long getNonZeroCount(final ElementModel<?> model, final WorkType workType, final Bound bound) {
+        final AtomicLongArray buckets = series.get(seriesIndex(model.getId(), workType, bound));
+        return (buckets == null) ? 0L : count(buckets);
+    }
+
+    /**
+     * Adds all counts of the other histogram into this one.
+     */
+    public void merge(final InvoiceHistogram other) {
+        checkCompatible(other.environment.getModelSignature(), other.precisionBits, other.minExponent, other.maxExponent);
+        for (int s = 0; s < other.series.length(); s++) {
+            final AtomicLongArray source = other.series.get(s);
+            if (source == null) continue;
+            AtomicLongArray target = null;
+            for (int i = 0; i < bucketCount; i++) {
+                final long count = source.get(i);
+                if (count == 0) continue;
+                if (target == null) target = getOrCreateSeries(s);
+                target.addAndGet(i, count);
+            }
+        }
+        requestCount.addAndGet(other.requestCount.get());
+    }
+
+    public void reset() {
+        for (int s = 0; s < series.length(); s++) {
+            series.set(s, null);
+        }
+        requestCount.set(0);
+    }
+
+    /**
+     * Writes the layout and all non-zero buckets. Concurrent recording is not
+     * blocked, so the output may include part of an invoice being recorded.
+     */
+    public void writeTo(final OutputStream output) throws IOException {
+        final DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        data.writeByte(VERSION);
+        data.writeLong(environment.getModelSignature());
+        data.writeByte(precisionBits);
+        data.writeShort(minExponent);
+        data.writeShort(maxExponent);
+        data.writeLong(requestCount.get());
+        for (int s = 0; s < series.length(); s++) {
+            final AtomicLongArray buckets = series.get(s);
+            if (buckets == null) continue;
+            int nonZero = 0;
+            final long[] counts = new long[bucketCount];
+            for (int i = 0; i < bucketCount; i++) {
+                counts[i] = buckets.get(i);
+                if (counts[i] != 0) nonZero++;
+            }
+            if (nonZero == 0) continue;
+            data.writeInt(s);
+            data.writeInt(nonZero);
+            for (int i = 0; i < bucketCount; i++) {
+                if (counts[i] == 0) continue;
+                data.writeInt(i);
+                data.writeLong(counts[i]);
+            }
+        }
+        data.writeInt(-1);
+        data.flush();
+    }
+
+    /**
+     * Reads a histogram written by {@link #writeTo(OutputStream)} over an environment with the same models.
+     */
+    public static InvoiceHistogram readFrom(final InputStream input, final Environment environment) throws IOException {
+        final DataInputStream data = new DataInputStream(input);
+        if (data.readInt() != MAGIC) throw new IOException("Not an invoice histogram.");
+        final byte version = data.readByte();
+        if (version != VERSION) throw new IOException("Unsupported invoice histogram version: " + version);
+        final long signature = data.readLong();
+        if (signature != environment.getModelSignature()) throw new IOException("Histogram was recorded over a different schema.");
+
+        final InvoiceHistogram histogram = new InvoiceHistogram(environment, data.readByte(), data.readShort(), data.readShort());
+        histogram.requestCount.set(data.readLong());
+        for (int s = data.readInt(); s >= 0; s = data.readInt()) {
+            if (s >= histogram.series.length()) throw new IOException("Series index out of range: " + s);
+            final AtomicLongArray buckets = histogram.getOrCreateSeries(s);
+            for (int n = data.readInt(); n > 0; n--) {
+                final int bucket = data.readInt();
+                if ((bucket < 0) || (bucket >= histogram.bucketCount)) throw new IOException("Bucket index out of range: " + bucket);
+                buckets.set(bucket, data.readLong());
+            }
+        }
+        return histogram;
+    }
+
+    int bucketIndex(final double value) {
+        final int exponent = Math.getExponent(value);
+        if (exponent < minExponent) return 0;
+        if (exponent > maxExponent) return bucketCount - 1;
+        final int subBucket = (int) ((Double.doubleToRawLongBits(value) & MANTISSA_MASK) >>> (MANTISSA_BITS - precisionBits));
+        return 1 + ((exponent - minExponent) << precisionBits) + subBucket;
+    }
+
+    double bucketUpperEdge(final int index) {
+        if (index == 0) return Math.scalb(1.0d, minExponent);
+        final int offset = index - 1;
+        final int exponent = minExponent + (offset >>> precisionBits);
+        final int subBucket = offset & ((1 << precisionBits) - 1);
+        return Math.scalb(1.0d + (subBucket + 1.0d) / (1 << precisionBits), exponent);
+    }
+
+    private void checkCompatible(final long signature, final int precisionBits, final int minExponent, final int maxExponent) {
+        if (signature != environment.getModelSignature()) throw new IllegalArgumentException("Histograms are over different schemas.");
+        if ((precisionBits != this.precisionBits) || (minExponent != this.minExponent) || (maxExponent != this.maxExponent)) {
+            throw new IllegalArgumentException("Histograms have different bucket layouts.");
+        }
+    }
+
+    private AtomicLongArray getOrCreateSeries(final int index) {
+        final AtomicLongArray existing = series.get(index);
+        if (existing != null) return existing;
+        final AtomicLongArray created = new AtomicLongArray(bucketCount);
+        return series.compareAndSet(index, null, created) ? created : series.get(index);
+    }
+
+    private static int seriesIndex(final int modelId, final WorkType workType, final Bound bound) {
+        return (modelId * WORK_TYPE_COUNT + workType.ordinal()) * BOUND_COUNT + bound.ordinal();
+    }
+
+    private static long count(final AtomicLongArray buckets) {
+        long count = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+}
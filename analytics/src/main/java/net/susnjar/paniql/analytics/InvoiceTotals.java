@@ -0,0 +1,91 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+/**
+ * Immutable sums of many invoices, laid out densely by model id, {@link WorkType} and {@link Bound}.
+ */
+public final class InvoiceTotals {
+    static final int WORK_TYPE_COUNT = WorkType.values().length;
+    static final int BOUND_COUNT = Bound.values().length;
+    static final int CELLS_PER_MODEL = WORK_TYPE_COUNT * BOUND_COUNT;
+
+    private final Environment environment;
+    private final double[] totals;
+    private final long requestCount;
+
+    InvoiceTotals(final Environment environment, final double[] totals, final long requestCount) {
+        this.environment = environment;
+        this.totals = totals;
+        this.requestCount = requestCount;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public double get(final ElementModel<?> model, final WorkType workType, final Bound bound) {
+        return totals[cellIndex(model.getId(), workType, bound)];
+    }
+
+    /**
+     * Returns the sum of the work type across all models.
+     */
+    public double getTotal(final WorkType workType, final Bound bound) {
+        double total = 0.0d;
+        for (int offset = cellIndex(0, workType, bound); offset < totals.length; offset += CELLS_PER_MODEL) {
+            total += totals[offset];
+        }
+        return total;
+    }
+
+    /**
+     * Converts the totals to an invoice. Bounds summed while invoices were still being
+     * added may be slightly out of order; those are raised to keep each {@link Bounds} valid.
+     */
+    public Invoice toInvoice() {
+        final Invoice invoice = new Invoice();
+        for (int modelId = 0; modelId < environment.getModelCount(); modelId++) {
+            final Price price = getPrice(modelId);
+            if (price == null) continue;
+            final ElementModel<?> model = environment.getModel(modelId);
+            if (model instanceof FieldDefModel) {
+                invoice.add((FieldDefModel) model, price);
+            } else {
+                invoice.add((OutputTypeModel) model, price);
+            }
+        }
+        return invoice;
+    }
+
+    private Price getPrice(final int modelId) {
+        final Bounds[] bounds = new Bounds[WORK_TYPE_COUNT];
+        boolean any = false;
+        for (final WorkType workType: WorkType.values()) {
+            final int offset = cellIndex(modelId, workType, Bound.MINIMUM);
+            final double min = totals[offset + Bound.MINIMUM.ordinal()];
+            final double avg = Math.max(min, totals[offset + Bound.AVERAGE.ordinal()]);
+            final double p95 = Math.max(avg, totals[offset + Bound.PERCENTILE_95.ordinal()]);
+            final double max = Math.max(p95, totals[offset + Bound.MAXIMUM.ordinal()]);
+            any |= (max != 0.0d);
+            bounds[workType.ordinal()] = new Bounds(min, avg, p95, max);
+        }
+        return any ? Price.of(bounds) : null;
+    }
+
+    static int cellIndex(final int modelId, final WorkType workType, final Bound bound) {
+        return modelId * CELLS_PER_MODEL + workType.ordinal() * BOUND_COUNT + bound.ordinal();
+    }
+}
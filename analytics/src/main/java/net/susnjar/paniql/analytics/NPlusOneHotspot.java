@@ -0,0 +1,78 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.models.FieldDefModel;
+
+import java.util.List;
+
+/**
+ * One field reported by {@link NPlusOneReport}: how often it was resolved by
+ * one remote call per parent instance and how many calls that added up to.
+ */
+public final class NPlusOneHotspot {
+    private final FieldDefModel field;
+    private final long occurrences;
+    private final double averageCalls;
+    private final double percentile95Calls;
+    private final double maximumBatch;
+    private final List<String> examples;
+
+    NPlusOneHotspot(
+            final FieldDefModel field,
+            final long occurrences,
+            final double averageCalls,
+            final double percentile95Calls,
+            final double maximumBatch,
+            final List<String> examples
+    ) {
+        this.field = field;
+        this.occurrences = occurrences;
+        this.averageCalls = averageCalls;
+        this.percentile95Calls = percentile95Calls;
+        this.maximumBatch = maximumBatch;
+        this.examples = examples;
+    }
+
+    public FieldDefModel getField() {
+        return field;
+    }
+
+    /**
+     * Returns the number of selections of the field under a to-many parent across all recorded operations.
+     */
+    public long getOccurrences() {
+        return occurrences;
+    }
+
+    /**
+     * Returns the sum of the average remote call counts of all occurrences, i.e. the expected total contribution.
+     */
+    public double getAverageCalls() {
+        return averageCalls;
+    }
+
+    /**
+     * Returns the sum of the 95% percentile remote call counts of all occurrences.
+     */
+    public double getPercentile95Calls() {
+        return percentile95Calls;
+    }
+
+    /**
+     * Returns the largest 95% percentile parent count seen, i.e. the worst batch a DataLoader would need to absorb.
+     */
+    public double getMaximumBatch() {
+        return maximumBatch;
+    }
+
+    /**
+     * Returns the operations that contributed the most calls, heaviest first.
+     */
+    public List<String> getExamples() {
+        return examples;
+    }
+
+    @Override
+    public String toString() {
+        return field.getFullyQualifiedName() + ": " + averageCalls + " avg calls in " + occurrences + " selections " + examples;
+    }
+}
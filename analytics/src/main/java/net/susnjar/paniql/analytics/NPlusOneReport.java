@@ -0,0 +1,141 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.FetchPlan;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.FieldDefModel;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ranks the fields that cause N+1 call patterns across a corpus of operations:
+ * fields priced as standalone {@linkplain FetchPlan.Strategy#REMOTE remote}
+ * calls under a parent that may have more than one instance, so that the
+ * number of calls grows with the parent cardinality. Fields are ranked by
+ * their total expected number of calls, which tells which {@code joins}
+ * annotations or resolvers are worth optimizing first.
+ *
+ * <p>Accumulators are kept in an array indexed by the
+ * {@linkplain ElementModel#getId() model id}, so recording is safe from
+ * multiple threads and needs no hashing.</p>
+ */
+public class NPlusOneReport {
+    public static final int DEFAULT_EXAMPLES = 3;
+
+    private final Environment environment;
+    private final int exampleCount;
+    private final AtomicReferenceArray<Accumulator> accumulators;
+
+    public NPlusOneReport(final Environment environment) {
+        this(environment, DEFAULT_EXAMPLES);
+    }
+
+    /**
+     * @param exampleCount number of heaviest operations kept as examples for each field.
+     */
+    public NPlusOneReport(final Environment environment, final int exampleCount) {
+        if (exampleCount < 0) throw new IllegalArgumentException("Example count must not be negative.");
+        this.environment = environment;
+        this.exampleCount = exampleCount;
+        this.accumulators = new AtomicReferenceArray<>(environment.getModelCount());
+    }
+
+    /**
+     * Accounts the remote steps of the operation's plan that may repeat per parent instance.
+     *
+     * @param operation operation name or id, used as an example.
+     */
+    public void record(final String operation, final FetchPlan plan) {
+        for (final FetchPlan.Step step: plan.getSteps(FetchPlan.Strategy.REMOTE)) {
+            if (step.getBatchSize().getMaximum() <= 1.0d) continue;
+            accumulator(step.getField()).add(operation, step);
+        }
+    }
+
+    /**
+     * Returns all fields with any recorded N+1 selections, those with the most expected calls first.
+     */
+    public List<NPlusOneHotspot> getHotspots() {
+        final List<NPlusOneHotspot> hotspots = new ArrayList<>();
+        for (int id = 0; id < accumulators.length(); id++) {
+            final Accumulator accumulator = accumulators.get(id);
+            if (accumulator != null) hotspots.add(accumulator.toHotspot());
+        }
+        hotspots.sort(Comparator.comparingDouble(NPlusOneHotspot::getAverageCalls).reversed());
+        return hotspots;
+    }
+
+    public List<NPlusOneHotspot> getHotspots(final int limit) {
+        final List<NPlusOneHotspot> hotspots = getHotspots();
+        return (hotspots.size() <= limit) ? hotspots : new ArrayList<>(hotspots.subList(0, limit));
+    }
+
+    private Accumulator accumulator(final FieldDefModel field) {
+        final int id = field.getId();
+        Accumulator accumulator = accumulators.get(id);
+        if (accumulator == null) {
+            accumulators.compareAndSet(id, null, new Accumulator(field));
+            accumulator = accumulators.get(id);
+        }
+        return accumulator;
+    }
+
+    private final class Accumulator {
+        private final FieldDefModel field;
+        private final String[] examples = new String[exampleCount];
+        private final double[] exampleCalls = new double[exampleCount];
+        private long occurrences = 0;
+        private double averageCalls = 0.0d;
+        private double percentile95Calls = 0.0d;
+        private double maximumBatch = 0.0d;
+
+        Accumulator(final FieldDefModel field) {
+            this.field = field;
+        }
+
+        synchronized void add(final String operation, final FetchPlan.Step step) {
+            final double calls = step.getRemoteCalls().getAverage();
+            occurrences++;
+            averageCalls += calls;
+            percentile95Calls += step.getRemoteCalls().getPercentile95();
+            maximumBatch = Math.max(maximumBatch, step.getBatchSize().getPercentile95());
+            addExample(operation, calls);
+        }
+
+        /**
+         * Keeps the heaviest operations sorted, counting each operation once with its heaviest selection.
+         */
+        private void addExample(final String operation, final double calls) {
+            int slot = -1;
+            for (int i = 0; i < exampleCount; i++) {
+                if (operation.equals(examples[i])) {
+                    if (exampleCalls[i] >= calls) return;
+                    slot = i;
+                    break;
+                }
+            }
+            if (slot < 0) {
+                slot = exampleCount - 1;
+                if ((slot < 0) || ((examples[slot] != null) && (exampleCalls[slot] >= calls))) return;
+            }
+            while ((slot > 0) && ((examples[slot - 1] == null) || (exampleCalls[slot - 1] < calls))) {
+                examples[slot] = examples[slot - 1];
+                exampleCalls[slot] = exampleCalls[slot - 1];
+                slot--;
+            }
+            examples[slot] = operation;
+            exampleCalls[slot] = calls;
+        }
+
+        synchronized NPlusOneHotspot toHotspot() {
+            final List<String> names = new ArrayList<>(exampleCount);
+            for (final String example: examples) {
+                if (example != null) names.add(example);
+            }
+            return new NPlusOneHotspot(field, occurrences, averageCalls, percentile95Calls, maximumBatch, names);
+        }
+    }
+}
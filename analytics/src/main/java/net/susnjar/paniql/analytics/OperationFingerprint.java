@@ -0,0 +1,36 @@
+package net.susnjar.paniql.analytics;
+
+import graphql.language.AstPrinter;
+import graphql.language.AstSignature;
+import graphql.language.Document;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Derives a stable key for an operation that ignores literal argument values,
+ * aliases, formatting and selection order, so that requests differing only in
+ * those aspects are accounted together.
+ */
+public final class OperationFingerprint {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private OperationFingerprint() {
+    }
+
+    /**
+     * Returns the 64-bit FNV-1a hash of the operation signature as 16 hex digits.
+     *
+     * @param operationName name of the operation to fingerprint, may be {@code null}
+     *                      when the document contains a single operation.
+     */
+    public static String of(final Document document, final String operationName) {
+        final Document signature = new AstSignature().signatureQuery(document, operationName);
+        long hash = FNV_OFFSET_BASIS;
+        for (final byte b: AstPrinter.printAstCompact(signature).getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        final String hex = Long.toHexString(hash);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+}
@@ -0,0 +1,143 @@
+package net.susnjar.paniql.analytics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Space-saving top-K summary: monitors at most {@code capacity} keys and,
+ * when a new key arrives while full, it takes over the counter of the least
+ * weighted key, inheriting its weight as error. Any key whose true weight
+ * exceeds {@code total / capacity} is guaranteed to be monitored.
+ *
+ * <p>On its own the summary degrades when many distinct light keys stream
+ * through a small capacity, as each of them inherits the minimum. Offering
+ * keys together with an independent upper bound of their weight, e.g. from
+ * a {@link CountMinSketch}, lets a new key replace the minimum only if it
+ * can actually outweigh it.</p>
+ *
+ * <p>Counters are kept in an indexed min-heap so each offer is
+ * {@code O(log capacity)}. The summary is small and guarded by its own
+ * monitor.</p>
+ */
+public class SpaceSavingTopK {
+    private static final class Counter {
+        private String key;
+        private double count;
+        private double error;
+        private int heapIndex;
+    }
+
+    private final int capacity;
+    private final HashMap<String, Counter> counters;
+    private final Counter[] heap;
+    private int size = 0;
+
+    public SpaceSavingTopK(final int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void offer(final String key, final double weight) {
+        offer(key, weight, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Offers the key with the known upper bound of its accumulated weight, including this offer.
+     */
+    public synchronized void offer(final String key, final double weight, final double upperBound) {
+        if (!(weight > 0.0d)) return;
+
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.heapIndex);
+            return;
+        }
+
+        if (size < capacity) {
+            counter = new Counter();
+            counter.key = key;
+            counter.count = weight;
+            counter.heapIndex = size;
+            heap[size++] = counter;
+            counters.put(key, counter);
+            siftUp(counter.heapIndex);
+            return;
+        }
+
+        counter = heap[0];
+        final double inherited = counter.count + weight;
+        if (upperBound <= counter.count) return;
+        counters.remove(counter.key);
+        counter.key = key;
+        counter.count = Math.min(inherited, upperBound);
+        counter.error = counter.count - weight;
+        counters.put(key, counter);
+        siftDown(0);
+    }
+
+    /**
+     * Returns the estimate for a monitored key or {@code 0} if it is not monitored.
+     */
+    public synchronized double estimate(final String key) {
+        final Counter counter = counters.get(key);
+        return (counter == null) ? 0.0d : counter.count;
+    }
+
+    /**
+     * Returns the monitored keys, heaviest first.
+     */
+    public synchronized List<HeavyHitter> getTop() {
+        final List<HeavyHitter> top = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            top.add(new HeavyHitter(heap[i].key, heap[i].count, heap[i].error));
+        }
+        top.sort(Comparator.comparingDouble(HeavyHitter::getEstimate).reversed().thenComparing(HeavyHitter::getKey));
+        return top;
+    }
+
+    public synchronized void clear() {
+        counters.clear();
+        for (int i = 0; i < size; i++) {
+            heap[i] = null;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int index) {
+        final Counter counter = heap[index];
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) break;
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        final Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) break;
+            if ((child + 1 < size) && (heap[child + 1].count < heap[child].count)) child++;
+            if (counter.count <= heap[child].count) break;
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(final Counter counter, final int index) {
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+}
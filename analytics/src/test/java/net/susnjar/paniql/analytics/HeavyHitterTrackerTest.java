@@ -0,0 +1,57 @@
+package net.susnjar.paniql.analytics;
+
+import graphql.parser.Parser;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class HeavyHitterTrackerTest {
+    @Test
+    void findsHeavyClientsAmongManyDistinctOnes() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final HeavyHitterTracker tracker = new HeavyHitterTracker(List.of(WorkType.INEFFICIENT_REMOTE_API_CALL), 1024, 4, 8);
+        final String operation = OperationFingerprint.of(Parser.parse(TestSchema.FOLDER_FILES), null);
+
+        for (int i = 0; i < 20_000; i++) {
+            tracker.record("random-" + i, operation, invoice);
+            if (i % 100 == 0) tracker.record("greedy", operation, invoice);
+            if (i % 400 == 0) tracker.record("busy", operation, invoice);
+        }
+
+        final List<HeavyHitter> top = tracker.getTop(HeavyHitterTracker.Dimension.CLIENT, WorkType.INEFFICIENT_REMOTE_API_CALL);
+        Assertions.assertEquals(8, top.size());
+        Assertions.assertEquals("greedy", top.get(0).getKey());
+        Assertions.assertEquals("busy", top.get(1).getKey());
+
+        final double perRequest = invoice.getFieldCosts().get(environment.getOutputType("File").getField("fromREST"))
+                .get(WorkType.INEFFICIENT_REMOTE_API_CALL).getMaximum();
+        Assertions.assertTrue(perRequest > 0.0d);
+        Assertions.assertTrue(top.get(0).getEstimate() >= 200 * perRequest);
+        Assertions.assertTrue(top.get(0).getGuaranteed() <= 200 * perRequest);
+        Assertions.assertTrue(tracker.estimate(HeavyHitterTracker.Dimension.CLIENT, WorkType.INEFFICIENT_REMOTE_API_CALL, "greedy") >= 200 * perRequest);
+
+        final List<HeavyHitter> operations = tracker.getTop(HeavyHitterTracker.Dimension.OPERATION, WorkType.INEFFICIENT_REMOTE_API_CALL);
+        Assertions.assertEquals(1, operations.size());
+        Assertions.assertEquals(operation, operations.get(0).getKey());
+
+        final List<HeavyHitter> fields = tracker.getTop(HeavyHitterTracker.Dimension.FIELD, WorkType.INEFFICIENT_REMOTE_API_CALL);
+        Assertions.assertEquals("File.fromREST", fields.get(0).getKey());
+    }
+
+    @Test
+    void fingerprintIgnoresLiteralsAndFormatting() {
+        final String a = OperationFingerprint.of(Parser.parse("{ top { sub { folder(id: 1) { id } } } }"), null);
+        final String b = OperationFingerprint.of(Parser.parse("query {\n  top { sub { folder(id: 42) { id } } }\n}"), null);
+        final String c = OperationFingerprint.of(Parser.parse("{ top { sub { folder(id: 1) { id name } } } }"), null);
+        Assertions.assertEquals(a, b);
+        Assertions.assertNotEquals(a, c);
+        Assertions.assertEquals(16, a.length());
+    }
+}
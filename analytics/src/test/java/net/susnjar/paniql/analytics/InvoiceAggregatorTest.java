@@ -0,0 +1,79 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class InvoiceAggregatorTest {
+    @Test
+    void sumsConcurrentlyAddedInvoices() throws Exception {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final InvoiceAggregator aggregator = new InvoiceAggregator(environment, 4);
+        Assertions.assertEquals(4, aggregator.getStripeCount());
+
+        final int threads = 8;
+        final int perThread = 500;
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    aggregator.add(invoice);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (final Thread worker: workers) {
+            worker.join();
+        }
+
+        final Invoice expected = invoice.times(threads * perThread);
+        final InvoiceTotals totals = aggregator.snapshot();
+        Assertions.assertEquals(threads * perThread, totals.getRequestCount());
+        Assertions.assertTrue(aggregator.getAllocatedStripeCount() <= 4);
+
+        final OutputTypeModel<?, ?> file = environment.getOutputType("File");
+        for (final Bound bound: Bound.values()) {
+            Assertions.assertEquals(
+                    bound.get(expected.getResourceCosts().get(file).get(WorkType.INSTANCE_ACCESS)),
+                    totals.get(file, WorkType.INSTANCE_ACCESS, bound),
+                    1e-6
+            );
+        }
+
+        final Invoice summed = totals.toInvoice();
+        Assertions.assertEquals(expected.getResourceCosts().keySet(), summed.getResourceCosts().keySet());
+        Assertions.assertEquals(expected.getFieldCosts().keySet(), summed.getFieldCosts().keySet());
+    }
+
+    @Test
+    void resetsOnSnapshot() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final InvoiceAggregator aggregator = new InvoiceAggregator(environment, 3);
+        Assertions.assertEquals(4, aggregator.getStripeCount());
+
+        aggregator.add(invoice);
+        aggregator.add(invoice);
+        // Stripes are only allocated when threads contend.
+        Assertions.assertEquals(1, aggregator.getAllocatedStripeCount());
+        final InvoiceTotals first = aggregator.snapshotAndReset();
+        Assertions.assertEquals(2, first.getRequestCount());
+        Assertions.assertTrue(first.getTotal(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM) > 0.0d);
+
+        final InvoiceTotals second = aggregator.snapshot();
+        Assertions.assertEquals(0, second.getRequestCount());
+        Assertions.assertEquals(0.0d, second.getTotal(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM));
+        Assertions.assertTrue(second.toInvoice().getFieldCosts().isEmpty());
+    }
+}
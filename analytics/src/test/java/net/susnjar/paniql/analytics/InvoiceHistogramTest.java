@@ -0,0 +1,82 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class InvoiceHistogramTest {
+    private static final String FOLDER_FILES = "{ top { sub { folder(id: 1) { files { id name } } } } }";
+    private static final String FOLDER_ONLY = "{ top { sub { folder(id: 1) { id } } } }";
+
+    @Test
+    void reportsPercentilesIncludingRequestsThatDoNotMentionTheType() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final OutputTypeModel<?, ?> file = environment.getOutputType("File");
+        final Invoice withFiles = environment.invoice(FOLDER_FILES);
+        final Invoice withoutFiles = environment.invoice(FOLDER_ONLY);
+        final double fileAccesses = withFiles.getResourceCosts().get(file).get(WorkType.INSTANCE_ACCESS).getMaximum();
+        Assertions.assertTrue(fileAccesses > 0.0d);
+
+        final InvoiceHistogram histogram = new InvoiceHistogram(environment);
+        for (int i = 0; i < 95; i++) {
+            histogram.record(withoutFiles);
+        }
+        for (int i = 0; i < 5; i++) {
+            histogram.record(withFiles);
+        }
+
+        Assertions.assertEquals(100, histogram.getRequestCount());
+        Assertions.assertEquals(5, histogram.getNonZeroCount(file, WorkType.INSTANCE_ACCESS, Bound.MAXIMUM));
+        Assertions.assertEquals(0.0d, histogram.getValueAtPercentile(file, WorkType.INSTANCE_ACCESS, Bound.MAXIMUM, 95.0d));
+
+        final double p99 = histogram.getValueAtPercentile(file, WorkType.INSTANCE_ACCESS, Bound.MAXIMUM, 99.0d);
+        Assertions.assertTrue(p99 >= fileAccesses);
+        Assertions.assertTrue(p99 <= fileAccesses * (1.0d + 1.0d / (1 << histogram.getPrecisionBits())));
+    }
+
+    @Test
+    void mergesAndSerializes() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final OutputTypeModel<?, ?> file = environment.getOutputType("File");
+        final Invoice withFiles = environment.invoice(FOLDER_FILES);
+
+        final InvoiceHistogram a = new InvoiceHistogram(environment);
+        final InvoiceHistogram b = new InvoiceHistogram(environment);
+        a.record(withFiles);
+        b.record(withFiles);
+        b.record(environment.invoice(FOLDER_ONLY));
+        a.merge(b);
+        Assertions.assertEquals(3, a.getRequestCount());
+        Assertions.assertEquals(2, a.getNonZeroCount(file, WorkType.INSTANCE_ACCESS, Bound.AVERAGE));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        a.writeTo(bytes);
+        final InvoiceHistogram copy = InvoiceHistogram.readFrom(new ByteArrayInputStream(bytes.toByteArray()), TestSchema.createEnvironment());
+        Assertions.assertEquals(3, copy.getRequestCount());
+        for (final Bound bound: Bound.values()) {
+            Assertions.assertEquals(
+                    a.getValueAtPercentile(file, WorkType.INSTANCE_ACCESS, bound, 90.0d),
+                    copy.getValueAtPercentile(copy.getEnvironment().getOutputType("File"), WorkType.INSTANCE_ACCESS, bound, 90.0d)
+            );
+        }
+    }
+
+    @Test
+    void bucketsAreLogLinear() throws IOException {
+        final InvoiceHistogram histogram = new InvoiceHistogram(TestSchema.createEnvironment(), 2, -2, 10);
+        Assertions.assertEquals(0, histogram.bucketIndex(0.1d));
+        Assertions.assertEquals(histogram.bucketIndex(1.0d) + 1, histogram.bucketIndex(1.25d));
+        Assertions.assertEquals(histogram.bucketIndex(2.0d) + 1, histogram.bucketIndex(2.5d));
+        Assertions.assertEquals(1.25d, histogram.bucketUpperEdge(histogram.bucketIndex(1.0d)));
+        Assertions.assertEquals(2048.0d, histogram.bucketUpperEdge(histogram.bucketIndex(1e9d)));
+    }
+}
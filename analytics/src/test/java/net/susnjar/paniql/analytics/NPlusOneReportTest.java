@@ -0,0 +1,39 @@
+package net.susnjar.paniql.analytics;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+public class NPlusOneReportTest {
+    private static final String FOLDER_ONLY = "{ top { sub { folder(id: 1) { id } } } }";
+    private static final String FILE_ONLY = "{ top { sub { file(id: 1) { id fromREST } } } }";
+
+    @Test
+    void ranksRemoteFieldsUnderToManyParents() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final NPlusOneReport report = new NPlusOneReport(environment, 2);
+
+        report.record("folderOnly", environment.plan(FOLDER_ONLY));
+        report.record("fileOnly", environment.plan(FILE_ONLY));
+        Assertions.assertTrue(report.getHotspots().isEmpty());
+
+        report.record("files1", environment.plan(TestSchema.FOLDER_FILES));
+        report.record("files2", environment.plan(TestSchema.FOLDER_FILES));
+        report.record("nested", environment.plan("{ top { sub { folder(id: 1) { subfolders { files { fromREST } } } } } }"));
+
+        final List<NPlusOneHotspot> hotspots = report.getHotspots();
+        Assertions.assertEquals(1, hotspots.size());
+        final NPlusOneHotspot fromREST = hotspots.get(0);
+        Assertions.assertSame(environment.getOutputType("File").getField("fromREST"), fromREST.getField());
+        Assertions.assertEquals(3, fromREST.getOccurrences());
+        Assertions.assertTrue(fromREST.getAverageCalls() > 90.0d);
+        Assertions.assertTrue(fromREST.getPercentile95Calls() >= fromREST.getAverageCalls());
+        Assertions.assertTrue(fromREST.getMaximumBatch() > 495.0d);
+        Assertions.assertEquals(List.of("nested", "files1"), fromREST.getExamples());
+        Assertions.assertEquals(1, report.getHotspots(1).size());
+    }
+}
@@ -0,0 +1,51 @@
+package net.susnjar.paniql.commandline;
+
+/**
+ * One request of a corpus, identified by its file path or NDJSON line.
+ */
+public final class CorpusEntry {
+    private final String id;
+    private final String query;
+    private final String operationName;
+    private final String error;
+
+    public CorpusEntry(final String id, final String query, final String operationName) {
+        this(id, query, operationName, null);
+    }
+
+    private CorpusEntry(final String id, final String query, final String operationName, final String error) {
+        this.id = id;
+        this.query = query;
+        this.operationName = operationName;
+        this.error = error;
+    }
+
+    /**
+     * Creates an entry for a request that could not be read, reported as a failure of that entry alone.
+     */
+    public static CorpusEntry malformed(final String id, final String error) {
+        return new CorpusEntry(id, null, null, error);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the name of the operation to analyse or {@code null} to analyse all operations in the document.
+     */
+    public String getOperationName() {
+        return operationName;
+    }
+
+    /**
+     * Returns why the request could not be read or {@code null} if it was read.
+     */
+    public String getError() {
+        return error;
+    }
+}
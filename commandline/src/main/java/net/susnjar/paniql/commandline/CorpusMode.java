@@ -0,0 +1,273 @@
+package net.susnjar.paniql.commandline;
+
+import graphql.language.Document;
+import graphql.parser.Parser;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.FetchPlan;
+import net.susnjar.paniql.analytics.InvoiceHistogram;
+import net.susnjar.paniql.analytics.NPlusOneHotspot;
+import net.susnjar.paniql.analytics.NPlusOneReport;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.InvoiceJsonWriter;
+import net.susnjar.paniql.pricing.WorkType;
+import net.susnjar.paniql.print.InvoicePrinter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Analyses a whole {@link CorpusSource corpus} of requests in parallel against
+ * one {@link Environment}, streaming one result per request in input order and
+ * ending with percentile summaries of the resource quantities.
+ *
+ * <p>Results are rendered by the worker threads, each with its own printer;
+ * the calling thread only reads input and writes rendered results. At most
+ * a few results per thread are held in memory at any time.</p>
+ *
+ * <p>With {@code --hotspots <count>} every request is also
+ * {@linkplain Environment#plan(Document, String) planned} and the summary
+ * ends with the fields causing the most N+1 remote calls.</p>
+ */
+public class CorpusMode {
+    public static final String OPTION = "--corpus";
+
+    public enum Format {
+        JSON,
+        CSV,
+        TSV
+    }
+
+    public static final String USAGE = OPTION + " <path-to-schema-file> <directory|glob|file.ndjson> [--format json|csv|tsv] [--threads <count>] [--hotspots <count>]";
+    private static final double[] SUMMARY_PERCENTILES = { 50.0d, 95.0d, 99.0d, 100.0d };
+
+    private final Environment environment;
+    private final Format format;
+    private final int threads;
+    private final InvoiceHistogram histogram;
+    private NPlusOneReport hotspots = null;
+    private int hotspotLimit = 0;
+    private final AtomicLong failures = new AtomicLong();
+    private final ThreadLocal<InvoicePrinter> printers;
+    private final ThreadLocal<InvoiceJsonWriter> jsonWriters = ThreadLocal.withInitial(InvoiceJsonWriter::new);
+
+    public CorpusMode(final Environment environment, final Format format, final int threads) {
+        if (threads < 1) throw new IllegalArgumentException("At least one thread is required.");
+        this.environment = environment;
+        this.format = format;
+        this.threads = threads;
+        this.histogram = new InvoiceHistogram(environment);
+        this.printers = ThreadLocal.withInitial(() -> {
+            final InvoicePrinter printer = new InvoicePrinter();
+            printer.setFormat((format == Format.TSV) ? InvoicePrinter.Format.TSV : InvoicePrinter.Format.CSV);
+            return printer;
+        });
+    }
+
+    public static void main(final String... args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: " + USAGE);
+            return;
+        }
+
+        Format format = Format.JSON;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hotspots = 0;
+        for (int i = 2; i < args.length; i++) {
+            final String option = args[i];
+            try {
+                if ("--format".equals(option) && (i + 1 < args.length)) {
+                    format = Format.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                } else if ("--threads".equals(option) && (i + 1 < args.length)) {
+                    threads = parseCount(args[++i], 1);
+                } else if ("--hotspots".equals(option) && (i + 1 < args.length)) {
+                    hotspots = parseCount(args[++i], 0);
+                } else {
+                    System.err.println("Unrecognized option: " + option);
+                    System.err.println("Usage: " + USAGE);
+                    return;
+                }
+            } catch (IllegalArgumentException x) {
+                System.err.println("Unrecognized value of " + option + ": " + args[i]);
+                System.err.println("Usage: " + USAGE);
+                return;
+            }
+        }
+
+        final CorpusMode corpus = new CorpusMode(new Environment(Path.of(args[0])), format, threads);
+        if (hotspots > 0) corpus.enableHotspots(hotspots);
+        final Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 65536);
+        corpus.analyze(CorpusSource.of(args[1]), out);
+        out.flush();
+        corpus.printSummary(System.err);
+    }
+
+    /**
+     * @throws NumberFormatException if the value is not an integer of at least the minimum.
+     */
+    private static int parseCount(final String value, final int minimum) {
+        final int count = Integer.parseInt(value);
+        if (count < minimum) throw new NumberFormatException("Less than " + minimum + ": " + value);
+        return count;
+    }
+
+    /**
+     * Plans every request and reports up to the given number of N+1 hotspots in the summary.
+     */
+    public void enableHotspots(final int limit) {
+        this.hotspots = new NPlusOneReport(environment);
+        this.hotspotLimit = limit;
+    }
+
+    public NPlusOneReport getHotspots() {
+        return hotspots;
+    }
+
+    public InvoiceHistogram getHistogram() {
+        return histogram;
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public void analyze(final CorpusSource source, final Appendable out) throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "paniql-corpus");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            if (format != Format.JSON) {
+                printers.get().printDelimitedHeader(out, true);
+            }
+
+            final int window = threads * 4;
+            final ArrayDeque<Future<String>> pending = new ArrayDeque<>(window);
+            source.forEach(entry -> {
+                if (pending.size() >= window) {
+                    out.append(await(pending.removeFirst()));
+                }
+                pending.addLast(executor.submit(() -> analyze(entry)));
+            });
+            while (!pending.isEmpty()) {
+                out.append(await(pending.removeFirst()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String analyze(final CorpusEntry entry) throws IOException {
+        if (entry.getError() != null) {
+            failures.incrementAndGet();
+            return renderFailure(entry, entry.getError());
+        }
+
+        final Invoice invoice;
+        try {
+            final Document document = new Parser().parseDocument(entry.getQuery());
+            if (hotspots == null) {
+                invoice = environment.invoice(document, entry.getOperationName());
+            } else {
+                final FetchPlan plan = environment.plan(document, entry.getOperationName());
+                hotspots.record(entry.getId(), plan);
+                invoice = plan.getInvoice();
+            }
+        } catch (RuntimeException x) {
+            failures.incrementAndGet();
+            return renderFailure(entry, (x.getMessage() == null) ? x.getClass().getSimpleName() : x.getMessage());
+        }
+
+        histogram.record(invoice);
+
+        final StringBuilder result = new StringBuilder(1024);
+        if (format == Format.JSON) {
+            result.append("{\"request\":");
+            InvoiceJsonWriter.writeString(result, entry.getId());
+            result.append(",\"invoice\":");
+            result.append(jsonWriters.get().toJson(invoice));
+            result.append('}').append(System.lineSeparator());
+        } else {
+            printers.get().printDelimitedRows(invoice, entry.getId(), result);
+        }
+        return result.toString();
+    }
+
+    private String renderFailure(final CorpusEntry entry, final String message) throws IOException {
+        if (format != Format.JSON) {
+            System.err.println(entry.getId() + ": " + message);
+            return "";
+        }
+        final StringBuilder result = new StringBuilder(128);
+        result.append("{\"request\":");
+        InvoiceJsonWriter.writeString(result, entry.getId());
+        result.append(",\"error\":");
+        InvoiceJsonWriter.writeString(result, message);
+        result.append('}').append(System.lineSeparator());
+        return result.toString();
+    }
+
+    /**
+     * Prints, for every type with any recorded quantity, the percentiles of its per-request maximums.
+     */
+    public void printSummary(final PrintStream out) {
+        out.println("Requests: " + histogram.getRequestCount() + ", failed: " + failures.get());
+        out.println(String.format(Locale.ROOT, "%-30s %-8s %14s %14s %14s %14s", "Type", "Work", "p50", "p95", "p99", "max"));
+        for (int id = 0; id < environment.getModelCount(); id++) {
+            final ElementModel<?> model = environment.getModel(id);
+            if (!(model instanceof OutputTypeModel)) continue;
+            for (final WorkType workType: WorkType.values()) {
+                if (histogram.getNonZeroCount(model, workType, Bound.MAXIMUM) == 0) continue;
+                final StringBuilder line = new StringBuilder(String.format(Locale.ROOT, "%-30s %-8s", model.getFullyQualifiedName(), workType.getId()));
+                for (final double percentile: SUMMARY_PERCENTILES) {
+                    line.append(String.format(Locale.ROOT, " %14.0f", histogram.getValueAtPercentile(model, workType, Bound.MAXIMUM, percentile)));
+                }
+                out.println(line);
+            }
+        }
+
+        if (hotspots != null) {
+            out.println();
+            out.println("N+1 hotspots:");
+            out.println(String.format(Locale.ROOT, "%-30s %10s %14s %14s %10s  %s", "Field", "Selections", "Avg calls", "p95 calls", "p95 batch", "Examples"));
+            for (final NPlusOneHotspot hotspot: hotspots.getHotspots(hotspotLimit)) {
+                out.println(String.format(
+                        Locale.ROOT,
+                        "%-30s %10d %14.0f %14.0f %10.0f  %s",
+                        hotspot.getField().getFullyQualifiedName(),
+                        hotspot.getOccurrences(),
+                        hotspot.getAverageCalls(),
+                        hotspot.getPercentile95Calls(),
+                        hotspot.getMaximumBatch(),
+                        String.join(", ", hotspot.getExamples())
+                ));
+            }
+        }
+    }
+
+    private static String await(final Future<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while analysing the corpus.", x);
+        } catch (ExecutionException x) {
+            throw new IOException("Unexpected failure while analysing the corpus.", x.getCause());
+        }
+    }
+}
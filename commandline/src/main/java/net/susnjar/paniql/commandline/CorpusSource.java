@@ -0,0 +1,170 @@
+package net.susnjar.paniql.commandline;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Requests to analyse in corpus mode: every {@code .graphql} file under a
+ * directory, the files matching a glob, a single request file or an NDJSON
+ * file with one {@code {"query": ..., "operationName": ...}} object per line.
+ * Large files are read through memory mapping.
+ */
+public abstract class CorpusSource {
+    /**
+     * Files at least this large are memory-mapped rather than read onto the heap.
+     */
+    static final long MAPPED_THRESHOLD = 64 * 1024;
+
+    /**
+     * Largest region mapped at once, NDJSON lines must be shorter than this.
+     */
+    static final long MAP_CHUNK = 256L * 1024 * 1024;
+
+    public interface EntryConsumer {
+        void accept(CorpusEntry entry) throws IOException;
+    }
+
+    public abstract void forEach(EntryConsumer consumer) throws IOException;
+
+    public static CorpusSource of(final String location) throws IOException {
+        if (isGlob(location)) {
+            final int separator = globBaseEnd(location);
+            final Path base = Path.of((separator < 0) ? "." : (separator == 0) ? "/" : location.substring(0, separator));
+            final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + location.substring(separator + 1));
+            return new FilesSource(base, p -> matcher.matches(base.relativize(p)));
+        }
+
+        final Path path = Path.of(location);
+        if (Files.isDirectory(path)) return new FilesSource(path, p -> isRequestFile(p));
+        if (!Files.isRegularFile(path)) throw new IOException("No such file or directory: " + location);
+
+        final String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) return new NdjsonSource(path);
+        return new FilesSource(path.toAbsolutePath().getParent(), p -> p.equals(path.toAbsolutePath()));
+    }
+
+    private static boolean isGlob(final String location) {
+        for (final char c: "*?[{".toCharArray()) {
+            if (location.indexOf(c) >= 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of the last path separator before the first glob character, or -1.
+     */
+    private static int globBaseEnd(final String glob) {
+        int end = glob.length();
+        for (final char c: "*?[{".toCharArray()) {
+            final int index = glob.indexOf(c);
+            if (index >= 0) end = Math.min(end, index);
+        }
+        return Math.max(glob.lastIndexOf('/', end), glob.lastIndexOf('\\', end));
+    }
+
+    private static boolean isRequestFile(final Path path) {
+        final String name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".graphql") || name.endsWith(".gql");
+    }
+
+    static String readText(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < MAPPED_THRESHOLD) return Files.readString(path, StandardCharsets.UTF_8);
+            if (size > Integer.MAX_VALUE) throw new IOException("Request file too large: " + path);
+            return StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size)).toString();
+        }
+    }
+
+    private static class FilesSource extends CorpusSource {
+        private final Path base;
+        private final PathMatcher matcher;
+
+        private FilesSource(final Path base, final PathMatcher matcher) {
+            this.base = base;
+            this.matcher = matcher;
+        }
+
+        @Override
+        public void forEach(final EntryConsumer consumer) throws IOException {
+            final List<Path> paths;
+            try (final Stream<Path> walk = Files.walk(base)) {
+                paths = walk.filter(Files::isRegularFile).filter(matcher::matches).sorted().collect(Collectors.toList());
+            }
+            for (final Path path: paths) {
+                consumer.accept(new CorpusEntry(base.relativize(path).toString(), readText(path), null));
+            }
+        }
+    }
+
+    private static class NdjsonSource extends CorpusSource {
+        private final Path path;
+
+        private NdjsonSource(final Path path) {
+            this.path = path;
+        }
+
+        @Override
+        public void forEach(final EntryConsumer consumer) throws IOException {
+            try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                final long size = channel.size();
+                long position = 0;
+                long lineNumber = 0;
+                while (position < size) {
+                    final long length = Math.min(MAP_CHUNK, size - position);
+                    final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    int end = (int) length;
+                    if (position + length < size) {
+                        while ((end > 0) && (buffer.get(end - 1) != '\n')) {
+                            end--;
+                        }
+                        if (end == 0) throw new IOException("Line " + (lineNumber + 1) + " is too long.");
+                    }
+
+                    int start = 0;
+                    for (int i = 0; i <= end; i++) {
+                        if ((i < end) && (buffer.get(i) != '\n')) continue;
+                        if (i > start) {
+                            lineNumber++;
+                            accept(consumer, decode(buffer, start, i), lineNumber);
+                        } else if (i < end) {
+                            lineNumber++;
+                        }
+                        start = i + 1;
+                    }
+                    position += end;
+                }
+            }
+        }
+
+        private void accept(final EntryConsumer consumer, final String line, final long lineNumber) throws IOException {
+            if (line.isBlank()) return;
+            final String id = String.valueOf(lineNumber);
+            CorpusEntry entry;
+            try {
+                entry = JsonLineParser.parse(line, id);
+            } catch (IllegalArgumentException x) {
+                entry = CorpusEntry.malformed(id, path + ":" + lineNumber + ": " + x.getMessage());
+            }
+            consumer.accept(entry);
+        }
+
+        private static String decode(final MappedByteBuffer buffer, final int start, final int end) {
+            final ByteBuffer line = buffer.duplicate();
+            line.position(start);
+            line.limit(((end > start) && (buffer.get(end - 1) == '\r')) ? end - 1 : end);
+            return StandardCharsets.UTF_8.decode(line).toString();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package net.susnjar.paniql.commandline;
+
+/**
+ * Reads the {@code id}, {@code query} and {@code operationName} members of a
+ * single-line JSON object as logged by GraphQL servers, skipping all others
+ * such as {@code variables}. Only as much of JSON is supported as needed.
+ */
+final class JsonLineParser {
+    private final String text;
+    private int position = 0;
+
+    private JsonLineParser(final String text) {
+        this.text = text;
+    }
+
+    static CorpusEntry parse(final String line, final String defaultId) {
+        return new JsonLineParser(line).parseEntry(defaultId);
+    }
+
+    private CorpusEntry parseEntry(final String defaultId) {
+        String id = defaultId;
+        String query = null;
+        String operationName = null;
+
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                final String name = parseString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if ("query".equals(name)) {
+                    query = parseStringOrNull();
+                } else if ("operationName".equals(name)) {
+                    operationName = parseStringOrNull();
+                } else if ("id".equals(name) && (peek() == '"')) {
+                    id = parseString();
+                } else {
+                    skipValue();
+                }
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect('}');
+                    break;
+                }
+            }
+        }
+        skipWhitespace();
+        if (position != text.length()) throw error("Unexpected content after the object");
+        if (query == null) throw error("Missing \"query\"");
+        return new CorpusEntry(id, query, operationName);
+    }
+
+    private String parseStringOrNull() {
+        if (text.startsWith("null", position)) {
+            position += 4;
+            return null;
+        }
+        return parseString();
+    }
+
+    private String parseString() {
+        expect('"');
+        final StringBuilder value = new StringBuilder();
+        while (true) {
+            final char c = next();
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            final char escaped = next();
+            switch (escaped) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (position + 4 > text.length()) throw error("Truncated unicode escape");
+                    try {
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException x) {
+                        throw error("Invalid unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    value.append(escaped);
+            }
+        }
+    }
+
+    private void skipValue() {
+        final char c = peek();
+        if (c == '"') {
+            parseString();
+        } else if ((c == '{') || (c == '[')) {
+            int depth = 0;
+            do {
+                final char d = peek();
+                if (d == '"') {
+                    parseString();
+                    continue;
+                }
+                position++;
+                if ((d == '{') || (d == '[')) depth++;
+                if ((d == '}') || (d == ']')) depth--;
+            } while (depth > 0);
+        } else {
+            while ((position < text.length()) && (",}] \t\r\n".indexOf(text.charAt(position)) < 0)) {
+                position++;
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while ((position < text.length()) && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private void expect(final char expected) {
+        if (next() != expected) throw error("Expected '" + expected + "'");
+    }
+
+    private char peek() {
+        if (position >= text.length()) throw error("Unexpected end of line");
+        return text.charAt(position);
+    }
+
+    private char next() {
+        final char c = peek();
+        position++;
+        return c;
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(message + " at column " + (position + 1) + ".");
+    }
+}
@@ -16,6 +16,7 @@ import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 
 public class Paniql implements Runnable {
     private final Path schemaPath;
@@ -40,8 +41,17 @@ public class Paniql implements Runnable {
     }
 
     public static void main(final String... args) throws IOException {
-        if (args.length != 2) {
+        if ((args.length > 0) && CorpusMode.OPTION.equals(args[0])) {
+            CorpusMode.main(Arrays.copyOfRange(args, 1, args.length));
+        } else if ((args.length > 0) && WatchSession.WATCH_OPTION.equals(args[0])) {
+            WatchSession.main(false, Arrays.copyOfRange(args, 1, args.length));
+        } else if ((args.length > 0) && WatchSession.REPL_OPTION.equals(args[0])) {
+            WatchSession.main(true, Arrays.copyOfRange(args, 1, args.length));
+        } else if (args.length != 2) {
             System.err.println("Usage: <path-to-schema-file> <path-to-request-file>");
+            System.err.println("   or: " + CorpusMode.USAGE);
+            System.err.println("   or: " + WatchSession.WATCH_OPTION + " <path-to-schema-file> <path-to-request-file>...");
+            System.err.println("   or: " + WatchSession.REPL_OPTION + " <path-to-schema-file> [<path-to-request-file>...]");
         } else {
             final Paniql instance = new Paniql(args[0], args[1]);
             instance.run();
@@ -0,0 +1,289 @@
+package net.susnjar.paniql.commandline;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.print.InvoicePrinter;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an {@link Environment} loaded between analyses and watches the schema
+ * and request files for changes: a schema change rebuilds the environment and
+ * re-invoices all requests, a request change re-invoices only that request.
+ *
+ * <p>Used by {@code --watch}, which only reacts to file changes, and by
+ * {@code --repl}, which also invoices requests typed in, each ended by an
+ * empty line, and understands {@code :load <file>}, {@code :reload} and
+ * {@code :quit}.</p>
+ */
+public class WatchSession implements Closeable {
+    public static final String WATCH_OPTION = "--watch";
+    public static final String REPL_OPTION = "--repl";
+
+    /**
+     * How long to wait for more events after the first, as editors often write files in several steps.
+     */
+    private static final long SETTLE_MILLIS = 50;
+
+    private final Path schemaPath;
+    private final PrintStream out;
+    private final InvoicePrinter printer = new InvoicePrinter();
+    private final WatchService watchService;
+    private final Set<Path> watchedDirectories = new HashSet<>();
+    private final LinkedHashSet<Path> requestPaths = new LinkedHashSet<>();
+    private Environment environment;
+
+    /**
+     * @throws IOException or a {@link RuntimeException} describing the problem if the schema cannot be loaded.
+     */
+    public WatchSession(final Path schemaPath, final PrintStream out) throws IOException {
+        this.schemaPath = schemaPath.toAbsolutePath().normalize();
+        this.out = out;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        try {
+            watch(this.schemaPath);
+            loadSchema();
+        } catch (IOException | RuntimeException x) {
+            watchService.close();
+            throw x;
+        }
+    }
+
+    public static void main(final boolean repl, final String... args) throws IOException {
+        if (args.length < (repl ? 1 : 2)) {
+            System.err.println("Usage: " + (repl ? REPL_OPTION + " <path-to-schema-file> [<path-to-request-file>...]" : WATCH_OPTION + " <path-to-schema-file> <path-to-request-file>..."));
+            return;
+        }
+
+        try (final WatchSession session = new WatchSession(Path.of(args[0]), System.out)) {
+            for (final String request: Arrays.asList(args).subList(1, args.length)) {
+                session.addRequest(Path.of(request));
+            }
+            if (repl) {
+                session.repl(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)));
+            } else {
+                session.watch();
+            }
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized Environment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Starts watching the request file and invoices it.
+     */
+    public synchronized void addRequest(final Path requestPath) throws IOException {
+        final Path path = requestPath.toAbsolutePath().normalize();
+        watch(path);
+        requestPaths.add(path);
+        invoice(path);
+    }
+
+    /**
+     * Rebuilds the environment from the schema file, keeping the previous one if the schema is invalid.
+     *
+     * @return whether the environment was rebuilt.
+     */
+    public synchronized boolean reloadSchema() {
+        try {
+            loadSchema();
+        } catch (IOException | RuntimeException x) {
+            out.println("Schema " + schemaPath + " not loaded: " + x.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized void loadSchema() throws IOException {
+        final long start = System.nanoTime();
+        environment = new Environment(schemaPath);
+        out.println("Schema " + schemaPath + " loaded in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms.");
+    }
+
+    /**
+     * Waits for changes and reacts to them until interrupted.
+     */
+    public void watch() throws InterruptedException {
+        while (true) {
+            processChanges(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Waits up to the timeout for file changes and reacts to them.
+     *
+     * @return number of changed files that were reacted to.
+     */
+    public int processChanges(final long timeoutMillis) throws InterruptedException {
+        final WatchKey first = watchService.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (first == null) return 0;
+
+        final Set<Path> changed = new LinkedHashSet<>();
+        collect(first, changed);
+        for (WatchKey key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS); key != null; key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) {
+            collect(key, changed);
+        }
+
+        synchronized (this) {
+            if (changed.contains(schemaPath)) {
+                if (reloadSchema()) {
+                    invoiceAll();
+                }
+                return 1 + (int) changed.stream().filter(requestPaths::contains).count();
+            }
+
+            int reacted = 0;
+            for (final Path path: changed) {
+                if (requestPaths.contains(path)) {
+                    invoice(path);
+                    reacted++;
+                }
+            }
+            return reacted;
+        }
+    }
+
+    /**
+     * Reads commands and requests until {@code :quit} or the end of input, reacting to file changes in the background.
+     */
+    public void repl(final BufferedReader in) throws IOException, InterruptedException {
+        final Thread watcher = new Thread(() -> {
+            try {
+                watch();
+            } catch (InterruptedException x) {
+                // Session is ending.
+            }
+        }, "paniql-watch");
+        watcher.setDaemon(true);
+        watcher.start();
+
+        try {
+            final StringBuilder request = new StringBuilder();
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                final String trimmed = line.trim();
+                if ((request.length() == 0) && trimmed.startsWith(":")) {
+                    if (!command(trimmed)) break;
+                } else if (trimmed.isEmpty()) {
+                    if (request.length() > 0) {
+                        invoice("(input)", request.toString());
+                        request.setLength(0);
+                    }
+                } else {
+                    request.append(line).append(System.lineSeparator());
+                }
+            }
+            if (request.length() > 0) {
+                invoice("(input)", request.toString());
+            }
+        } finally {
+            watcher.interrupt();
+            watcher.join();
+        }
+    }
+
+    private boolean command(final String command) {
+        if (":quit".equals(command) || ":q".equals(command)) {
+            return false;
+        } else if (":reload".equals(command)) {
+            synchronized (this) {
+                if (reloadSchema()) invoiceAll();
+            }
+        } else if (command.startsWith(":load ")) {
+            final String request = command.substring(":load ".length()).trim();
+            try {
+                addRequest(Path.of(request));
+            } catch (IOException | InvalidPathException x) {
+                synchronized (this) {
+                    out.println("Request " + request + " not loaded: " + x);
+                }
+            }
+        } else {
+            synchronized (this) {
+                out.println("Unrecognized command: " + command + " (try :load <file>, :reload or :quit)");
+            }
+        }
+        return true;
+    }
+
+    private void invoiceAll() {
+        for (final Path path: requestPaths) {
+            invoice(path);
+        }
+    }
+
+    private synchronized void invoice(final Path path) {
+        final String request;
+        try {
+            request = CorpusSource.readText(path);
+        } catch (IOException x) {
+            out.println("=== " + path + ": not readable: " + x.getMessage());
+            return;
+        }
+        invoice(path.toString(), request);
+    }
+
+    private synchronized void invoice(final String name, final String request) {
+        final long start = System.nanoTime();
+        final Invoice invoice;
+        try {
+            invoice = environment.invoice(request);
+        } catch (RuntimeException x) {
+            out.println("=== " + name + ": " + x.getMessage());
+            return;
+        }
+        out.println("=== " + name + " (" + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) + " us)");
+        printer.println(invoice, out);
+        out.flush();
+    }
+
+    private void collect(final WatchKey key, final Set<Path> changed) {
+        final Path directory = (Path) key.watchable();
+        for (final WatchEvent<?> event: key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, assume everything changed.
+                changed.add(schemaPath);
+                continue;
+            }
+            changed.add(directory.resolve((Path) event.context()).normalize());
+        }
+        key.reset();
+    }
+
+    private synchronized void watch(final Path file) throws IOException {
+        final Path directory = file.getParent();
+        if (!watchedDirectories.contains(directory)) {
+            directory.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY
+            );
+            watchedDirectories.add(directory);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
@@ -0,0 +1,121 @@
+package net.susnjar.paniql.commandline;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class CorpusModeTest {
+    private static final String FOLDER_ONLY = "{ top { sub { folder(id: 1) { id } } } }";
+
+    @Test
+    void analysesDirectoriesAndGlobsInOrder() throws IOException {
+        final Path dir = Files.createTempDirectory("corpus");
+        try {
+            Files.createDirectories(dir.resolve("nested"));
+            Files.writeString(dir.resolve("a.graphql"), TestSchema.FOLDER_FILES, StandardCharsets.UTF_8);
+            Files.writeString(dir.resolve("nested/b.graphql"), FOLDER_ONLY, StandardCharsets.UTF_8);
+            Files.writeString(dir.resolve("c.graphql"), "{ broken", StandardCharsets.UTF_8);
+            Files.writeString(dir.resolve("ignored.txt"), FOLDER_ONLY, StandardCharsets.UTF_8);
+
+            final CorpusMode corpus = new CorpusMode(TestSchema.createEnvironment(), CorpusMode.Format.JSON, 2);
+            corpus.enableHotspots(5);
+            final StringBuilder out = new StringBuilder();
+            corpus.analyze(CorpusSource.of(dir.toString()), out);
+
+            final String[] lines = out.toString().split(System.lineSeparator());
+            Assertions.assertEquals(3, lines.length);
+            Assertions.assertTrue(lines[0].startsWith("{\"request\":\"a.graphql\",\"invoice\":{\"resources\":"));
+            Assertions.assertTrue(lines[1].startsWith("{\"request\":\"c.graphql\",\"error\":"));
+            Assertions.assertTrue(lines[2].startsWith("{\"request\":\"nested" + dir.getFileSystem().getSeparator()));
+            Assertions.assertEquals(1, corpus.getFailureCount());
+            Assertions.assertEquals(2, corpus.getHistogram().getRequestCount());
+            Assertions.assertEquals(1, corpus.getHotspots().getHotspots().size());
+            Assertions.assertEquals(List.of("a.graphql"), corpus.getHotspots().getHotspots().get(0).getExamples());
+
+            final StringBuilder globbed = new StringBuilder();
+            new CorpusMode(TestSchema.createEnvironment(), CorpusMode.Format.CSV, 1).analyze(CorpusSource.of(dir + "/*.graphql"), globbed);
+            Assertions.assertTrue(globbed.toString().startsWith("request,section,name,bound,"));
+            Assertions.assertTrue(globbed.toString().contains(System.lineSeparator() + "a.graphql,resource,File,max,"));
+            Assertions.assertFalse(globbed.toString().contains("b.graphql"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void analysesNdjsonWithOperationNames() throws IOException {
+        final Path file = Files.createTempFile("corpus", ".ndjson");
+        try {
+            final String document = "query Files " + TestSchema.FOLDER_FILES + "\\nquery Folder " + FOLDER_ONLY;
+            final StringBuilder ndjson = new StringBuilder();
+            for (int i = 0; i < 50; i++) {
+                ndjson.append("{\"query\":\"").append(document).append("\",\"operationName\":\"Files\",\"variables\":{\"a\":[1,{\"b\":\"}\"}]}}\n");
+                ndjson.append("{\"id\":\"folder-").append(i).append("\",\"query\":\"").append(document).append("\",\"operationName\":\"Folder\"}\r\n");
+            }
+            ndjson.append("\n{\"query\":\"").append(document).append("\",\"operationName\":\"Missing\"}\n");
+            ndjson.append("{\"query\": not json}");
+            Files.writeString(file, ndjson, StandardCharsets.UTF_8);
+
+            final Environment environment = TestSchema.createEnvironment();
+            final CorpusMode corpus = new CorpusMode(environment, CorpusMode.Format.JSON, 4);
+            final StringBuilder out = new StringBuilder();
+            corpus.analyze(CorpusSource.of(file.toString()), out);
+
+            final String[] lines = out.toString().split(System.lineSeparator());
+            Assertions.assertEquals(102, lines.length);
+            Assertions.assertTrue(lines[0].startsWith("{\"request\":\"1\","));
+            Assertions.assertTrue(lines[1].startsWith("{\"request\":\"folder-0\","));
+            Assertions.assertTrue(lines[100].startsWith("{\"request\":\"102\",\"error\":\"Unknown operation: Missing\""));
+            Assertions.assertTrue(lines[101].startsWith("{\"request\":\"103\",\"error\":"));
+            Assertions.assertEquals(2, corpus.getFailureCount());
+            Assertions.assertTrue(lines[0].contains("\"File.fromREST\""));
+            Assertions.assertFalse(lines[1].contains("\"File"));
+
+            Assertions.assertEquals(100, corpus.getHistogram().getRequestCount());
+            Assertions.assertEquals(50, corpus.getHistogram().getNonZeroCount(environment.getOutputType("File"), WorkType.INSTANCE_ACCESS, Bound.MAXIMUM));
+            corpus.printSummary(System.out);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void printsUsageForInvalidOptionValues() throws IOException {
+        final PrintStream originalErr = System.err;
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(buffer, true, StandardCharsets.UTF_8));
+        try {
+            CorpusMode.main("schema.graphqls", "corpus", "--format", "xml");
+            CorpusMode.main("schema.graphqls", "corpus", "--threads", "x");
+            CorpusMode.main("schema.graphqls", "corpus", "--threads", "0");
+            CorpusMode.main("schema.graphqls", "corpus", "--hotspots", "-1");
+        } finally {
+            System.setErr(originalErr);
+        }
+        final String output = buffer.toString(StandardCharsets.UTF_8);
+        Assertions.assertTrue(output.contains("Unrecognized value of --format: xml"));
+        Assertions.assertTrue(output.contains("Unrecognized value of --threads: x"));
+        Assertions.assertTrue(output.contains("Unrecognized value of --threads: 0"));
+        Assertions.assertTrue(output.contains("Unrecognized value of --hotspots: -1"));
+        Assertions.assertEquals(4, output.split("Usage: ", -1).length - 1);
+    }
+
+    private static void delete(final Path dir) throws IOException {
+        try (final Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package net.susnjar.paniql.commandline;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class WatchSessionTest {
+    private static final String FOLDER_FILES = "{ top { sub { folder(id: 1) { files { id name } } } } }";
+    private static final String FOLDER_ONLY = "{ top { sub { folder(id: 1) { id } } } }";
+
+    @Test
+    void reinvoicesOnlyWhatChanged() throws Exception {
+        final Path dir = Files.createTempDirectory("watch");
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        try {
+            final Path schema = dir.resolve("schema.graphqls");
+            final Path files = dir.resolve("files.graphql");
+            final Path folder = dir.resolve("folder.graphql");
+            Files.writeString(schema, testSchema(), StandardCharsets.UTF_8);
+            Files.writeString(files, FOLDER_FILES, StandardCharsets.UTF_8);
+            Files.writeString(folder, FOLDER_ONLY, StandardCharsets.UTF_8);
+
+            try (final WatchSession session = new WatchSession(schema, out)) {
+                session.addRequest(files);
+                session.addRequest(folder);
+                final Environment original = session.getEnvironment();
+                Assertions.assertEquals(2, count(buffer, "=== "));
+
+                buffer.reset();
+                Files.writeString(folder, FOLDER_ONLY + " ", StandardCharsets.UTF_8);
+                Assertions.assertEquals(1, awaitChanges(session));
+                Assertions.assertEquals(1, count(buffer, "=== "));
+                Assertions.assertTrue(buffer.toString(StandardCharsets.UTF_8).contains(folder.toString()));
+                Assertions.assertSame(original, session.getEnvironment());
+
+                buffer.reset();
+                Files.writeString(schema, testSchema() + System.lineSeparator(), StandardCharsets.UTF_8);
+                awaitChanges(session);
+                Assertions.assertNotSame(original, session.getEnvironment());
+                Assertions.assertEquals(2, count(buffer, "=== "));
+
+                buffer.reset();
+                Files.writeString(schema, "type Broken {", StandardCharsets.UTF_8);
+                final Environment rebuilt = session.getEnvironment();
+                awaitChanges(session);
+                Assertions.assertSame(rebuilt, session.getEnvironment());
+                Assertions.assertTrue(buffer.toString(StandardCharsets.UTF_8).contains("not loaded"));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void invoicesTypedRequests() throws Exception {
+        final Path dir = Files.createTempDirectory("repl");
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        try {
+            final Path schema = dir.resolve("schema.graphqls");
+            final Path folder = dir.resolve("folder.graphql");
+            Files.writeString(schema, testSchema(), StandardCharsets.UTF_8);
+            Files.writeString(folder, FOLDER_ONLY, StandardCharsets.UTF_8);
+
+            final Path missing = dir.resolve("missing").resolve("request.graphql");
+            final String input = FOLDER_FILES + "\n\n:load " + missing + "\n:load " + folder + "\n:bogus\n:quit\n" + FOLDER_ONLY + "\n";
+            try (final WatchSession session = new WatchSession(schema, out)) {
+                session.repl(new BufferedReader(new StringReader(input)));
+            }
+
+            final String output = buffer.toString(StandardCharsets.UTF_8);
+            Assertions.assertEquals(2, count(buffer, "=== "));
+            Assertions.assertTrue(output.contains("=== (input)"));
+            Assertions.assertTrue(output.contains("Unrecognized command: :bogus"));
+            Assertions.assertTrue(output.contains("Request " + missing + " not loaded"));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    void refusesInvalidInitialSchema() throws Exception {
+        final Path dir = Files.createTempDirectory("watch");
+        final PrintStream out = new PrintStream(new ByteArrayOutputStream(), true, StandardCharsets.UTF_8);
+        try {
+            final Path schema = dir.resolve("schema.graphqls");
+            Files.writeString(schema, "type Broken {", StandardCharsets.UTF_8);
+            Assertions.assertThrows(RuntimeException.class, () -> new WatchSession(schema, out));
+            Assertions.assertThrows(IOException.class, () -> new WatchSession(dir.resolve("missing.graphqls"), out));
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static int awaitChanges(final WatchSession session) throws InterruptedException {
+        int reacted = 0;
+        for (int attempt = 0; (attempt < 100) && (reacted == 0); attempt++) {
+            reacted = session.processChanges(100);
+        }
+        return reacted;
+    }
+
+    private static int count(final ByteArrayOutputStream buffer, final String marker) {
+        final String text = buffer.toString(StandardCharsets.UTF_8);
+        int count = 0;
+        for (int i = text.indexOf(marker); i >= 0; i = text.indexOf(marker, i + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static String testSchema() throws IOException {
+        try (final InputStream stream = Thread.currentThread().getContextClassLoader().getResourceAsStream("net/susnjar/paniql/TestSchema.graphqls")) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void delete(final Path dir) throws IOException {
+        try (final Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
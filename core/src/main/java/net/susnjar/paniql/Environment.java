@@ -12,9 +12,11 @@ import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 /**
@@ -30,6 +32,7 @@ import java.util.stream.Collectors;
  *        <li>{@link #Environment(Path...)}  }</li>
  *        <li>{@link #Environment(Collection)}  }</li>
  *        <li>{@link #Environment(TypeDefinitionRegistry)}  }</li>
+ *        <li>{@link #Environment(PrecompiledSchema)}, generated from the schema at build time</li>
  *     </ul></li>
  *
  *     <li>Reuse that environment to get {@linkplain Invoice invoices} for each
@@ -51,15 +54,26 @@ import java.util.stream.Collectors;
  */
 public class Environment {
     private static final String SCHEMA_SEPARATOR = System.lineSeparator() + System.lineSeparator();
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
 
     private final TypeDefinitionRegistry typeRegistry;
+    private final ModelInterner interner;
 
-    private final HashMap<String, OutputTypeModel> outputTypes = new HashMap<>();
+    // Ordered by name, so every build pass visits types in the same order, which lazy builds repeat.
+    private final TreeMap<String, OutputTypeModel> outputTypes = new TreeMap<>();
+
+    private final ElementModel<?>[] models;
+    private final long modelSignature;
 
     private final ObjectTypeModel queryType;
     private final ObjectTypeModel mutationType;
     private final ObjectTypeModel subscriptionType;
 
+    private final LazyModels lazyModels;
+
+    private volatile SubtreeCache subtreeCache = null;
+
     public Environment(final File... schemaFiles) throws IOException {
         this(Arrays.asList(schemaFiles).stream().map(File::toPath).collect(Collectors.toList()));
     }
@@ -77,22 +91,70 @@ public class Environment {
     }
 
     public Environment(final TypeDefinitionRegistry typeRegistry) {
+        this(typeRegistry, new ModelInterner());
+    }
+
+    /**
+     * Builds the environment sharing equal pricing values and directive parse
+     * results with all other environments built with the same interner.
+     */
+    public Environment(final TypeDefinitionRegistry typeRegistry, final ModelInterner interner) {
+        this(typeRegistry, interner, false);
+    }
+
+    /**
+     * Builds the environment eagerly or, if {@code lazy}, only indexes the
+     * schema and materializes each type with its fields when it is first
+     * looked up or invoiced, see {@link #isLazy()}.
+     */
+    public Environment(final TypeDefinitionRegistry typeRegistry, final ModelInterner interner, final boolean lazy) {
         this.typeRegistry = typeRegistry;
+        this.interner = interner;
+
+        if (lazy) {
+            this.lazyModels = new LazyModels(this, typeRegistry);
+            this.models = lazyModels.getModels();
+            this.modelSignature = lazyModels.getModelSignature();
+            this.queryType = null;
+            this.mutationType = null;
+            this.subscriptionType = null;
+            return;
+        }
+        this.lazyModels = null;
 
         ScalarModel.registerStandardTypes(this);
         registerCustomTypes();
 
         processTypeExtensions();
-        initializeDirectRelations();
-        establishIndirectRelations();
+        resolveModels();
+        this.models = assignModelIds();
+        compactRelations();
+        this.modelSignature = computeModelSignature(this.models);
 
-        discoverFields();
-        relateFields();
-        applyTypeCardinalityDefaults();
-        applyFieldCardinalityDefaults();
-        applyTypePricingDefaults();
-        applyFieldPricingDefaults();
-        processJoins();
+        this.queryType = getOutputType("Query");
+        this.mutationType = getOutputType("Mutation");
+        this.subscriptionType = getOutputType("Subscription");
+    }
+
+    /**
+     * Builds the environment from a fully defaulted description, typically
+     * generated from the schema at build time, without parsing SDL or
+     * interpreting directives. The result invoices and assigns ids exactly
+     * like an environment built from the schema it was generated from.
+     */
+    public Environment(final PrecompiledSchema schema) {
+        this.typeRegistry = null;
+        this.interner = schema.getInterner();
+        this.lazyModels = null;
+
+        for (final PrecompiledSchema.TypeSpec spec: schema.getTypes()) {
+            registerType(createTypeModel(spec));
+        }
+
+        resolveModels();
+        this.models = assignModelIds();
+        compactRelations();
+        this.modelSignature = computeModelSignature(this.models);
 
         this.queryType = getOutputType("Query");
         this.mutationType = getOutputType("Mutation");
@@ -117,35 +179,80 @@ public class Environment {
         return request(document).invoice();
     }
 
+    /**
+     * Invoices only the named operation of the document, e.g. one already parsed and validated by a server.
+     *
+     * @param operationName name of the operation or {@code null} to invoice all operations.
+     */
+    public Invoice invoice(final Document document, final String operationName) {
+        return request(document).invoice(operationName);
+    }
+
+    /**
+     * Derives look-ahead fetch hints for the named operation of the document.
+     *
+     * @param operationName name of the operation or {@code null} to plan all operations.
+     */
+    public FetchPlan plan(final Document document, final String operationName) {
+        return request(document).plan(operationName);
+    }
+
+    public FetchPlan plan(final String document) {
+        return request(document).plan(null);
+    }
+
     private void registerCustomTypes() {
         for (final TypeDefinition typeDef: typeRegistry.getTypes(TypeDefinition.class)) {
-            OutputTypeModel typeModel = null;
-            if (typeDef instanceof InterfaceTypeDefinition) {
-                final InterfaceTypeDefinition actual = (InterfaceTypeDefinition)typeDef;
-                typeModel = new InterfaceModel(this, actual);
-            } else if (typeDef instanceof SDLExtensionDefinition) {
-                // we'll handle this separately and expect to find the type to extend first.
-                continue;
-            } else if (typeDef instanceof EnumTypeDefinition) {
-                final EnumTypeDefinition actual = (EnumTypeDefinition)typeDef;
-                typeModel = new EnumTypeModel(this, actual);
-            } else if (typeDef instanceof ScalarTypeDefinition) {
-                final ScalarTypeDefinition actual = (ScalarTypeDefinition)typeDef;
-                typeModel = new ScalarModel(this, actual);
-            } else if (typeDef instanceof UnionTypeDefinition) {
-                final UnionTypeDefinition actual = (UnionTypeDefinition)typeDef;
-                typeModel = new UnionModel(this, actual);
-            } else if (typeDef instanceof ObjectTypeDefinition) {
-                final ObjectTypeDefinition actual = (ObjectTypeDefinition)typeDef;
-                typeModel = new ObjectTypeModel(this, actual);
-            }
-
+            final OutputTypeModel typeModel = createTypeModel(typeDef);
             if (typeModel != null) {
                 registerType(typeModel);
             }
         }
     }
 
+    /**
+     * Creates the model of the definition or returns {@code null} if it is an extension or not an output type.
+     */
+    OutputTypeModel createTypeModel(final TypeDefinition typeDef) {
+        if (typeDef instanceof InterfaceTypeDefinition) {
+            final InterfaceTypeDefinition actual = (InterfaceTypeDefinition)typeDef;
+            return new InterfaceModel(this, actual);
+        } else if (typeDef instanceof SDLExtensionDefinition) {
+            // we'll handle this separately and expect to find the type to extend first.
+            return null;
+        } else if (typeDef instanceof EnumTypeDefinition) {
+            final EnumTypeDefinition actual = (EnumTypeDefinition)typeDef;
+            return new EnumTypeModel(this, actual);
+        } else if (typeDef instanceof ScalarTypeDefinition) {
+            final ScalarTypeDefinition actual = (ScalarTypeDefinition)typeDef;
+            return new ScalarModel(this, actual);
+        } else if (typeDef instanceof UnionTypeDefinition) {
+            final UnionTypeDefinition actual = (UnionTypeDefinition)typeDef;
+            return new UnionModel(this, actual);
+        } else if (typeDef instanceof ObjectTypeDefinition) {
+            final ObjectTypeDefinition actual = (ObjectTypeDefinition)typeDef;
+            return new ObjectTypeModel(this, actual);
+        }
+        return null;
+    }
+
+    private OutputTypeModel createTypeModel(final PrecompiledSchema.TypeSpec spec) {
+        switch (spec.getKind()) {
+            case SCALAR:
+                return new ScalarModel(this, spec);
+            case ENUM:
+                return new EnumTypeModel(this, spec);
+            case OBJECT:
+                return new ObjectTypeModel(this, spec);
+            case INTERFACE:
+                return new InterfaceModel(this, spec);
+            case UNION:
+                return new UnionModel(this, spec);
+            default:
+                throw new IllegalArgumentException("Unsupported kind of " + spec.getName() + ": " + spec.getKind());
+        }
+    }
+
     public void registerType(final OutputTypeModel typeModel) {
         outputTypes.put(typeModel.getSimpleName(), typeModel);
     }
@@ -176,6 +283,19 @@ public class Environment {
         }
     }
 
+    private void resolveModels() {
+        initializeDirectRelations();
+        establishIndirectRelations();
+
+        discoverFields();
+        relateFields();
+        applyTypeCardinalityDefaults();
+        applyFieldCardinalityDefaults();
+        applyTypePricingDefaults();
+        applyFieldPricingDefaults();
+        processJoins();
+    }
+
     private void initializeDirectRelations() {
         outputTypes.forEach((name, type) -> type.processDirectRelations());
     }
@@ -212,22 +332,150 @@ public class Environment {
         outputTypes.forEach((name, type) -> type.processJoins());
     }
 
+    private ElementModel<?>[] assignModelIds() {
+        final List<ElementModel<?>> models = new ArrayList<>();
+        for (final OutputTypeModel<?, ?> type: outputTypes.values()) {
+            type.assignModelIds(models);
+        }
+        return models.toArray(new ElementModel<?>[0]);
+    }
+
+    private void compactRelations() {
+        outputTypes.forEach((name, type) -> type.compactRelations());
+    }
+
+    private static long computeModelSignature(final ElementModel<?>[] models) {
+        long hash = FNV_OFFSET_BASIS;
+        for (final ElementModel<?> model: models) {
+            hash = hashModelName(hash, model.getFullyQualifiedName());
+        }
+        return hash;
+    }
+
+    static long startModelSignature() {
+        return FNV_OFFSET_BASIS;
+    }
+
+    static long hashModelName(long hash, final String fullyQualifiedName) {
+        for (final byte b: fullyQualifiedName.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return (hash ^ ';') * FNV_PRIME;
+    }
+
+    /**
+     * Returns the number of type and field models, all of which have an {@linkplain ElementModel#getId() id} below it.
+     */
+    public int getModelCount() {
+        return models.length;
+    }
+
+    public ElementModel<?> getModel(final int id) {
+        if (lazyModels != null) return lazyModels.getModel(id);
+        return models[id];
+    }
+
+    /**
+     * Returns the model if it is materialized or {@code null} if it is not yet, which only happens in lazy mode.
+     */
+    public ElementModel<?> findModel(final int id) {
+        if (lazyModels != null) return lazyModels.findModel(id);
+        return models[id];
+    }
+
+    /**
+     * Tells whether models are materialized on first use rather than all at
+     * construction. Results are the same in both modes. In lazy mode a type
+     * is materialized, together with its fields and all types related to it
+     * by interfaces and unions, when it is looked up through this environment
+     * or invoiced; types only referenced by it are materialized just as far as
+     * needed to default it.
+     */
+    public boolean isLazy() {
+        return lazyModels != null;
+    }
+
+    /**
+     * Returns the number of types materialized so far, all of them in eager mode.
+     */
+    public int getMaterializedTypeCount() {
+        return (lazyModels != null) ? lazyModels.getMaterializedTypeCount() : outputTypes.size();
+    }
+
+    /**
+     * Returns a hash of all model names in id order. Environments with equal
+     * signatures assign the same ids, so id-based data can be exchanged between them.
+     */
+    public long getModelSignature() {
+        return modelSignature;
+    }
+
+    /**
+     * Estimates the memory retained by this environment, broken down by category.
+     */
+    public Footprint footprint() {
+        return Footprint.of(this, typeRegistry);
+    }
+
+    public ModelInterner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Returns the Paniql directive definitions parsed on their own, ready to be
+     * {@linkplain TypeDefinitionRegistry#merge(TypeDefinitionRegistry) merged} with separately parsed schema parts.
+     */
+    public static TypeDefinitionRegistry parsePaniqlSchema() {
+        return new SchemaParser().parse(getPaniqlSchema());
+    }
+
+    /**
+     * Shares the invoices of selection subtrees across all requests, or stops doing so if {@code null}.
+     */
+    public void setSubtreeCache(final SubtreeCache subtreeCache) {
+        this.subtreeCache = subtreeCache;
+    }
+
+    public SubtreeCache getSubtreeCache() {
+        return subtreeCache;
+    }
+
     public ObjectTypeModel getQueryType() {
-        return queryType;
+        return (lazyModels != null) ? getOutputType("Query") : queryType;
     }
 
     public ObjectTypeModel getMutationType() {
-        return mutationType;
+        return (lazyModels != null) ? getOutputType("Mutation") : mutationType;
     }
 
     public ObjectTypeModel getSubscriptionType() {
-        return subscriptionType;
+        return (lazyModels != null) ? getOutputType("Subscription") : subscriptionType;
     }
 
+    @SuppressWarnings("unchecked")
     public <T extends OutputTypeModel<?, ?>> T getOutputType(String name) {
+        if (lazyModels != null) return (T) lazyModels.getType(name, LazyModels.COMPLETE);
         return (T)this.outputTypes.get(name);
     }
 
+    /**
+     * Returns the named type while models are being built: its relations and
+     * own defaults are resolved and, if {@code withFields}, its fields exist,
+     * but field defaults and joins may not be resolved yet in lazy mode.
+     */
+    @SuppressWarnings("unchecked")
+    public <T extends OutputTypeModel<?, ?>> T getOutputType(final String name, final boolean withFields) {
+        if (lazyModels != null) return (T) lazyModels.getType(name, withFields ? LazyModels.FIELDS : LazyModels.RELATED);
+        return (T)this.outputTypes.get(name);
+    }
+
+    /**
+     * Materializes the type completely if it is not yet, which only happens in lazy mode.
+     */
+    public void materialize(final OutputTypeModel<?, ?> type) {
+        if (lazyModels != null) lazyModels.materialize(type);
+    }
+
     public static String getPaniqlSchema() {
         try {
             final String packagePath = Environment.class.getPackageName().replaceAll("\\.", "/");
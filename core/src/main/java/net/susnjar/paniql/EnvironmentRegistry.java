@@ -0,0 +1,347 @@
+package net.susnjar.paniql;
+
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import net.susnjar.paniql.models.ModelInterner;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serves the {@link Environment environments} of many tenants and schema
+ * versions, loading each on first use and evicting the least recently used
+ * ones when their total weight exceeds the budget.
+ *
+ * <p>Schemas are given as lists of parts, typically a shared base schema
+ * followed by tenant or version specific additions and extensions. Variants
+ * share as much as possible:</p>
+ *
+ * <ul>
+ *     <li>keys with equal part lists share a single environment,</li>
+ *     <li>each distinct part is parsed once and its definitions, including
+ *         the {@code @paniql} directives, are shared by all environments
+ *         using it,</li>
+ *     <li>all environments share one {@link ModelInterner}, so a directive
+ *         is parsed into bounds and prices once and equal values are held
+ *         once.</li>
+ * </ul>
+ *
+ * <p>Models themselves are not shared, as they hold their environment and
+ * their dense ids. The weight of an environment is its
+ * {@linkplain Environment#getModelCount() model count}, which is what its own
+ * memory use is roughly proportional to.</p>
+ *
+ * <p>Hits are lock-free. A missing key is loaded by the first thread asking
+ * for it while others wait for its result, and keys with equal part lists
+ * wait for a single build. Loading, parsing and building run outside the
+ * registry lock, which only guards the bookkeeping, so slow schema sources
+ * do not hold up other keys.</p>
+ */
+public class EnvironmentRegistry {
+    /**
+     * Supplies the schema parts of a tenant and version, in merge order.
+     */
+    @FunctionalInterface
+    public interface SchemaLoader {
+        List<String> load(String tenant, String version) throws IOException;
+    }
+
+    private static final class Key {
+        private final String tenant;
+        private final String version;
+
+        Key(final String tenant, final String version) {
+            this.tenant = Objects.requireNonNull(tenant);
+            this.version = Objects.requireNonNull(version);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return tenant.equals(other.tenant) && version.equals(other.version);
+        }
+
+        @Override
+        public int hashCode() {
+            return tenant.hashCode() * 31 + version.hashCode();
+        }
+    }
+
+    private static final class Part {
+        private final TypeDefinitionRegistry registry;
+        private int references = 0;
+
+        Part(final TypeDefinitionRegistry registry) {
+            this.registry = registry;
+        }
+    }
+
+    private static final class Shared {
+        private final List<String> sources;
+        private final Environment environment;
+        private final List<Part> parts;
+        private final List<Key> keys = new ArrayList<>();
+        private volatile long lastUsed;
+        private boolean removed = false;
+
+        Shared(final List<String> sources, final Environment environment, final List<Part> parts) {
+            this.sources = sources;
+            this.environment = environment;
+            this.parts = parts;
+        }
+    }
+
+    private final SchemaLoader loader;
+    private final long maxWeight;
+    private final ModelInterner interner = new ModelInterner();
+    private final TypeDefinitionRegistry paniqlSchema = Environment.parsePaniqlSchema();
+
+    private final ConcurrentHashMap<Key, CompletableFuture<Shared>> entries = new ConcurrentHashMap<>();
+    private final Map<List<String>, CompletableFuture<Shared>> environments = new HashMap<>();
+    private final Map<String, Part> parts = new HashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private long weight = 0;
+    private long loadCount = 0;
+    private long buildCount = 0;
+
+    public EnvironmentRegistry(final SchemaLoader loader, final long maxWeight) {
+        if (maxWeight < 1) throw new IllegalArgumentException("Maximum weight must be positive.");
+        this.loader = loader;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Returns the environment of the tenant and version, loading it if it is not held.
+     */
+    public Environment get(final String tenant, final String version) throws IOException {
+        final Key key = new Key(tenant, version);
+        CompletableFuture<Shared> future = entries.get(key);
+        if (future == null) {
+            final CompletableFuture<Shared> loading = new CompletableFuture<>();
+            future = entries.putIfAbsent(key, loading);
+            if (future == null) return load(key, loading);
+        }
+        final Shared shared = await(future);
+        shared.lastUsed = clock.incrementAndGet();
+        return shared.environment;
+    }
+
+    private Environment load(final Key key, final CompletableFuture<Shared> loading) throws IOException {
+        try {
+            final List<String> sources = List.copyOf(loader.load(key.tenant, key.version));
+            synchronized (this) {
+                loadCount++;
+            }
+            final Shared shared = share(sources);
+            synchronized (this) {
+                if (shared.removed || (entries.get(key) != loading)) {
+                    // Evicted or cleared while loading, so it is only returned to this caller.
+                    entries.remove(key, loading);
+                } else {
+                    shared.keys.add(key);
+                }
+                shared.lastUsed = clock.incrementAndGet();
+                evict(shared);
+                loading.complete(shared);
+            }
+            return shared.environment;
+        } catch (final Throwable x) {
+            entries.remove(key, loading);
+            loading.completeExceptionally(x);
+            throw x;
+        }
+    }
+
+    /**
+     * Returns the environment of the sources, building it unless it is already held or being built.
+     */
+    private Shared share(final List<String> sources) throws IOException {
+        final CompletableFuture<Shared> building = new CompletableFuture<>();
+        final CompletableFuture<Shared> present;
+        synchronized (this) {
+            present = environments.putIfAbsent(sources, building);
+        }
+        if (present != null) return await(present);
+
+        try {
+            final Shared shared = build(sources);
+            synchronized (this) {
+                if (environments.get(sources) == building) {
+                    for (int i = 0; i < sources.size(); i++) {
+                        final Part part = shared.parts.get(i);
+                        parts.computeIfAbsent(sources.get(i), source -> part).references++;
+                    }
+                    weight += shared.environment.getModelCount();
+                } else {
+                    shared.removed = true;
+                }
+                buildCount++;
+                building.complete(shared);
+            }
+            return shared;
+        } catch (final Throwable x) {
+            synchronized (this) {
+                environments.remove(sources, building);
+            }
+            building.completeExceptionally(x);
+            throw x;
+        }
+    }
+
+    private Shared build(final List<String> sources) {
+        final List<Part> used = new ArrayList<>(sources.size());
+        final TypeDefinitionRegistry merged = new TypeDefinitionRegistry();
+        merged.merge(paniqlSchema);
+        for (final String source: sources) {
+            Part part;
+            synchronized (this) {
+                part = parts.get(source);
+            }
+            if (part == null) {
+                // Only registered once the build succeeds.
+                part = new Part(new SchemaParser().parse(source));
+            }
+            merged.merge(part.registry);
+            used.add(part);
+        }
+        return new Shared(sources, new Environment(merged, interner), used);
+    }
+
+    private static Shared await(final CompletableFuture<Shared> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException x) {
+            final Throwable cause = x.getCause();
+            if (cause instanceof IOException) throw new IOException(cause.getMessage(), cause);
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw x;
+        }
+    }
+
+    /**
+     * Returns the result of the future if it is already available.
+     */
+    private static Shared completed(final CompletableFuture<Shared> future) {
+        return (future.isDone() && !future.isCompletedExceptionally()) ? future.join() : null;
+    }
+
+    /**
+     * Drops least recently used environments, other than the one just used, until within the budget.
+     */
+    private void evict(final Shared keep) {
+        while (weight > maxWeight) {
+            Shared coldest = null;
+            for (final CompletableFuture<Shared> future: environments.values()) {
+                final Shared candidate = completed(future);
+                if ((candidate != null) && (candidate != keep) && ((coldest == null) || (candidate.lastUsed < coldest.lastUsed))) {
+                    coldest = candidate;
+                }
+            }
+            if (coldest == null) return;
+            remove(coldest);
+        }
+    }
+
+    private void remove(final Shared shared) {
+        shared.removed = true;
+        for (final Key key: shared.keys) {
+            entries.remove(key);
+        }
+        environments.remove(shared.sources);
+        weight -= shared.environment.getModelCount();
+        for (final String source: shared.sources) {
+            final Part part = parts.get(source);
+            if ((part != null) && (--part.references <= 0)) {
+                parts.remove(source);
+            }
+        }
+    }
+
+    /**
+     * Forgets the tenant and version, dropping its environment if no other key shares it.
+     *
+     * @return whether the key was held or being loaded.
+     */
+    public synchronized boolean evict(final String tenant, final String version) {
+        final Key key = new Key(tenant, version);
+        final CompletableFuture<Shared> future = entries.remove(key);
+        if (future == null) return false;
+        // A key still loading notices the removal itself.
+        final Shared shared = completed(future);
+        if ((shared != null) && shared.keys.remove(key) && shared.keys.isEmpty()) remove(shared);
+        return true;
+    }
+
+    /**
+     * Drops all environments and the values interned for them.
+     */
+    public synchronized void clear() {
+        for (final CompletableFuture<Shared> future: environments.values()) {
+            final Shared shared = completed(future);
+            if (shared != null) shared.removed = true;
+        }
+        entries.clear();
+        environments.clear();
+        parts.clear();
+        weight = 0;
+        interner.clear();
+    }
+
+    public ModelInterner getInterner() {
+        return interner;
+    }
+
+    /**
+     * Returns the number of tenant and version keys held.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the number of distinct environments held.
+     */
+    public synchronized int getEnvironmentCount() {
+        return environments.size();
+    }
+
+    /**
+     * Returns the number of distinct parsed schema parts held.
+     */
+    public synchronized int getPartCount() {
+        return parts.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public long getMaximumWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Returns how many times schema parts were requested from the loader.
+     */
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * Returns how many environments were built.
+     */
+    public synchronized long getBuildCount() {
+        return buildCount;
+    }
+}
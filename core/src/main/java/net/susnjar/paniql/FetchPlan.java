@@ -0,0 +1,235 @@
+package net.susnjar.paniql;
+
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.InvoiceJsonWriter;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Look-ahead execution hints for a single request, derived from the same
+ * joins and cardinalities its {@link net.susnjar.paniql.pricing.Invoice} is
+ * computed from. Every priced field selection becomes a {@link Step} telling
+ * whether the field is fetched in bulk with its parent, as a local call or as
+ * a remote call made once per parent instance, together with how many parent
+ * instances there are. The latter is the expected batch size for a DataLoader
+ * resolving that field.
+ */
+public class FetchPlan {
+    public enum Strategy {
+        /**
+         * Fetched in bulk together with the parent, e.g. by a join.
+         */
+        JOINED,
+
+        /**
+         * Resolved locally for each parent instance.
+         */
+        LOCAL,
+
+        /**
+         * Resolved by a remote call for each parent instance unless batched.
+         */
+        REMOTE;
+
+        public String getId() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    public static final class Step {
+        private final String path;
+        private final FieldDefModel field;
+        private final Strategy strategy;
+        private final Bounds batchSize;
+        private final Bounds results;
+        private final Bounds remoteCalls;
+
+        Step(final String path, final FieldDefModel field, final Strategy strategy, final Bounds batchSize, final Bounds remoteCalls) {
+            this.path = path;
+            this.field = field;
+            this.strategy = strategy;
+            this.batchSize = batchSize;
+            this.results = field.getCardinality().times(batchSize);
+            this.remoteCalls = remoteCalls;
+        }
+
+        /**
+         * Returns the response keys from the operation root down to this field, separated by dots.
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public FieldDefModel getField() {
+            return field;
+        }
+
+        public Strategy getStrategy() {
+            return strategy;
+        }
+
+        /**
+         * Returns the number of parent instances this field is resolved for.
+         */
+        public Bounds getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Returns the number of values or instances this field yields in total.
+         */
+        public Bounds getResults() {
+            return results;
+        }
+
+        /**
+         * Returns the number of remote calls made if each parent instance is resolved on its own.
+         */
+        public Bounds getRemoteCalls() {
+            return remoteCalls;
+        }
+
+        /**
+         * Tells whether the field is a {@link Strategy#REMOTE remote} one that
+         * yields at most one value per parent and so could be joined instead.
+         */
+        public boolean isJoinCandidate() {
+            return (strategy == Strategy.REMOTE) && field.isJoinable();
+        }
+    }
+
+    private final List<Step> steps;
+    private final Invoice invoice;
+
+    private FetchPlan(final List<Step> steps, final Invoice invoice) {
+        this.steps = Collections.unmodifiableList(steps);
+        this.invoice = invoice;
+    }
+
+    /**
+     * Returns the invoice computed while planning, equal to the one {@link Request#invoice(String)} returns.
+     */
+    public Invoice getInvoice() {
+        return invoice;
+    }
+
+    /**
+     * Returns all priced field selections in the order they were invoiced.
+     */
+    public List<Step> getSteps() {
+        return steps;
+    }
+
+    public List<Step> getSteps(final Strategy strategy) {
+        return steps.stream().filter(s -> s.getStrategy() == strategy).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the fields that will become per-instance remote calls, largest expected batches first.
+     */
+    public List<Step> getRemoteCalls() {
+        final List<Step> remote = new ArrayList<>(getSteps(Strategy.REMOTE));
+        remote.sort((a, b) -> Double.compare(b.getBatchSize().getPercentile95(), a.getBatchSize().getPercentile95()));
+        return remote;
+    }
+
+    /**
+     * Writes the plan as JSON: {@code {"steps":[{"path":...,"field":...,"strategy":...,"batch":{...},"results":{...},"remoteCalls":{...},"joinCandidate":...}]}}
+     * with bounds keyed by {@link Bound} ids.
+     */
+    public void writeJson(final Appendable out) throws IOException {
+        out.append("{\"steps\":[");
+        boolean first = true;
+        for (final Step step: steps) {
+            if (!first) out.append(',');
+            first = false;
+            out.append("{\"path\":");
+            InvoiceJsonWriter.writeString(out, step.getPath());
+            out.append(",\"field\":");
+            InvoiceJsonWriter.writeString(out, step.getField().getFullyQualifiedName());
+            out.append(",\"strategy\":");
+            InvoiceJsonWriter.writeString(out, step.getStrategy().getId());
+            out.append(",\"batch\":");
+            writeBounds(out, step.getBatchSize());
+            out.append(",\"results\":");
+            writeBounds(out, step.getResults());
+            out.append(",\"remoteCalls\":");
+            writeBounds(out, step.getRemoteCalls());
+            out.append(",\"joinCandidate\":").append(Boolean.toString(step.isJoinCandidate()));
+            out.append('}');
+        }
+        out.append("]}");
+    }
+
+    public String toJson() {
+        final StringBuilder out = new StringBuilder(256);
+        try {
+            writeJson(out);
+        } catch (IOException x) {
+            throw new IllegalStateException("StringBuilder does not throw.", x);
+        }
+        return out.toString();
+    }
+
+    private static void writeBounds(final Appendable out, final Bounds bounds) throws IOException {
+        out.append('{');
+        for (final Bound bound: Bound.values()) {
+            if (bound.ordinal() > 0) out.append(',');
+            InvoiceJsonWriter.writeString(out, bound.getId());
+            out.append(':');
+            InvoiceJsonWriter.writeNumber(out, bound.get(bounds));
+        }
+        out.append('}');
+    }
+
+    /**
+     * Collects steps while a request is being invoiced.
+     */
+    static class Builder implements FetchVisitor {
+        private final ArrayDeque<String> path = new ArrayDeque<>();
+        private final List<Step> steps = new ArrayList<>();
+
+        @Override
+        public void enterField(
+                final FieldDefModel field,
+                final String responseKey,
+                final boolean joined,
+                final Bounds parentQuantities,
+                final Price price
+        ) {
+            path.addLast(responseKey);
+            if (price == null) return;
+
+            final Bounds remoteCalls = price.get(WorkType.EFFICIENT_REMOTE_API_CALL).plus(price.get(WorkType.INEFFICIENT_REMOTE_API_CALL));
+            final Strategy strategy;
+            if (joined) {
+                strategy = Strategy.JOINED;
+            } else if (remoteCalls.isAlwaysZero()) {
+                strategy = Strategy.LOCAL;
+            } else {
+                strategy = Strategy.REMOTE;
+            }
+            steps.add(new Step(String.join(".", path), field, strategy, parentQuantities, joined ? Bounds.ALWAYS_0 : remoteCalls));
+        }
+
+        @Override
+        public void exitField() {
+            path.removeLast();
+        }
+
+        FetchPlan build(final Invoice invoice) {
+            return new FetchPlan(steps, invoice);
+        }
+    }
+}
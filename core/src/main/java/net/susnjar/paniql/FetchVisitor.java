@@ -0,0 +1,20 @@
+package net.susnjar.paniql;
+
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Price;
+
+/**
+ * Follows the fields of a {@link Request} as they are invoiced.
+ */
+public interface FetchVisitor {
+    /**
+     * @param responseKey alias, or the field name if there is none.
+     * @param joined whether the field is fetched in bulk together with its parent.
+     * @param parentQuantities number of parent instances the field is fetched for.
+     * @param price what fetching the field costs, {@code null} if it is free.
+     */
+    void enterField(FieldDefModel field, String responseKey, boolean joined, Bounds parentQuantities, Price price);
+
+    void exitField();
+}
@@ -2,6 +2,7 @@ package net.susnjar.paniql;
 
 import net.susnjar.paniql.models.FieldDefModel;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -26,4 +27,8 @@ public class Join {
     public Join getFieldJoin(final FieldDefModel field) {
         return fieldJoins.get(field);
     }
+
+    public Map<FieldDefModel, Join> getFieldJoins() {
+        return Collections.unmodifiableMap(fieldJoins);
+    }
 }
@@ -0,0 +1,350 @@
+package net.susnjar.paniql;
+
+import graphql.language.EnumTypeDefinition;
+import graphql.language.EnumTypeExtensionDefinition;
+import graphql.language.FieldDefinition;
+import graphql.language.ImplementingTypeDefinition;
+import graphql.language.InterfaceTypeDefinition;
+import graphql.language.InterfaceTypeExtensionDefinition;
+import graphql.language.ObjectTypeDefinition;
+import graphql.language.ObjectTypeExtensionDefinition;
+import graphql.language.SDLExtensionDefinition;
+import graphql.language.ScalarTypeDefinition;
+import graphql.language.ScalarTypeExtensionDefinition;
+import graphql.language.Type;
+import graphql.language.TypeDefinition;
+import graphql.language.TypeName;
+import graphql.language.UnionTypeDefinition;
+import graphql.language.UnionTypeExtensionDefinition;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.models.ScalarModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * On-demand materialization of the models of a lazy {@link Environment}.
+ *
+ * <p>Types connected by interfaces or union membership depend on each other
+ * while being defaulted, so they are materialized together as a component,
+ * in the stages of the eager build and, within each stage, in name order,
+ * as the eager build visits them. Ids and the model signature only depend on names,
+ * so they are computed up front from the schema and match the eager ones.</p>
+ *
+ * <p>Reaching a stage is serialized; reading a type whose component already
+ * reached the stage is lock-free.</p>
+ */
+final class LazyModels {
+    static final int NONE = 0;
+    /** Types exist, with their relations and own defaults. */
+    static final int RELATED = 1;
+    /** Fields exist and are related, field ids are assigned. */
+    static final int FIELDS = 2;
+    /** Field defaults and joins are resolved, relations are compacted. */
+    static final int COMPLETE = 3;
+
+    private final Environment environment;
+
+    // Types in name order, the same as their id order.
+    private final String[] names;
+    private final TypeDefinition<?>[] definitions;
+    private final List<List<SDLExtensionDefinition>> extensions;
+    private final Map<String, Integer> indexes;
+    private final int[] firstIds;
+
+    private final int[] components;
+    private final int[][] componentMembers;
+    private final AtomicIntegerArray stages;
+    private final boolean[] building;
+
+    private final OutputTypeModel<?, ?>[] types;
+    private final ElementModel<?>[] models;
+    private final long modelSignature;
+
+    private volatile int materializedTypeCount = 0;
+
+    LazyModels(final Environment environment, final TypeDefinitionRegistry typeRegistry) {
+        this.environment = environment;
+
+        final Set<String> typeNames = new TreeSet<>();
+        final Map<String, TypeDefinition<?>> definitionsByName = new HashMap<>();
+        final Map<String, List<SDLExtensionDefinition>> extensionsByName = new HashMap<>();
+        for (final String name: ScalarModel.STANDARD_TYPE_NAMES) {
+            typeNames.add(name);
+        }
+        for (final TypeDefinition<?> typeDef: typeRegistry.getTypes(TypeDefinition.class)) {
+            // Classified as by the eager build, in which interface definitions are types even though they are also extensions.
+            if (isOutputType(typeDef)) {
+                typeNames.add(typeDef.getName());
+                definitionsByName.put(typeDef.getName(), typeDef);
+            }
+            if (isExtension(typeDef)) {
+                extensionsByName.computeIfAbsent(typeDef.getName(), n -> new ArrayList<>()).add((SDLExtensionDefinition) typeDef);
+            }
+        }
+
+        final int count = typeNames.size();
+        this.names = typeNames.toArray(new String[0]);
+        this.definitions = new TypeDefinition<?>[count];
+        this.extensions = new ArrayList<>(count);
+        this.indexes = new HashMap<>();
+        this.firstIds = new int[count];
+
+        long signature = Environment.startModelSignature();
+        int nextId = 0;
+        for (int i = 0; i < count; i++) {
+            final String name = names[i];
+            indexes.put(name, i);
+            definitions[i] = definitionsByName.get(name);
+            extensions.add(extensionsByName.getOrDefault(name, List.of()));
+            firstIds[i] = nextId++;
+            signature = Environment.hashModelName(signature, name);
+            for (final String fieldName: getFieldNames(definitions[i], extensions.get(i))) {
+                nextId++;
+                signature = Environment.hashModelName(signature, name + "." + fieldName);
+            }
+        }
+        this.modelSignature = signature;
+        this.models = new ElementModel<?>[nextId];
+        this.types = new OutputTypeModel<?, ?>[count];
+
+        this.components = findComponents();
+        // Members are added by ascending index, so each component keeps name order.
+        final Map<Integer, List<Integer>> members = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            members.computeIfAbsent(components[i], c -> new ArrayList<>()).add(i);
+        }
+        this.componentMembers = new int[members.size()][];
+        final Map<Integer, Integer> componentIndexes = new HashMap<>();
+        for (final Map.Entry<Integer, List<Integer>> entry: members.entrySet()) {
+            final int component = componentIndexes.size();
+            componentIndexes.put(entry.getKey(), component);
+            componentMembers[component] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+        }
+        for (int i = 0; i < count; i++) {
+            components[i] = componentIndexes.get(components[i]);
+        }
+        this.stages = new AtomicIntegerArray(componentMembers.length);
+        this.building = new boolean[componentMembers.length];
+    }
+
+    private static boolean isOutputType(final TypeDefinition<?> typeDef) {
+        if (typeDef instanceof InterfaceTypeDefinition) return true;
+        if (typeDef instanceof SDLExtensionDefinition) return false;
+        return (typeDef instanceof ObjectTypeDefinition)
+                || (typeDef instanceof UnionTypeDefinition)
+                || (typeDef instanceof EnumTypeDefinition)
+                || (typeDef instanceof ScalarTypeDefinition);
+    }
+
+    private static boolean isExtension(final TypeDefinition<?> typeDef) {
+        return (typeDef instanceof EnumTypeExtensionDefinition)
+                || (typeDef instanceof ScalarTypeExtensionDefinition)
+                || (typeDef instanceof UnionTypeExtensionDefinition)
+                || (typeDef instanceof ObjectTypeExtensionDefinition)
+                || (typeDef instanceof InterfaceTypeExtensionDefinition);
+    }
+
+    private static Set<String> getFieldNames(final TypeDefinition<?> definition, final List<SDLExtensionDefinition> extensions) {
+        final Set<String> fieldNames = new TreeSet<>();
+        if (definition instanceof ImplementingTypeDefinition) {
+            addFieldNames(fieldNames, ((ImplementingTypeDefinition<?>) definition).getFieldDefinitions());
+            for (final SDLExtensionDefinition extension: extensions) {
+                if ((extension instanceof ObjectTypeExtensionDefinition) || (extension instanceof InterfaceTypeExtensionDefinition)) {
+                    addFieldNames(fieldNames, ((ImplementingTypeDefinition<?>) extension).getFieldDefinitions());
+                }
+            }
+        }
+        return fieldNames;
+    }
+
+    private static void addFieldNames(final Set<String> fieldNames, final List<FieldDefinition> fields) {
+        for (final FieldDefinition field: fields) {
+            fieldNames.add(field.getName());
+        }
+    }
+
+    /**
+     * Groups the types related by interfaces or unions, returning the representative type of each.
+     */
+    private int[] findComponents() {
+        final int[] parents = new int[names.length];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = i;
+        }
+        for (int i = 0; i < names.length; i++) {
+            final List<Object> related = new ArrayList<>();
+            related.add(definitions[i]);
+            related.addAll(extensions.get(i));
+            for (final Object definition: related) {
+                final List<Type> relatedTypes;
+                if (definition instanceof ImplementingTypeDefinition) {
+                    relatedTypes = ((ImplementingTypeDefinition<?>) definition).getImplements();
+                } else if (definition instanceof UnionTypeDefinition) {
+                    relatedTypes = ((UnionTypeDefinition) definition).getMemberTypes();
+                } else {
+                    continue;
+                }
+                for (final Type type: relatedTypes) {
+                    final Integer other = (type instanceof TypeName) ? indexes.get(((TypeName) type).getName()) : null;
+                    if (other != null) {
+                        parents[find(parents, i)] = find(parents, other);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = find(parents, i);
+        }
+        return parents;
+    }
+
+    private static int find(final int[] parents, int index) {
+        while (parents[index] != index) {
+            parents[index] = parents[parents[index]];
+            index = parents[index];
+        }
+        return index;
+    }
+
+    ElementModel<?>[] getModels() {
+        return models;
+    }
+
+    long getModelSignature() {
+        return modelSignature;
+    }
+
+    int getMaterializedTypeCount() {
+        return materializedTypeCount;
+    }
+
+    /**
+     * Returns the named type once its component reached the stage, or {@code null} if there is no such type.
+     * A type of a component being built by the calling thread is returned as it is.
+     */
+    OutputTypeModel<?, ?> getType(final String name, final int stage) {
+        final Integer index = indexes.get(name);
+        if (index == null) return null;
+        final int component = components[index];
+        if (stages.get(component) < stage) {
+            advance(component, stage);
+        }
+        return types[index];
+    }
+
+    void materialize(final OutputTypeModel<?, ?> type) {
+        getType(type.getSimpleName(), COMPLETE);
+    }
+
+    ElementModel<?> getModel(final int id) {
+        if ((id >= 0) && (id < models.length)) {
+            final int component = components[indexOf(id)];
+            if (stages.get(component) < COMPLETE) {
+                advance(component, COMPLETE);
+            }
+        }
+        return models[id];
+    }
+
+    ElementModel<?> findModel(final int id) {
+        return (stages.get(components[indexOf(id)]) == COMPLETE) ? models[id] : null;
+    }
+
+    /**
+     * Returns the index of the type that is or declares the model with the id.
+     */
+    private int indexOf(final int id) {
+        final int found = Arrays.binarySearch(firstIds, id);
+        return (found >= 0) ? found : -found - 2;
+    }
+
+    private synchronized void advance(final int component, final int stage) {
+        if (building[component]) return;
+        building[component] = true;
+        try {
+            for (int next = stages.get(component) + 1; next <= stage; next++) {
+                switch (next) {
+                    case RELATED:
+                        relate(componentMembers[component]);
+                        break;
+                    case FIELDS:
+                        discoverFields(componentMembers[component]);
+                        break;
+                    default:
+                        complete(componentMembers[component]);
+                        materializedTypeCount += componentMembers[component].length;
+                        break;
+                }
+                stages.set(component, next);
+            }
+        } finally {
+            building[component] = false;
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void relate(final int[] members) {
+        for (final int index: members) {
+            types[index] = (definitions[index] == null)
+                    ? ScalarModel.createStandardType(environment, names[index])
+                    : environment.createTypeModel(definitions[index]);
+        }
+        for (final int index: members) {
+            for (final SDLExtensionDefinition extension: extensions.get(index)) {
+                ((OutputTypeModel) types[index]).applyExtension(extension);
+            }
+        }
+        for (final int index: members) {
+            types[index].processDirectRelations();
+        }
+        for (final int index: members) {
+            types[index].processIndirectRelations();
+        }
+        for (final int index: members) {
+            types[index].applyTypeCardinalityDefaults();
+        }
+        for (final int index: members) {
+            types[index].applyTypePricingDefaults();
+        }
+        for (final int index: members) {
+            types[index].assignTypeId(firstIds[index], models);
+        }
+    }
+
+    private void discoverFields(final int[] members) {
+        for (final int index: members) {
+            types[index].discoverFields();
+        }
+        for (final int index: members) {
+            types[index].relateFields();
+        }
+        for (final int index: members) {
+            types[index].assignFieldIds(models);
+        }
+    }
+
+    private void complete(final int[] members) {
+        for (final int index: members) {
+            types[index].applyFieldCardinalityDefaults();
+        }
+        for (final int index: members) {
+            types[index].applyFieldPricingDefaults();
+        }
+        for (final int index: members) {
+            types[index].processJoins();
+        }
+        for (final int index: members) {
+            types[index].compactRelations();
+        }
+    }
+}
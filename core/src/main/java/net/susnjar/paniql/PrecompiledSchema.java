@@ -0,0 +1,267 @@
+package net.susnjar.paniql;
+
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.ModelInterner;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.Pricer;
+import net.susnjar.paniql.pricing.StepPricer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fully defaulted description of the models of a schema, from which an
+ * {@link Environment#Environment(PrecompiledSchema) environment} is built
+ * without parsing SDL or interpreting {@code @paniql} directives.
+ *
+ * <p>Normally populated by code generated at build time from the annotated
+ * schema. Cardinalities, pricers, sharing and joins are taken as given, so no
+ * defaults are applied; only relations between types and fields are derived,
+ * as they are cheap and follow from the declared generalizations.</p>
+ */
+public final class PrecompiledSchema {
+    public enum Kind {
+        SCALAR,
+        ENUM,
+        OBJECT,
+        INTERFACE,
+        UNION
+    }
+
+    /**
+     * Attributes shared by types and fields.
+     */
+    public abstract static class ElementSpec {
+        private final String name;
+        private final Bounds cardinality;
+        private final Pricer pricing;
+        private final Boolean shared;
+        private final boolean alwaysRecomputed;
+        private JoinSpec join = null;
+
+        ElementSpec(final String name, final Bounds cardinality, final Pricer pricing, final Boolean shared, final boolean alwaysRecomputed) {
+            this.name = name;
+            this.cardinality = cardinality;
+            this.pricing = pricing;
+            this.shared = shared;
+            this.alwaysRecomputed = alwaysRecomputed;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Bounds getCardinality() {
+            return cardinality;
+        }
+
+        public Pricer getPricing() {
+            return pricing;
+        }
+
+        public Boolean getShared() {
+            return shared;
+        }
+
+        public boolean isAlwaysRecomputed() {
+            return alwaysRecomputed;
+        }
+
+        public JoinSpec getJoin() {
+            return join;
+        }
+
+        public void setJoin(final JoinSpec join) {
+            this.join = join;
+        }
+    }
+
+    public static final class TypeSpec extends ElementSpec {
+        private final Kind kind;
+        private final boolean markedAsResource;
+        private final List<String> generalizations = new ArrayList<>();
+        private final Map<String, FieldSpec> fields = new LinkedHashMap<>();
+
+        TypeSpec(
+                final Kind kind,
+                final String name,
+                final boolean markedAsResource,
+                final Bounds cardinality,
+                final Pricer pricing,
+                final Boolean shared,
+                final boolean alwaysRecomputed
+        ) {
+            super(name, cardinality, pricing, shared, alwaysRecomputed);
+            this.kind = kind;
+            this.markedAsResource = markedAsResource;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public boolean isMarkedAsResource() {
+            return markedAsResource;
+        }
+
+        /**
+         * Declares the interfaces this type implements and the unions it is a member of.
+         */
+        public TypeSpec generalize(final String... typeNames) {
+            Collections.addAll(generalizations, typeNames);
+            return this;
+        }
+
+        public List<String> getGeneralizations() {
+            return Collections.unmodifiableList(generalizations);
+        }
+
+        public FieldSpec field(
+                final String name,
+                final String typeName,
+                final boolean toMany,
+                final Bounds cardinality,
+                final Pricer pricing,
+                final Boolean shared,
+                final boolean alwaysRecomputed
+        ) {
+            if ((kind != Kind.OBJECT) && (kind != Kind.INTERFACE)) {
+                throw new IllegalStateException(getName() + " cannot have fields.");
+            }
+            final FieldSpec field = new FieldSpec(name, typeName, toMany, cardinality, pricing, shared, alwaysRecomputed);
+            if (fields.putIfAbsent(name, field) != null) {
+                throw new IllegalArgumentException("Duplicate field " + getName() + "." + name);
+            }
+            return field;
+        }
+
+        public Collection<FieldSpec> getFields() {
+            return Collections.unmodifiableCollection(fields.values());
+        }
+    }
+
+    public static final class FieldSpec extends ElementSpec {
+        private final String typeName;
+        private final boolean toMany;
+
+        FieldSpec(
+                final String name,
+                final String typeName,
+                final boolean toMany,
+                final Bounds cardinality,
+                final Pricer pricing,
+                final Boolean shared,
+                final boolean alwaysRecomputed
+        ) {
+            super(name, cardinality, pricing, shared, alwaysRecomputed);
+            this.typeName = typeName;
+            this.toMany = toMany;
+        }
+
+        /**
+         * Returns the name of the element type of the field, without list or non-null wrappers.
+         */
+        public String getTypeName() {
+            return typeName;
+        }
+
+        public boolean isToMany() {
+            return toMany;
+        }
+    }
+
+    /**
+     * Join tree naming the joined fields by their declaring type and name, resolved once fields exist.
+     */
+    public static final class JoinSpec {
+        private final List<String> typeNames = new ArrayList<>();
+        private final List<String> fieldNames = new ArrayList<>();
+        private final List<JoinSpec> nested = new ArrayList<>();
+
+        /**
+         * Joins the field, with further joins below it or none if {@code nested} is {@code null}.
+         */
+        public JoinSpec field(final String typeName, final String fieldName, final JoinSpec nested) {
+            this.typeNames.add(typeName);
+            this.fieldNames.add(fieldName);
+            this.nested.add(nested);
+            return this;
+        }
+
+        public Join resolve(final Environment environment) {
+            final Join join = new Join();
+            for (int i = 0; i < typeNames.size(); i++) {
+                final OutputTypeModel<?, ?> type = environment.getOutputType(typeNames.get(i), true);
+                final FieldDefModel field = (type == null) ? null : type.getField(fieldNames.get(i));
+                if (field == null) {
+                    throw new IllegalArgumentException("Unknown joined field " + typeNames.get(i) + "." + fieldNames.get(i));
+                }
+                join.joinField(field, (nested.get(i) == null) ? null : nested.get(i).resolve(environment));
+            }
+            return join;
+        }
+    }
+
+    private final ModelInterner interner;
+    private final Map<String, TypeSpec> types = new LinkedHashMap<>();
+
+    public PrecompiledSchema() {
+        this(new ModelInterner());
+    }
+
+    /**
+     * Describes a schema whose bounds and prices are shared with everything else using the interner.
+     */
+    public PrecompiledSchema(final ModelInterner interner) {
+        this.interner = interner;
+    }
+
+    public TypeSpec type(
+            final Kind kind,
+            final String name,
+            final boolean markedAsResource,
+            final Bounds cardinality,
+            final Pricer pricing,
+            final Boolean shared,
+            final boolean alwaysRecomputed
+    ) {
+        final TypeSpec type = new TypeSpec(kind, name, markedAsResource, cardinality, pricing, shared, alwaysRecomputed);
+        if (types.putIfAbsent(name, type) != null) {
+            throw new IllegalArgumentException("Duplicate type " + name);
+        }
+        return type;
+    }
+
+    public Collection<TypeSpec> getTypes() {
+        return Collections.unmodifiableCollection(types.values());
+    }
+
+    public Bounds bounds(final double min, final double avg, final double p95, final double max) {
+        return interner.intern(new Bounds(min, avg, p95, max));
+    }
+
+    /**
+     * Returns the price with the bounds of each {@link net.susnjar.paniql.pricing.WorkType} in ordinal order.
+     */
+    public Price price(final Bounds... bounds) {
+        return interner.intern(Price.of(bounds));
+    }
+
+    public StepPricer pricer(final Price baseCost, final Price unitCost, final Double maxUnitsPerBase) {
+        return StepPricer.of(baseCost, unitCost, maxUnitsPerBase);
+    }
+
+    public JoinSpec join() {
+        return new JoinSpec();
+    }
+
+    public ModelInterner getInterner() {
+        return interner;
+    }
+}
@@ -3,13 +3,22 @@ package net.susnjar.paniql;
 import graphql.language.Definition;
 import graphql.language.Document;
 import graphql.language.FragmentDefinition;
+import graphql.language.Field;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
 import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import net.susnjar.paniql.models.FieldDefModel;
 import net.susnjar.paniql.models.ObjectTypeModel;
 import net.susnjar.paniql.pricing.Bounds;
 import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 
 public class Request {
@@ -17,6 +26,9 @@ public class Request {
     private final Environment environment;
     private final List<OperationDefinition> operations = new ArrayList<>();
     private final HashMap<String, List<FragmentDefinition>> fragments = new HashMap<>();
+    private FetchVisitor visitor = null;
+    private int nonLinearCount = 0;
+    private final IdentityHashMap<SelectionSet, String> selectionKeys = new IdentityHashMap<>();
 
     public Request(final Document requestDocument, final Environment environment) {
         this.request = requestDocument;
@@ -44,16 +56,119 @@ public class Request {
     }
 
     public Invoice invoice() {
+        return invoice(null);
+    }
+
+    /**
+     * Invoices only the named operation, as a server executing the request would.
+     *
+     * @param operationName name of the operation or {@code null} to invoice all operations.
+     * @throws IllegalArgumentException if the request has no operation of that name.
+     */
+    public Invoice invoice(final String operationName) {
         final Invoice total = new Invoice();
 
+        boolean found = false;
         for (final OperationDefinition op: operations) {
+            if ((operationName != null) && !operationName.equals(op.getName())) continue;
+            found = true;
+
             final ObjectTypeModel opType = getOperationType(op);
 
             total.add(opType.invoice(this, null, Bounds.ALWAYS_1, List.of(op.getSelectionSet())));
         }
+        if (!found && (operationName != null)) {
+            throw new IllegalArgumentException("Unknown operation: " + operationName);
+        }
         return total;
     }
 
+    /**
+     * Derives the {@link FetchPlan} of the named operation, or all of them if {@code null}.
+     */
+    public FetchPlan plan(final String operationName) {
+        final FetchPlan.Builder builder = new FetchPlan.Builder();
+        visitor = builder;
+        try {
+            return builder.build(invoice(operationName));
+        } finally {
+            visitor = null;
+        }
+    }
+
+    public void enterField(final FieldDefModel field, final String responseKey, final boolean joined, final Bounds parentQuantities, final Price price) {
+        if (visitor != null) visitor.enterField(field, responseKey, joined, parentQuantities, price);
+    }
+
+    public void exitField() {
+        if (visitor != null) visitor.exitField();
+    }
+
+    /**
+     * Notes that a price not proportional to the quantities was used, so the
+     * enclosing subtrees must not be served from a {@link SubtreeCache}.
+     */
+    public void markNonLinear() {
+        nonLinearCount++;
+    }
+
+    int getNonLinearCount() {
+        return nonLinearCount;
+    }
+
+    boolean isSubtreeCacheable() {
+        // Planning needs to see every field.
+        return visitor == null;
+    }
+
+    /**
+     * Returns the canonical text of the selections, i.e. their field names,
+     * aliases and type conditions with fragment spreads expanded, which
+     * identifies subtrees priced the same.
+     */
+    String selectionKey(final Collection<? extends SelectionSet> selectionSets) {
+        if (selectionSets.size() == 1) return selectionKey(selectionSets.iterator().next());
+        final StringBuilder key = new StringBuilder();
+        for (final SelectionSet selectionSet: selectionSets) {
+            key.append(selectionKey(selectionSet)).append(',');
+        }
+        return key.toString();
+    }
+
+    private String selectionKey(final SelectionSet selectionSet) {
+        if (selectionSet == null) return "";
+        final String known = selectionKeys.get(selectionSet);
+        if (known != null) return known;
+
+        final StringBuilder key = new StringBuilder("{");
+        for (final Selection<?> selection: selectionSet.getSelections()) {
+            if (selection instanceof Field) {
+                final Field field = (Field) selection;
+                if (field.getAlias() != null) key.append(field.getAlias()).append(':');
+                key.append(field.getName()).append(selectionKey(field.getSelectionSet())).append(' ');
+            } else if (selection instanceof InlineFragment) {
+                final InlineFragment fragment = (InlineFragment) selection;
+                key.append("...");
+                if (fragment.getTypeCondition() != null) key.append("on ").append(fragment.getTypeCondition().getName());
+                key.append(selectionKey(fragment.getSelectionSet())).append(' ');
+            } else if (selection instanceof FragmentSpread) {
+                final String name = ((FragmentSpread) selection).getName();
+                final List<FragmentDefinition> definitions = getFragment(name);
+                if (definitions == null) {
+                    key.append("...").append(name).append(' ');
+                } else {
+                    for (final FragmentDefinition definition: definitions) {
+                        key.append("...on ").append(definition.getTypeCondition().getName());
+                        key.append(selectionKey(definition.getSelectionSet())).append(' ');
+                    }
+                }
+            }
+        }
+        final String result = key.append('}').toString();
+        selectionKeys.put(selectionSet, result);
+        return result;
+    }
+
     private ObjectTypeModel getOperationType(OperationDefinition operationDefinition) {
         final ObjectTypeModel opType;
 
@@ -0,0 +1,195 @@
+package net.susnjar.paniql;
+
+import graphql.language.SelectionSet;
+import net.susnjar.paniql.models.ObjectTypeModel;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Invoice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the invoices of selection subtrees for a single instance,
+ * shared by all requests of an {@link Environment}. Operations often share
+ * inner selections, e.g. {@code files { id name }} under {@code Folder}, so
+ * a subtree seen before is priced by scaling its cached unit invoice by the
+ * quantities at hand instead of walking it again.
+ *
+ * <p>Entries are keyed by the object type, the join context and the canonical
+ * text of the selections with fragments expanded, so that requests sharing
+ * the cache can never be priced by a different subtree. Only subtrees
+ * priced linearly in the quantities are cached; the others are remembered as
+ * such and always invoiced directly, so results equal uncached ones.</p>
+ *
+ * <p>Lookups are lock-free. The total weight, the number of invoice entries
+ * held, is bounded: when it is exceeded the least recently used quarter of
+ * the weight is evicted.</p>
+ */
+public class SubtreeCache {
+    /**
+     * Invoices a subtree for the given quantities without the cache.
+     */
+    @FunctionalInterface
+    public interface SubtreeInvoicer {
+        Invoice invoice(Bounds quantities);
+    }
+
+    /**
+     * Marks subtrees that are not priced linearly.
+     */
+    static final Invoice NON_LINEAR = new Invoice();
+
+    static final class Key {
+        private final ObjectTypeModel type;
+        private final Join join;
+        private final String selections;
+
+        Key(final ObjectTypeModel type, final Join join, final String selections) {
+            this.type = type;
+            this.join = join;
+            this.selections = selections;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return (type == other.type) && (join == other.join) && selections.equals(other.selections);
+        }
+
+        @Override
+        public int hashCode() {
+            return selections.hashCode() * 31 + System.identityHashCode(type);
+        }
+    }
+
+    private static final class Node {
+        private final Invoice unitInvoice;
+        private final int weight;
+        private volatile long lastUsed;
+
+        Node(final Invoice unitInvoice, final int weight, final long lastUsed) {
+            this.unitInvoice = unitInvoice;
+            this.weight = weight;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    private final long maximumWeight;
+    private final ConcurrentHashMap<Key, Node> nodes = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    /**
+     * @param maximumWeight maximum number of invoice entries, over all cached subtrees, to keep.
+     */
+    public SubtreeCache(final long maximumWeight) {
+        if (maximumWeight < 1) throw new IllegalArgumentException("Maximum weight must be positive.");
+        this.maximumWeight = maximumWeight;
+    }
+
+    /**
+     * Returns the invoice of the selections of the type for the quantities,
+     * from the cache if the same subtree was invoiced before.
+     */
+    public Invoice invoice(
+            final Request request,
+            final ObjectTypeModel type,
+            final Join joinContext,
+            final Bounds quantities,
+            final Collection<? extends SelectionSet> selectionSets,
+            final SubtreeInvoicer invoicer
+    ) {
+        if (!request.isSubtreeCacheable()) return invoicer.invoice(quantities);
+
+        final Key key = new Key(type, joinContext, request.selectionKey(selectionSets));
+        Invoice unit = get(key);
+        if (unit == null) {
+            final int nonLinear = request.getNonLinearCount();
+            unit = invoicer.invoice(Bounds.ALWAYS_1);
+            if (request.getNonLinearCount() != nonLinear) {
+                put(key, NON_LINEAR);
+                return invoicer.invoice(quantities);
+            }
+            put(key, unit);
+        } else if (unit == NON_LINEAR) {
+            // Keeps enclosing subtrees from being cached too.
+            request.markNonLinear();
+            return invoicer.invoice(quantities);
+        }
+        return unit.times(quantities);
+    }
+
+    Invoice get(final Key key) {
+        final Node node = nodes.get(key);
+        if (node == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        node.lastUsed = clock.incrementAndGet();
+        return node.unitInvoice;
+    }
+
+    void put(final Key key, final Invoice unitInvoice) {
+        final int nodeWeight = 1 + unitInvoice.getResourceCosts().size() + unitInvoice.getPartCosts().size() + unitInvoice.getFieldCosts().size();
+        if (nodeWeight > maximumWeight) return;
+        final Node node = new Node(unitInvoice, nodeWeight, clock.incrementAndGet());
+        final Node previous = nodes.put(key, node);
+        final long total = weight.addAndGet((previous == null) ? nodeWeight : nodeWeight - previous.weight);
+        if (total > maximumWeight) evict();
+    }
+
+    private void evict() {
+        synchronized (evictionLock) {
+            if (weight.get() <= maximumWeight) return;
+            final List<Map.Entry<Key, Node>> entries = new ArrayList<>(nodes.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastUsed));
+            final long target = maximumWeight - maximumWeight / 4;
+            for (final Map.Entry<Key, Node> entry: entries) {
+                if (weight.get() <= target) break;
+                if (nodes.remove(entry.getKey(), entry.getValue())) {
+                    weight.addAndGet(-entry.getValue().weight);
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (evictionLock) {
+            for (final Key key: nodes.keySet()) {
+                final Node node = nodes.remove(key);
+                if (node != null) weight.addAndGet(-node.weight);
+            }
+        }
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public long getWeight() {
+        return weight.get();
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
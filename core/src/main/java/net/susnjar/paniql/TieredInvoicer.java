@@ -0,0 +1,134 @@
+package net.susnjar.paniql;
+
+import graphql.parser.Parser;
+import net.susnjar.paniql.pricing.CompiledInvoice;
+import net.susnjar.paniql.pricing.Invoice;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Invoices operations the way a tiered JIT runs code: each operation is
+ * analysed in full until it has been seen a number of times, after which it
+ * is promoted to a {@link CompiledInvoice}, so that repeated traffic costs a
+ * hash lookup instead of parsing and walking the document.
+ *
+ * <p>Invoices depend only on the document and the operation name, so the
+ * compiled form is exact. Memory is bounded: at most a given number of
+ * operations are compiled, and the invocation counters are reset whenever
+ * too many distinct operations are being counted, so that only operations
+ * hot within a recent period get promoted.</p>
+ */
+public class TieredInvoicer {
+    public static final int DEFAULT_PROMOTION_THRESHOLD = 16;
+    public static final int DEFAULT_MAXIMUM_COMPILED = 4096;
+
+    private static final class Key {
+        private final String document;
+        private final String operationName;
+        private final int hash;
+
+        Key(final String document, final String operationName) {
+            this.document = document;
+            this.operationName = operationName;
+            this.hash = document.hashCode() * 31 + Objects.hashCode(operationName);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key) o;
+            return (hash == other.hash) && document.equals(other.document) && Objects.equals(operationName, other.operationName);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Environment environment;
+    private final int promotionThreshold;
+    private final int maximumCompiled;
+    private final ConcurrentHashMap<Key, CompiledInvoice> compiled = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Key, AtomicInteger> counters = new ConcurrentHashMap<>();
+
+    public TieredInvoicer(final Environment environment) {
+        this(environment, DEFAULT_PROMOTION_THRESHOLD, DEFAULT_MAXIMUM_COMPILED);
+    }
+
+    /**
+     * @param promotionThreshold number of full analyses of an operation before it is compiled.
+     * @param maximumCompiled maximum number of operations kept compiled.
+     */
+    public TieredInvoicer(final Environment environment, final int promotionThreshold, final int maximumCompiled) {
+        if (promotionThreshold < 1) throw new IllegalArgumentException("Promotion threshold must be positive.");
+        if (maximumCompiled < 0) throw new IllegalArgumentException("Maximum compiled operations must not be negative.");
+        this.environment = environment;
+        this.promotionThreshold = promotionThreshold;
+        this.maximumCompiled = maximumCompiled;
+    }
+
+    /**
+     * Returns the compiled invoice of the operation, analysing it in full if it is not hot yet.
+     *
+     * @param operationName name of the operation or {@code null} to invoice all operations.
+     */
+    public CompiledInvoice compiled(final String document, final String operationName) {
+        final Key key = new Key(document, operationName);
+        final CompiledInvoice hot = compiled.get(key);
+        if (hot != null) return hot;
+
+        final Invoice invoice = analyse(key);
+        final CompiledInvoice promoted = compiled.get(key);
+        return (promoted != null) ? promoted : CompiledInvoice.compile(environment, invoice);
+    }
+
+    /**
+     * Returns a new invoice of the operation.
+     *
+     * @param operationName name of the operation or {@code null} to invoice all operations.
+     */
+    public Invoice invoice(final String document, final String operationName) {
+        final Key key = new Key(document, operationName);
+        final CompiledInvoice hot = compiled.get(key);
+        if (hot != null) return hot.toInvoice();
+
+        return analyse(key);
+    }
+
+    /**
+     * Invoices the operation in full, promoting it if it has become hot.
+     */
+    private Invoice analyse(final Key key) {
+        final Invoice invoice = environment.invoice(new Parser().parseDocument(key.document), key.operationName);
+        if ((count(key) >= promotionThreshold) && (compiled.size() < maximumCompiled)) {
+            compiled.putIfAbsent(key, CompiledInvoice.compile(environment, invoice));
+            counters.remove(key);
+        }
+        return invoice;
+    }
+
+    public boolean isCompiled(final String document, final String operationName) {
+        return compiled.containsKey(new Key(document, operationName));
+    }
+
+    public int getCompiledCount() {
+        return compiled.size();
+    }
+
+    public void clear() {
+        compiled.clear();
+        counters.clear();
+    }
+
+    private int count(final Key key) {
+        if (counters.size() >= Math.max(1024, maximumCompiled * 4)) {
+            // Too many lukewarm operations, start a new period.
+            counters.clear();
+        }
+        return counters.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+}
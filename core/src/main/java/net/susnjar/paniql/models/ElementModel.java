@@ -3,6 +3,7 @@ package net.susnjar.paniql.models;
 import graphql.language.*;
 import net.susnjar.paniql.Environment;
 import net.susnjar.paniql.Join;
+import net.susnjar.paniql.PrecompiledSchema;
 import net.susnjar.paniql.pricing.*;
 import net.susnjar.paniql.util.GraphQLParsing;
 
@@ -25,10 +26,13 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
     private Bounds cardinality = null;
     protected Pricer pricing = null;
     private Join join = null;
+    private final PrecompiledSchema.JoinSpec precompiledJoin;
+    private int id = -1;
 
     public ElementModel(final Environment environment, final D definition) {
         this.environment = environment;
         this.definition = definition;
+        this.precompiledJoin = null;
 
         if (definition == null) {
             // Built-in type.
@@ -63,6 +67,20 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
         }
     }
 
+    /**
+     * Builds the model from its precompiled description, whose attributes are already defaulted.
+     */
+    protected ElementModel(final Environment environment, final PrecompiledSchema.ElementSpec spec) {
+        this.environment = environment;
+        this.definition = null;
+        this.directive = null;
+        this.cardinality = spec.getCardinality();
+        this.pricing = spec.getPricing();
+        this.shared = spec.getShared();
+        this.alwaysRecomputed = spec.isAlwaysRecomputed();
+        this.precompiledJoin = spec.getJoin();
+    }
+
     public Boolean isShared() {
         return shared;
     }
@@ -75,6 +93,10 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
         return cardinality;
     }
 
+    public Pricer getPricing() {
+        return pricing;
+    }
+
     protected void applyDefaultCost() {
         cardinality = null;
         pricing = null;
@@ -120,28 +142,31 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
     }
 
     private void applyCardinality() {
-        final Argument qArg = directive.getArgument("q");
-        if (qArg == null) {
-            this.cardinality = null;
-        } else {
-            final Value qVal = qArg.getValue();
-            if (qVal instanceof ObjectValue) {
-                cardinality = parseBounds((ObjectValue) qVal);
-            } else {
-                this.cardinality = null;
-            }
-        }
+        final ModelInterner interner = environment.getInterner();
+        this.cardinality = interner.parsed(directive, "q", d -> interner.intern(parseCardinality(d)));
 
         if (cardinality == null) {
             cardinality = getDefaultCardinality();
         }
     }
 
+    private Bounds parseCardinality(final Directive directive) {
+        final Argument qArg = directive.getArgument("q");
+        if (qArg == null) return null;
+        final Value qVal = qArg.getValue();
+        return (qVal instanceof ObjectValue) ? parseBounds((ObjectValue) qVal) : null;
+    }
+
     private void applyPricing() {
-        final Price base = parsePrice(directive, "base");
-        final Price unit = parsePrice(directive, "unit");
+        this.pricing = environment.getInterner().parsed(directive, "pricing", this::parsePricing);
+    }
+
+    private Pricer parsePricing(final Directive directive) {
+        final ModelInterner interner = environment.getInterner();
+        final Price base = interner.intern(parsePrice(directive, "base"));
+        final Price unit = interner.intern(parsePrice(directive, "unit"));
         final Double maxUnitsPerBase = GraphQLParsing.getFloatValue(directive.getArgument("maxUnitsPerBase"), () -> null);
-        this.pricing = StepPricer.of(base, unit, maxUnitsPerBase);
+        return StepPricer.of(base, unit, maxUnitsPerBase);
     }
 
     private Price parsePrice(final Directive directive, final String argName) {
@@ -180,6 +205,10 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
     }
 
     public void processJoins() {
+        if (precompiledJoin != null) {
+            this.join = precompiledJoin.resolve(environment);
+            return;
+        }
         if (definition == null) return;
         if (directive == null) return;
 
@@ -269,11 +298,24 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
         return environment;
     }
 
+    /**
+     * Returns the dense id of this model within its {@link Environment}, usable as an array index.
+     * Ids are assigned in name order so the same schema yields the same ids in every process.
+     */
+    public int getId() {
+        return id;
+    }
+
+    void assignId(final int id) {
+        if (this.id >= 0) throw new IllegalStateException("Id already assigned to " + this);
+        this.id = id;
+    }
+
     protected final D getDefinition() {
         return definition;
     }
 
-    protected boolean isAlwaysRecomputed() {
+    public boolean isAlwaysRecomputed() {
         return alwaysRecomputed;
     }
 
@@ -281,12 +323,16 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
         return pricing.getCost(quantities);
     }
 
+    public boolean isLinearlyPriced() {
+        return pricing.isLinear();
+    }
+
     public Price getJoinedPrice(final Bounds quantities) {
         return Price.of(WorkType.BULK_JOIN, quantities).plus(Price.of(WorkType.INSTANCE_ACCESS, quantities));
     }
 
     protected OutputTypeModel getOutputType(final String name) {
-        return environment.getOutputType(name);
+        return environment.getOutputType(name, false);
     }
 
     private void addJoin(final Join target, Integer remainingAutoDepth, ObjectValue joinValue) {
@@ -301,7 +347,7 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
         final List<OutputTypeModel> types = GraphQLParsing.getArrayValue(
             typesValue,
             null,
-            value -> environment.getOutputType(GraphQLParsing.getStringValue(value))
+            value -> environment.getOutputType(GraphQLParsing.getStringValue(value), false)
         );
 
         if (types == null) {
@@ -323,6 +369,7 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
         final List<ObjectValue> sub = GraphQLParsing.getArrayValue(fieldValues.get("sub"), null, GraphQLParsing::getObjectValue);
 
         for (final ObjectTypeModel concreteType: focusedTypes) {
+            environment.getOutputType(concreteType.getSimpleName(), true);
             if (autoDepth > 0) {
                 final Set<FieldDefModel> autoJoinFields = concreteType.getFields().stream()
                         .filter(f -> f.isScalar()|| f.isToOne())
@@ -361,10 +408,19 @@ public abstract class ElementModel<D extends DirectivesContainer<D>> {
         return target;
     }
 
-    protected Join getJoin() {
+    public Join getJoin() {
         return this.join;
     }
 
+    /**
+     * Adds the approximate memory retained by this model to the footprint.
+     */
+    void measure(final Footprint footprint) {
+        footprint.addPricer(pricing);
+        footprint.addBounds(cardinality);
+        footprint.addJoin(join);
+    }
+
     protected abstract OutputTypeModel<?, ?> getRootType();
 
     public abstract String getSimpleName();
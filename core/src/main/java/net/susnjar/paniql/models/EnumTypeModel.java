@@ -3,6 +3,7 @@ package net.susnjar.paniql.models;
 import graphql.language.EnumTypeDefinition;
 import graphql.language.EnumTypeExtensionDefinition;
 import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.PrecompiledSchema;
 import net.susnjar.paniql.pricing.Bounds;
 
 public class EnumTypeModel extends OutputTypeModel<EnumTypeDefinition, EnumTypeExtensionDefinition> {
@@ -10,6 +11,10 @@ public class EnumTypeModel extends OutputTypeModel<EnumTypeDefinition, EnumTypeE
         super(environment, def);
     }
 
+    public EnumTypeModel(Environment environment, final PrecompiledSchema.TypeSpec spec) {
+        super(environment, spec);
+    }
+
     @Override
     public boolean isAbstract() {
         return false;
@@ -4,6 +4,7 @@ import graphql.language.FieldDefinition;
 import graphql.language.SDLExtensionDefinition;
 import graphql.language.TypeDefinition;
 import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.PrecompiledSchema;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -17,6 +18,10 @@ public abstract class FieldContainerModel<T extends TypeDefinition<T>, X extends
         super(environment, definition);
     }
 
+    protected FieldContainerModel(final Environment environment, final PrecompiledSchema.TypeSpec spec) {
+        super(environment, spec);
+    }
+
     void registerFields(List<FieldDefinition> defs) {
         for (final FieldDefinition def: defs) {
             final String name = def.getName();
@@ -30,6 +35,12 @@ public abstract class FieldContainerModel<T extends TypeDefinition<T>, X extends
         }
     }
 
+    void registerPrecompiledFields() {
+        for (final PrecompiledSchema.FieldSpec spec: getPrecompiled().getFields()) {
+            fields.put(spec.getName(), new FieldDefModel(getEnvironment(), this, spec));
+        }
+    }
+
     @Override
     public boolean hasField(final String name) {
         return fields.containsKey(name);
@@ -53,6 +64,40 @@ public abstract class FieldContainerModel<T extends TypeDefinition<T>, X extends
         }
     }
 
+    @Override
+    public void compactRelations() {
+        super.compactRelations();
+        allFields = ModelSet.of(getEnvironment(), allFields);
+        for (final FieldDefModel field: fields.values()) {
+            field.compactRelations();
+        }
+    }
+
+    @Override
+    void measure(final Footprint footprint) {
+        super.measure(footprint);
+        footprint.addRelations(allFields);
+        footprint.add(Footprint.Category.INDEXES, 1 + fields.size(), Footprint.hashMapSize(fields.size()));
+    }
+
+    @Override
+    public void assignModelIds(final List<ElementModel<?>> models) {
+        super.assignModelIds(models);
+        for (final FieldDefModel field: new TreeMap<>(fields).values()) {
+            field.assignId(models.size());
+            models.add(field);
+        }
+    }
+
+    @Override
+    public void assignFieldIds(final ElementModel<?>[] models) {
+        int id = getId();
+        for (final FieldDefModel field: new TreeMap<>(fields).values()) {
+            field.assignId(++id);
+            models[id] = field;
+        }
+    }
+
     Set<FieldDefModel> getFields() {
         return allFields;
     }
@@ -3,6 +3,7 @@ package net.susnjar.paniql.models;
 import graphql.language.*;
 import net.susnjar.paniql.Environment;
 import net.susnjar.paniql.Join;
+import net.susnjar.paniql.PrecompiledSchema;
 import net.susnjar.paniql.Request;
 import net.susnjar.paniql.pricing.*;
 
@@ -18,19 +19,20 @@ public class FieldDefModel extends ElementModel<FieldDefinition> {
 
     private final boolean toMany;
 
-    private IdentityHashMap<ObjectTypeModel, Double> concreteOptionWeights = new IdentityHashMap<>();
+    private static final ObjectTypeModel[] NO_OPTIONS = new ObjectTypeModel[0];
+    private static final double[] NO_WEIGHTS = new double[0];
 
-    private double totalOptionWeight = 0.0d;
+    // Concrete options with their weights, in parallel arrays.
+    private ObjectTypeModel[] options = NO_OPTIONS;
+    private double[] optionWeights = NO_WEIGHTS;
 
-    private final HashSet<FieldDefModel> directGeneralizations = new HashSet<>();
-    private final HashSet<FieldDefModel> allGeneralizations = new HashSet<>();
-    private final HashSet<FieldDefModel> directSpecializations = new HashSet<>();
-    private final HashSet<FieldDefModel> allSpecializations = new HashSet<>();
+    private double totalOptionWeight = 0.0d;
 
-    private final Set<FieldDefModel> directGeneralizationsImmutable = Collections.unmodifiableSet(directGeneralizations);
-    private final Set<FieldDefModel> allGeneralizationsImmutable = Collections.unmodifiableSet(allGeneralizations);
-    private final Set<FieldDefModel> directSpecializationsImmutable = Collections.unmodifiableSet(directSpecializations);
-    private final Set<FieldDefModel> allSpecializationsImmutable = Collections.unmodifiableSet(allSpecializations);
+    // Growable while the environment is being built, compacted once ids are assigned.
+    private Set<FieldDefModel> directGeneralizations = new HashSet<>();
+    private Set<FieldDefModel> allGeneralizations = new HashSet<>();
+    private Set<FieldDefModel> directSpecializations = new HashSet<>();
+    private Set<FieldDefModel> allSpecializations = new HashSet<>();
 
     private final FieldContainerModel<?, ?> container;
 
@@ -43,15 +45,30 @@ public class FieldDefModel extends ElementModel<FieldDefinition> {
         this.container = container;
         this.identifier = definition.getName();
 
-        this.target = environment.getOutputType(getElementTypeName(definition.getType()).getName());
+        this.target = environment.getOutputType(getElementTypeName(definition.getType()).getName(), false);
 
         this.toMany = isToMany(definition.getType());
 
         // TODO option weights
         for (ObjectTypeModel option: target.getAllObjectTypes()) {
-            concreteOptionWeights.put(option, 1.0d);
+            addOption(option, 1.0d);
+        }
+    }
+
+    FieldDefModel(
+            final Environment environment,
+            final FieldContainerModel<?, ?> container,
+            final PrecompiledSchema.FieldSpec spec
+    ) {
+        super(environment, spec);
+        this.container = container;
+        this.identifier = spec.getName();
+        this.target = environment.getOutputType(spec.getTypeName(), false);
+        this.toMany = spec.isToMany();
+
+        for (ObjectTypeModel option: target.getAllObjectTypes()) {
+            addOption(option, 1.0d);
         }
-        this.totalOptionWeight = target.getAllObjectTypes().size();
     }
 
     void applyExtension(FieldDefinition extension) {
@@ -108,7 +125,7 @@ public class FieldDefModel extends ElementModel<FieldDefinition> {
             if (collection) {
                 final TypeName typeName = (TypeName) type;
                 final Bounds sourceCardinality = Bounds.max(Bounds.ALWAYS_1, container.getCardinality());
-                final Bounds targetCardinality = getEnvironment().getOutputType(typeName.getName()).getCardinality();
+                final Bounds targetCardinality = getEnvironment().getOutputType(typeName.getName(), false).getCardinality();
 
                 double p95x = sourceCardinality.getPercentile95() - sourceCardinality.getMinimum();
                 double avgx = sourceCardinality.getAverage() - sourceCardinality.getMinimum();
@@ -151,6 +168,10 @@ public class FieldDefModel extends ElementModel<FieldDefinition> {
         return identifier;
     }
 
+    public FieldContainerModel<?, ?> getContainer() {
+        return container;
+    }
+
     @Override
     public String getFullyQualifiedName() {
         return container.getFullyQualifiedName() + "." + getSimpleName();
@@ -165,45 +186,96 @@ public class FieldDefModel extends ElementModel<FieldDefinition> {
     }
 
     public Set<FieldDefModel> getDirectGeneralizations() {
-        return directGeneralizationsImmutable;
+        return readOnly(directGeneralizations);
     }
 
     public Set<FieldDefModel> getAllGeneralizations() {
-        return allGeneralizationsImmutable;
+        return readOnly(allGeneralizations);
     }
 
     public Set<FieldDefModel> getDirectSpecializations() {
-        return directSpecializationsImmutable;
+        return readOnly(directSpecializations);
     }
 
     public Set<FieldDefModel> getAllSpecializations() {
-        return allSpecializationsImmutable;
+        return readOnly(allSpecializations);
+    }
+
+    private static Set<FieldDefModel> readOnly(final Set<FieldDefModel> fields) {
+        return (fields instanceof ModelSet) ? fields : Collections.unmodifiableSet(fields);
     }
 
     void addOption(final ObjectTypeModel concreteOption, final double weight) {
-        final Double previousWeight = concreteOptionWeights.put(concreteOption, weight);
-        if (previousWeight != null) {
-            totalOptionWeight -= previousWeight;
+        for (int i = 0; i < options.length; i++) {
+            if (options[i] == concreteOption) {
+                totalOptionWeight += weight - optionWeights[i];
+                optionWeights[i] = weight;
+                return;
+            }
         }
+        options = Arrays.copyOf(options, options.length + 1);
+        optionWeights = Arrays.copyOf(optionWeights, optionWeights.length + 1);
+        options[options.length - 1] = concreteOption;
+        optionWeights[optionWeights.length - 1] = weight;
         totalOptionWeight += weight;
     }
 
+    /**
+     * Replaces the relation sets with compact {@link ModelSet}s and orders the options by id, once all ids are assigned.
+     */
+    void compactRelations() {
+        final Environment environment = getEnvironment();
+        directGeneralizations = ModelSet.of(environment, directGeneralizations);
+        allGeneralizations = ModelSet.of(environment, allGeneralizations);
+        directSpecializations = ModelSet.of(environment, directSpecializations);
+        allSpecializations = ModelSet.of(environment, allSpecializations);
+
+        final Integer[] order = new Integer[options.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt(i -> options[i].getId()));
+        final ObjectTypeModel[] sortedOptions = new ObjectTypeModel[options.length];
+        final double[] sortedWeights = new double[options.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedOptions[i] = options[order[i]];
+            sortedWeights[i] = optionWeights[order[i]];
+        }
+        options = sortedOptions;
+        optionWeights = sortedWeights;
+    }
+
+    @Override
+    void measure(final Footprint footprint) {
+        super.measure(footprint);
+        footprint.add(Footprint.Category.FIELDS, 1, Footprint.OBJECT_HEADER + 14 * Footprint.REFERENCE + 16);
+        footprint.addRelations(directGeneralizations);
+        footprint.addRelations(allGeneralizations);
+        footprint.addRelations(directSpecializations);
+        footprint.addRelations(allSpecializations);
+        if (options.length > 0) {
+            footprint.add(Footprint.Category.RELATIONS, 2, Footprint.arraySize(options.length, Footprint.REFERENCE) + Footprint.arraySize(optionWeights.length, 8));
+        }
+    }
+
     Invoice invoice(Request request, Join join, Bounds quantities, List<Field> requests) {
         final Invoice invoice = new Invoice();
 
-        if (!isFree()) {
-            invoice.add(this, (join != null) ? getJoinedPrice(quantities) : getStandalonePrice(quantities));
-        }
+        if ((join == null) && !isLinearlyPriced()) request.markNonLinear();
+        final Price price = isFree() ? null : (join != null) ? getJoinedPrice(quantities) : getStandalonePrice(quantities);
+        invoice.add(this, price);
+
+        final Field first = requests.get(0);
+        request.enterField(this, (first.getAlias() != null) ? first.getAlias() : first.getName(), join != null, quantities, price);
 
         final Join effectiveJoinContext = (join != null) ? join :this.getJoin();
 
-        for (Map.Entry<ObjectTypeModel, Double> optionEntry : concreteOptionWeights.entrySet()) {
-            final ObjectTypeModel option = optionEntry.getKey();
-            final double optionProbability = optionEntry.getValue() / totalOptionWeight;
+        for (int i = 0; i < options.length; i++) {
+            final ObjectTypeModel option = options[i];
+            final double optionProbability = optionWeights[i] / totalOptionWeight;
             final Bounds optionCardinality = getCardinality().times(optionProbability).times(quantities);
 
             invoice.add(option.invoice(request, effectiveJoinContext, optionCardinality, requests.stream().map(f -> f.getSelectionSet()).collect(Collectors.toList())));
         }
+        request.exitField();
 
         return invoice;
     }
@@ -0,0 +1,214 @@
+package net.susnjar.paniql.models;
+
+import graphql.language.NamedNode;
+import graphql.language.Node;
+import graphql.language.TypeDefinition;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.Join;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.Pricer;
+import net.susnjar.paniql.pricing.StepPricer;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Approximate memory retained by an {@link Environment}, by category, see
+ * {@link Environment#footprint()}.
+ *
+ * <p>Sizes are estimated from the object layouts of a 64-bit JVM with
+ * compressed references rather than measured, so they are meant for
+ * comparing categories and schemas, not as exact heap figures. Objects
+ * shared within the environment, such as interned prices, are counted once.
+ * Schema definitions shared with other environments are counted in full.</p>
+ */
+public final class Footprint {
+    public enum Category {
+        DEFINITIONS("definitions", "Parsed schema definitions."),
+        TYPES("types", "Type models."),
+        FIELDS("fields", "Field models."),
+        RELATIONS("relations", "Generalization, specialization, option and field sets."),
+        INDEXES("indexes", "Lookup of types and fields by name and id."),
+        PRICING("pricing", "Cardinalities, prices and pricers."),
+        JOINS("joins", "Join trees.");
+
+        private final String id;
+        private final String description;
+
+        Category(final String id, final String description) {
+            this.id = id;
+            this.description = description;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    static final int OBJECT_HEADER = 12;
+    static final int REFERENCE = 4;
+
+    private static final int ARRAY_HEADER = 16;
+    private static final int HASH_MAP = 48;
+    private static final int HASH_MAP_NODE = 32;
+    private static final int STRING = 24;
+
+    private final long[] counts = new long[Category.values().length];
+    private final long[] bytes = new long[Category.values().length];
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private Footprint() {
+    }
+
+    /**
+     * Estimates the footprint of the environment and of the schema definitions it retains.
+     */
+    public static Footprint of(final Environment environment, final TypeDefinitionRegistry definitions) {
+        final Footprint footprint = new Footprint();
+        int typeCount = 0;
+        for (int id = 0; id < environment.getModelCount(); id++) {
+            final ElementModel<?> model = environment.findModel(id);
+            if (model == null) continue;
+            model.measure(footprint);
+            if (model instanceof OutputTypeModel) typeCount++;
+        }
+        footprint.add(Category.INDEXES, 2, arraySize(environment.getModelCount(), REFERENCE) + hashMapSize(typeCount));
+        if (definitions != null) {
+            footprint.addDefinitions(definitions);
+        }
+        return footprint;
+    }
+
+    public long getBytes(final Category category) {
+        return bytes[category.ordinal()];
+    }
+
+    /**
+     * Returns the number of objects counted in the category.
+     */
+    public long getCount(final Category category) {
+        return counts[category.ordinal()];
+    }
+
+    public long getTotalBytes() {
+        long total = 0;
+        for (final long value: bytes) {
+            total += value;
+        }
+        return total;
+    }
+
+    void add(final Category category, final long count, final long size) {
+        counts[category.ordinal()] += count;
+        bytes[category.ordinal()] += align(size);
+    }
+
+    void addRelations(final Set<?> relations) {
+        if (relations instanceof ModelSet) {
+            final long size = ((ModelSet<?>) relations).getRetainedSize();
+            if ((size > 0) && seen.add(relations)) add(Category.RELATIONS, 1, size);
+        } else if ((relations != null) && seen.add(relations)) {
+            add(Category.RELATIONS, 1, hashMapSize(relations.size()));
+        }
+    }
+
+    void addPricer(final Pricer pricer) {
+        if ((pricer == null) || !seen.add(pricer)) return;
+        if (pricer instanceof StepPricer) {
+            final StepPricer stepPricer = (StepPricer) pricer;
+            add(Category.PRICING, 1, OBJECT_HEADER + 3 * REFERENCE);
+            addPrice(stepPricer.getbaseCost());
+            addPrice(stepPricer.getUnitCost());
+            if ((stepPricer.getMaxUnitsPerBase() != null) && seen.add(stepPricer.getMaxUnitsPerBase())) {
+                add(Category.PRICING, 1, OBJECT_HEADER + 8);
+            }
+        } else {
+            add(Category.PRICING, 1, OBJECT_HEADER);
+        }
+    }
+
+    void addPrice(final Price price) {
+        if ((price == null) || !seen.add(price)) return;
+        add(Category.PRICING, 2, OBJECT_HEADER + REFERENCE);
+        add(Category.PRICING, 0, arraySize(WorkType.values().length, REFERENCE));
+        for (final WorkType workType: WorkType.values()) {
+            addBounds(price.get(workType));
+        }
+    }
+
+    void addBounds(final Bounds bounds) {
+        if ((bounds == null) || !seen.add(bounds)) return;
+        add(Category.PRICING, 1, OBJECT_HEADER + 4 * 8);
+    }
+
+    void addJoin(final Join join) {
+        if ((join == null) || !seen.add(join)) return;
+        add(Category.JOINS, 1, OBJECT_HEADER + REFERENCE + hashMapSize(join.getFieldJoins().size()));
+        for (final Join nested: join.getFieldJoins().values()) {
+            addJoin(nested);
+        }
+    }
+
+    private void addDefinitions(final TypeDefinitionRegistry definitions) {
+        final ArrayDeque<Node<?>> pending = new ArrayDeque<>();
+        for (final TypeDefinition<?> type: definitions.getTypes(TypeDefinition.class)) {
+            pending.add(type);
+        }
+        pending.addAll(definitions.getDirectiveDefinitions().values());
+        definitions.schemaDefinition().ifPresent(pending::add);
+        long count = 0;
+        long size = 0;
+        while (!pending.isEmpty()) {
+            final Node<?> node = pending.removeLast();
+            if (!seen.add(node)) continue;
+            count++;
+            // Node with its source location, comments, ignored characters and additional data.
+            size += align(OBJECT_HEADER + 6 * REFERENCE) + align(OBJECT_HEADER + 3 * REFERENCE + 8);
+            if (node instanceof NamedNode) {
+                final String name = ((NamedNode<?>) node).getName();
+                if (name != null) size += align(STRING) + arraySize(name.length(), 1);
+            }
+            for (final Node<?> child: node.getChildren()) {
+                if (child != null) pending.add(child);
+            }
+        }
+        add(Category.DEFINITIONS, count, size);
+    }
+
+    static long arraySize(final int length, final int elementSize) {
+        return align(ARRAY_HEADER + (long) length * elementSize);
+    }
+
+    static long hashMapSize(final int entries) {
+        int capacity = 16;
+        while (capacity * 3 < entries * 4) {
+            capacity <<= 1;
+        }
+        return align(HASH_MAP) + arraySize(capacity, REFERENCE) + (long) entries * HASH_MAP_NODE;
+    }
+
+    private static long align(final long size) {
+        return (size + 7) & ~7L;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder out = new StringBuilder(512);
+        out.append(String.format(Locale.ROOT, "%-12s %10s %14s%n", "Category", "Objects", "Bytes"));
+        for (final Category category: Category.values()) {
+            out.append(String.format(Locale.ROOT, "%-12s %10d %14d%n", category.getId(), getCount(category), getBytes(category)));
+        }
+        out.append(String.format(Locale.ROOT, "%-12s %10s %14d%n", "total", "", getTotalBytes()));
+        return out.toString();
+    }
+}
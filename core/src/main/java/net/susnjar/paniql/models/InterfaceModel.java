@@ -5,6 +5,7 @@ import graphql.language.InterfaceTypeExtensionDefinition;
 import graphql.language.Type;
 import graphql.language.TypeName;
 import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.PrecompiledSchema;
 import net.susnjar.paniql.pricing.Bounds;
 import net.susnjar.paniql.pricing.BoundsCollector;
 
@@ -13,6 +14,10 @@ public class InterfaceModel extends FieldContainerModel<InterfaceTypeDefinition,
         super(environment, definition);
     }
 
+    public InterfaceModel(Environment environment, PrecompiledSchema.TypeSpec spec) {
+        super(environment, spec);
+    }
+
     @Override
     protected Bounds getDefaultCardinality() {
         return getAllObjectTypes().stream().map(OutputTypeModel::getCardinality).collect(new BoundsCollector());
@@ -29,6 +34,10 @@ public class InterfaceModel extends FieldContainerModel<InterfaceTypeDefinition,
 
     @Override
     public void processDirectRelations() {
+        if (getPrecompiled() != null) {
+            super.processDirectRelations();
+            return;
+        }
         for (final Type t: getDefinition().getImplements()) {
             if (t instanceof TypeName) {
                 addDirectGeneralization(getOutputType(((TypeName)t).getName()));
@@ -45,6 +54,10 @@ public class InterfaceModel extends FieldContainerModel<InterfaceTypeDefinition,
 
     @Override
     public void discoverFields() {
+        if (getPrecompiled() != null) {
+            registerPrecompiledFields();
+            return;
+        }
         registerFields(getDefinition().getFieldDefinitions());
 
         for (final InterfaceTypeExtensionDefinition x: getExtensions()) {
@@ -0,0 +1,95 @@
+package net.susnjar.paniql.models;
+
+import graphql.language.Directive;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Function;
+
+/**
+ * Shares immutable model data between {@link net.susnjar.paniql.Environment environments}:
+ * equal {@link Bounds} and {@link Price prices} are reduced to a single
+ * instance and the results of parsing a {@code @paniql} directive are
+ * remembered per directive node, so environments built from the same parsed
+ * schema parts parse each directive only once.
+ *
+ * <p>Directive results are held only as long as the directive node itself is
+ * reachable and interned values only as long as some model refers to them,
+ * so a long-lived interner does not keep values of dropped environments.
+ * All methods are thread-safe.</p>
+ */
+public class ModelInterner {
+    private static final Object NULL = new Object();
+
+    private final Map<Bounds, WeakReference<Bounds>> bounds = new WeakHashMap<>();
+    private final Map<Price, WeakReference<Price>> prices = new WeakHashMap<>();
+    private final Map<Directive, Map<String, Object>> directives = new WeakHashMap<>();
+
+    public synchronized Bounds intern(final Bounds value) {
+        if (value == null) return null;
+        final Bounds existing = get(bounds, value);
+        if (existing != null) return existing;
+        bounds.put(value, new WeakReference<>(value));
+        return value;
+    }
+
+    public synchronized Price intern(final Price value) {
+        if (value == null) return null;
+        final Price existing = get(prices, value);
+        if (existing != null) return existing;
+        final Bounds[] components = new Bounds[WorkType.values().length];
+        for (final WorkType workType: WorkType.values()) {
+            components[workType.ordinal()] = intern(value.get(workType));
+        }
+        final Price interned = Price.of(components);
+        prices.put(interned, new WeakReference<>(interned));
+        return interned;
+    }
+
+    private static <T> T get(final Map<T, WeakReference<T>> values, final T value) {
+        final WeakReference<T> reference = values.get(value);
+        return (reference == null) ? null : reference.get();
+    }
+
+    /**
+     * Returns the remembered result of parsing the named aspect of the directive, parsing it on first use.
+     * Node classes do not override {@code equals}, so directives are told apart by identity.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T parsed(final Directive directive, final String aspect, final Function<Directive, T> parser) {
+        synchronized (this) {
+            final Map<String, Object> results = directives.get(directive);
+            final Object result = (results == null) ? null : results.get(aspect);
+            if (result != null) return (result == NULL) ? null : (T) result;
+        }
+        final T result = parser.apply(directive);
+        synchronized (this) {
+            directives.computeIfAbsent(directive, d -> new HashMap<>(4)).putIfAbsent(aspect, (result == null) ? NULL : result);
+            final Object shared = directives.get(directive).get(aspect);
+            return (shared == NULL) ? null : (T) shared;
+        }
+    }
+
+    public synchronized int getBoundsCount() {
+        return bounds.size();
+    }
+
+    public synchronized int getPriceCount() {
+        return prices.size();
+    }
+
+    public synchronized int getDirectiveCount() {
+        return directives.size();
+    }
+
+    public synchronized void clear() {
+        bounds.clear();
+        prices.clear();
+        directives.clear();
+    }
+}
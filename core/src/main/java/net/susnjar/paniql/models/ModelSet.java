@@ -0,0 +1,107 @@
+package net.susnjar.paniql.models;
+
+import net.susnjar.paniql.Environment;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable set of models of one {@link Environment} held as a sorted array
+ * of their {@linkplain ElementModel#getId() dense ids}: four bytes per member
+ * instead of a hash table, with lookups by binary search and iteration in id
+ * order. All empty sets are the single {@link #empty()} instance.
+ */
+public final class ModelSet<T extends ElementModel<?>> extends AbstractSet<T> {
+    private static final int[] NO_IDS = new int[0];
+    private static final ModelSet<?> EMPTY = new ModelSet<>(null, NO_IDS);
+
+    private final Environment environment;
+    private final int[] ids;
+
+    private ModelSet(final Environment environment, final int[] ids) {
+        this.environment = environment;
+        this.ids = ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T extends ElementModel<?>> ModelSet<T> empty() {
+        return (ModelSet<T>) EMPTY;
+    }
+
+    /**
+     * Returns a compact copy of the models, which must all have ids assigned by the environment.
+     */
+    public static <T extends ElementModel<?>> ModelSet<T> of(final Environment environment, final Collection<? extends T> models) {
+        if (models.isEmpty()) return empty();
+        if (models instanceof ModelSet) {
+            @SuppressWarnings("unchecked")
+            final ModelSet<T> set = (ModelSet<T>) models;
+            if (set.environment == environment) return set;
+        }
+        final int[] ids = new int[models.size()];
+        int count = 0;
+        for (final T model: models) {
+            if (model.getEnvironment() != environment) throw new IllegalArgumentException(model + " belongs to another environment.");
+            if (model.getId() < 0) throw new IllegalStateException("No id assigned to " + model + " yet.");
+            ids[count++] = model.getId();
+        }
+        Arrays.sort(ids);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if ((distinct == 0) || (ids[distinct - 1] != ids[i])) ids[distinct++] = ids[i];
+        }
+        return new ModelSet<>(environment, (distinct == ids.length) ? ids : Arrays.copyOf(ids, distinct));
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof ElementModel)) return false;
+        final ElementModel<?> model = (ElementModel<?>) o;
+        return (model.getEnvironment() == environment) && (Arrays.binarySearch(ids, model.getId()) >= 0);
+    }
+
+    /**
+     * Returns the id of the member at the position, positions being in ascending id order.
+     */
+    public int getId(final int position) {
+        return ids[position];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(final int position) {
+        return (T) environment.getModel(ids[position]);
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            private int next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return next < ids.length;
+            }
+
+            @Override
+            public T next() {
+                if (next >= ids.length) throw new NoSuchElementException();
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * Returns the approximate number of bytes retained by this set, zero for the shared empty set.
+     */
+    long getRetainedSize() {
+        return (this == EMPTY) ? 0 : Footprint.OBJECT_HEADER + 2 * Footprint.REFERENCE + Footprint.arraySize(ids.length, 4);
+    }
+}
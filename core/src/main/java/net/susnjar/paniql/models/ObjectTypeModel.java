@@ -3,7 +3,9 @@ package net.susnjar.paniql.models;
 import graphql.language.*;
 import net.susnjar.paniql.Environment;
 import net.susnjar.paniql.Join;
+import net.susnjar.paniql.PrecompiledSchema;
 import net.susnjar.paniql.Request;
+import net.susnjar.paniql.SubtreeCache;
 import net.susnjar.paniql.pricing.Bounds;
 import net.susnjar.paniql.pricing.Invoice;
 import net.susnjar.paniql.pricing.Price;
@@ -19,6 +21,10 @@ public class ObjectTypeModel extends FieldContainerModel<ObjectTypeDefinition, O
         super(environment, definition);
     }
 
+    public ObjectTypeModel(Environment environment, PrecompiledSchema.TypeSpec spec) {
+        super(environment, spec);
+    }
+
     @Override
     protected Bounds getDefaultCardinality() {
         return Bounds.LOW_AVERAGE.times(500);
@@ -40,6 +46,10 @@ public class ObjectTypeModel extends FieldContainerModel<ObjectTypeDefinition, O
 
     @Override
     public void processDirectRelations() {
+        if (getPrecompiled() != null) {
+            super.processDirectRelations();
+            return;
+        }
         for (final Type t: getDefinition().getImplements()) {
             if (t instanceof TypeName) {
                 addDirectGeneralization(getOutputType(((TypeName)t).getName()));
@@ -57,6 +67,10 @@ public class ObjectTypeModel extends FieldContainerModel<ObjectTypeDefinition, O
 
     @Override
     public void discoverFields() {
+        if (getPrecompiled() != null) {
+            registerPrecompiledFields();
+            return;
+        }
         registerFields(getDefinition().getFieldDefinitions());
 
         for (final ObjectTypeExtensionDefinition x: getExtensions()) {
@@ -65,8 +79,19 @@ public class ObjectTypeModel extends FieldContainerModel<ObjectTypeDefinition, O
     }
 
     public Invoice invoice(final Request request, final Join joinContext, Bounds quantities, final Collection<? extends SelectionSet> selectionSets) {
+        getEnvironment().materialize(this);
+        final SubtreeCache cache = getEnvironment().getSubtreeCache();
+        if (cache != null) {
+            return cache.invoice(request, this, joinContext, quantities, selectionSets, q -> invoiceSelections(request, joinContext, q, selectionSets));
+        }
+        return invoiceSelections(request, joinContext, quantities, selectionSets);
+    }
+
+    private Invoice invoiceSelections(final Request request, final Join joinContext, Bounds quantities, final Collection<? extends SelectionSet> selectionSets) {
         final Invoice invoice = new Invoice();
 
+        if ((joinContext == null) && !isLinearlyPriced()) request.markNonLinear();
+
         if (isFree()) {
             invoice.add(this, Price.of(WorkType.INSTANCE_ACCESS, quantities));
         } else {
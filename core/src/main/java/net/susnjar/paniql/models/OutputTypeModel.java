@@ -3,6 +3,7 @@ package net.susnjar.paniql.models;
 import graphql.language.SDLExtensionDefinition;
 import graphql.language.TypeDefinition;
 import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.PrecompiledSchema;
 import net.susnjar.paniql.util.IdentityHashSet;
 
 import java.util.ArrayList;
@@ -15,20 +16,23 @@ public abstract class OutputTypeModel<T extends TypeDefinition<T>, X extends SDL
 
     private final String identifier;
 
-    private final IdentityHashSet<OutputTypeModel> directGeneralizations = new IdentityHashSet<>();
-    private final IdentityHashSet<OutputTypeModel> directSpecializations = new IdentityHashSet<>();
-    private final IdentityHashSet<OutputTypeModel> allGeneralizations = new IdentityHashSet<>();
-    private final IdentityHashSet<OutputTypeModel> allSpecializations = new IdentityHashSet<>();
-    private final IdentityHashSet<OutputTypeModel> allAssignableTo = new IdentityHashSet<>();
-    private final IdentityHashSet<OutputTypeModel> allAssignableFrom = new IdentityHashSet<>();
+    // Growable while the environment is being built, compacted once ids are assigned.
+    private Set<OutputTypeModel> directGeneralizations = new IdentityHashSet<>();
+    private Set<OutputTypeModel> directSpecializations = new IdentityHashSet<>();
+    private Set<OutputTypeModel> allGeneralizations = new IdentityHashSet<>();
+    private Set<OutputTypeModel> allSpecializations = new IdentityHashSet<>();
+    private Set<OutputTypeModel> allAssignableTo = new IdentityHashSet<>();
+    private Set<OutputTypeModel> allAssignableFrom = new IdentityHashSet<>();
 
     private boolean indirectGeneralizationsProcessed = false;
     private boolean indirectSpecializationsProcessed = false;
 
-    private final IdentityHashSet<ObjectTypeModel> allObjectTypes = new IdentityHashSet<>();
+    private Set<ObjectTypeModel> allObjectTypes = new IdentityHashSet<>();
 
     private final boolean markedAsResource;
 
+    private final PrecompiledSchema.TypeSpec precompiled;
+
     protected OutputTypeModel(final Environment environment, final T definition) {
         this(environment, definition, definition.getName());
     }
@@ -41,6 +45,14 @@ public abstract class OutputTypeModel<T extends TypeDefinition<T>, X extends SDL
         super(environment, definition);
         this.identifier = identifier;
         this.markedAsResource = (definition != null) && definition.hasDirective("paniqlResource");
+        this.precompiled = null;
+    }
+
+    protected OutputTypeModel(final Environment environment, final PrecompiledSchema.TypeSpec spec) {
+        super(environment, spec);
+        this.identifier = spec.getName();
+        this.markedAsResource = spec.isMarkedAsResource();
+        this.precompiled = spec;
     }
 
     public void applyExtension(X extension) {
@@ -56,6 +68,13 @@ public abstract class OutputTypeModel<T extends TypeDefinition<T>, X extends SDL
         return extensions;
     }
 
+    /**
+     * Returns the description this type was built from, or {@code null} if it was built from its definition.
+     */
+    protected PrecompiledSchema.TypeSpec getPrecompiled() {
+        return precompiled;
+    }
+
     void addDirectGeneralization(OutputTypeModel generalization) {
         directGeneralizations.add(generalization);
         generalization.directSpecializations.add(this);
@@ -120,6 +139,11 @@ public abstract class OutputTypeModel<T extends TypeDefinition<T>, X extends SDL
     }
 
     public void processDirectRelations() {
+        if (precompiled != null) {
+            for (final String name: precompiled.getGeneralizations()) {
+                addDirectGeneralization(getOutputType(name));
+            }
+        }
     }
 
     public void processIndirectRelations() {
@@ -185,6 +209,61 @@ public abstract class OutputTypeModel<T extends TypeDefinition<T>, X extends SDL
     public void applyFieldPricingDefaults() {
     }
 
+    /**
+     * Assigns the next dense ids to this type and any of its fields, appending them to the list.
+     */
+    public void assignModelIds(final List<ElementModel<?>> models) {
+        assignId(models.size());
+        models.add(this);
+    }
+
+    /**
+     * Assigns the id to this type alone and records it in the id-indexed array, for lazily built environments.
+     * Field ids follow with {@link #assignFieldIds(ElementModel[])} once fields are discovered.
+     */
+    public void assignTypeId(final int id, final ElementModel<?>[] models) {
+        assignId(id);
+        models[id] = this;
+    }
+
+    /**
+     * Assigns the ids following this type's id to its fields, if any, recording them in the id-indexed array.
+     */
+    public void assignFieldIds(final ElementModel<?>[] models) {
+    }
+
+    /**
+     * Replaces the relation sets with compact {@link ModelSet}s, once all ids are assigned.
+     */
+    public void compactRelations() {
+        final Environment environment = getEnvironment();
+        directGeneralizations = compact(environment, directGeneralizations);
+        directSpecializations = compact(environment, directSpecializations);
+        allGeneralizations = compact(environment, allGeneralizations);
+        allSpecializations = compact(environment, allSpecializations);
+        allAssignableTo = compact(environment, allAssignableTo);
+        allAssignableFrom = compact(environment, allAssignableFrom);
+        allObjectTypes = ModelSet.of(environment, allObjectTypes);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Set<OutputTypeModel> compact(final Environment environment, final Set<OutputTypeModel> models) {
+        return (Set) ModelSet.of(environment, (Set) models);
+    }
+
+    @Override
+    void measure(final Footprint footprint) {
+        super.measure(footprint);
+        footprint.add(Footprint.Category.TYPES, 1, Footprint.OBJECT_HEADER + 16 * Footprint.REFERENCE + 8);
+        footprint.addRelations(directGeneralizations);
+        footprint.addRelations(directSpecializations);
+        footprint.addRelations(allGeneralizations);
+        footprint.addRelations(allSpecializations);
+        footprint.addRelations(allAssignableTo);
+        footprint.addRelations(allAssignableFrom);
+        footprint.addRelations(allObjectTypes);
+    }
+
     public boolean isMarkedAsResource() {
         return markedAsResource || allGeneralizations.stream().anyMatch(OutputTypeModel::isMarkedAsResource);
     }
@@ -3,13 +3,25 @@ package net.susnjar.paniql.models;
 import graphql.language.ScalarTypeDefinition;
 import graphql.language.ScalarTypeExtensionDefinition;
 import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.PrecompiledSchema;
 import net.susnjar.paniql.pricing.Bounds;
 
+import java.util.List;
+
 public class ScalarModel extends OutputTypeModel<ScalarTypeDefinition, ScalarTypeExtensionDefinition> {
+    /**
+     * Names of the built-in GraphQL scalars, in registration order.
+     */
+    public static final List<String> STANDARD_TYPE_NAMES = List.of("ID", "Boolean", "Int", "Float", "String");
+
     public ScalarModel(Environment environment, final ScalarTypeDefinition def) {
         super(environment, def);
     }
 
+    public ScalarModel(Environment environment, final PrecompiledSchema.TypeSpec spec) {
+        super(environment, spec);
+    }
+
     @Override
     protected Bounds getDefaultCardinality() {
         return Bounds.ALWAYS_1;
@@ -33,10 +45,12 @@ public class ScalarModel extends OutputTypeModel<ScalarTypeDefinition, ScalarTyp
     }
 
     public static void registerStandardTypes(final Environment environment) {
-        environment.registerType(new ScalarModel(environment, "ID"));
-        environment.registerType(new ScalarModel(environment, "Boolean"));
-        environment.registerType(new ScalarModel(environment, "Int"));
-        environment.registerType(new ScalarModel(environment, "Float"));
-        environment.registerType(new ScalarModel(environment, "String"));
+        for (final String name: STANDARD_TYPE_NAMES) {
+            environment.registerType(createStandardType(environment, name));
+        }
+    }
+
+    public static ScalarModel createStandardType(final Environment environment, final String name) {
+        return new ScalarModel(environment, name);
     }
 }
@@ -5,6 +5,7 @@ import graphql.language.TypeName;
 import graphql.language.UnionTypeDefinition;
 import graphql.language.UnionTypeExtensionDefinition;
 import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.PrecompiledSchema;
 import net.susnjar.paniql.pricing.Bounds;
 import net.susnjar.paniql.pricing.BoundsCollector;
 
@@ -13,6 +14,10 @@ public class UnionModel extends OutputTypeModel<UnionTypeDefinition, UnionTypeEx
         super(environment, definition);
     }
 
+    public UnionModel(Environment environment, PrecompiledSchema.TypeSpec spec) {
+        super(environment, spec);
+    }
+
     protected Bounds getDefaultCardinality() {
         return getAllObjectTypes().stream().map(OutputTypeModel::getCardinality).collect(new BoundsCollector());
     }
@@ -26,6 +31,10 @@ public class UnionModel extends OutputTypeModel<UnionTypeDefinition, UnionTypeEx
     }
 
     public void processDirectRelations() {
+        if (getPrecompiled() != null) {
+            super.processDirectRelations();
+            return;
+        }
         for (final Type t: getDefinition().getMemberTypes()) {
             if (t instanceof TypeName) {
                 getOutputType(((TypeName)t).getName()).addDirectGeneralization(this);
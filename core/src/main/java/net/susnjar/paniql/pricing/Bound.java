@@ -0,0 +1,55 @@
+package net.susnjar.paniql.pricing;
+
+/**
+ * Identifies one of the four values held by {@link Bounds}.
+ */
+public enum Bound {
+    MINIMUM("min", "Min", "Minimum quantity in normal conditions."),
+    AVERAGE("avg", "Avg", "Average quantity in normal conditions."),
+    PERCENTILE_95("p95", "95%", "95% percentile, >= 95% of expected values."),
+    MAXIMUM("max", "Max", "Maximum, accounting for built-in constraints.");
+
+    private final String id;
+    private final String heading;
+    private final String description;
+
+    Bound(String id, String heading, String description) {
+        this.id = id;
+        this.heading = heading;
+        this.description = description;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getHeading() {
+        return heading;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public double get(final Bounds bounds) {
+        switch (this) {
+            case MINIMUM:
+                return bounds.getMinimum();
+            case AVERAGE:
+                return bounds.getAverage();
+            case PERCENTILE_95:
+                return bounds.getPercentile95();
+            case MAXIMUM:
+                return bounds.getMaximum();
+            default:
+                throw new IllegalStateException("Unrecognized bound: " + this);
+        }
+    }
+
+    public static Bound fromId(final String id) {
+        for (final Bound bound: values()) {
+            if (bound.id.equals(id)) return bound;
+        }
+        throw new IllegalArgumentException("Unrecognized bound: " + id);
+    }
+}
@@ -0,0 +1,165 @@
+package net.susnjar.paniql.pricing;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Invoice of a fixed operation flattened into parallel primitive arrays of
+ * cell indexes and values, with its grand totals precomputed. Adding it to a
+ * dense accumulator is a single straight loop without lookups or allocation,
+ * and budget checks against the totals are constant time.
+ *
+ * <p>Cells are laid out densely by {@linkplain ElementModel#getId() model id},
+ * {@link WorkType} and {@link Bound}, see {@link #cell(int, WorkType, Bound)}.</p>
+ */
+public final class CompiledInvoice {
+    public static final int CELLS_PER_MODEL = WorkType.values().length * Bound.values().length;
+
+    private final Environment environment;
+    private final int[] cells;
+    private final double[] values;
+    private final double[] totals = new double[CELLS_PER_MODEL];
+
+    private CompiledInvoice(final Environment environment, final int[] cells, final double[] values) {
+        this.environment = environment;
+        this.cells = cells;
+        this.values = values;
+        for (int i = 0; i < cells.length; i++) {
+            totals[cells[i] % CELLS_PER_MODEL] += values[i];
+        }
+    }
+
+    public static CompiledInvoice compile(final Environment environment, final Invoice invoice) {
+        final int size = (invoice.getResourceCosts().size() + invoice.getPartCosts().size() + invoice.getFieldCosts().size()) * CELLS_PER_MODEL;
+        final int[] cells = new int[size];
+        final double[] values = new double[size];
+        int count = collect(invoice.getResourceCosts(), cells, values, 0);
+        count = collect(invoice.getPartCosts(), cells, values, count);
+        count = collect(invoice.getFieldCosts(), cells, values, count);
+
+        // Ascending cells keep accumulation sequential in memory.
+        final long[] order = new long[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = ((long) cells[i] << 32) | i;
+        }
+        Arrays.sort(order);
+        final int[] sortedCells = new int[count];
+        final double[] sortedValues = new double[count];
+        for (int i = 0; i < count; i++) {
+            sortedCells[i] = (int) (order[i] >>> 32);
+            sortedValues[i] = values[(int) order[i]];
+        }
+        return new CompiledInvoice(environment, sortedCells, sortedValues);
+    }
+
+    private static int collect(final Map<? extends ElementModel, Price> costs, final int[] cells, final double[] values, int count) {
+        for (final Map.Entry<? extends ElementModel, Price> entry: costs.entrySet()) {
+            final int id = entry.getKey().getId();
+            for (final WorkType workType: WorkType.values()) {
+                final Bounds bounds = entry.getValue().get(workType);
+                for (final Bound bound: Bound.values()) {
+                    final double value = bound.get(bounds);
+                    if (value == 0.0d) continue;
+                    cells[count] = cell(id, workType, bound);
+                    values[count] = value;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    public static int cell(final int modelId, final WorkType workType, final Bound bound) {
+        return modelId * CELLS_PER_MODEL + workType.ordinal() * Bound.values().length + bound.ordinal();
+    }
+
+    /**
+     * Returns the size of an accumulator covering every model of the environment.
+     */
+    public static int getCellCount(final Environment environment) {
+        return environment.getModelCount() * CELLS_PER_MODEL;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Returns the number of non-zero cells.
+     */
+    public int size() {
+        return cells.length;
+    }
+
+    /**
+     * Returns the cell index of the non-zero value at the position, positions being in ascending cell order.
+     */
+    public int getCell(final int position) {
+        return cells[position];
+    }
+
+    public double getValue(final int position) {
+        return values[position];
+    }
+
+    /**
+     * Adds all values into the accumulator indexed by {@link #cell(int, WorkType, Bound)}.
+     */
+    public void addTo(final double[] accumulator) {
+        final int[] cells = this.cells;
+        final double[] values = this.values;
+        for (int i = 0; i < cells.length; i++) {
+            accumulator[cells[i]] += values[i];
+        }
+    }
+
+    /**
+     * Returns the sum over all types and fields.
+     */
+    public double getTotal(final WorkType workType, final Bound bound) {
+        return totals[workType.ordinal() * Bound.values().length + bound.ordinal()];
+    }
+
+    public double get(final ElementModel<?> model, final WorkType workType, final Bound bound) {
+        final int found = Arrays.binarySearch(cells, cell(model.getId(), workType, bound));
+        return (found < 0) ? 0.0d : values[found];
+    }
+
+    /**
+     * Materializes a new, independent invoice.
+     */
+    public Invoice toInvoice() {
+        final Invoice invoice = new Invoice();
+        final double[] cellValues = new double[CELLS_PER_MODEL];
+        int i = 0;
+        while (i < cells.length) {
+            final int id = cells[i] / CELLS_PER_MODEL;
+            Arrays.fill(cellValues, 0.0d);
+            for (; (i < cells.length) && (cells[i] / CELLS_PER_MODEL == id); i++) {
+                cellValues[cells[i] % CELLS_PER_MODEL] = values[i];
+            }
+            final Bounds[] bounds = new Bounds[WorkType.values().length];
+            for (final WorkType workType: WorkType.values()) {
+                final int base = workType.ordinal() * Bound.values().length;
+                bounds[workType.ordinal()] = new Bounds(
+                        cellValues[base + Bound.MINIMUM.ordinal()],
+                        cellValues[base + Bound.AVERAGE.ordinal()],
+                        cellValues[base + Bound.PERCENTILE_95.ordinal()],
+                        cellValues[base + Bound.MAXIMUM.ordinal()]
+                );
+            }
+            final ElementModel<?> model = environment.getModel(id);
+            if (model instanceof FieldDefModel) {
+                invoice.add((FieldDefModel) model, Price.of(bounds));
+            } else {
+                invoice.add((OutputTypeModel) model, Price.of(bounds));
+            }
+        }
+        return invoice;
+    }
+}
@@ -0,0 +1,188 @@
+package net.susnjar.paniql.pricing;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Read-only view of an invoice encoded by {@link InvoiceCodec}. Values are
+ * read from the underlying buffer when asked for; nothing is materialized
+ * unless {@link #getPrice(ElementModel)} or {@link #toInvoice()} is used.
+ * Entry positions are indexed on the first lookup by model.
+ */
+public final class EncodedInvoice {
+    /**
+     * Receives the non-zero values of an encoded invoice.
+     */
+    public interface ValueConsumer {
+        void accept(int modelId, WorkType workType, Bound bound, double value);
+    }
+
+    private final Environment environment;
+    private final ByteBuffer buffer;
+    private final InvoiceCodec.Precision precision;
+    private final int entryCount;
+    private final int entriesStart;
+    private volatile int[] index;
+
+    EncodedInvoice(final Environment environment, final ByteBuffer buffer, final InvoiceCodec.Precision precision) {
+        this.environment = environment;
+        this.buffer = buffer;
+        this.precision = precision;
+        final ByteBuffer reader = buffer.duplicate();
+        reader.position(InvoiceCodec.HEADER_SIZE);
+        this.entryCount = getVarint(reader);
+        this.entriesStart = reader.position();
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public InvoiceCodec.Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the number of types and fields with any non-zero value.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getEncodedLength() {
+        return buffer.limit();
+    }
+
+    /**
+     * Returns a read-only view of the encoded bytes.
+     */
+    public ByteBuffer getBytes() {
+        return buffer.duplicate();
+    }
+
+    public boolean contains(final ElementModel<?> model) {
+        return find(model.getId()) >= 0;
+    }
+
+    public double get(final ElementModel<?> model, final WorkType workType, final Bound bound) {
+        final int position = find(model.getId());
+        if (position < 0) return 0.0d;
+        final ByteBuffer reader = buffer.duplicate();
+        reader.position(position);
+        getVarint(reader);
+        final int mask = getVarint(reader);
+        final int bit = InvoiceCodec.bit(workType, bound);
+        if ((mask & bit) == 0) return 0.0d;
+        reader.position(reader.position() + Integer.bitCount(mask & (bit - 1)) * precision.getBytes());
+        return getValue(reader);
+    }
+
+    /**
+     * Materializes the price of a single model, or returns {@code null} if it is not on the invoice.
+     */
+    public Price getPrice(final ElementModel<?> model) {
+        final int position = find(model.getId());
+        if (position < 0) return null;
+        final ByteBuffer reader = buffer.duplicate();
+        reader.position(position);
+        getVarint(reader);
+        return readPrice(reader, getVarint(reader));
+    }
+
+    /**
+     * Streams all non-zero values in model id order without materializing anything.
+     */
+    public void forEachValue(final ValueConsumer consumer) {
+        final ByteBuffer reader = buffer.duplicate();
+        reader.position(entriesStart);
+        for (int i = 0; i < entryCount; i++) {
+            final int modelId = getVarint(reader);
+            final int mask = getVarint(reader);
+            for (final WorkType workType: WorkType.values()) {
+                for (final Bound bound: Bound.values()) {
+                    if ((mask & InvoiceCodec.bit(workType, bound)) != 0) {
+                        consumer.accept(modelId, workType, bound, getValue(reader));
+                    }
+                }
+            }
+        }
+    }
+
+    public Invoice toInvoice() {
+        final Invoice invoice = new Invoice();
+        final ByteBuffer reader = buffer.duplicate();
+        reader.position(entriesStart);
+        for (int i = 0; i < entryCount; i++) {
+            final ElementModel<?> model = environment.getModel(getVarint(reader));
+            final Price price = readPrice(reader, getVarint(reader));
+            if (model instanceof FieldDefModel) {
+                invoice.add((FieldDefModel) model, price);
+            } else {
+                invoice.add((OutputTypeModel) model, price);
+            }
+        }
+        return invoice;
+    }
+
+    private Price readPrice(final ByteBuffer reader, final int mask) {
+        final Bounds[] bounds = new Bounds[WorkType.values().length];
+        final double[] values = new double[InvoiceCodec.BOUND_COUNT];
+        for (final WorkType workType: WorkType.values()) {
+            for (final Bound bound: Bound.values()) {
+                values[bound.ordinal()] = ((mask & InvoiceCodec.bit(workType, bound)) != 0) ? getValue(reader) : 0.0d;
+            }
+            bounds[workType.ordinal()] = new Bounds(
+                    values[Bound.MINIMUM.ordinal()],
+                    values[Bound.AVERAGE.ordinal()],
+                    values[Bound.PERCENTILE_95.ordinal()],
+                    values[Bound.MAXIMUM.ordinal()]
+            );
+        }
+        return Price.of(bounds);
+    }
+
+    private int find(final int modelId) {
+        int[] index = this.index;
+        if (index == null) {
+            index = buildIndex();
+            this.index = index;
+        }
+        final int found = Arrays.binarySearch(index, 0, entryCount, modelId);
+        return (found < 0) ? -1 : index[entryCount + found];
+    }
+
+    /**
+     * Returns model ids in the first half and the matching entry positions in the second.
+     */
+    private int[] buildIndex() {
+        final int[] index = new int[entryCount * 2];
+        final ByteBuffer reader = buffer.duplicate();
+        reader.position(entriesStart);
+        for (int i = 0; i < entryCount; i++) {
+            index[entryCount + i] = reader.position();
+            index[i] = getVarint(reader);
+            final int mask = getVarint(reader);
+            reader.position(reader.position() + Integer.bitCount(mask) * precision.getBytes());
+        }
+        return index;
+    }
+
+    private double getValue(final ByteBuffer reader) {
+        return (precision == InvoiceCodec.Precision.DOUBLE) ? reader.getDouble() : reader.getFloat();
+    }
+
+    private static int getVarint(final ByteBuffer reader) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = reader.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint.");
+    }
+}
@@ -0,0 +1,205 @@
+package net.susnjar.paniql.pricing;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.models.ElementModel;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary form of {@link Invoice invoices} for moving them between processes
+ * or keeping them off-heap.
+ *
+ * <p>Layout, big-endian:</p>
+ * <ol>
+ *     <li>1 byte: format version in the upper 4 bits, 1 in the lowest bit if values are doubles rather than floats.</li>
+ *     <li>8 bytes: {@linkplain Environment#getModelSignature() model signature} of the environment.</li>
+ *     <li>4 bytes: length of the rest.</li>
+ *     <li>varint: number of entries, followed by the entries in ascending model id order, each:<ul>
+ *         <li>varint: {@linkplain ElementModel#getId() model id},</li>
+ *         <li>varint: bitmask with bit {@code workType * 4 + bound} set for every non-zero value,</li>
+ *         <li>the non-zero values in bit order, as floats or doubles.</li>
+ *     </ul></li>
+ * </ol>
+ *
+ * <p>Decoding does not copy: {@link EncodedInvoice} reads values from the
+ * buffer on demand.</p>
+ */
+public class InvoiceCodec {
+    static final int VERSION = 1;
+    static final int DOUBLE_FLAG = 1;
+    static final int HEADER_SIZE = 1 + 8 + 4;
+    static final int BOUND_COUNT = Bound.values().length;
+
+    public enum Precision {
+        FLOAT(Float.BYTES),
+        DOUBLE(Double.BYTES);
+
+        private final int bytes;
+
+        Precision(final int bytes) {
+            this.bytes = bytes;
+        }
+
+        public int getBytes() {
+            return bytes;
+        }
+    }
+
+    private final Environment environment;
+    private final Precision precision;
+
+    public InvoiceCodec(final Environment environment) {
+        this(environment, Precision.DOUBLE);
+    }
+
+    public InvoiceCodec(final Environment environment, final Precision precision) {
+        this.environment = environment;
+        this.precision = precision;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns the exact number of bytes {@link #encode(Invoice, ByteBuffer)} will write.
+     */
+    public int getEncodedSize(final Invoice invoice) {
+        final List<Map.Entry<ElementModel<?>, Price>> entries = entries(invoice);
+        int size = HEADER_SIZE + varintSize(entries.size());
+        for (final Map.Entry<ElementModel<?>, Price> entry: entries) {
+            final int mask = mask(entry.getValue());
+            size += varintSize(entry.getKey().getId()) + varintSize(mask) + Integer.bitCount(mask) * precision.getBytes();
+        }
+        return size;
+    }
+
+    /**
+     * Writes the invoice at the position of the target, advancing it.
+     *
+     * @return number of bytes written.
+     * @throws java.nio.BufferOverflowException if the target does not have enough room.
+     */
+    public int encode(final Invoice invoice, final ByteBuffer target) {
+        final ByteOrder originalOrder = target.order();
+        target.order(ByteOrder.BIG_ENDIAN);
+        try {
+            final int start = target.position();
+            final List<Map.Entry<ElementModel<?>, Price>> entries = entries(invoice);
+            target.put((byte) ((VERSION << 4) | ((precision == Precision.DOUBLE) ? DOUBLE_FLAG : 0)));
+            target.putLong(environment.getModelSignature());
+            final int lengthPosition = target.position();
+            target.putInt(0);
+            putVarint(target, entries.size());
+            for (final Map.Entry<ElementModel<?>, Price> entry: entries) {
+                final Price price = entry.getValue();
+                final int mask = mask(price);
+                putVarint(target, entry.getKey().getId());
+                putVarint(target, mask);
+                for (final WorkType workType: WorkType.values()) {
+                    final Bounds bounds = price.get(workType);
+                    for (final Bound bound: Bound.values()) {
+                        if ((mask & bit(workType, bound)) == 0) continue;
+                        if (precision == Precision.DOUBLE) {
+                            target.putDouble(bound.get(bounds));
+                        } else {
+                            target.putFloat((float) bound.get(bounds));
+                        }
+                    }
+                }
+            }
+            target.putInt(lengthPosition, target.position() - lengthPosition - Integer.BYTES);
+            return target.position() - start;
+        } finally {
+            target.order(originalOrder);
+        }
+    }
+
+    public ByteBuffer encode(final Invoice invoice) {
+        final ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize(invoice));
+        encode(invoice, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Wraps the encoded invoice at the position of the source, advancing it past the invoice.
+     * The returned view shares the content of the source, which must not change while in use.
+     */
+    public EncodedInvoice decode(final ByteBuffer source) {
+        final ByteBuffer view = source.slice().order(ByteOrder.BIG_ENDIAN);
+        if (view.remaining() < HEADER_SIZE) throw new BufferUnderflowException();
+        final int flags = view.get(0) & 0xff;
+        if ((flags >>> 4) != VERSION) throw new IllegalArgumentException("Unsupported invoice format version: " + (flags >>> 4));
+        if (view.getLong(1) != environment.getModelSignature()) {
+            throw new IllegalArgumentException("Invoice was encoded for a different schema.");
+        }
+        final int length = HEADER_SIZE + view.getInt(1 + 8);
+        if ((length < HEADER_SIZE) || (length > view.remaining())) throw new BufferUnderflowException();
+        view.limit(length);
+        source.position(source.position() + length);
+        final Precision precision = ((flags & DOUBLE_FLAG) != 0) ? Precision.DOUBLE : Precision.FLOAT;
+        return new EncodedInvoice(environment, view.asReadOnlyBuffer().order(ByteOrder.BIG_ENDIAN), precision);
+    }
+
+    private static List<Map.Entry<ElementModel<?>, Price>> entries(final Invoice invoice) {
+        final List<Map.Entry<ElementModel<?>, Price>> entries = new ArrayList<>(
+                invoice.getResourceCosts().size() + invoice.getPartCosts().size() + invoice.getFieldCosts().size()
+        );
+        addEntries(entries, invoice.getResourceCosts());
+        addEntries(entries, invoice.getPartCosts());
+        addEntries(entries, invoice.getFieldCosts());
+        entries.sort(Comparator.comparingInt(entry -> entry.getKey().getId()));
+        return entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addEntries(final List<Map.Entry<ElementModel<?>, Price>> entries, final Map<? extends ElementModel, Price> costs) {
+        for (final Map.Entry<? extends ElementModel, Price> entry: costs.entrySet()) {
+            if (entry.getKey().getId() < 0) throw new IllegalArgumentException("Model has no id: " + entry.getKey());
+            entries.add((Map.Entry<ElementModel<?>, Price>) (Map.Entry<?, Price>) entry);
+        }
+    }
+
+    private static int mask(final Price price) {
+        int mask = 0;
+        for (final WorkType workType: WorkType.values()) {
+            final Bounds bounds = price.get(workType);
+            for (final Bound bound: Bound.values()) {
+                if (bound.get(bounds) != 0.0d) mask |= bit(workType, bound);
+            }
+        }
+        return mask;
+    }
+
+    static int bit(final WorkType workType, final Bound bound) {
+        return 1 << (workType.ordinal() * BOUND_COUNT + bound.ordinal());
+    }
+
+    static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static void putVarint(final ByteBuffer target, int value) {
+        while ((value & ~0x7f) != 0) {
+            target.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        target.put((byte) value);
+    }
+}
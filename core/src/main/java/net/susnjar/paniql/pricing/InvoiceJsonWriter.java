@@ -0,0 +1,216 @@
+package net.susnjar.paniql.pricing;
+
+import net.susnjar.paniql.models.ElementModel;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Streams {@link Invoice invoices} as JSON without building an intermediate tree:
+ *
+ * <pre>
+ * {
+ *   "resources": { "File": { "access": { "min": 0, "avg": 50, "p95": 500, "max": 1000 }, ... }, ... },
+ *   "parts": { ... },
+ *   "fields": { "File.fromREST": { ... }, ... },
+ *   "totals": { "resources": { ... }, "parts": { ... }, "fields": { ... }, "grand": { ... } }
+ * }
+ * </pre>
+ *
+ * <p>Work types and bounds are keyed by their ids. Models are written in
+ * {@linkplain ElementModel#getId() id} order, which is name order, and work
+ * types and bounds in declaration order, so equal invoices always produce
+ * equal text. Work types that are always zero are left out unless
+ * {@linkplain #setIncludeZeros(boolean) requested}.</p>
+ */
+public class InvoiceJsonWriter {
+    private static final int CELLS = WorkType.values().length * Bound.values().length;
+    private static final double MAX_EXACT_LONG = 1e15d;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private boolean includeZeros = false;
+
+    public void setIncludeZeros(final boolean includeZeros) {
+        this.includeZeros = includeZeros;
+    }
+
+    public String toJson(final Invoice invoice) {
+        final StringBuilder out = new StringBuilder(256);
+        try {
+            write(invoice, out);
+        } catch (IOException x) {
+            throw new IllegalStateException("StringBuilder does not throw.", x);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes UTF-8 JSON to the stream and flushes it, leaving it open.
+     */
+    public void write(final Invoice invoice, final OutputStream out) throws IOException {
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        write(invoice, writer);
+        writer.flush();
+    }
+
+    public void write(final Invoice invoice, final Appendable out) throws IOException {
+        final double[] resources = new double[CELLS];
+        final double[] parts = new double[CELLS];
+        final double[] fields = new double[CELLS];
+
+        out.append("{\"resources\":");
+        writeSection(out, invoice.getResourceCosts(), resources);
+        out.append(",\"parts\":");
+        writeSection(out, invoice.getPartCosts(), parts);
+        out.append(",\"fields\":");
+        writeSection(out, invoice.getFieldCosts(), fields);
+
+        final double[] grand = new double[CELLS];
+        for (int i = 0; i < CELLS; i++) {
+            grand[i] = resources[i] + parts[i] + fields[i];
+        }
+        out.append(",\"totals\":{\"resources\":");
+        writeCells(out, resources);
+        out.append(",\"parts\":");
+        writeCells(out, parts);
+        out.append(",\"fields\":");
+        writeCells(out, fields);
+        out.append(",\"grand\":");
+        writeCells(out, grand);
+        out.append("}}");
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeSection(final Appendable out, final Map<? extends ElementModel, Price> costs, final double[] subtotal) throws IOException {
+        final Map.Entry<? extends ElementModel, Price>[] entries = costs.entrySet().toArray(new Map.Entry[0]);
+        Arrays.sort(entries, Comparator.comparingInt(entry -> entry.getKey().getId()));
+
+        out.append('{');
+        boolean first = true;
+        for (final Map.Entry<? extends ElementModel, Price> entry: entries) {
+            if (!first) out.append(',');
+            first = false;
+            writeString(out, entry.getKey().getFullyQualifiedName());
+            out.append(':');
+            writePrice(out, entry.getValue(), subtotal);
+        }
+        out.append('}');
+    }
+
+    private void writePrice(final Appendable out, final Price price, final double[] subtotal) throws IOException {
+        out.append('{');
+        boolean first = true;
+        for (final WorkType workType: WorkType.values()) {
+            final Bounds bounds = price.get(workType);
+            for (final Bound bound: Bound.values()) {
+                subtotal[cell(workType, bound)] += bound.get(bounds);
+            }
+            if (!includeZeros && bounds.isAlwaysZero()) continue;
+            if (!first) out.append(',');
+            first = false;
+            writeString(out, workType.getId());
+            out.append(":{");
+            for (final Bound bound: Bound.values()) {
+                if (bound.ordinal() > 0) out.append(',');
+                writeString(out, bound.getId());
+                out.append(':');
+                writeNumber(out, bound.get(bounds));
+            }
+            out.append('}');
+        }
+        out.append('}');
+    }
+
+    private void writeCells(final Appendable out, final double[] cells) throws IOException {
+        out.append('{');
+        boolean first = true;
+        for (final WorkType workType: WorkType.values()) {
+            if (!includeZeros && isZero(cells, workType)) continue;
+            if (!first) out.append(',');
+            first = false;
+            writeString(out, workType.getId());
+            out.append(":{");
+            for (final Bound bound: Bound.values()) {
+                if (bound.ordinal() > 0) out.append(',');
+                writeString(out, bound.getId());
+                out.append(':');
+                writeNumber(out, cells[cell(workType, bound)]);
+            }
+            out.append('}');
+        }
+        out.append('}');
+    }
+
+    private static boolean isZero(final double[] cells, final WorkType workType) {
+        for (final Bound bound: Bound.values()) {
+            if (cells[cell(workType, bound)] != 0.0d) return false;
+        }
+        return true;
+    }
+
+    private static int cell(final WorkType workType, final Bound bound) {
+        return workType.ordinal() * Bound.values().length + bound.ordinal();
+    }
+
+    public static void writeNumber(final Appendable out, final double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("null");
+        } else if ((value == Math.rint(value)) && (Math.abs(value) < MAX_EXACT_LONG)) {
+            writeLong(out, (long) value);
+        } else {
+            out.append(Double.toString(value));
+        }
+    }
+
+    private static void writeLong(final Appendable out, long value) throws IOException {
+        if (value < 0) {
+            out.append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.append((char) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    public static void writeString(final Appendable out, final CharSequence value) throws IOException {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00").append(HEX[c >>> 4]).append(HEX[c & 0xf]);
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+}
@@ -8,4 +8,9 @@ public interface Pricer {
     Price getCost(final Bounds quantities);
 
     boolean isFree();
+
+    /**
+     * Tells whether costs are proportional to quantities, i.e. {@code getCost(q).times(f)} equals {@code getCost(q.times(f))}.
+     */
+    boolean isLinear();
 }
@@ -47,6 +47,11 @@ public class StepPricer implements Pricer {
         return baseCost.isFree() && unitCost.isFree();
     }
 
+    @Override
+    public boolean isLinear() {
+        return baseCost.isFree();
+    }
+
     @Override
     public Price getCost(final Bounds quantities) {
         final Price base = getbaseCost();
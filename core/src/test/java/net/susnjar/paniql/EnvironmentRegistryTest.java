@@ -0,0 +1,147 @@
+package net.susnjar.paniql;
+
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class EnvironmentRegistryTest {
+    private static final String EXTRA = "type Extra @paniql(unit: { local: { const: 1 } }) { id: ID! @paniql(unit: { trivial: { const: 1.0 }}) }";
+
+    @Test
+    void sharesEnvironmentsAndDirectives() throws IOException {
+        final String base = readTestSchema();
+        final Map<String, List<String>> versions = Map.of(
+                "v1", List.of(base),
+                "v2", List.of(base, EXTRA)
+        );
+        final EnvironmentRegistry registry = new EnvironmentRegistry((tenant, version) -> versions.get(version), 10_000);
+
+        final Environment a1 = registry.get("a", "v1");
+        Assertions.assertSame(a1, registry.get("a", "v1"));
+        Assertions.assertSame(a1, registry.get("b", "v1"));
+        final Environment a2 = registry.get("a", "v2");
+        Assertions.assertNotSame(a1, a2);
+        Assertions.assertNotNull(a2.getOutputType("Extra"));
+        Assertions.assertNull(a1.getOutputType("Extra"));
+
+        Assertions.assertEquals(3, registry.size());
+        Assertions.assertEquals(2, registry.getEnvironmentCount());
+        Assertions.assertEquals(2, registry.getPartCount());
+        Assertions.assertEquals(2, registry.getBuildCount());
+        Assertions.assertEquals(a1.getModelCount() + a2.getModelCount(), registry.getWeight());
+
+        final FieldDefModel files1 = a1.getOutputType("Folder").getField("files");
+        final FieldDefModel files2 = a2.getOutputType("Folder").getField("files");
+        Assertions.assertNotSame(files1, files2);
+        Assertions.assertSame(files1.getCardinality(), files2.getCardinality());
+
+        final Invoice expected = TestSchema.createEnvironment().invoice(TestSchema.FOLDER_FILES);
+        final Invoice actual = a2.invoice(TestSchema.FOLDER_FILES);
+        Assertions.assertEquals(
+                expected.getFieldCosts().size(),
+                actual.getFieldCosts().size()
+        );
+        Assertions.assertEquals(
+                expected.getFieldCosts().values().stream().mapToDouble(p -> p.get(WorkType.INEFFICIENT_REMOTE_API_CALL).getMaximum()).sum(),
+                actual.getFieldCosts().values().stream().mapToDouble(p -> p.get(WorkType.INEFFICIENT_REMOTE_API_CALL).getMaximum()).sum()
+        );
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEnvironments() throws IOException {
+        final String base = readTestSchema();
+        final EnvironmentRegistry probe = new EnvironmentRegistry((tenant, version) -> List.of(base), 10_000);
+        final int modelCount = probe.get("any", "any").getModelCount();
+
+        final EnvironmentRegistry registry = new EnvironmentRegistry(
+                (tenant, version) -> List.of(base, "type V" + version + " { id: ID! }"),
+                modelCount * 2 + 10
+        );
+        final Environment v1 = registry.get("a", "1");
+        registry.get("a", "2");
+        Assertions.assertSame(v1, registry.get("a", "1"));
+        registry.get("a", "3");
+
+        Assertions.assertEquals(2, registry.getEnvironmentCount());
+        Assertions.assertTrue(registry.getWeight() <= registry.getMaximumWeight());
+        Assertions.assertSame(v1, registry.get("a", "1"));
+        Assertions.assertEquals(3, registry.getLoadCount());
+
+        registry.get("a", "2");
+        Assertions.assertEquals(4, registry.getBuildCount());
+        Assertions.assertEquals(3, registry.getPartCount());
+
+        Assertions.assertTrue(registry.evict("a", "2"));
+        Assertions.assertFalse(registry.evict("a", "2"));
+        Assertions.assertEquals(1, registry.getEnvironmentCount());
+        Assertions.assertEquals(2, registry.getPartCount());
+    }
+
+    @Test
+    void loadsOtherKeysWhileOneIsSlow() throws Exception {
+        final String base = readTestSchema();
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EnvironmentRegistry registry = new EnvironmentRegistry((tenant, version) -> {
+            if ("slow".equals(tenant)) {
+                slowStarted.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException x) {
+                    throw new IOException(x);
+                }
+            }
+            return List.of(base);
+        }, 10_000);
+
+        final CompletableFuture<Environment> slow = CompletableFuture.supplyAsync(() -> get(registry, "slow"));
+        final CompletableFuture<Environment> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                slowStarted.await();
+            } catch (InterruptedException x) {
+                throw new IllegalStateException(x);
+            }
+            return get(registry, "slow");
+        });
+        slowStarted.await();
+        final Environment fast = registry.get("fast", "v1");
+        Assertions.assertFalse(slow.isDone());
+
+        release.countDown();
+        Assertions.assertSame(fast, slow.get(10, TimeUnit.SECONDS));
+        Assertions.assertSame(fast, waiting.get(10, TimeUnit.SECONDS));
+        Assertions.assertEquals(2, registry.getLoadCount());
+        Assertions.assertEquals(1, registry.getBuildCount());
+
+        Assertions.assertTrue(registry.getInterner().getPriceCount() > 0);
+        registry.clear();
+        Assertions.assertEquals(0, registry.getInterner().getPriceCount());
+        Assertions.assertEquals(0, registry.getInterner().getBoundsCount());
+    }
+
+    private static Environment get(final EnvironmentRegistry registry, final String tenant) {
+        try {
+            return registry.get(tenant, "v1");
+        } catch (IOException x) {
+            throw new UncheckedIOException(x);
+        }
+    }
+
+    private static String readTestSchema() throws IOException {
+        try (final InputStream in = EnvironmentRegistryTest.class.getResourceAsStream("TestSchema.graphqls")) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
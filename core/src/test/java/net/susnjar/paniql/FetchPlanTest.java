@@ -0,0 +1,41 @@
+package net.susnjar.paniql;
+
+import io.github.classgraph.Resource;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+
+public class FetchPlanTest extends CoreResourceDrivenTest {
+    @TestFactory
+    Collection<DynamicTest> planTests() throws IOException {
+        return discoverTests("graphql");
+    }
+
+    @Override
+    protected void runTest(final Resource resource) throws IOException {
+        final String request = getResourceAsString(resource);
+        final Environment environment = new Environment(loadSchema());
+        final Invoice invoice = environment.invoice(request);
+        final FetchPlan plan = environment.plan(request);
+        System.out.println(plan.toJson());
+
+        Assertions.assertEquals(invoice.getFieldCosts().isEmpty(), plan.getSteps().isEmpty());
+        for (final FetchPlan.Step step: plan.getSteps()) {
+            Assertions.assertNotNull(invoice.getFieldCosts().get(step.getField()));
+            Assertions.assertTrue(step.getPath().startsWith("top.sub."));
+            Assertions.assertEquals(step.getStrategy() == FetchPlan.Strategy.REMOTE, !step.getRemoteCalls().isAlwaysZero());
+        }
+
+        for (final FetchPlan.Step step: plan.getRemoteCalls()) {
+            Assertions.assertTrue(step.getBatchSize().getPercentile95() >= step.getBatchSize().getAverage());
+            Assertions.assertTrue(invoice.getFieldCosts().get(step.getField()).get(WorkType.INEFFICIENT_REMOTE_API_CALL).getMaximum()
+                    + invoice.getFieldCosts().get(step.getField()).get(WorkType.EFFICIENT_REMOTE_API_CALL).getMaximum() > 0);
+        }
+        Assertions.assertTrue(plan.toJson().startsWith("{\"steps\":["));
+    }
+}
@@ -0,0 +1,58 @@
+package net.susnjar.paniql;
+
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.Footprint;
+import net.susnjar.paniql.models.ModelSet;
+import net.susnjar.paniql.models.OutputTypeModel;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class FootprintTest {
+    @Test
+    void compactsRelations() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final OutputTypeModel<?, ?> entry = environment.getOutputType("Entry");
+        final OutputTypeModel<?, ?> file = environment.getOutputType("File");
+        final OutputTypeModel<?, ?> folder = environment.getOutputType("Folder");
+
+        Assertions.assertTrue(entry.getAllObjectTypes() instanceof ModelSet);
+        Assertions.assertEquals(2, entry.getAllObjectTypes().size());
+        Assertions.assertTrue(entry.getAllObjectTypes().contains(file));
+        Assertions.assertTrue(entry.getAllObjectTypes().contains(folder));
+        Assertions.assertFalse(entry.getAllObjectTypes().contains(entry));
+        Assertions.assertTrue(file.is(entry));
+        Assertions.assertFalse(entry.is(file));
+        Assertions.assertSame(ModelSet.empty(), file.getAllSpecializations());
+        Assertions.assertSame(ModelSet.empty(), entry.getDirectGeneralizations());
+
+        final FieldDefModel container = entry.getField("container");
+        Assertions.assertTrue(container.getAllSpecializations().contains(folder.getField("container")));
+        Assertions.assertTrue(container.getAllSpecializations().contains(file.getField("container")));
+        Assertions.assertTrue(file.getField("container").getAllGeneralizations().contains(container));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> container.getAllSpecializations().clear());
+
+        final Environment other = TestSchema.createEnvironment();
+        Assertions.assertFalse(entry.getAllObjectTypes().contains(other.getOutputType("File")));
+    }
+
+    @Test
+    void reportsFootprintByCategory() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Footprint footprint = environment.footprint();
+
+        long sum = 0;
+        for (final Footprint.Category category: Footprint.Category.values()) {
+            if (category != Footprint.Category.JOINS) {
+                Assertions.assertTrue(footprint.getBytes(category) > 0, category.getId());
+            }
+            sum += footprint.getBytes(category);
+        }
+        Assertions.assertEquals(sum, footprint.getTotalBytes());
+        Assertions.assertTrue(footprint.getCount(Footprint.Category.FIELDS) > footprint.getCount(Footprint.Category.TYPES) / 2);
+        Assertions.assertEquals(environment.getModelCount(),
+                footprint.getCount(Footprint.Category.TYPES) + footprint.getCount(Footprint.Category.FIELDS));
+        Assertions.assertTrue(footprint.toString().contains("relations"));
+    }
+}
@@ -0,0 +1,61 @@
+package net.susnjar.paniql;
+
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares invoices by the fully qualified names of their models, so they may come from different environments.
+ */
+public final class InvoiceAssertions {
+    private InvoiceAssertions() {
+    }
+
+    public static void assertSameCosts(final Invoice expected, final Invoice actual) {
+        assertCloseCosts(expected, actual, 0.0d);
+    }
+
+    /**
+     * @param relativeTolerance allowed difference of every bound, relative to its expected value.
+     */
+    public static void assertCloseCosts(final Invoice expected, final Invoice actual, final double relativeTolerance) {
+        assertCloseCosts(expected.getResourceCosts(), actual.getResourceCosts(), relativeTolerance);
+        assertCloseCosts(expected.getPartCosts(), actual.getPartCosts(), relativeTolerance);
+        assertCloseCosts(expected.getFieldCosts(), actual.getFieldCosts(), relativeTolerance);
+    }
+
+    private static void assertCloseCosts(
+            final Map<? extends ElementModel, Price> expected,
+            final Map<? extends ElementModel, Price> actual,
+            final double relativeTolerance
+    ) {
+        final Map<String, Price> expectedByName = byName(expected);
+        final Map<String, Price> actualByName = byName(actual);
+        Assertions.assertEquals(expectedByName.keySet(), actualByName.keySet());
+        for (final Map.Entry<String, Price> entry: expectedByName.entrySet()) {
+            for (final WorkType workType: WorkType.values()) {
+                for (final Bound bound: Bound.values()) {
+                    final double value = bound.get(entry.getValue().get(workType));
+                    Assertions.assertEquals(
+                            value,
+                            bound.get(actualByName.get(entry.getKey()).get(workType)),
+                            Math.abs(value) * relativeTolerance,
+                            entry.getKey() + " " + workType + " " + bound
+                    );
+                }
+            }
+        }
+    }
+
+    private static Map<String, Price> byName(final Map<? extends ElementModel, Price> costs) {
+        final Map<String, Price> byName = new TreeMap<>();
+        costs.forEach((model, price) -> byName.put(model.getFullyQualifiedName(), price));
+        return byName;
+    }
+}
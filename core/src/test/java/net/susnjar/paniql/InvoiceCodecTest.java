@@ -0,0 +1,82 @@
+package net.susnjar.paniql;
+
+import io.github.classgraph.Resource;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.EncodedInvoice;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.InvoiceCodec;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Map;
+
+public class InvoiceCodecTest extends CoreResourceDrivenTest {
+    @TestFactory
+    Collection<DynamicTest> codecTests() throws IOException {
+        return discoverTests("graphql");
+    }
+
+    @Override
+    protected void runTest(final Resource resource) throws IOException {
+        final Environment environment = new Environment(loadSchema());
+        final Invoice invoice = environment.invoice(getResourceAsString(resource));
+
+        final InvoiceCodec codec = new InvoiceCodec(environment);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(codec.getEncodedSize(invoice) + 3);
+        buffer.position(3);
+        final int written = codec.encode(invoice, buffer);
+        Assertions.assertEquals(codec.getEncodedSize(invoice), written);
+        Assertions.assertFalse(buffer.hasRemaining());
+
+        buffer.position(3);
+        final EncodedInvoice encoded = new InvoiceCodec(new Environment(loadSchema())).decode(buffer);
+        Assertions.assertFalse(buffer.hasRemaining());
+        Assertions.assertEquals(written, encoded.getEncodedLength());
+        Assertions.assertEquals(
+                invoice.getResourceCosts().size() + invoice.getPartCosts().size() + invoice.getFieldCosts().size(),
+                encoded.getEntryCount()
+        );
+
+        for (final Map.Entry<OutputTypeModel, Price> entry: invoice.getResourceCosts().entrySet()) {
+            final OutputTypeModel<?, ?> type = encoded.getEnvironment().getOutputType(entry.getKey().getSimpleName());
+            assertSamePrice(entry.getValue(), encoded, type);
+        }
+        for (final Map.Entry<FieldDefModel, Price> entry: invoice.getFieldCosts().entrySet()) {
+            assertSamePrice(entry.getValue(), encoded, encoded.getEnvironment().getModel(entry.getKey().getId()));
+        }
+
+        final Invoice decoded = encoded.toInvoice();
+        Assertions.assertEquals(invoice.getResourceCosts().size(), decoded.getResourceCosts().size());
+        Assertions.assertEquals(invoice.getPartCosts().size(), decoded.getPartCosts().size());
+        Assertions.assertEquals(invoice.getFieldCosts().size(), decoded.getFieldCosts().size());
+
+        final InvoiceCodec floats = new InvoiceCodec(environment, InvoiceCodec.Precision.FLOAT);
+        final ByteBuffer compact = floats.encode(invoice);
+        Assertions.assertTrue(compact.remaining() <= written);
+        final EncodedInvoice approximate = floats.decode(compact);
+        for (final Map.Entry<OutputTypeModel, Price> entry: invoice.getResourceCosts().entrySet()) {
+            final double expected = entry.getValue().get(WorkType.INSTANCE_ACCESS).getMaximum();
+            Assertions.assertEquals(expected, approximate.get(entry.getKey(), WorkType.INSTANCE_ACCESS, Bound.MAXIMUM), expected * 1e-6);
+        }
+    }
+
+    private static void assertSamePrice(final Price expected, final EncodedInvoice encoded, final ElementModel<?> model) {
+        Assertions.assertTrue(encoded.contains(model));
+        final Price actual = encoded.getPrice(model);
+        for (final WorkType workType: WorkType.values()) {
+            Assertions.assertEquals(expected.get(workType), actual.get(workType));
+            for (final Bound bound: Bound.values()) {
+                Assertions.assertEquals(bound.get(expected.get(workType)), encoded.get(model, workType, bound));
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.susnjar.paniql;
+
+import io.github.classgraph.Resource;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.InvoiceJsonWriter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+public class InvoiceJsonWriterTest extends CoreResourceDrivenTest {
+    @TestFactory
+    Collection<DynamicTest> jsonTests() throws IOException {
+        return discoverTests("graphql");
+    }
+
+    @Override
+    protected void runTest(final Resource resource) throws IOException {
+        final String request = getResourceAsString(resource);
+        final Invoice invoice = new Environment(loadSchema()).invoice(request);
+        final InvoiceJsonWriter writer = new InvoiceJsonWriter();
+
+        final String json = writer.toJson(invoice);
+        System.out.println(json);
+        Assertions.assertTrue(json.startsWith("{\"resources\":{"));
+        Assertions.assertTrue(json.contains(",\"totals\":{\"resources\":"));
+        Assertions.assertEquals(json, writer.toJson(new Environment(loadSchema()).invoice(request)));
+
+        int depth = 0;
+        for (final char c: json.toCharArray()) {
+            if (c == '{') depth++;
+            if (c == '}') depth--;
+            Assertions.assertTrue(depth >= 0);
+        }
+        Assertions.assertEquals(0, depth);
+
+        for (final OutputTypeModel type: invoice.getResourceCosts().keySet()) {
+            Assertions.assertTrue(json.contains("\"" + type.getFullyQualifiedName() + "\":{"));
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        writer.write(invoice, bytes);
+        Assertions.assertEquals(json, bytes.toString(StandardCharsets.UTF_8));
+
+        writer.setIncludeZeros(true);
+        Assertions.assertTrue(writer.toJson(invoice).length() >= json.length());
+    }
+}
@@ -0,0 +1,93 @@
+package net.susnjar.paniql;
+
+import io.github.classgraph.Resource;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.Footprint;
+import net.susnjar.paniql.models.ModelInterner;
+import net.susnjar.paniql.pricing.Invoice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LazyEnvironmentTest extends CoreResourceDrivenTest {
+    @TestFactory
+    Collection<DynamicTest> lazyTests() throws IOException {
+        return discoverTests("graphql");
+    }
+
+    @Override
+    protected void runTest(final Resource resource) throws IOException {
+        final String request = getResourceAsString(resource);
+        final Environment eager = new Environment(loadSchema());
+        final Environment lazy = new Environment(loadSchema(), new ModelInterner(), true);
+
+        Assertions.assertTrue(lazy.isLazy());
+        Assertions.assertEquals(0, lazy.getMaterializedTypeCount());
+        InvoiceAssertions.assertSameCosts(eager.invoice(request), lazy.invoice(request));
+        InvoiceAssertions.assertSameCosts(eager.invoice(request), lazy.invoice(request));
+    }
+
+    @Test
+    void assignsEagerIds() throws IOException {
+        final Environment eager = new Environment(loadSchema());
+        final Environment lazy = new Environment(loadSchema(), new ModelInterner(), true);
+
+        Assertions.assertFalse(eager.isLazy());
+        Assertions.assertEquals(eager.getModelSignature(), lazy.getModelSignature());
+
+        lazy.invoice("{ top { sub { root { id } } } }");
+        final int partial = lazy.getMaterializedTypeCount();
+        Assertions.assertTrue(partial > 0);
+        Assertions.assertTrue(partial < eager.getMaterializedTypeCount());
+        Assertions.assertEquals(eager.getModelCount(), lazy.getModelCount());
+        int unmaterialized = 0;
+        for (int id = 0; id < lazy.getModelCount(); id++) {
+            if (lazy.findModel(id) == null) unmaterialized++;
+        }
+        Assertions.assertTrue(unmaterialized > 0);
+
+        for (int id = 0; id < eager.getModelCount(); id++) {
+            final ElementModel<?> expected = eager.getModel(id);
+            final ElementModel<?> actual = lazy.getModel(id);
+            Assertions.assertEquals(expected.getFullyQualifiedName(), actual.getFullyQualifiedName());
+            Assertions.assertEquals(id, actual.getId());
+            Assertions.assertEquals(expected.getCardinality(), actual.getCardinality(), expected.getFullyQualifiedName());
+        }
+        Assertions.assertEquals(eager.getMaterializedTypeCount(), lazy.getMaterializedTypeCount());
+        Assertions.assertEquals(eager.footprint().getCount(Footprint.Category.FIELDS),
+                lazy.footprint().getCount(Footprint.Category.FIELDS));
+    }
+
+    @Test
+    void materializesConcurrently() throws Exception {
+        final List<String> requests = new ArrayList<>();
+        for (final Resource resource: getResourcesWithExtension("graphql")) {
+            requests.add(getResourceAsString(resource));
+        }
+        final Environment eager = new Environment(loadSchema());
+        final Environment lazy = new Environment(loadSchema(), new ModelInterner(), true);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Invoice>> invoices = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                final String request = requests.get(i % requests.size());
+                invoices.add(executor.submit(() -> lazy.invoice(request)));
+            }
+            for (int i = 0; i < invoices.size(); i++) {
+                InvoiceAssertions.assertSameCosts(eager.invoice(requests.get(i % requests.size())), invoices.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package net.susnjar.paniql;
+
+import graphql.language.OperationDefinition;
+import graphql.parser.Parser;
+import io.github.classgraph.Resource;
+import net.susnjar.paniql.pricing.Invoice;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+public class SubtreeCacheTest extends CoreResourceDrivenTest {
+    @TestFactory
+    Collection<DynamicTest> cacheTests() throws IOException {
+        return discoverTests("graphql");
+    }
+
+    @Override
+    protected void runTest(final Resource resource) throws IOException {
+        final String request = getResourceAsString(resource);
+        final Environment environment = new Environment(loadSchema());
+        final Invoice expected = environment.invoice(request);
+
+        final SubtreeCache cache = new SubtreeCache(10_000);
+        environment.setSubtreeCache(cache);
+
+        InvoiceAssertions.assertCloseCosts(expected, environment.invoice(request), 1e-9);
+        final long misses = cache.getMissCount();
+        Assertions.assertTrue(cache.size() > 0);
+        Assertions.assertTrue(cache.getWeight() <= cache.getMaximumWeight());
+
+        InvoiceAssertions.assertCloseCosts(expected, environment.invoice(request), 1e-9);
+        Assertions.assertEquals(misses, cache.getMissCount());
+        Assertions.assertTrue(cache.getHitCount() > 0);
+
+        final SubtreeCache tiny = new SubtreeCache(8);
+        environment.setSubtreeCache(tiny);
+        InvoiceAssertions.assertCloseCosts(expected, environment.invoice(request), 1e-9);
+        InvoiceAssertions.assertCloseCosts(expected, environment.invoice(request), 1e-9);
+        Assertions.assertTrue(tiny.getWeight() <= 8);
+
+        environment.setSubtreeCache(cache);
+        cache.clear();
+        Assertions.assertEquals(0, cache.size());
+        Assertions.assertEquals(0, cache.getWeight());
+    }
+
+    @Test
+    void keysSelectionsByTheirCanonicalText() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final String spread = selectionKey(environment, "{ top { sub { folder(id: 1) { ...f } } } } fragment f on Folder { files { id } }");
+        Assertions.assertEquals(spread, selectionKey(environment, "{ top { sub { folder(id: 2) { ... on Folder { files { id } } } } } }"));
+        Assertions.assertNotEquals(spread, selectionKey(environment, "{ top { sub { folder(id: 1) { files { id name } } } } }"));
+        Assertions.assertNotEquals(
+                selectionKey(environment, "{ top { sub { folder(id: 1) { files { id } name } } } }"),
+                selectionKey(environment, "{ top { sub { folder(id: 1) { files { id name } } } } }")
+        );
+        Assertions.assertNotEquals(
+                selectionKey(environment, "{ top { sub { folder(id: 1) { name: id } } } }"),
+                selectionKey(environment, "{ top { sub { folder(id: 1) { id } } } }")
+        );
+    }
+
+    private static String selectionKey(final Environment environment, final String query) {
+        final Request request = new Request(Parser.parse(query), environment);
+        final OperationDefinition operation = Parser.parse(query).getDefinitionsOfType(OperationDefinition.class).get(0);
+        return request.selectionKey(List.of(operation.getSelectionSet()));
+    }
+}
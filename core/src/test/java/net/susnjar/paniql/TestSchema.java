@@ -0,0 +1,50 @@
+package net.susnjar.paniql;
+
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import io.github.classgraph.Resource;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Schema and requests shared by tests that are not driven by resources themselves.
+ */
+public final class TestSchema {
+    public static final String FOLDER_FILES = "{ top { sub { folder(id: 1) { files { id name fromREST } } } } }";
+
+    private static final String RESOURCE_PATH = ResourceDrivenTest.getResourcePath(TestSchema.class);
+
+    private TestSchema() {
+    }
+
+    public static TypeDefinitionRegistry load() throws IOException {
+        final StringBuilder schemaBuilder = new StringBuilder(16384);
+
+        for (final Resource resource: ResourceDrivenTest.listResources("graphqls", RESOURCE_PATH)) {
+            if (schemaBuilder.length() > 0) {
+                schemaBuilder.append("\n\n");
+            }
+
+            schemaBuilder.append(ResourceDrivenTest.getResourceAsString(resource));
+        }
+
+        return new SchemaParser().parse(schemaBuilder.toString());
+    }
+
+    public static Environment createEnvironment() throws IOException {
+        return new Environment(load());
+    }
+
+    /**
+     * Returns the test requests keyed and ordered by their resource path.
+     */
+    public static Map<String, String> loadRequests() throws IOException {
+        final Map<String, String> requests = new TreeMap<>();
+        for (final Resource resource: ResourceDrivenTest.listResources("graphql", RESOURCE_PATH)) {
+            requests.put(resource.getPath(), ResourceDrivenTest.getResourceAsString(resource));
+        }
+        return requests;
+    }
+}
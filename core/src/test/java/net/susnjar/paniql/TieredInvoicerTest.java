@@ -0,0 +1,64 @@
+package net.susnjar.paniql;
+
+import io.github.classgraph.Resource;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.CompiledInvoice;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public class TieredInvoicerTest extends CoreResourceDrivenTest {
+    @TestFactory
+    Collection<DynamicTest> tieredTests() throws IOException {
+        return discoverTests("graphql");
+    }
+
+    @Override
+    protected void runTest(final Resource resource) throws IOException {
+        final String request = getResourceAsString(resource);
+        final Environment environment = new Environment(loadSchema());
+        final Invoice expected = environment.invoice(request);
+        final TieredInvoicer invoicer = new TieredInvoicer(environment, 3, 10);
+
+        for (int i = 0; i < 2; i++) {
+            InvoiceAssertions.assertSameCosts(expected, invoicer.invoice(request, null));
+            Assertions.assertFalse(invoicer.isCompiled(request, null));
+        }
+        InvoiceAssertions.assertSameCosts(expected, invoicer.invoice(request, null));
+        Assertions.assertTrue(invoicer.isCompiled(request, null));
+
+        final CompiledInvoice compiled = invoicer.compiled(request, null);
+        Assertions.assertSame(compiled, invoicer.compiled(request, null));
+        InvoiceAssertions.assertSameCosts(expected, compiled.toInvoice());
+        InvoiceAssertions.assertSameCosts(expected, invoicer.invoice(request, null));
+
+        final double[] accumulator = new double[CompiledInvoice.getCellCount(environment)];
+        compiled.addTo(accumulator);
+        compiled.addTo(accumulator);
+        for (final WorkType workType: WorkType.values()) {
+            double total = 0.0d;
+            for (final Map<? extends ElementModel, Price> costs: List.of(expected.getResourceCosts(), expected.getPartCosts(), expected.getFieldCosts())) {
+                for (final Map.Entry<? extends ElementModel, Price> entry: costs.entrySet()) {
+                    final double value = Bound.MAXIMUM.get(entry.getValue().get(workType));
+                    total += value;
+                    Assertions.assertEquals(value, compiled.get(entry.getKey(), workType, Bound.MAXIMUM));
+                    Assertions.assertEquals(2 * value, accumulator[CompiledInvoice.cell(entry.getKey().getId(), workType, Bound.MAXIMUM)]);
+                }
+            }
+            Assertions.assertEquals(total, compiled.getTotal(workType, Bound.MAXIMUM), Math.abs(total) * 1e-12);
+        }
+
+        final TieredInvoicer none = new TieredInvoicer(environment, 1, 0);
+        InvoiceAssertions.assertSameCosts(expected, none.invoice(request, null));
+        Assertions.assertEquals(0, none.getCompiledCount());
+    }
+}
@@ -0,0 +1,82 @@
+package net.susnjar.paniql.integration;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed-size Bloom filter over strings. Answers "definitely absent" or
+ * "possibly present" with a few bit probes and no allocation, which makes
+ * rejecting unknown keys cheaper than any map lookup.
+ *
+ * <p>Not thread-safe for {@link #add(String)}; once filled it may be read
+ * from any number of threads.</p>
+ */
+public final class BloomFilter {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long[] bits;
+    private final int bitCount;
+    private final int hashCount;
+
+    /**
+     * @param expectedEntries number of keys the filter is sized for.
+     * @param falsePositiveRate wanted probability of reporting an absent key as present at that size.
+     */
+    public BloomFilter(final int expectedEntries, final double falsePositiveRate) {
+        if (expectedEntries < 0) throw new IllegalArgumentException("Expected entries must not be negative.");
+        if ((falsePositiveRate <= 0.0d) || (falsePositiveRate >= 1.0d)) throw new IllegalArgumentException("False positive rate must be in (0, 1).");
+        final double ln2 = Math.log(2.0d);
+        final long optimalBits = (long) Math.ceil(-Math.max(1, expectedEntries) * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.bitCount = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, optimalBits));
+        this.bits = new long[(bitCount + 63) >>> 6];
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / Math.max(1, expectedEntries) * ln2));
+    }
+
+    public void add(final String key) {
+        final long h1 = hash(key);
+        final long h2 = mix(h1) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            final int bit = (int) Long.remainderUnsigned(h1 + i * h2, bitCount);
+            bits[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Returns {@code false} only if the key was never {@link #add(String) added}.
+     */
+    public boolean mightContain(final String key) {
+        final long h1 = hash(key);
+        final long h2 = mix(h1) | 1L;
+        for (int i = 0; i < hashCount; i++) {
+            final int bit = (int) Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    public int getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private static long hash(final String key) {
+        long hash = FNV_OFFSET;
+        for (final byte b: key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,57 @@
+package net.susnjar.paniql.integration;
+
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides whether an operation may be executed given its {@link Invoice}.
+ */
+@FunctionalInterface
+public interface InvoiceBudget {
+    InvoiceBudget UNLIMITED = invoice -> null;
+
+    /**
+     * Returns the reason the invoice exceeds the budget, or {@code null} if it does not.
+     */
+    String check(Invoice invoice);
+
+    /**
+     * Limits the invoice grand total of the work type at the bound.
+     */
+    static InvoiceBudget limit(final WorkType workType, final Bound bound, final double maximum) {
+        return invoice -> {
+            final double total = total(invoice.getResourceCosts(), workType, bound)
+                    + total(invoice.getPartCosts(), workType, bound)
+                    + total(invoice.getFieldCosts(), workType, bound);
+            if (total <= maximum) return null;
+            return "Operation exceeds the budget of " + maximum + " for " + bound.getId() + " " + workType.getId() + " (" + total + ").";
+        };
+    }
+
+    /**
+     * Combines budgets, reporting the first one exceeded.
+     */
+    static InvoiceBudget all(final InvoiceBudget... budgets) {
+        final List<InvoiceBudget> all = List.of(budgets);
+        return invoice -> {
+            for (final InvoiceBudget budget: all) {
+                final String reason = budget.check(invoice);
+                if (reason != null) return reason;
+            }
+            return null;
+        };
+    }
+
+    private static double total(final Map<?, Price> costs, final WorkType workType, final Bound bound) {
+        double total = 0.0d;
+        for (final Price price: costs.values()) {
+            total += bound.get(price.get(workType));
+        }
+        return total;
+    }
+}
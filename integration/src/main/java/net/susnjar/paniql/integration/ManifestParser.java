@@ -0,0 +1,107 @@
+package net.susnjar.paniql.integration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a persisted query manifest: a JSON object mapping each hash or id to
+ * the document text, as generated by Relay and most persisted query tools.
+ * Only as much of JSON is supported as needed.
+ */
+final class ManifestParser {
+    private final String text;
+    private int position = 0;
+
+    private ManifestParser(final String text) {
+        this.text = text;
+    }
+
+    static Map<String, String> parse(final String text) {
+        return new ManifestParser(text).parseManifest();
+    }
+
+    private Map<String, String> parseManifest() {
+        final Map<String, String> manifest = new LinkedHashMap<>();
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+        } else {
+            while (true) {
+                skipWhitespace();
+                final String hash = parseString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                if (manifest.put(hash, parseString()) != null) throw error("Duplicate hash " + hash);
+                skipWhitespace();
+                if (peek() == ',') {
+                    position++;
+                } else {
+                    expect('}');
+                    break;
+                }
+            }
+        }
+        skipWhitespace();
+        if (position != text.length()) throw error("Unexpected content after the manifest");
+        return manifest;
+    }
+
+    private String parseString() {
+        expect('"');
+        final StringBuilder value = new StringBuilder();
+        while (true) {
+            final char c = next();
+            if (c == '"') return value.toString();
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            final char escaped = next();
+            switch (escaped) {
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'n': value.append('\n'); break;
+                case 'r': value.append('\r'); break;
+                case 't': value.append('\t'); break;
+                case 'u':
+                    if (position + 4 > text.length()) throw error("Truncated escape");
+                    try {
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException x) {
+                        throw error("Invalid escape");
+                    }
+                    position += 4;
+                    break;
+                default: value.append(escaped);
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while ((position < text.length()) && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private char peek() {
+        if (position >= text.length()) throw error("Unexpected end of input");
+        return text.charAt(position);
+    }
+
+    private char next() {
+        final char c = peek();
+        position++;
+        return c;
+    }
+
+    private void expect(final char c) {
+        if (next() != c) throw error("Expected '" + c + "'");
+    }
+
+    private IllegalArgumentException error(final String message) {
+        return new IllegalArgumentException(message + " at position " + position + " of the manifest.");
+    }
+}
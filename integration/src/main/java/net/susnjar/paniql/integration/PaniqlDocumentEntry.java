@@ -0,0 +1,37 @@
+package net.susnjar.paniql.integration;
+
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.language.Document;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.pricing.Invoice;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Parsed and validated document together with the invoices of its operations,
+ * computed once per operation name and kept for as long as the entry is cached.
+ */
+public class PaniqlDocumentEntry extends PreparsedDocumentEntry {
+    private static final String ALL_OPERATIONS = "";
+
+    private final transient Environment environment;
+    private final transient ConcurrentHashMap<String, Invoice> invoices = new ConcurrentHashMap<>();
+
+    public PaniqlDocumentEntry(final Environment environment, final Document document) {
+        super(document);
+        this.environment = environment;
+    }
+
+    /**
+     * @param operationName name of the operation to be executed or {@code null} if the document has only one.
+     */
+    public Invoice getInvoice(final String operationName) {
+        final String key = (operationName == null) ? ALL_OPERATIONS : operationName;
+        return invoices.computeIfAbsent(key, k -> environment.invoice(getDocument(), operationName));
+    }
+
+    void putInvoice(final String operationName, final Supplier<Invoice> invoice) {
+        invoices.computeIfAbsent((operationName == null) ? ALL_OPERATIONS : operationName, k -> invoice.get());
+    }
+}
@@ -0,0 +1,82 @@
+package net.susnjar.paniql.integration;
+
+import graphql.ExecutionInput;
+import graphql.GraphQLContext;
+import graphql.execution.AbortExecutionException;
+import graphql.execution.ExecutionContext;
+import graphql.execution.instrumentation.InstrumentationContext;
+import graphql.execution.instrumentation.InstrumentationState;
+import graphql.execution.instrumentation.SimpleInstrumentationContext;
+import graphql.execution.instrumentation.SimplePerformantInstrumentation;
+import graphql.execution.instrumentation.parameters.InstrumentationExecuteOperationParameters;
+import graphql.execution.instrumentation.parameters.InstrumentationValidationParameters;
+import graphql.ExecutionResult;
+import graphql.validation.ValidationError;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.pricing.Invoice;
+
+import java.util.List;
+
+/**
+ * Invoices operations from the document the server has already parsed and
+ * validated, and aborts those exceeding the {@link InvoiceBudget} before any
+ * data is fetched.
+ *
+ * <p>The invoice is computed as soon as validation succeeds and is put in
+ * the {@link GraphQLContext} under {@code Invoice.class} for resolvers and
+ * other instrumentations. When the document comes from a
+ * {@link PaniqlPreparsedDocumentProvider}, validation is skipped on cache
+ * hits and the invoice cached with the document is used instead.</p>
+ */
+public class PaniqlInstrumentation extends SimplePerformantInstrumentation {
+    private final Environment environment;
+    private final InvoiceBudget budget;
+
+    public PaniqlInstrumentation(final Environment environment, final InvoiceBudget budget) {
+        this.environment = environment;
+        this.budget = budget;
+    }
+
+    @Override
+    public InstrumentationContext<List<ValidationError>> beginValidation(
+            final InstrumentationValidationParameters parameters,
+            final InstrumentationState state
+    ) {
+        return SimpleInstrumentationContext.whenCompleted((errors, throwable) -> {
+            if ((throwable != null) || ((errors != null) && !errors.isEmpty())) return;
+            final ExecutionInput input = parameters.getExecutionInput();
+            try {
+                input.getGraphQLContext().put(Invoice.class, environment.invoice(parameters.getDocument(), input.getOperationName()));
+            } catch (IllegalArgumentException x) {
+                // Unknown operation name, execution will report it.
+            }
+        });
+    }
+
+    @Override
+    public InstrumentationContext<ExecutionResult> beginExecuteOperation(
+            final InstrumentationExecuteOperationParameters parameters,
+            final InstrumentationState state
+    ) {
+        final ExecutionContext executionContext = parameters.getExecutionContext();
+        final Invoice invoice = getInvoice(executionContext);
+        final String reason = budget.check(invoice);
+        if (reason != null) throw new AbortExecutionException(reason);
+        return SimpleInstrumentationContext.noOp();
+    }
+
+    private Invoice getInvoice(final ExecutionContext executionContext) {
+        final GraphQLContext context = executionContext.getGraphQLContext();
+        final String operationName = executionContext.getOperationDefinition().getName();
+
+        Invoice invoice = context.get(Invoice.class);
+        if (invoice == null) {
+            final PaniqlDocumentEntry entry = context.get(PaniqlDocumentEntry.class);
+            invoice = (entry != null)
+                    ? entry.getInvoice(executionContext.getExecutionInput().getOperationName())
+                    : environment.invoice(executionContext.getDocument(), operationName);
+            context.put(Invoice.class, invoice);
+        }
+        return invoice;
+    }
+}
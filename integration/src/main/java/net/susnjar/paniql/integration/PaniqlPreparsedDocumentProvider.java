@@ -0,0 +1,93 @@
+package net.susnjar.paniql.integration;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.PreparsedDocumentProvider;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.pricing.Invoice;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Caches parsed and validated documents as {@link PaniqlDocumentEntry entries}
+ * that also hold their invoices, so repeated queries are neither parsed,
+ * validated nor invoiced again. Only documents without errors are cached,
+ * so that invalid queries cannot push valid ones out.
+ *
+ * <p>Every execution gets its entry in the {@link graphql.GraphQLContext}
+ * under {@code PaniqlDocumentEntry.class}, where {@link PaniqlInstrumentation}
+ * finds the cached invoice.</p>
+ */
+public class PaniqlPreparsedDocumentProvider implements PreparsedDocumentProvider {
+    private final Environment environment;
+    private final Map<String, PaniqlDocumentEntry> cache;
+
+    /**
+     * @param maximumEntries number of documents kept, least recently used ones are evicted first.
+     */
+    public PaniqlPreparsedDocumentProvider(final Environment environment, final int maximumEntries) {
+        if (maximumEntries < 1) throw new IllegalArgumentException("At least one entry must be cached.");
+        this.environment = environment;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, PaniqlDocumentEntry> eldest) {
+                return size() > maximumEntries;
+            }
+        };
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getDocumentAsync(
+            final ExecutionInput executionInput,
+            final Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction
+    ) {
+        return CompletableFuture.completedFuture(lookup(executionInput, parseAndValidateFunction));
+    }
+
+    @Override
+    @Deprecated
+    public PreparsedDocumentEntry getDocument(
+            final ExecutionInput executionInput,
+            final Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction
+    ) {
+        return lookup(executionInput, parseAndValidateFunction);
+    }
+
+    private PreparsedDocumentEntry lookup(
+            final ExecutionInput executionInput,
+            final Function<ExecutionInput, PreparsedDocumentEntry> parseAndValidateFunction
+    ) {
+        final String query = executionInput.getQuery();
+        PaniqlDocumentEntry entry;
+        synchronized (cache) {
+            entry = cache.get(query);
+        }
+
+        if (entry == null) {
+            final PreparsedDocumentEntry parsed = parseAndValidateFunction.apply(executionInput);
+            if (parsed.hasErrors()) return parsed;
+
+            entry = new PaniqlDocumentEntry(environment, parsed.getDocument());
+            // Reuse the invoice computed during validation by the instrumentation, if any.
+            final Invoice invoice = executionInput.getGraphQLContext().get(Invoice.class);
+            if (invoice != null) entry.putInvoice(executionInput.getOperationName(), () -> invoice);
+
+            synchronized (cache) {
+                final PaniqlDocumentEntry existing = cache.putIfAbsent(query, entry);
+                if (existing != null) entry = existing;
+            }
+        }
+
+        executionInput.getGraphQLContext().put(PaniqlDocumentEntry.class, entry);
+        return entry;
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
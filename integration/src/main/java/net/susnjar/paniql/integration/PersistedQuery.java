@@ -0,0 +1,49 @@
+package net.susnjar.paniql.integration;
+
+import net.susnjar.paniql.pricing.EncodedInvoice;
+
+import java.util.Map;
+
+/**
+ * One allowlisted document of a {@link PersistedQueryRegistry} with the
+ * invoices of its operations computed when the registry was loaded.
+ */
+public final class PersistedQuery {
+    private final String hash;
+    private final String query;
+    private final Map<String, EncodedInvoice> invoices;
+    private final EncodedInvoice soleInvoice;
+    private volatile PaniqlDocumentEntry entry;
+
+    PersistedQuery(final String hash, final String query, final Map<String, EncodedInvoice> invoices, final EncodedInvoice soleInvoice) {
+        this.hash = hash;
+        this.query = query;
+        this.invoices = invoices;
+        this.soleInvoice = soleInvoice;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the invoice of the named operation, or of the only operation if the name is {@code null}.
+     *
+     * @return the invoice or {@code null} if there is no such operation.
+     */
+    public EncodedInvoice getInvoice(final String operationName) {
+        return (operationName == null) ? soleInvoice : invoices.get(operationName);
+    }
+
+    PaniqlDocumentEntry getEntry() {
+        return entry;
+    }
+
+    void setEntry(final PaniqlDocumentEntry entry) {
+        this.entry = entry;
+    }
+}
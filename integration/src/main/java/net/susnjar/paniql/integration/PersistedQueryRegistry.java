@@ -0,0 +1,219 @@
+package net.susnjar.paniql.integration;
+
+import graphql.ExecutionInput;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.execution.preparsed.persisted.ApolloPersistedQuerySupport;
+import graphql.execution.preparsed.persisted.PersistedQueryCache;
+import graphql.execution.preparsed.persisted.PersistedQueryCacheMiss;
+import graphql.execution.preparsed.persisted.PersistedQueryNotFound;
+import graphql.language.Definition;
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+import graphql.parser.Parser;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.pricing.EncodedInvoice;
+import net.susnjar.paniql.pricing.InvoiceCodec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Allowlist of persisted queries, loaded once from a manifest mapping each
+ * hash to its document, with the invoices of all operations computed at load
+ * time and kept in {@link InvoiceCodec binary form}. Known operations are
+ * therefore never analysed on the request path: a lookup is one Bloom filter
+ * probe, which rejects almost all unknown hashes, and one hash map lookup.
+ *
+ * <p>Hashes of 64 hexadecimal digits are taken to follow the Automatic
+ * Persisted Queries convention, the SHA-256 of the document text, and are
+ * verified on load. Other keys are accepted as opaque ids.</p>
+ *
+ * <p>The registry is also a graphql-java {@link PersistedQueryCache}: with
+ * {@code new ApolloPersistedQuerySupport(registry)} as the preparsed document
+ * provider, requests carrying only a hash are served from the allowlist,
+ * unknown hashes are rejected with {@code PersistedQueryNotFound} and, just
+ * like {@link PaniqlPreparsedDocumentProvider}, the precomputed invoice is
+ * handed to {@link PaniqlInstrumentation} via the {@link graphql.GraphQLContext}.
+ * Documents are parsed and validated on their first use only.</p>
+ */
+public class PersistedQueryRegistry implements PersistedQueryCache {
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01d;
+
+    private static final int SHA_256_HEX_LENGTH = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Environment environment;
+    private final HashMap<String, PersistedQuery> queries;
+    private final BloomFilter filter;
+
+    /**
+     * @param manifest document text by hash or id.
+     * @throws IllegalArgumentException if a document does not parse, cannot be invoiced or does not match its SHA-256 hash.
+     */
+    public PersistedQueryRegistry(final Environment environment, final Map<String, String> manifest) {
+        this.environment = environment;
+        this.queries = new HashMap<>(Math.max(16, (int) (manifest.size() / 0.75f) + 1));
+        this.filter = new BloomFilter(manifest.size(), DEFAULT_FALSE_POSITIVE_RATE);
+
+        final InvoiceCodec codec = new InvoiceCodec(environment, InvoiceCodec.Precision.FLOAT);
+        final Parser parser = new Parser();
+        for (final Map.Entry<String, String> entry: manifest.entrySet()) {
+            final String hash = normalize(entry.getKey());
+            final String query = entry.getValue();
+            if (isSha256(hash) && !hash.equals(sha256(query))) {
+                throw new IllegalArgumentException("Hash " + hash + " does not match its document.");
+            }
+            try {
+                queries.put(hash, precompute(hash, query, parser.parseDocument(query), codec));
+            } catch (RuntimeException x) {
+                throw new IllegalArgumentException("Persisted query " + hash + " cannot be invoiced: " + x.getMessage(), x);
+            }
+            filter.add(hash);
+        }
+    }
+
+    /**
+     * Loads a manifest file holding one JSON object with the document text of each hash or id.
+     */
+    public static PersistedQueryRegistry load(final Environment environment, final Path manifest) throws IOException {
+        return new PersistedQueryRegistry(environment, ManifestParser.parse(Files.readString(manifest, StandardCharsets.UTF_8)));
+    }
+
+    private PersistedQuery precompute(final String hash, final String query, final Document document, final InvoiceCodec codec) {
+        final Map<String, EncodedInvoice> invoices = new HashMap<>();
+        final List<OperationDefinition> operations = new ArrayList<>();
+        for (final Definition<?> definition: document.getDefinitions()) {
+            if (definition instanceof OperationDefinition) {
+                operations.add((OperationDefinition) definition);
+            }
+        }
+        for (final OperationDefinition operation: operations) {
+            if (operation.getName() != null) {
+                invoices.put(operation.getName(), codec.decode(codec.encode(environment.invoice(document, operation.getName()))));
+            }
+        }
+        final EncodedInvoice sole = (operations.size() != 1) ? null
+                : (operations.get(0).getName() != null) ? invoices.get(operations.get(0).getName())
+                : codec.decode(codec.encode(environment.invoice(document, null)));
+        return new PersistedQuery(hash, query, invoices, sole);
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public int size() {
+        return queries.size();
+    }
+
+    /**
+     * Returns {@code false} if the hash is certainly not registered, without a map lookup.
+     */
+    public boolean mightContain(final String hash) {
+        return filter.mightContain(normalize(hash));
+    }
+
+    /**
+     * @return the persisted query or {@code null} if the hash is not registered.
+     */
+    public PersistedQuery get(final String hash) {
+        final String normalized = normalize(hash);
+        if (!filter.mightContain(normalized)) return null;
+        return queries.get(normalized);
+    }
+
+    @Override
+    public CompletableFuture<PreparsedDocumentEntry> getPersistedQueryDocumentAsync(
+            final Object persistedQueryId,
+            final ExecutionInput executionInput,
+            final PersistedQueryCacheMiss onCacheMiss
+    ) throws PersistedQueryNotFound {
+        return CompletableFuture.completedFuture(lookup(persistedQueryId, executionInput, onCacheMiss));
+    }
+
+    @Override
+    @Deprecated
+    public PreparsedDocumentEntry getPersistedQueryDocument(
+            final Object persistedQueryId,
+            final ExecutionInput executionInput,
+            final PersistedQueryCacheMiss onCacheMiss
+    ) throws PersistedQueryNotFound {
+        return lookup(persistedQueryId, executionInput, onCacheMiss);
+    }
+
+    private PreparsedDocumentEntry lookup(
+            final Object persistedQueryId,
+            final ExecutionInput executionInput,
+            final PersistedQueryCacheMiss onCacheMiss
+    ) throws PersistedQueryNotFound {
+        final PersistedQuery query = (persistedQueryId == null) ? null : get(persistedQueryId.toString());
+        if (query == null) throw new PersistedQueryNotFound(persistedQueryId);
+
+        PaniqlDocumentEntry entry = query.getEntry();
+        if (entry == null) {
+            final PreparsedDocumentEntry parsed = onCacheMiss.apply(query.getQuery());
+            if (parsed.hasErrors()) return parsed;
+            entry = new PaniqlDocumentEntry(environment, parsed.getDocument());
+            query.setEntry(entry);
+        }
+
+        final String operationName = executionInput.getOperationName();
+        final EncodedInvoice invoice = query.getInvoice(operationName);
+        if (invoice != null) entry.putInvoice(operationName, invoice::toInvoice);
+        executionInput.getGraphQLContext().put(PaniqlDocumentEntry.class, entry);
+        return entry;
+    }
+
+    /**
+     * Creates the graphql-java preparsed document provider that serves persisted queries from this registry.
+     */
+    public ApolloPersistedQuerySupport toPreparsedDocumentProvider() {
+        return new ApolloPersistedQuerySupport(this);
+    }
+
+    /**
+     * Returns the lower-case hexadecimal SHA-256 of the UTF-8 document text, as used by Automatic Persisted Queries.
+     */
+    public static String sha256(final String query) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM.", x);
+        }
+        final char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = HEX[(digest[i] >>> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private static boolean isSha256(final String hash) {
+        if (hash.length() != SHA_256_HEX_LENGTH) return false;
+        for (int i = 0; i < hash.length(); i++) {
+            final char c = hash.charAt(i);
+            if (((c < '0') || (c > '9')) && ((c < 'a') || (c > 'f'))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * SHA-256 hashes are compared case-insensitively, opaque ids as they are.
+     */
+    private static String normalize(final String hash) {
+        if (hash.length() != SHA_256_HEX_LENGTH) return hash;
+        final String lower = hash.toLowerCase(Locale.ROOT);
+        return isSha256(lower) ? lower : hash;
+    }
+}
@@ -0,0 +1,116 @@
+package net.susnjar.paniql.integration;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.preparsed.PreparsedDocumentEntry;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class PaniqlInstrumentationTest {
+    private static final String FOLDER_ONLY = "{ top { sub { folder(id: 1) { id } } } }";
+
+    @Test
+    void abortsOperationsOverBudgetBeforeExecution() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final InvoiceBudget budget = InvoiceBudget.limit(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM, 10.0d);
+        final AtomicInteger fetches = new AtomicInteger();
+        final GraphQL graphQL = GraphQL.newGraphQL(createSchema(fetches))
+                .instrumentation(new PaniqlInstrumentation(environment, budget))
+                .build();
+
+        final ExecutionResult rejected = graphQL.execute(TestSchema.FOLDER_FILES);
+        Assertions.assertEquals(1, rejected.getErrors().size());
+        Assertions.assertTrue(rejected.getErrors().get(0).getMessage().contains("slow"));
+        Assertions.assertEquals(0, fetches.get());
+
+        final ExecutionInput input = ExecutionInput.newExecutionInput(FOLDER_ONLY).build();
+        final ExecutionResult accepted = graphQL.execute(input);
+        Assertions.assertTrue(accepted.getErrors().isEmpty(), accepted.getErrors().toString());
+        Assertions.assertTrue(fetches.get() > 0);
+
+        final Invoice invoice = input.getGraphQLContext().get(Invoice.class);
+        Assertions.assertNotNull(invoice);
+        Assertions.assertNotNull(invoice.getResourceCosts().get(environment.getOutputType("Folder")));
+    }
+
+    @Test
+    void reusesCachedDocumentAndInvoice() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final AtomicReference<Invoice> seen = new AtomicReference<>();
+        final InvoiceBudget budget = invoice -> {
+            seen.set(invoice);
+            return null;
+        };
+        final AtomicInteger parses = new AtomicInteger();
+        final PaniqlPreparsedDocumentProvider cache = new PaniqlPreparsedDocumentProvider(environment, 8);
+        final GraphQL graphQL = GraphQL.newGraphQL(createSchema(new AtomicInteger()))
+                .instrumentation(new PaniqlInstrumentation(environment, budget))
+                .preparsedDocumentProvider((input, parseAndValidate) -> cache.getDocumentAsync(input, i -> {
+                    parses.incrementAndGet();
+                    return parseAndValidate.apply(i);
+                }).join())
+                .build();
+
+        Assertions.assertTrue(graphQL.execute(TestSchema.FOLDER_FILES).getErrors().isEmpty());
+        final Invoice first = seen.get();
+        Assertions.assertTrue(graphQL.execute(TestSchema.FOLDER_FILES).getErrors().isEmpty());
+        Assertions.assertSame(first, seen.get());
+        Assertions.assertEquals(1, parses.get());
+        Assertions.assertEquals(1, cache.size());
+
+        Assertions.assertFalse(graphQL.execute("{ top { nope } }").getErrors().isEmpty());
+        Assertions.assertEquals(1, cache.size());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedDocuments() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final PaniqlPreparsedDocumentProvider cache = new PaniqlPreparsedDocumentProvider(environment, 1);
+        final GraphQL graphQL = GraphQL.newGraphQL(createSchema(new AtomicInteger()))
+                .preparsedDocumentProvider(cache)
+                .build();
+
+        final ExecutionInput first = ExecutionInput.newExecutionInput(FOLDER_ONLY).build();
+        graphQL.execute(first);
+        graphQL.execute(TestSchema.FOLDER_FILES);
+        Assertions.assertEquals(1, cache.size());
+
+        final PreparsedDocumentEntry entry = first.getGraphQLContext().get(PaniqlDocumentEntry.class);
+        Assertions.assertTrue(entry instanceof PaniqlDocumentEntry);
+        Assertions.assertEquals(environment.invoice(FOLDER_ONLY).getResourceCosts().keySet(),
+                ((PaniqlDocumentEntry) entry).getInvoice(null).getResourceCosts().keySet());
+    }
+
+    private GraphQLSchema createSchema(final AtomicInteger fetches) throws IOException {
+        final Map<String, Object> file = Map.of("id", "2", "name", "a.txt", "fromREST", "rest");
+        final Map<String, Object> folder = Map.of("id", "1", "name", "root", "files", List.of(file));
+        final RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type("Query", type -> type.dataFetcher("top", env -> Map.of()))
+                .type("TopNamespace", type -> type.dataFetcher("sub", env -> Map.of()))
+                .type("SubNamespace", type -> type.dataFetcher("folder", env -> {
+                    fetches.incrementAndGet();
+                    return folder;
+                }))
+                .type("Entry", type -> type.typeResolver(env -> (GraphQLObjectType) env.getSchema().getType(
+                        ((Map<?, ?>) env.getObject()).containsKey("files") ? "Folder" : "File"
+                )))
+                .build();
+        return new SchemaGenerator().makeExecutableSchema(TestSchema.load(), wiring);
+    }
+}
@@ -0,0 +1,96 @@
+package net.susnjar.paniql.integration;
+
+import graphql.ExecutionInput;
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.execution.preparsed.persisted.PersistedQuerySupport;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.EncodedInvoice;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+public class PersistedQueryRegistryTest {
+    private static final String TWO_OPERATIONS = "query Files { top { sub { folder(id: 1) { files { id } } } } } query Folder { top { sub { folder(id: 1) { id } } } }";
+
+    @Test
+    void precomputesInvoicesAndRejectsUnknownHashes() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final String filesHash = PersistedQueryRegistry.sha256(TestSchema.FOLDER_FILES);
+        final PersistedQueryRegistry registry = new PersistedQueryRegistry(environment, Map.of(
+                filesHash.toUpperCase(), TestSchema.FOLDER_FILES,
+                "two-operations", TWO_OPERATIONS
+        ));
+        Assertions.assertEquals(2, registry.size());
+
+        final PersistedQuery files = registry.get(filesHash);
+        Assertions.assertNotNull(files);
+        final EncodedInvoice encoded = files.getInvoice(null);
+        final Invoice expected = environment.invoice(TestSchema.FOLDER_FILES);
+        final Invoice decoded = encoded.toInvoice();
+        Assertions.assertEquals(expected.getResourceCosts().keySet(), decoded.getResourceCosts().keySet());
+        Assertions.assertEquals(expected.getFieldCosts().keySet(), decoded.getFieldCosts().keySet());
+
+        final PersistedQuery two = registry.get("two-operations");
+        Assertions.assertNull(two.getInvoice(null));
+        Assertions.assertNotNull(two.getInvoice("Files"));
+        Assertions.assertFalse(two.getInvoice("Folder").contains(environment.getOutputType("File")));
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            final String unknown = PersistedQueryRegistry.sha256("unknown" + i);
+            Assertions.assertNull(registry.get(unknown));
+            if (registry.mightContain(unknown)) falsePositives++;
+        }
+        Assertions.assertTrue(falsePositives < 500, "False positives: " + falsePositives);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PersistedQueryRegistry(environment, Map.of(filesHash, TWO_OPERATIONS)));
+    }
+
+    @Test
+    void servesHashOnlyRequestsWithPrecomputedInvoices() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Path manifest = Files.createTempFile("manifest", ".json");
+        try {
+            final String hash = PersistedQueryRegistry.sha256(TestSchema.FOLDER_FILES);
+            Files.writeString(manifest, "{\n  \"" + hash + "\": \"" + TestSchema.FOLDER_FILES + "\"\n}\n", StandardCharsets.UTF_8);
+            final PersistedQueryRegistry registry = PersistedQueryRegistry.load(environment, manifest);
+
+            final RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                    .type("Query", type -> type.dataFetcher("top", env -> Map.of()))
+                    .type("TopNamespace", type -> type.dataFetcher("sub", env -> Map.of()))
+                    .type("Entry", type -> type.typeResolver(env -> env.getSchema().getObjectType("File")))
+                    .build();
+            final GraphQL graphQL = GraphQL.newGraphQL(new SchemaGenerator().makeExecutableSchema(TestSchema.load(), wiring))
+                    .instrumentation(new PaniqlInstrumentation(environment, InvoiceBudget.limit(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM, 10.0d)))
+                    .preparsedDocumentProvider(registry.toPreparsedDocumentProvider())
+                    .build();
+
+            final ExecutionResult rejected = graphQL.execute(persisted(hash));
+            Assertions.assertEquals(1, rejected.getErrors().size());
+            Assertions.assertTrue(rejected.getErrors().get(0).getMessage().contains("slow"), rejected.getErrors().toString());
+
+            final ExecutionResult unknown = graphQL.execute(persisted(PersistedQueryRegistry.sha256("{ top { sub { root { id } } } }")));
+            Assertions.assertEquals("PersistedQueryNotFound", unknown.getErrors().get(0).getMessage());
+        } finally {
+            Files.deleteIfExists(manifest);
+        }
+    }
+
+    private static ExecutionInput persisted(final String hash) {
+        return ExecutionInput.newExecutionInput(PersistedQuerySupport.PERSISTED_QUERY_MARKER)
+                .extensions(Map.of("persistedQuery", Map.of("version", 1, "sha256Hash", hash)))
+                .build();
+    }
+}
@@ -0,0 +1,164 @@
+package net.susnjar.paniql.policy;
+
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.CompiledInvoice;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Limits of one client class in one authentication state, flattened into
+ * dense arrays: the {@link PolicySet} maps every restricted model id to a
+ * slot and each slot holds one limit per {@link WorkType} and {@link Bound}.
+ * Checking an invoice is a single pass over its non-zero values with array
+ * lookups only.
+ */
+public final class CompiledPolicy {
+    private static final int CELLS = CompiledInvoice.CELLS_PER_MODEL;
+
+    private final PolicySet policySet;
+    private final String clientClass;
+    private final boolean authenticated;
+    private final double[] limits;
+    private final double[] totalLimits;
+    private final boolean hasTotalLimits;
+
+    CompiledPolicy(
+            final PolicySet policySet,
+            final String clientClass,
+            final boolean authenticated,
+            final double[] limits,
+            final double[] totalLimits
+    ) {
+        this.policySet = policySet;
+        this.clientClass = clientClass;
+        this.authenticated = authenticated;
+        this.limits = limits;
+        this.totalLimits = totalLimits;
+        boolean hasTotalLimits = false;
+        for (final double limit: totalLimits) {
+            hasTotalLimits |= (limit != Double.POSITIVE_INFINITY);
+        }
+        this.hasTotalLimits = hasTotalLimits;
+    }
+
+    public PolicySet getPolicySet() {
+        return policySet;
+    }
+
+    public String getClientClass() {
+        return clientClass;
+    }
+
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    /**
+     * Returns the limit for the type or field, {@link Double#POSITIVE_INFINITY} if there is none.
+     */
+    public double getLimit(final ElementModel<?> model, final WorkType workType, final Bound bound) {
+        final int slot = policySet.getSlot(model.getId());
+        return (slot < 0) ? Double.POSITIVE_INFINITY : limits[slot * CELLS + cell(workType, bound)];
+    }
+
+    /**
+     * Returns the limit for the request total, {@link Double#POSITIVE_INFINITY} if there is none.
+     */
+    public double getTotalLimit(final WorkType workType, final Bound bound) {
+        return totalLimits[cell(workType, bound)];
+    }
+
+    /**
+     * Returns the first limit the invoice exceeds or {@code null} if it is within all of them.
+     */
+    public PolicyViolation check(final Invoice invoice) {
+        final double[] totals = hasTotalLimits ? new double[CELLS] : null;
+        PolicyViolation violation = check(invoice.getResourceCosts(), totals);
+        if (violation == null) violation = check(invoice.getPartCosts(), totals);
+        if (violation == null) violation = check(invoice.getFieldCosts(), totals);
+        if ((violation == null) && hasTotalLimits) violation = checkTotals(totals);
+        return violation;
+    }
+
+    /**
+     * Returns the first limit the compiled invoice exceeds or {@code null} if it is within all of them.
+     */
+    public PolicyViolation check(final CompiledInvoice invoice) {
+        final int[] slotByModel = policySet.getSlotByModel();
+        for (int i = 0; i < invoice.size(); i++) {
+            final int cell = invoice.getCell(i);
+            final int slot = slotByModel[cell / CELLS];
+            if (slot < 0) continue;
+            final double limit = limits[slot * CELLS + cell % CELLS];
+            final double value = invoice.getValue(i);
+            if (value > limit) return violation(cell / CELLS, cell % CELLS, limit, value);
+        }
+        if (!hasTotalLimits) return null;
+        for (final WorkType workType: WorkType.values()) {
+            for (final Bound bound: Bound.values()) {
+                final double limit = getTotalLimit(workType, bound);
+                final double value = invoice.getTotal(workType, bound);
+                if (value > limit) return new PolicyViolation(this, null, workType, bound, limit, value);
+            }
+        }
+        return null;
+    }
+
+    private PolicyViolation check(final Map<? extends ElementModel, Price> costs, final double[] totals) {
+        final int[] slotByModel = policySet.getSlotByModel();
+        for (final Map.Entry<? extends ElementModel, Price> entry: costs.entrySet()) {
+            final int modelId = entry.getKey().getId();
+            final int slot = slotByModel[modelId];
+            if ((slot < 0) && (totals == null)) continue;
+            final Price price = entry.getValue();
+            for (final WorkType workType: WorkType.values()) {
+                final Bounds bounds = price.get(workType);
+                if (bounds.isAlwaysZero()) continue;
+                for (final Bound bound: Bound.values()) {
+                    final int cell = cell(workType, bound);
+                    final double value = bound.get(bounds);
+                    if (totals != null) totals[cell] += value;
+                    if ((slot >= 0) && (value > limits[slot * CELLS + cell])) {
+                        return violation(modelId, cell, limits[slot * CELLS + cell], value);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private PolicyViolation checkTotals(final double[] totals) {
+        for (int cell = 0; cell < CELLS; cell++) {
+            if (totals[cell] > totalLimits[cell]) return violation(-1, cell, totalLimits[cell], totals[cell]);
+        }
+        return null;
+    }
+
+    private PolicyViolation violation(final int modelId, final int cell, final double limit, final double actual) {
+        final ElementModel<?> model = (modelId < 0) ? null : policySet.getEnvironment().getModel(modelId);
+        final WorkType workType = WorkType.values()[cell / Bound.values().length];
+        final Bound bound = Bound.values()[cell % Bound.values().length];
+        return new PolicyViolation(this, model, workType, bound, limit, actual);
+    }
+
+    static int cell(final WorkType workType, final Bound bound) {
+        return workType.ordinal() * Bound.values().length + bound.ordinal();
+    }
+
+    static double[] unlimited(final int cells) {
+        final double[] limits = new double[cells];
+        Arrays.fill(limits, Double.POSITIVE_INFINITY);
+        return limits;
+    }
+
+    @Override
+    public String toString() {
+        return clientClass + " " + (authenticated ? "authenticated" : "anonymous") + " clients";
+    }
+}
@@ -0,0 +1,137 @@
+package net.susnjar.paniql.policy;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.ObjectTypeModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses the policy language, one rule per line:
+ *
+ * <pre>
+ * # client   authentication   target          metric       limit
+ * mobile     authenticated    File            access.max   1000
+ * *          anonymous        File.fromREST   slow.max     0
+ * *          *                *               slow.p95     50
+ * </pre>
+ *
+ * <ul>
+ *     <li>client: client class name or {@code *} for all of them,</li>
+ *     <li>authentication: {@code authenticated}, {@code anonymous} or {@code *} for both,</li>
+ *     <li>target: a type, a {@code Type.field} or {@code *} for the request total;
+ *         abstract types and fields cover all their implementations,</li>
+ *     <li>metric: {@link WorkType} id and {@link Bound} id separated by a dot,</li>
+ *     <li>limit: the maximum allowed per request, {@code 0} forbidding the target altogether.</li>
+ * </ul>
+ *
+ * <p>An optional {@code <=} may precede the limit. Everything after {@code #} is a comment.</p>
+ */
+final class PolicyParser {
+    private static final String AUTHENTICATED = "authenticated";
+    private static final String ANONYMOUS = "anonymous";
+
+    private final Environment environment;
+
+    private PolicyParser(final Environment environment) {
+        this.environment = environment;
+    }
+
+    static List<PolicyRule> parse(final Environment environment, final String text) {
+        return new PolicyParser(environment).parseRules(text);
+    }
+
+    private List<PolicyRule> parseRules(final String text) {
+        final List<PolicyRule> rules = new ArrayList<>();
+        final String[] lines = text.split("\r?\n|\r");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            final int comment = line.indexOf('#');
+            if (comment >= 0) line = line.substring(0, comment);
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            rules.add(parseRule(i + 1, line.split("\\s+")));
+        }
+        return rules;
+    }
+
+    private PolicyRule parseRule(final int line, final String[] tokens) {
+        final boolean withOperator = (tokens.length == 6) && "<=".equals(tokens[4]);
+        if ((tokens.length != 5) && !withOperator) {
+            throw error(line, "Expected <client> <authentication> <target> <metric> [<=] <limit>");
+        }
+
+        final Boolean authenticated;
+        if (AUTHENTICATED.equals(tokens[1])) {
+            authenticated = Boolean.TRUE;
+        } else if (ANONYMOUS.equals(tokens[1])) {
+            authenticated = Boolean.FALSE;
+        } else if (PolicyRule.ANY.equals(tokens[1])) {
+            authenticated = null;
+        } else {
+            throw error(line, "Unknown authentication state " + tokens[1]);
+        }
+
+        final String metric = tokens[3];
+        final int dot = metric.indexOf('.');
+        if (dot < 0) throw error(line, "Metric must be <work type>.<bound>, not " + metric);
+        final WorkType workType = workType(line, metric.substring(0, dot));
+        final Bound bound;
+        try {
+            bound = Bound.fromId(metric.substring(dot + 1));
+        } catch (IllegalArgumentException x) {
+            throw error(line, "Unknown bound " + metric.substring(dot + 1));
+        }
+
+        final double limit;
+        try {
+            limit = Double.parseDouble(tokens[tokens.length - 1]);
+        } catch (NumberFormatException x) {
+            throw error(line, "Invalid limit " + tokens[tokens.length - 1]);
+        }
+        if (!(limit >= 0.0d)) throw error(line, "Limit must not be negative");
+
+        return new PolicyRule(line, tokens[0], authenticated, targets(line, tokens[2]), workType, bound, limit);
+    }
+
+    private List<ElementModel<?>> targets(final int line, final String target) {
+        if (PolicyRule.ANY.equals(target)) return List.of();
+
+        final int dot = target.indexOf('.');
+        final OutputTypeModel<?, ?> type = environment.getOutputType((dot < 0) ? target : target.substring(0, dot));
+        if (type == null) throw error(line, "Unknown type " + target);
+
+        final Set<ElementModel<?>> targets = new LinkedHashSet<>();
+        if (dot < 0) {
+            if (type.isConcrete()) targets.add(type);
+            targets.addAll(type.getAllObjectTypes());
+        } else {
+            final FieldDefModel field = type.getField(target.substring(dot + 1));
+            if (field == null) throw error(line, "Unknown field " + target);
+            targets.add(field);
+            for (final ObjectTypeModel implementation: type.getAllObjectTypes()) {
+                final FieldDefModel implemented = implementation.getField(field.getSimpleName());
+                if (implemented != null) targets.add(implemented);
+            }
+        }
+        return new ArrayList<>(targets);
+    }
+
+    private static WorkType workType(final int line, final String id) {
+        for (final WorkType workType: WorkType.values()) {
+            if (workType.getId().equals(id)) return workType;
+        }
+        throw error(line, "Unknown work type " + id);
+    }
+
+    private static IllegalArgumentException error(final int line, final String message) {
+        return new IllegalArgumentException("Policy line " + line + ": " + message + ".");
+    }
+}
@@ -0,0 +1,75 @@
+package net.susnjar.paniql.policy;
+
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.List;
+
+/**
+ * One parsed line of a policy: a limit on a {@link WorkType} {@link Bound} of
+ * the targeted types or fields, or of the whole request if there are none.
+ */
+final class PolicyRule {
+    static final String ANY = "*";
+
+    private final int line;
+    private final String clientClass;
+    private final Boolean authenticated;
+    private final List<ElementModel<?>> targets;
+    private final WorkType workType;
+    private final Bound bound;
+    private final double limit;
+
+    PolicyRule(
+            final int line,
+            final String clientClass,
+            final Boolean authenticated,
+            final List<ElementModel<?>> targets,
+            final WorkType workType,
+            final Bound bound,
+            final double limit
+    ) {
+        this.line = line;
+        this.clientClass = clientClass;
+        this.authenticated = authenticated;
+        this.targets = targets;
+        this.workType = workType;
+        this.bound = bound;
+        this.limit = limit;
+    }
+
+    int getLine() {
+        return line;
+    }
+
+    String getClientClass() {
+        return clientClass;
+    }
+
+    /**
+     * Returns whether the rule applies to clients in that authentication state.
+     */
+    boolean appliesTo(final boolean authenticated) {
+        return (this.authenticated == null) || (this.authenticated == authenticated);
+    }
+
+    /**
+     * Returns the concrete types and fields limited, empty for a limit on the request total.
+     */
+    List<ElementModel<?>> getTargets() {
+        return targets;
+    }
+
+    WorkType getWorkType() {
+        return workType;
+    }
+
+    Bound getBound() {
+        return bound;
+    }
+
+    double getLimit() {
+        return limit;
+    }
+}
@@ -0,0 +1,132 @@
+package net.susnjar.paniql.policy;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.CompiledInvoice;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All {@link CompiledPolicy policies} parsed from one policy text (see
+ * {@link PolicyParser} for the language), compiled against one
+ * {@link Environment}.
+ *
+ * <p>Rules for client class {@code *} apply to every client class and, where
+ * several rules limit the same value, the lowest limit wins. Client classes
+ * not named by any rule get the {@code *} policies. Models are mapped to
+ * slots once for the whole set, so unrestricted models cost a single array
+ * read per check.</p>
+ */
+public final class PolicySet {
+    private final Environment environment;
+    private final int[] slotByModel;
+    private final Map<String, Integer> clientIndexes;
+    private final CompiledPolicy[] policies;
+
+    private PolicySet(final Environment environment, final List<PolicyRule> rules) {
+        this.environment = environment;
+
+        this.slotByModel = new int[environment.getModelCount()];
+        Arrays.fill(slotByModel, -1);
+        int slotCount = 0;
+        this.clientIndexes = new LinkedHashMap<>();
+        clientIndexes.put(PolicyRule.ANY, 0);
+        for (final PolicyRule rule: rules) {
+            clientIndexes.putIfAbsent(rule.getClientClass(), clientIndexes.size());
+            for (final ElementModel<?> target: rule.getTargets()) {
+                if (slotByModel[target.getId()] < 0) slotByModel[target.getId()] = slotCount++;
+            }
+        }
+
+        this.policies = new CompiledPolicy[clientIndexes.size() * 2];
+        for (final Map.Entry<String, Integer> client: clientIndexes.entrySet()) {
+            for (final boolean authenticated: new boolean[] { false, true }) {
+                policies[index(client.getValue(), authenticated)] = compile(rules, client.getKey(), authenticated, slotCount);
+            }
+        }
+    }
+
+    public static PolicySet parse(final Environment environment, final String text) {
+        return new PolicySet(environment, PolicyParser.parse(environment, text));
+    }
+
+    public static PolicySet load(final Environment environment, final Path path) throws IOException {
+        return parse(environment, Files.readString(path, StandardCharsets.UTF_8));
+    }
+
+    private CompiledPolicy compile(final List<PolicyRule> rules, final String clientClass, final boolean authenticated, final int slotCount) {
+        final double[] limits = CompiledPolicy.unlimited(slotCount * CompiledInvoice.CELLS_PER_MODEL);
+        final double[] totalLimits = CompiledPolicy.unlimited(CompiledInvoice.CELLS_PER_MODEL);
+        for (final PolicyRule rule: rules) {
+            if (!rule.appliesTo(authenticated)) continue;
+            if (!PolicyRule.ANY.equals(rule.getClientClass()) && !rule.getClientClass().equals(clientClass)) continue;
+            final int cell = CompiledPolicy.cell(rule.getWorkType(), rule.getBound());
+            if (rule.getTargets().isEmpty()) {
+                totalLimits[cell] = Math.min(totalLimits[cell], rule.getLimit());
+            }
+            for (final ElementModel<?> target: rule.getTargets()) {
+                final int index = slotByModel[target.getId()] * CompiledInvoice.CELLS_PER_MODEL + cell;
+                limits[index] = Math.min(limits[index], rule.getLimit());
+            }
+        }
+        return new CompiledPolicy(this, clientClass, authenticated, limits, totalLimits);
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    /**
+     * Returns the policy for the client class, or the {@code *} policy if the class has no rules of its own.
+     */
+    public CompiledPolicy get(final String clientClass, final boolean authenticated) {
+        return get(indexOf(clientClass), authenticated);
+    }
+
+    /**
+     * Returns the index of the client class for {@link #get(int, boolean)}, {@code 0} for classes without rules.
+     */
+    public int indexOf(final String clientClass) {
+        final Integer index = clientIndexes.get(clientClass);
+        return (index == null) ? 0 : index;
+    }
+
+    public CompiledPolicy get(final int clientIndex, final boolean authenticated) {
+        return policies[index(clientIndex, authenticated)];
+    }
+
+    public List<String> getClientClasses() {
+        return new ArrayList<>(clientIndexes.keySet());
+    }
+
+    /**
+     * Returns the number of types and fields restricted by any rule.
+     */
+    public int getRestrictedModelCount() {
+        int count = 0;
+        for (final int slot: slotByModel) {
+            if (slot >= 0) count++;
+        }
+        return count;
+    }
+
+    int getSlot(final int modelId) {
+        return slotByModel[modelId];
+    }
+
+    int[] getSlotByModel() {
+        return slotByModel;
+    }
+
+    private static int index(final int clientIndex, final boolean authenticated) {
+        return clientIndex * 2 + (authenticated ? 1 : 0);
+    }
+}
@@ -0,0 +1,71 @@
+package net.susnjar.paniql.policy;
+
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.WorkType;
+
+/**
+ * The first limit of a {@link CompiledPolicy} an invoice exceeded.
+ */
+public final class PolicyViolation {
+    private final CompiledPolicy policy;
+    private final ElementModel<?> model;
+    private final WorkType workType;
+    private final Bound bound;
+    private final double limit;
+    private final double actual;
+
+    PolicyViolation(
+            final CompiledPolicy policy,
+            final ElementModel<?> model,
+            final WorkType workType,
+            final Bound bound,
+            final double limit,
+            final double actual
+    ) {
+        this.policy = policy;
+        this.model = model;
+        this.workType = workType;
+        this.bound = bound;
+        this.limit = limit;
+        this.actual = actual;
+    }
+
+    public CompiledPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the type or field whose limit was exceeded, or {@code null} if it was a limit on the request total.
+     */
+    public ElementModel<?> getModel() {
+        return model;
+    }
+
+    public WorkType getWorkType() {
+        return workType;
+    }
+
+    public Bound getBound() {
+        return bound;
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    public double getActual() {
+        return actual;
+    }
+
+    public String getMessage() {
+        return ((model == null) ? "Request" : model.getFullyQualifiedName())
+                + " " + workType.getId() + "." + bound.getId() + " of " + actual
+                + " exceeds the limit of " + limit + " for " + policy + ".";
+    }
+
+    @Override
+    public String toString() {
+        return getMessage();
+    }
+}
@@ -0,0 +1,79 @@
+package net.susnjar.paniql.policy;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.CompiledInvoice;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+public class PolicySetTest {
+    private static final String FOLDER_ONLY = "{ top { sub { folder(id: 1) { id } } } }";
+
+    private static final String POLICY = String.join("\n",
+            "# Anonymous clients may not reach the REST backend at all.",
+            "*       anonymous      File.fromREST  slow.max    0",
+            "*       *              File           access.p95  <= 10000",
+            "batch   authenticated  *              slow.max    100",
+            ""
+    );
+
+    @Test
+    void forbidsFieldsPerAuthenticationState() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final PolicySet policies = PolicySet.parse(environment, POLICY);
+        final Invoice files = environment.invoice(TestSchema.FOLDER_FILES);
+
+        final PolicyViolation violation = policies.get("web", false).check(files);
+        Assertions.assertNotNull(violation);
+        Assertions.assertSame(environment.getOutputType("File").getField("fromREST"), violation.getModel());
+        Assertions.assertEquals(WorkType.INEFFICIENT_REMOTE_API_CALL, violation.getWorkType());
+        Assertions.assertEquals(Bound.MAXIMUM, violation.getBound());
+        Assertions.assertEquals(0.0d, violation.getLimit());
+        Assertions.assertTrue(violation.getMessage().contains("slow.max"));
+
+        Assertions.assertNull(policies.get("web", false).check(environment.invoice(FOLDER_ONLY)));
+        Assertions.assertNull(policies.get("web", true).check(files));
+        Assertions.assertSame(policies.get("web", true), policies.get(0, true));
+    }
+
+    @Test
+    void appliesTotalsOnlyToTheirClientClass() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final PolicySet policies = PolicySet.parse(environment, POLICY);
+        final Invoice files = environment.invoice(TestSchema.FOLDER_FILES);
+
+        final CompiledPolicy batch = policies.get("batch", true);
+        Assertions.assertEquals("batch", batch.getClientClass());
+        Assertions.assertEquals(100.0d, batch.getTotalLimit(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM));
+        final PolicyViolation violation = batch.check(files);
+        Assertions.assertNotNull(violation);
+        Assertions.assertNull(violation.getModel());
+
+        final PolicyViolation compiled = batch.check(CompiledInvoice.compile(environment, files));
+        Assertions.assertNotNull(compiled);
+        Assertions.assertNull(compiled.getModel());
+        Assertions.assertEquals(violation.getActual(), compiled.getActual(), 1e-6d);
+
+        Assertions.assertNotNull(policies.get("batch", false).check(CompiledInvoice.compile(environment, files)));
+        Assertions.assertEquals(10000.0d, batch.getLimit(environment.getOutputType("File"), WorkType.INSTANCE_ACCESS, Bound.PERCENTILE_95));
+        Assertions.assertEquals(2, policies.getRestrictedModelCount());
+    }
+
+    @Test
+    void rejectsInvalidRules() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final IllegalArgumentException unknown = Assertions.assertThrows(
+                IllegalArgumentException.class,
+                () -> PolicySet.parse(environment, "# comment\n* * File.missing slow.max 0")
+        );
+        Assertions.assertTrue(unknown.getMessage().startsWith("Policy line 2:"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PolicySet.parse(environment, "* * * slow.most 0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PolicySet.parse(environment, "* guest * slow.max 0"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PolicySet.parse(environment, "* * * slow.max -1"));
+    }
+}
@@ -0,0 +1,74 @@
+package net.susnjar.paniql.precompiler;
+
+import net.susnjar.paniql.Environment;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.GradleException;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.api.tasks.TaskAction;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the models of the annotated schema and generates the source of a
+ * class that recreates them, failing the build if the schema or its
+ * {@code @paniql} directives are invalid.
+ */
+@CacheableTask
+public abstract class GeneratePaniqlModel extends DefaultTask {
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public abstract ConfigurableFileCollection getSchemas();
+
+    @Input
+    public abstract Property<String> getPackageName();
+
+    @Input
+    public abstract Property<String> getClassName();
+
+    @OutputDirectory
+    public abstract DirectoryProperty getOutputDirectory();
+
+    @TaskAction
+    public void generate() throws IOException {
+        final ModelSourceGenerator generator;
+        try {
+            generator = new ModelSourceGenerator(getPackageName().get(), getClassName().get());
+        } catch (IllegalArgumentException x) {
+            throw new GradleException(x.getMessage(), x);
+        }
+
+        final List<Path> schemaPaths = new ArrayList<>();
+        for (final File file: getSchemas()) {
+            schemaPaths.add(file.toPath());
+        }
+        if (schemaPaths.isEmpty()) {
+            throw new GradleException("No Paniql schema files configured.");
+        }
+
+        final String source;
+        try {
+            source = generator.generate(new Environment(schemaPaths));
+        } catch (RuntimeException x) {
+            throw new GradleException("Invalid Paniql schema " + schemaPaths + ": " + x, x);
+        }
+
+        final Path outputDirectory = getOutputDirectory().get().getAsFile().toPath();
+        final Path target = outputDirectory.resolve(generator.getRelativePath());
+        Files.createDirectories(target.getParent());
+        Files.writeString(target, source, StandardCharsets.UTF_8);
+    }
+}
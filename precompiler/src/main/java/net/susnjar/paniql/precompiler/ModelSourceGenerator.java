@@ -0,0 +1,350 @@
+package net.susnjar.paniql.precompiler;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.Join;
+import net.susnjar.paniql.PrecompiledSchema;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.EnumTypeModel;
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.InterfaceModel;
+import net.susnjar.paniql.models.ObjectTypeModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.models.ScalarModel;
+import net.susnjar.paniql.models.UnionModel;
+import net.susnjar.paniql.pricing.Bounds;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.Pricer;
+import net.susnjar.paniql.pricing.StepPricer;
+import net.susnjar.paniql.pricing.WorkType;
+
+import javax.lang.model.SourceVersion;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates the Java source of a class that builds an {@link Environment}
+ * equal to the given one through {@link Environment#Environment(PrecompiledSchema)},
+ * i.e. without the schema, its parsing and the interpretation of its
+ * directives.
+ *
+ * <p>Every type gets its own method, and its fields are defined by further
+ * methods of at most {@value #FIELDS_PER_METHOD} fields each, so no method
+ * gets near the 64 KB size limit however wide the type. The methods are in
+ * turn spread over nested classes of at most {@value #MODELS_PER_CLASS}
+ * models each, as every class has its own constant pool of at most 65535
+ * entries. Methods are named by model id, never by type name, so no schema
+ * can make them collide. Output only depends on the models, so equal
+ * schemas generate identical source.</p>
+ */
+public class ModelSourceGenerator {
+    /**
+     * Number of fields defined per generated method, so that even fields with
+     * distinct prices of every kind of work stay far below the 64 KB method size limit.
+     */
+    static final int FIELDS_PER_METHOD = 100;
+
+    /**
+     * Number of types and fields defined per generated class, so that even
+     * distinct literals in every field stay below the constant pool limit.
+     */
+    static final int MODELS_PER_CLASS = 500;
+
+    private final String packageName;
+    private final String className;
+
+    /**
+     * @param packageName package of the generated class, empty for the default package.
+     */
+    public ModelSourceGenerator(final String packageName, final String className) {
+        if (!packageName.isEmpty() && !SourceVersion.isName(packageName)) {
+            throw new IllegalArgumentException("Not a valid package name: " + packageName);
+        }
+        if (!SourceVersion.isIdentifier(className) || SourceVersion.isKeyword(className)) {
+            throw new IllegalArgumentException("Not a valid class name: " + className);
+        }
+        this.packageName = packageName;
+        this.className = className;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the path of the generated source relative to the source root.
+     */
+    public String getRelativePath() {
+        return (packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/") + className + ".java";
+    }
+
+    public String generate(final Environment environment) {
+        final List<String> parts = new ArrayList<>();
+        final StringBuilder calls = new StringBuilder();
+        final StringBuilder methods = new StringBuilder();
+        int partModels = 0;
+        for (int id = 0; id < environment.getModelCount(); id++) {
+            final ElementModel<?> model = environment.getModel(id);
+            if (!(model instanceof OutputTypeModel)) continue;
+            final OutputTypeModel<?, ?> type = (OutputTypeModel<?, ?>) model;
+
+            if (partModels == MODELS_PER_CLASS) {
+                parts.add(getPart(parts.size(), calls, methods));
+                partModels = 0;
+            }
+            calls.append("            t = type").append(type.getId()).append("(s);\n");
+            appendType(methods, type);
+            partModels++;
+
+            // Fields follow their type in id order.
+            final List<FieldDefModel> fields = new ArrayList<>();
+            for (int fieldId = id + 1; (fieldId < environment.getModelCount()) && (environment.getModel(fieldId) instanceof FieldDefModel); fieldId++) {
+                fields.add((FieldDefModel) environment.getModel(fieldId));
+            }
+            for (int from = 0; from < fields.size(); ) {
+                if (partModels == MODELS_PER_CLASS) {
+                    parts.add(getPart(parts.size(), calls, methods));
+                    partModels = 0;
+                }
+                final int to = Math.min(fields.size(), from + Math.min(FIELDS_PER_METHOD, MODELS_PER_CLASS - partModels));
+                calls.append("            fields").append(fields.get(from).getId()).append("(s, t);\n");
+                appendFields(methods, fields.subList(from, to));
+                partModels += to - from;
+                from = to;
+            }
+        }
+        if (partModels > 0) {
+            parts.add(getPart(parts.size(), calls, methods));
+        }
+
+        final StringBuilder out = new StringBuilder(65536);
+        out.append("// Generated by the Paniql precompiler, do not edit.\n");
+        if (!packageName.isEmpty()) {
+            out.append("package ").append(packageName).append(";\n");
+        }
+        out.append("\n");
+        out.append("import net.susnjar.paniql.Environment;\n");
+        out.append("import net.susnjar.paniql.PrecompiledSchema;\n");
+        out.append("import net.susnjar.paniql.PrecompiledSchema.Kind;\n");
+        out.append("import net.susnjar.paniql.PrecompiledSchema.TypeSpec;\n");
+        out.append("import net.susnjar.paniql.models.ModelInterner;\n");
+        out.append("import net.susnjar.paniql.pricing.Bounds;\n");
+        out.append("import net.susnjar.paniql.pricing.Price;\n");
+        out.append("\n");
+        out.append("/**\n");
+        out.append(" * Fully defaulted Paniql models of the schema, built without parsing it.\n");
+        out.append(" */\n");
+        out.append("public final class ").append(className).append(" {\n");
+        out.append("    /**\n");
+        out.append("     * {@link Environment#getModelSignature() Signature} of the models the source was generated from.\n");
+        out.append("     */\n");
+        out.append("    public static final long MODEL_SIGNATURE = ").append(environment.getModelSignature()).append("L;\n");
+        out.append("\n");
+        out.append("    private ").append(className).append("() {\n");
+        out.append("    }\n");
+        out.append("\n");
+        out.append("    public static Environment createEnvironment() {\n");
+        out.append("        return createEnvironment(new ModelInterner());\n");
+        out.append("    }\n");
+        out.append("\n");
+        out.append("    public static Environment createEnvironment(final ModelInterner interner) {\n");
+        out.append("        final PrecompiledSchema s = new PrecompiledSchema(interner);\n");
+        out.append("        TypeSpec t = null;\n");
+        for (int part = 0; part < parts.size(); part++) {
+            out.append("        t = ").append(getPartName(part)).append(".define(s, t);\n");
+        }
+        out.append("        final Environment environment = new Environment(s);\n");
+        out.append("        if (environment.getModelSignature() != MODEL_SIGNATURE) {\n");
+        out.append("            throw new IllegalStateException(\"Models differ from the generated ones, regenerate with this Paniql version.\");\n");
+        out.append("        }\n");
+        out.append("        return environment;\n");
+        out.append("    }\n");
+
+        for (final String part: parts) {
+            out.append("\n").append(part);
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+
+    /**
+     * Returns the nested class defining a part of the models and empties the buffers it was collected in.
+     * The current type is passed from part to part, as the fields of a type may continue in the next one.
+     */
+    private String getPart(final int part, final StringBuilder calls, final StringBuilder methods) {
+        final StringBuilder out = new StringBuilder(calls.length() + methods.length() + 256);
+        out.append("    private static final class ").append(getPartName(part)).append(" {\n");
+        out.append("        static TypeSpec define(final PrecompiledSchema s, TypeSpec t) {\n");
+        out.append(calls);
+        out.append("            return t;\n");
+        out.append("        }\n");
+        out.append(methods);
+        out.append("    }\n");
+        calls.setLength(0);
+        methods.setLength(0);
+        return out.toString();
+    }
+
+    /**
+     * Derived from the class name, so it can neither be the name of the generated class itself nor of any imported one.
+     */
+    private String getPartName(final int part) {
+        return className + "Part" + part;
+    }
+
+    private void appendType(final StringBuilder out, final OutputTypeModel<?, ?> type) {
+        out.append("\n");
+        out.append("        private static TypeSpec type").append(type.getId()).append("(final PrecompiledSchema s) {\n");
+        out.append("            final TypeSpec t = s.type(Kind.").append(getKind(type)).append(", ")
+                .append(quote(type.getSimpleName())).append(", ")
+                .append(type.isMarkedAsResource()).append(", ");
+        appendAttributes(out, type);
+        out.append(");\n");
+
+        if (!type.getDirectGeneralizations().isEmpty()) {
+            out.append("            t.generalize(");
+            String separator = "";
+            for (final OutputTypeModel<?, ?> generalization: type.getDirectGeneralizations()) {
+                out.append(separator).append(quote(generalization.getSimpleName()));
+                separator = ", ";
+            }
+            out.append(");\n");
+        }
+        if (type.getJoin() != null) {
+            out.append("            t.setJoin(");
+            appendJoin(out, type.getJoin());
+            out.append(");\n");
+        }
+        out.append("            return t;\n");
+        out.append("        }\n");
+    }
+
+    private void appendFields(final StringBuilder out, final List<FieldDefModel> fields) {
+        out.append("\n");
+        out.append("        private static void fields").append(fields.get(0).getId()).append("(final PrecompiledSchema s, final TypeSpec t) {\n");
+        for (final FieldDefModel field: fields) {
+            out.append("            t.field(");
+            out.append(quote(field.getSimpleName())).append(", ")
+                    .append(quote(field.getRootType().getSimpleName())).append(", ")
+                    .append(field.isToMany()).append(", ");
+            appendAttributes(out, field);
+            out.append(")");
+            if (field.getJoin() != null) {
+                out.append(".setJoin(");
+                appendJoin(out, field.getJoin());
+                out.append(")");
+            }
+            out.append(";\n");
+        }
+        out.append("        }\n");
+    }
+
+    private void appendAttributes(final StringBuilder out, final ElementModel<?> model) {
+        appendBounds(out, model.getCardinality());
+        out.append(", ");
+        appendPricer(out, model);
+        out.append(", ");
+        final Boolean shared = model.isShared();
+        out.append((shared == null) ? "null" : shared ? "Boolean.TRUE" : "Boolean.FALSE");
+        out.append(", ").append(model.isAlwaysRecomputed());
+    }
+
+    private void appendPricer(final StringBuilder out, final ElementModel<?> model) {
+        final Pricer pricer = model.getPricing();
+        if (pricer == null) {
+            out.append("null");
+        } else if (pricer instanceof StepPricer) {
+            final StepPricer stepPricer = (StepPricer) pricer;
+            out.append("s.pricer(");
+            appendPrice(out, stepPricer.getbaseCost());
+            out.append(", ");
+            appendPrice(out, stepPricer.getUnitCost());
+            out.append(", ");
+            final Double maxUnitsPerBase = stepPricer.getMaxUnitsPerBase();
+            out.append((maxUnitsPerBase == null) ? "null" : literal(maxUnitsPerBase));
+            out.append(")");
+        } else {
+            throw new IllegalArgumentException("Cannot precompile the pricer of " + model + ": " + pricer.getClass().getName());
+        }
+    }
+
+    private void appendPrice(final StringBuilder out, final Price price) {
+        if (price == null) {
+            out.append("null");
+        } else if (price.equals(Price.FREE)) {
+            out.append("Price.FREE");
+        } else {
+            out.append("s.price(");
+            for (final WorkType workType: WorkType.values()) {
+                if (workType.ordinal() > 0) out.append(", ");
+                appendBounds(out, price.get(workType));
+            }
+            out.append(")");
+        }
+    }
+
+    private void appendBounds(final StringBuilder out, final Bounds bounds) {
+        if (bounds == null) {
+            out.append("null");
+        } else if (bounds.equals(Bounds.ALWAYS_0)) {
+            out.append("Bounds.ALWAYS_0");
+        } else if (bounds.equals(Bounds.ALWAYS_1)) {
+            out.append("Bounds.ALWAYS_1");
+        } else {
+            out.append("s.bounds(")
+                    .append(literal(bounds.getMinimum())).append(", ")
+                    .append(literal(bounds.getAverage())).append(", ")
+                    .append(literal(bounds.getPercentile95())).append(", ")
+                    .append(literal(bounds.getMaximum())).append(")");
+        }
+    }
+
+    private void appendJoin(final StringBuilder out, final Join join) {
+        out.append("s.join()");
+        final List<Map.Entry<FieldDefModel, Join>> entries = new ArrayList<>(join.getFieldJoins().entrySet());
+        // Join maps are keyed by identity, so order them by id for reproducible output.
+        entries.sort(Comparator.comparingInt(entry -> entry.getKey().getId()));
+        for (final Map.Entry<FieldDefModel, Join> entry: entries) {
+            final FieldDefModel field = entry.getKey();
+            out.append(".field(")
+                    .append(quote(field.getContainer().getSimpleName())).append(", ")
+                    .append(quote(field.getSimpleName())).append(", ");
+            if (entry.getValue() == null) {
+                out.append("null");
+            } else {
+                appendJoin(out, entry.getValue());
+            }
+            out.append(")");
+        }
+    }
+
+    private static String getKind(final OutputTypeModel<?, ?> type) {
+        if (type instanceof ObjectTypeModel) return PrecompiledSchema.Kind.OBJECT.name();
+        if (type instanceof InterfaceModel) return PrecompiledSchema.Kind.INTERFACE.name();
+        if (type instanceof UnionModel) return PrecompiledSchema.Kind.UNION.name();
+        if (type instanceof EnumTypeModel) return PrecompiledSchema.Kind.ENUM.name();
+        if (type instanceof ScalarModel) return PrecompiledSchema.Kind.SCALAR.name();
+        throw new IllegalArgumentException("Cannot precompile " + type + ": " + type.getClass().getName());
+    }
+
+    private static String literal(final double value) {
+        if (Double.isNaN(value)) return "Double.NaN";
+        if (value == Double.POSITIVE_INFINITY) return "Double.POSITIVE_INFINITY";
+        if (value == Double.NEGATIVE_INFINITY) return "Double.NEGATIVE_INFINITY";
+        return Double.toString(value) + "d";
+    }
+
+    private static String quote(final String name) {
+        final StringBuilder quoted = new StringBuilder(name.length() + 2).append('"');
+        for (final char c: name.toCharArray()) {
+            if ((c == '"') || (c == '\\')) quoted.append('\\');
+            quoted.append(c);
+        }
+        return quoted.append('"').toString();
+    }
+}
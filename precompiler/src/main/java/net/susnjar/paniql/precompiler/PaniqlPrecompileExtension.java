@@ -0,0 +1,24 @@
+package net.susnjar.paniql.precompiler;
+
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.provider.Property;
+
+/**
+ * The {@code paniql} block of a build using the {@link PaniqlPrecompilePlugin}.
+ */
+public abstract class PaniqlPrecompileExtension {
+    /**
+     * The annotated schema files, merged in the given order.
+     */
+    public abstract ConfigurableFileCollection getSchemas();
+
+    /**
+     * Package of the generated class.
+     */
+    public abstract Property<String> getPackageName();
+
+    /**
+     * Simple name of the generated class, {@code PaniqlModel} by default.
+     */
+    public abstract Property<String> getClassName();
+}
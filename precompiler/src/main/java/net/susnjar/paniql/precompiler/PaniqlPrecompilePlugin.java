@@ -0,0 +1,53 @@
+package net.susnjar.paniql.precompiler;
+
+import org.gradle.api.Plugin;
+import org.gradle.api.Project;
+import org.gradle.api.plugins.JavaPluginExtension;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.TaskProvider;
+
+/**
+ * Precompiles Paniql schemas into Java source at build time, so services can
+ * build their {@link net.susnjar.paniql.Environment} from the generated class
+ * without shipping, parsing or interpreting the schema.
+ *
+ * <p>Example:</p>
+ *
+ * <pre>
+ *     apply plugin: 'net.susnjar.paniql.precompile'
+ *
+ *     paniql {
+ *         schemas.from 'src/main/graphql/api-schema.graphqls'
+ *         packageName = 'com.example.api'
+ *     }
+ * </pre>
+ *
+ * <p>The generated class is added to the main source set; call its
+ * {@code createEnvironment()} method instead of constructing the
+ * environment from the schema.</p>
+ */
+public class PaniqlPrecompilePlugin implements Plugin<Project> {
+    public static final String EXTENSION_NAME = "paniql";
+    public static final String TASK_NAME = "generatePaniqlModel";
+
+    @Override
+    public void apply(final Project project) {
+        final PaniqlPrecompileExtension extension = project.getExtensions().create(EXTENSION_NAME, PaniqlPrecompileExtension.class);
+        extension.getClassName().convention("PaniqlModel");
+
+        final TaskProvider<GeneratePaniqlModel> task = project.getTasks().register(TASK_NAME, GeneratePaniqlModel.class, t -> {
+            t.setGroup("build");
+            t.setDescription("Generates the Paniql model source from the annotated schema.");
+            t.getSchemas().from(extension.getSchemas());
+            t.getPackageName().set(extension.getPackageName());
+            t.getClassName().set(extension.getClassName());
+            t.getOutputDirectory().convention(project.getLayout().getBuildDirectory().dir("generated/sources/paniql/java/main"));
+        });
+
+        project.getPluginManager().withPlugin("java", plugin -> {
+            final SourceSet main = project.getExtensions().getByType(JavaPluginExtension.class)
+                    .getSourceSets().getByName(SourceSet.MAIN_SOURCE_SET_NAME);
+            main.getJava().srcDir(task.flatMap(GeneratePaniqlModel::getOutputDirectory));
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package net.susnjar.paniql.precompiler;
+
+import graphql.schema.idl.SchemaParser;
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.InvoiceAssertions;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.Footprint;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestFactory;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class ModelSourceGeneratorTest {
+    @TestFactory
+    Collection<DynamicTest> precompiledTests() throws Exception {
+        final Environment eager = TestSchema.createEnvironment();
+        final ModelSourceGenerator generator = new ModelSourceGenerator("net.susnjar.paniql.generated", "TestSchemaModel");
+        final Environment precompiled = compile(generator, generator.generate(eager));
+
+        Assertions.assertEquals(eager.getModelCount(), precompiled.getModelCount());
+        Assertions.assertEquals(eager.getModelSignature(), precompiled.getModelSignature());
+        Assertions.assertEquals(0, precompiled.footprint().getCount(Footprint.Category.DEFINITIONS));
+        for (int id = 0; id < eager.getModelCount(); id++) {
+            final ElementModel<?> expected = eager.getModel(id);
+            final ElementModel<?> actual = precompiled.getModel(id);
+            Assertions.assertEquals(expected.getFullyQualifiedName(), actual.getFullyQualifiedName());
+            Assertions.assertEquals(expected.getCardinality(), actual.getCardinality(), expected.getFullyQualifiedName());
+            Assertions.assertEquals(expected.isShared(), actual.isShared(), expected.getFullyQualifiedName());
+            Assertions.assertEquals(expected.getJoin() == null, actual.getJoin() == null, expected.getFullyQualifiedName());
+        }
+
+        final List<DynamicTest> tests = new ArrayList<>();
+        TestSchema.loadRequests().forEach((path, request) ->
+                tests.add(DynamicTest.dynamicTest(path, () -> InvoiceAssertions.assertSameCosts(eager.invoice(request), precompiled.invoice(request)))));
+        return tests;
+    }
+
+    @Test
+    void generatesReproducibleSource() throws IOException {
+        final ModelSourceGenerator generator = new ModelSourceGenerator("", "PaniqlModel");
+        final String first = generator.generate(TestSchema.createEnvironment());
+        Assertions.assertEquals(first, generator.generate(TestSchema.createEnvironment()));
+        Assertions.assertEquals("PaniqlModel.java", generator.getRelativePath());
+        Assertions.assertFalse(first.contains("package "));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ModelSourceGenerator("com.example", "class"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ModelSourceGenerator("com..example", "Model"));
+    }
+
+    @Test
+    void splitsTypeDefinitionsIntoParts() throws Exception {
+        final int typeCount = ModelSourceGenerator.MODELS_PER_CLASS * 2;
+        final StringBuilder schema = new StringBuilder("type Query { t0: T0 }\n");
+        for (int i = 0; i < typeCount; i++) {
+            schema.append("type T").append(i).append(" { id: ID! }\n");
+        }
+        final Environment eager = new Environment(new SchemaParser().parse(schema.toString()));
+        final ModelSourceGenerator generator = new ModelSourceGenerator("net.susnjar.paniql.generated", "ChunkedModel");
+        final String source = generator.generate(eager);
+        final int partCount = (eager.getModelCount() + ModelSourceGenerator.MODELS_PER_CLASS - 1) / ModelSourceGenerator.MODELS_PER_CLASS;
+        Assertions.assertTrue(source.contains("t = ChunkedModelPart" + (partCount - 1) + ".define(s, t);"));
+        Assertions.assertFalse(source.contains("ChunkedModelPart" + partCount));
+
+        final Environment precompiled = compile(generator, source);
+        Assertions.assertEquals(eager.getModelSignature(), precompiled.getModelSignature());
+    }
+
+    @Test
+    void splitsWideTypesAcrossMethodsAndParts() throws Exception {
+        final int fieldCount = ModelSourceGenerator.MODELS_PER_CLASS * 5;
+        final StringBuilder schema = new StringBuilder("type Query @paniqlFree { wide: Wide }\ntype Wide @paniql(unit: { local: { const: 1 } }) {");
+        for (int i = 0; i < fieldCount; i++) {
+            schema.append(" f").append(i).append(": Int @paniql(unit: { local: { min: ").append(i).append(", avg: ").append(i + 1).append(", p95: ").append(i + 2).append(", max: ").append(i + 3).append(" } })");
+        }
+        schema.append(" }\n");
+        final Environment eager = new Environment(new SchemaParser().parse(schema.toString()));
+        final ModelSourceGenerator generator = new ModelSourceGenerator("net.susnjar.paniql.generated", "WideModel");
+        final String source = generator.generate(eager);
+        final int wideId = eager.getOutputType("Wide").getId();
+        Assertions.assertTrue(source.contains("fields" + (wideId + 1 + ModelSourceGenerator.FIELDS_PER_METHOD) + "(s, t);"));
+
+        final Environment precompiled = compile(generator, source);
+        Assertions.assertEquals(eager.getModelSignature(), precompiled.getModelSignature());
+        final String request = "{ wide { f0 f" + (fieldCount - 1) + " } }";
+        InvoiceAssertions.assertSameCosts(eager.invoice(request), precompiled.invoice(request));
+    }
+
+    @Test
+    void namesMethodsIndependentlyOfTypeNames() throws Exception {
+        final String schema = "type Query @paniqlFree { types0: Types0, part: CollidingModelPart0, define: define, type1: type1 }\n"
+                + "type Types0 @paniql(unit: { local: { const: 1 } }) { x: Int }\n"
+                + "type CollidingModelPart0 @paniql(unit: { local: { const: 1 } }) { x: Int }\n"
+                + "type define @paniql(unit: { local: { const: 1 } }) { x: Int }\n"
+                + "type type1 @paniql(unit: { local: { const: 1 } }) { define: Int, Define: Int }\n"
+                + "type Type1 @paniql(unit: { local: { const: 1 } }) { x: Int }\n"
+                + "type fields2 @paniql(unit: { local: { const: 1 } }) { x: Int }\n";
+        final Environment eager = new Environment(new SchemaParser().parse(schema));
+        final ModelSourceGenerator generator = new ModelSourceGenerator("net.susnjar.paniql.generated", "CollidingModel");
+
+        final Environment precompiled = compile(generator, generator.generate(eager));
+        Assertions.assertEquals(eager.getModelSignature(), precompiled.getModelSignature());
+        final String request = "{ types0 { x } part { x } define { x } type1 { define Define } }";
+        InvoiceAssertions.assertSameCosts(eager.invoice(request), precompiled.invoice(request));
+    }
+
+    private static Environment compile(final ModelSourceGenerator generator, final String source) throws Exception {
+        final Path root = Files.createTempDirectory("paniql-precompiled");
+        final Path sourceFile = root.resolve("src").resolve(generator.getRelativePath());
+        final Path classes = Files.createDirectories(root.resolve("classes"));
+        Files.createDirectories(sourceFile.getParent());
+        Files.writeString(sourceFile, source, StandardCharsets.UTF_8);
+
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final int status = compiler.run(null, null, null,
+                "-classpath", System.getProperty("java.class.path"),
+                "-d", classes.toString(),
+                sourceFile.toString());
+        Assertions.assertEquals(0, status, "Generated source does not compile.");
+
+        try (final URLClassLoader loader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, ModelSourceGeneratorTest.class.getClassLoader())) {
+            final Class<?> model = loader.loadClass(generator.getPackageName() + "." + generator.getClassName());
+            return (Environment) model.getMethod("createEnvironment").invoke(null);
+        }
+    }
+}
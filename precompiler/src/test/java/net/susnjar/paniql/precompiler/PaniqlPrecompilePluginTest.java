@@ -0,0 +1,109 @@
+package net.susnjar.paniql.precompiler;
+
+import org.gradle.testkit.runner.BuildResult;
+import org.gradle.testkit.runner.GradleRunner;
+import org.gradle.testkit.runner.TaskOutcome;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PaniqlPrecompilePluginTest {
+    private static final String INVALID_TYPE = "type Invalid @paniqlFree @paniql(unit: { local: { const: 1 } }) { id: ID! }";
+
+    @Test
+    void generatesAndCompilesModel() throws IOException {
+        final Path project = createProject(testSchema());
+        try {
+            final BuildResult result = runner(project).build();
+            Assertions.assertEquals(TaskOutcome.SUCCESS, result.task(":" + PaniqlPrecompilePlugin.TASK_NAME).getOutcome());
+            Assertions.assertEquals(TaskOutcome.SUCCESS, result.task(":compileJava").getOutcome());
+            Assertions.assertTrue(Files.isRegularFile(project.resolve("build/classes/java/main/com/example/api/ApiModel.class")));
+
+            final BuildResult again = runner(project).build();
+            Assertions.assertEquals(TaskOutcome.UP_TO_DATE, again.task(":" + PaniqlPrecompilePlugin.TASK_NAME).getOutcome());
+        } finally {
+            delete(project);
+        }
+    }
+
+    @Test
+    void failsTheBuildOnInvalidDirectives() throws IOException {
+        final Path project = createProject(testSchema() + "\n" + INVALID_TYPE + "\n");
+        try {
+            final BuildResult result = runner(project).buildAndFail();
+            Assertions.assertEquals(TaskOutcome.FAILED, result.task(":" + PaniqlPrecompilePlugin.TASK_NAME).getOutcome());
+            Assertions.assertTrue(result.getOutput().contains("Invalid Paniql schema"), result.getOutput());
+        } finally {
+            delete(project);
+        }
+    }
+
+    private static GradleRunner runner(final Path project) {
+        return GradleRunner.create()
+                .withProjectDir(project.toFile())
+                .withPluginClasspath()
+                .withArguments("compileJava", "--offline", "--stacktrace");
+    }
+
+    /**
+     * Creates a build applying the plugin, compiling against the classpath the plugin itself runs with.
+     */
+    private static Path createProject(final String schema) throws IOException {
+        final Path project = Files.createTempDirectory("paniql-plugin");
+        Files.createDirectories(project.resolve("src/main/graphql"));
+        Files.writeString(project.resolve("src/main/graphql/api.graphqls"), schema, StandardCharsets.UTF_8);
+        Files.writeString(project.resolve("settings.gradle"), "rootProject.name = 'api'\n", StandardCharsets.UTF_8);
+        final String classpath = pluginClasspath()
+                .map(file -> "'" + file.getAbsolutePath().replace("\\", "\\\\").replace("'", "\\'") + "'")
+                .collect(Collectors.joining(", "));
+        Files.writeString(project.resolve("build.gradle"), String.join("\n",
+                "plugins {",
+                "    id 'java'",
+                "    id 'net.susnjar.paniql.precompile'",
+                "}",
+                "",
+                "dependencies {",
+                "    implementation files(" + classpath + ")",
+                "}",
+                "",
+                "paniql {",
+                "    schemas.from 'src/main/graphql/api.graphqls'",
+                "    packageName = 'com.example.api'",
+                "    className = 'ApiModel'",
+                "}",
+                ""
+        ), StandardCharsets.UTF_8);
+        return project;
+    }
+
+    private static Stream<File> pluginClasspath() throws IOException {
+        final Properties metadata = new Properties();
+        try (final InputStream in = PaniqlPrecompilePluginTest.class.getClassLoader().getResourceAsStream("plugin-under-test-metadata.properties")) {
+            Assertions.assertNotNull(in, "Plugin under test metadata is missing.");
+            metadata.load(in);
+        }
+        return Stream.of(metadata.getProperty("implementation-classpath").split(File.pathSeparator)).map(File::new);
+    }
+
+    private static String testSchema() throws IOException {
+        try (final InputStream stream = PaniqlPrecompilePluginTest.class.getClassLoader().getResourceAsStream("net/susnjar/paniql/TestSchema.graphqls")) {
+            return new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void delete(final Path dir) throws IOException {
+        try (final Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+}
@@ -1,29 +1,56 @@
 package net.susnjar.paniql.print;
 
 import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.Bound;
 import net.susnjar.paniql.pricing.Bounds;
 import net.susnjar.paniql.pricing.Invoice;
 import net.susnjar.paniql.pricing.Price;
 import net.susnjar.paniql.pricing.WorkType;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.math.RoundingMode;
+import java.text.FieldPosition;
 import java.text.NumberFormat;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Locale;
 import java.util.Map;
-import java.util.TreeMap;
-import java.util.function.Function;
 
+/**
+ * Renders {@link Invoice invoices} as ASCII tables or, for bulk reports, as
+ * CSV or TSV with one row per model and {@link Bound}.
+ *
+ * <p>Each invoice is rendered into a single reused buffer and written out at
+ * once. The number format and buffers are reused across invoices, so an
+ * instance must not be shared between threads.</p>
+ */
 public class InvoicePrinter {
+    public enum Format {
+        TABLE,
+        CSV,
+        TSV
+    }
+
+    private static final String NEW_LINE = System.lineSeparator();
+    private static final int CELLS = WorkType.values().length * Bound.values().length;
 
     private int nameWidth = 10;
     private int columnWidth = 14;
+    private Format format = Format.TABLE;
 
     private int lineWidth;
-    private String doubleHorizontalRule;
-    private String singleHorizontalRule;
+
+    private final NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
+    private final StringBuffer numberText = new StringBuffer(32);
+    private final FieldPosition fieldPosition = new FieldPosition(NumberFormat.INTEGER_FIELD);
+    private final StringBuilder output = new StringBuilder(4096);
 
     public InvoicePrinter() {
+        numberFormat.setGroupingUsed(true);
+        numberFormat.setMaximumFractionDigits(0);
+        numberFormat.setRoundingMode(RoundingMode.HALF_UP);
         recalculate();
     }
 
@@ -37,10 +64,16 @@ public class InvoicePrinter {
         recalculate();
     }
 
+    public void setFormat(final Format format) {
+        this.format = format;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
     private void recalculate() {
         lineWidth = nameWidth + 1 + 3 + WorkType.values().length * columnWidth;
-        doubleHorizontalRule = "=".repeat(lineWidth);
-        singleHorizontalRule = "-".repeat(lineWidth);
     }
 
     public void println(final Invoice invoice) {
@@ -48,132 +81,269 @@ public class InvoicePrinter {
     }
 
     public void println(final Invoice invoice, final PrintStream out) {
-        Price total = Price.FREE;
-
-        nameWidth = Math.max(
-            nameWidth,
-            1 + invoice.getResourceCosts().keySet().stream().map(t -> t.getFullyQualifiedName().length()).max(Integer::compareTo).orElse(0)
-        );
-        nameWidth = Math.max(
-                nameWidth,
-                1 + invoice.getPartCosts().keySet().stream().map(t -> t.getFullyQualifiedName().length()).max(Integer::compareTo).orElse(0)
-        );
-        nameWidth = Math.max(
-                nameWidth,
-                1 + invoice.getFieldCosts().keySet().stream().map(t -> t.getFullyQualifiedName().length()).max(Integer::compareTo).orElse(0)
-        );
+        output.setLength(0);
+        if (format == Format.TABLE) {
+            appendTable(invoice, output);
+        } else {
+            appendDelimitedHeader(output, false);
+            appendDelimitedRows(invoice, null, output);
+        }
+        out.print(output);
+    }
 
+    /**
+     * Writes the CSV or TSV header line.
+     *
+     * @param labelled whether rows will be prefixed by a {@code request} column.
+     */
+    public void printDelimitedHeader(final Appendable out, final boolean labelled) {
+        output.setLength(0);
+        appendDelimitedHeader(output, labelled);
+        flush(out);
+    }
+
+    /**
+     * Writes one CSV or TSV line per model and bound of the invoice.
+     *
+     * @param label value of the {@code request} column or {@code null} if there is no such column.
+     */
+    public void printDelimitedRows(final Invoice invoice, final String label, final Appendable out) {
+        output.setLength(0);
+        appendDelimitedRows(invoice, label, output);
+        flush(out);
+    }
+
+    private void flush(final Appendable out) {
+        try {
+            out.append(output);
+        } catch (IOException x) {
+            throw new UncheckedIOException(x);
+        }
+    }
+
+    private void appendTable(final Invoice invoice, final StringBuilder out) {
+        nameWidth = Math.max(nameWidth, 1 + maxNameLength(invoice.getResourceCosts()));
+        nameWidth = Math.max(nameWidth, 1 + maxNameLength(invoice.getPartCosts()));
+        nameWidth = Math.max(nameWidth, 1 + maxNameLength(invoice.getFieldCosts()));
         recalculate();
 
-        total = total.plus(println(out, "Resource", invoice.getResourceCosts()));
-        out.println();
-        total = total.plus(println(out, "Part", invoice.getPartCosts()));
-        out.println();
-        total = total.plus(println(out, "Field", invoice.getFieldCosts()));
+        final double[] total = new double[CELLS];
+        appendSection(out, "Resource", invoice.getResourceCosts(), total);
+        out.append(NEW_LINE);
+        appendSection(out, "Part", invoice.getPartCosts(), total);
+        out.append(NEW_LINE);
+        appendSection(out, "Field", invoice.getFieldCosts(), total);
 
-        out.println();
-        out.println(doubleHorizontalRule);
+        out.append(NEW_LINE);
+        appendRule(out, '=');
 
-        printTableHeader(out, "Grand Total".toUpperCase(Locale.ROOT));
-        printRow(out, "", total, true);
-        out.println();
+        appendTableHeader(out, "Grand Total".toUpperCase(Locale.ROOT));
+        appendRow(out, "", total, true);
+        out.append(NEW_LINE);
 
-        out.println("LEGEND:");
+        out.append("LEGEND:").append(NEW_LINE);
         final int headingWidth = WorkType.getMaxHeadingLength() + 2;
 
         for (final WorkType workType: WorkType.values()) {
-            out.println(" - " + pad(workType.getHeading() + ":", headingWidth) + workType.getDescription());
+            out.append(" - ");
+            appendPadded(out, workType.getHeading() + ":", headingWidth);
+            out.append(workType.getDescription()).append(NEW_LINE);
+        }
+        for (final Bound bound: Bound.values()) {
+            out.append(" - ");
+            appendPadded(out, bound.getHeading() + ":", headingWidth);
+            out.append(bound.getDescription()).append(NEW_LINE);
         }
-        out.println(" - " + pad("Min:", headingWidth) + "Minimum quantity in normal conditions.");
-        out.println(" - " + pad("Avg:", headingWidth) + "Average quantity in normal conditions.");
-        out.println(" - " + pad("95%:", headingWidth) + "95% percentile, >= 95% of expected values.");
-        out.println(" - " + pad("Max:", headingWidth) + "Maximum, accounting for built-in constraints.");
     }
 
-    private <T extends ElementModel> Price println(final PrintStream out, final String title, final Map<T, Price> items) {
-        final TreeMap<T, Price> sorted = new TreeMap<>((a, b) -> a.getFullyQualifiedName().compareTo(b.getFullyQualifiedName()));
-        sorted.putAll(items);
-
-        Price subtotal = Price.FREE;
+    private void appendSection(final StringBuilder out, final String title, final Map<? extends ElementModel, Price> items, final double[] total) {
+        final double[] subtotal = new double[CELLS];
+        final double[] cells = new double[CELLS];
 
-        out.println(doubleHorizontalRule);
+        appendRule(out, '=');
 
-        printTableHeader(out, pad(title.toUpperCase(Locale.ROOT), nameWidth));
+        appendTableHeader(out, title.toUpperCase(Locale.ROOT));
         if (items.isEmpty()) {
-            out.println("(none)");
-            return subtotal;
+            out.append("(none)").append(NEW_LINE);
+            return;
         }
 
-        for (final Map.Entry<T, Price> entry: sorted.entrySet()) {
-            final Price q = entry.getValue();
-            subtotal = subtotal.plus(q);
-            printRow(out,  entry.getKey().getFullyQualifiedName(), q, items.size() == 1);
+        for (final Map.Entry<? extends ElementModel, Price> entry: sorted(items)) {
+            toCells(entry.getValue(), cells);
+            for (int i = 0; i < CELLS; i++) {
+                subtotal[i] += cells[i];
+                total[i] += cells[i];
+            }
+            appendRow(out, entry.getKey().getFullyQualifiedName(), cells, items.size() == 1);
         }
         if (items.size() > 1) {
-            printRow(out, "TOTAL", subtotal, true);
+            appendRow(out, "TOTAL", subtotal, true);
         }
-        return subtotal;
     }
 
-    private void printTableHeader(PrintStream out, String column1Heading) {
-        out.print(pad(column1Heading, nameWidth));
+    private void appendTableHeader(final StringBuilder out, final String column1Heading) {
+        appendPadded(out, column1Heading, nameWidth);
 
-        out.print("    ");
+        out.append("    ");
 
         for (final WorkType workType: WorkType.values()) {
-            out.print(padLeft(workType.getHeading(), columnWidth));
+            appendPaddedLeft(out, workType.getHeading(), columnWidth);
         }
 
-        out.println();
-        out.println(singleHorizontalRule);
+        out.append(NEW_LINE);
+        appendRule(out, '-');
     }
 
-    private <T extends ElementModel> void printRow(PrintStream out, String name, Price price, boolean bottomRow) {
-        out.print(pad(name, nameWidth));
-        out.print(" Min");
-        printSubRow(out, price, percentiles -> percentiles.getMinimum());
-        out.print(pad("", nameWidth));
-        out.print(" Avg");
-        printSubRow(out, price, percentiles -> percentiles.getAverage());
-        out.print(pad("", nameWidth));
-        out.print(" 95%");
-        printSubRow(out, price, percentiles -> percentiles.getPercentile95());
-        out.print(pad("", nameWidth));
-        out.print(" Max");
-        printSubRow(out, price, percentiles -> percentiles.getMaximum());
-        out.println(bottomRow ? doubleHorizontalRule : singleHorizontalRule);
+    private void appendRow(final StringBuilder out, final String name, final double[] cells, final boolean bottomRow) {
+        for (final Bound bound: Bound.values()) {
+            appendPadded(out, (bound == Bound.MINIMUM) ? name : "", nameWidth);
+            out.append(' ').append(bound.getHeading());
+            for (final WorkType workType: WorkType.values()) {
+                if (isZero(cells, workType)) {
+                    appendSpaces(out, columnWidth);
+                } else {
+                    numberText.setLength(0);
+                    numberFormat.format(cells[cell(workType, bound)], numberText, fieldPosition);
+                    appendPaddedLeft(out, numberText, columnWidth);
+                }
+            }
+            out.append(NEW_LINE);
+        }
+        appendRule(out, bottomRow ? '=' : '-');
     }
 
-    private void printSubRow(final PrintStream out, Price price, final Function<Bounds, Double> boundGetter) {
-        final Function<Bounds, String> x = (p) ->
-                padLeft(p.isAlwaysZero() ? "" : boundGetter.apply(p), columnWidth);
+    private void appendRule(final StringBuilder out, final char c) {
+        for (int i = 0; i < lineWidth; i++) {
+            out.append(c);
+        }
+        out.append(NEW_LINE);
+    }
 
+    private void appendDelimitedHeader(final StringBuilder out, final boolean labelled) {
+        final char delimiter = delimiter();
+        if (labelled) out.append("request").append(delimiter);
+        out.append("section").append(delimiter).append("name").append(delimiter).append("bound");
         for (final WorkType workType: WorkType.values()) {
-            out.print(x.apply(price.get(workType)));
+            out.append(delimiter).append(workType.getId());
         }
+        out.append(NEW_LINE);
+    }
 
-        out.println();
+    private void appendDelimitedRows(final Invoice invoice, final String label, final StringBuilder out) {
+        final double[] cells = new double[CELLS];
+        appendDelimitedSection(out, label, "resource", invoice.getResourceCosts(), cells);
+        appendDelimitedSection(out, label, "part", invoice.getPartCosts(), cells);
+        appendDelimitedSection(out, label, "field", invoice.getFieldCosts(), cells);
     }
 
-    final String pad(final Object value, final int width) {
-        String valueText = getValueText(value);
-        return valueText + " ".repeat(Math.max(0, width - valueText.length()));
+    private void appendDelimitedSection(
+            final StringBuilder out,
+            final String label,
+            final String section,
+            final Map<? extends ElementModel, Price> items,
+            final double[] cells
+    ) {
+        final char delimiter = delimiter();
+        for (final Map.Entry<? extends ElementModel, Price> entry: sorted(items)) {
+            final String name = entry.getKey().getFullyQualifiedName();
+            toCells(entry.getValue(), cells);
+            for (final Bound bound: Bound.values()) {
+                if (label != null) {
+                    appendDelimitedText(out, label);
+                    out.append(delimiter);
+                }
+                out.append(section).append(delimiter);
+                appendDelimitedText(out, name);
+                out.append(delimiter).append(bound.getId());
+                for (final WorkType workType: WorkType.values()) {
+                    out.append(delimiter);
+                    appendPlainNumber(out, cells[cell(workType, bound)]);
+                }
+                out.append(NEW_LINE);
+            }
+        }
     }
 
-    private String getValueText(Object value) {
-        if (value instanceof Number) {
-            NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
-            numberFormat.setGroupingUsed(true);
-            numberFormat.setMaximumFractionDigits(0);
-            numberFormat.setRoundingMode(RoundingMode.HALF_UP);
-            return numberFormat.format(value);
+    private void appendDelimitedText(final StringBuilder out, final String text) {
+        if (format == Format.TSV) {
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                out.append(((c == '\t') || (c == '\n') || (c == '\r')) ? ' ' : c);
+            }
+        } else if ((text.indexOf(',') >= 0) || (text.indexOf('"') >= 0) || (text.indexOf('\n') >= 0) || (text.indexOf('\r') >= 0)) {
+            out.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                final char c = text.charAt(i);
+                if (c == '"') out.append('"');
+                out.append(c);
+            }
+            out.append('"');
         } else {
-            return String.valueOf(value);
+            out.append(text);
         }
     }
 
-    final String padLeft(final Object value, final int width) {
-        String valueText = getValueText(value);
-        return " ".repeat(Math.max(0, width - valueText.length())) + valueText;
+    private static void appendPlainNumber(final StringBuilder out, final double value) {
+        if ((value == Math.rint(value)) && (Math.abs(value) < 1e15d)) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+    }
+
+    private char delimiter() {
+        return (format == Format.TSV) ? '\t' : ',';
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map.Entry<? extends ElementModel, Price>[] sorted(final Map<? extends ElementModel, Price> items) {
+        final Map.Entry<? extends ElementModel, Price>[] entries = items.entrySet().toArray(new Map.Entry[0]);
+        // Ids are assigned in name order, so this matches sorting by the fully qualified name.
+        Arrays.sort(entries, Comparator.comparingInt(entry -> entry.getKey().getId()));
+        return entries;
+    }
+
+    private static int maxNameLength(final Map<? extends ElementModel, Price> items) {
+        int max = 0;
+        for (final ElementModel model: items.keySet()) {
+            max = Math.max(max, model.getFullyQualifiedName().length());
+        }
+        return max;
+    }
+
+    private static void toCells(final Price price, final double[] cells) {
+        for (final WorkType workType: WorkType.values()) {
+            final Bounds bounds = price.get(workType);
+            for (final Bound bound: Bound.values()) {
+                cells[cell(workType, bound)] = bound.get(bounds);
+            }
+        }
+    }
+
+    private static boolean isZero(final double[] cells, final WorkType workType) {
+        for (final Bound bound: Bound.values()) {
+            if (cells[cell(workType, bound)] != 0.0d) return false;
+        }
+        return true;
+    }
+
+    private static int cell(final WorkType workType, final Bound bound) {
+        return workType.ordinal() * Bound.values().length + bound.ordinal();
+    }
+
+    private static void appendPadded(final StringBuilder out, final CharSequence text, final int width) {
+        out.append(text);
+        appendSpaces(out, width - text.length());
+    }
+
+    private static void appendPaddedLeft(final StringBuilder out, final CharSequence text, final int width) {
+        appendSpaces(out, width - text.length());
+        out.append(text);
+    }
+
+    private static void appendSpaces(final StringBuilder out, final int count) {
+        for (int i = 0; i < count; i++) {
+            out.append(' ');
+        }
     }
 }
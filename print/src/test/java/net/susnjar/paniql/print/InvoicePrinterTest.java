@@ -6,8 +6,11 @@ import io.github.classgraph.Resource;
 import net.susnjar.paniql.CoreResourceDrivenTest;
 import net.susnjar.paniql.Environment;
 import net.susnjar.paniql.Request;
+import net.susnjar.paniql.pricing.Bound;
 import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
 import net.susnjar.paniql.print.InvoicePrinter;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DynamicTest;
 import org.junit.jupiter.api.TestFactory;
 
@@ -49,5 +52,27 @@ public class InvoicePrinterTest extends CoreResourceDrivenTest {
         final Path reportPath = Path.of("build", "invoice-printer-outputs", resource.getPathRelativeToClasspathElement().replace(".graphql", ".txt"));
         reportPath.getParent().toFile().mkdirs();
         Files.writeString(reportPath, capturedOutput, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        final int models = invoice.getResourceCosts().size() + invoice.getPartCosts().size() + invoice.getFieldCosts().size();
+        for (final InvoicePrinter.Format format: new InvoicePrinter.Format[] { InvoicePrinter.Format.CSV, InvoicePrinter.Format.TSV }) {
+            buffer.reset();
+            printer.setFormat(format);
+            printer.println(invoice, printStream);
+            printStream.flush();
+            final String[] lines = buffer.toString().split(System.lineSeparator());
+            Assertions.assertEquals(1 + models * Bound.values().length, lines.length);
+            final String delimiter = (format == InvoicePrinter.Format.CSV) ? "," : "\t";
+            for (final String line: lines) {
+                Assertions.assertEquals(3 + WorkType.values().length, line.split(delimiter).length);
+            }
+            Files.writeString(Path.of(reportPath.toString().replace(".txt", "." + format.name().toLowerCase())), buffer.toString());
+        }
+
+        final StringBuilder labelled = new StringBuilder();
+        printer.setFormat(InvoicePrinter.Format.CSV);
+        printer.printDelimitedHeader(labelled, true);
+        printer.printDelimitedRows(invoice, "a,b", labelled);
+        Assertions.assertTrue(labelled.toString().startsWith("request,section,name,bound," + WorkType.values()[0].getId()));
+        Assertions.assertTrue(models == 0 || labelled.toString().contains(System.lineSeparator() + "\"a,b\","));
     }
 }
\ No newline at end of file
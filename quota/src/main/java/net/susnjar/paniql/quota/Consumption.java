@@ -0,0 +1,35 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Actual work performed while executing a request, per type or field and
+ * {@link WorkType}, as reported by the server after execution. Unlike an
+ * invoice these are exact quantities rather than statistical bounds.
+ *
+ * <p>Instances are meant to be filled by a single request and are not thread-safe.</p>
+ */
+public class Consumption {
+    private static final int WORK_TYPE_COUNT = WorkType.values().length;
+
+    private final IdentityHashMap<ElementModel<?>, double[]> quantities = new IdentityHashMap<>();
+    private final double[] totals = new double[WORK_TYPE_COUNT];
+
+    public Consumption add(final ElementModel<?> element, final WorkType workType, final double quantity) {
+        quantities.computeIfAbsent(element, e -> new double[WORK_TYPE_COUNT])[workType.ordinal()] += quantity;
+        totals[workType.ordinal()] += quantity;
+        return this;
+    }
+
+    public double get(final ElementModel<?> element, final WorkType workType) {
+        final double[] elementQuantities = quantities.get(element);
+        return (elementQuantities == null) ? 0.0d : elementQuantities[workType.ordinal()];
+    }
+
+    public double getTotal(final WorkType workType) {
+        return totals[workType.ordinal()];
+    }
+}
@@ -0,0 +1,48 @@
+package net.susnjar.paniql.quota;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link QuotaCounters} backed by an {@link AtomicLongArray} on the heap.
+ */
+class HeapQuotaCounters extends SlottedQuotaCounters {
+    private final AtomicLongArray slots;
+
+    HeapQuotaCounters(final QuotaLayout layout) {
+        super(layout);
+        this.slots = new AtomicLongArray(layout.getSlotCount());
+    }
+
+    @Override
+    protected long getSlot(final int index) {
+        return slots.get(index);
+    }
+
+    @Override
+    protected boolean compareAndSetSlot(final int index, final long expected, final long updated) {
+        return slots.compareAndSet(index, expected, updated);
+    }
+
+    /**
+     * Merges the specified slot value into this counter as a join of a
+     * semilattice: the more recent tick wins and, for the same tick, the
+     * larger value wins. Only valid for counters that never decrease.
+     */
+    void merge(final int index, final long incoming) {
+        while (true) {
+            final long current = slots.get(index);
+            if (current == incoming) return;
+            if (current != 0L) {
+                final long currentTag = QuotaLayout.tag(current);
+                final long incomingTag = QuotaLayout.tag(incoming);
+                if (currentTag == incomingTag) {
+                    if (QuotaLayout.value(current) >= QuotaLayout.value(incoming)) return;
+                } else if (QuotaLayout.age(incomingTag, currentTag) >= (QuotaLayout.TAG_MASK >>> 1)) {
+                    // Current slot is more recent.
+                    return;
+                }
+            }
+            if (slots.compareAndSet(index, current, incoming)) return;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package net.susnjar.paniql.quota;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process {@link QuotaStore} keeping counters on the heap. Principals are
+ * striped across the segments of a {@link ConcurrentHashMap} and each
+ * principal's slots live in their own {@link java.util.concurrent.atomic.AtomicLongArray}, so there is no
+ * global lock and lookups of existing principals never block.
+ */
+public class LocalQuotaStore implements QuotaStore {
+    private final QuotaLayout layout;
+    private final ConcurrentHashMap<Principal, QuotaCounters> counters;
+
+    public LocalQuotaStore(final QuotaLayout layout) {
+        this(layout, 1024);
+    }
+
+    public LocalQuotaStore(final QuotaLayout layout, final int expectedPrincipals) {
+        this.layout = layout;
+        this.counters = new ConcurrentHashMap<>(expectedPrincipals);
+    }
+
+    @Override
+    public QuotaLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public QuotaCounters getCounters(final Principal principal) {
+        final QuotaCounters existing = counters.get(principal);
+        if (existing != null) {
+            if (!existing.isRetired()) return existing;
+            counters.remove(principal, existing);
+        }
+        return counters.computeIfAbsent(principal, p -> new HeapQuotaCounters(layout));
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Forgets principals that have nothing left in any of their windows at the
+     * specified time, bounding memory use when many principals come and go.
+     * Charges racing with eviction are repeated on fresh counters by
+     * {@link QuotaEngine} as retired counters refuse them.
+     */
+    public void evictIdle(final long timeMillis) {
+        for (final Map.Entry<Principal, QuotaCounters> entry: counters.entrySet()) {
+            final QuotaCounters principalCounters = entry.getValue();
+            if (principalCounters.retire(timeMillis)) {
+                counters.remove(entry.getKey(), principalCounters);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package net.susnjar.paniql.quota;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process {@link QuotaTransport} delivering messages synchronously to all
+ * peers created from the same original instance. Meant for tests and for
+ * running several logical nodes within one JVM.
+ */
+public class LoopbackQuotaTransport implements QuotaTransport {
+    private final List<LoopbackQuotaTransport> members;
+    private volatile Consumer<byte[]> receiver;
+
+    public LoopbackQuotaTransport() {
+        this(new CopyOnWriteArrayList<>());
+    }
+
+    private LoopbackQuotaTransport(final List<LoopbackQuotaTransport> members) {
+        this.members = members;
+        members.add(this);
+    }
+
+    /**
+     * Creates another transport connected to this one and all of its peers.
+     */
+    public LoopbackQuotaTransport createPeer() {
+        return new LoopbackQuotaTransport(members);
+    }
+
+    @Override
+    public void publish(final byte[] message) {
+        for (final LoopbackQuotaTransport member: members) {
+            if (member == this) continue;
+            final Consumer<byte[]> memberReceiver = member.receiver;
+            if (memberReceiver != null) {
+                memberReceiver.accept(Arrays.copyOf(message, message.length));
+            }
+        }
+    }
+
+    @Override
+    public void setReceiver(final Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void close() {
+        members.remove(this);
+    }
+}
@@ -0,0 +1,256 @@
+package net.susnjar.paniql.quota;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QuotaStore} kept in a memory-mapped file so that all processes on a
+ * host mapping the same file share one view of the counters, without any
+ * inter-process round trips.
+ *
+ * <p>The file holds a fixed-capacity open-addressing table. Each record starts
+ * with a SHA-256 digest of the principal's kind and id, so that principals
+ * only share a record if they are equal, followed by its slots. Records are
+ * claimed and slots are updated with atomic {@link VarHandle} operations
+ * directly on the mapped buffer. Records are never removed, so the capacity
+ * should be sized for the expected number of distinct principals. The file
+ * lock is only taken while opening.</p>
+ *
+ * <p>A process killed while claiming a record leaves it claimed but unkeyed.
+ * Lookups probing such a record wait for it only up to the claim timeout and
+ * then fail rather than blocking the calling thread forever; the file has to
+ * be recreated to recover the record.</p>
+ */
+public class MappedQuotaStore implements QuotaStore, Closeable {
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final long MAGIC = 0x5041_4E49_514C_5153L; // "PANIQLQS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Record state while its digest is being written, before it is keyed.
+     */
+    private static final long CLAIMING = -1L;
+    private static final int DIGEST_LONGS = 4;
+    private static final long DEFAULT_CLAIM_TIMEOUT_MILLIS = 1000;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 8;
+    private static final int SIGNATURE_OFFSET = 16;
+    private static final int SLOT_COUNT_OFFSET = 24;
+    private static final int CAPACITY_OFFSET = 32;
+
+    private final Path path;
+    private final QuotaLayout layout;
+    private final int capacity;
+    private final int recordSize;
+    private final long claimTimeoutNanos;
+    private final MappedByteBuffer buffer;
+    private final ConcurrentHashMap<Principal, QuotaCounters> counters = new ConcurrentHashMap<>();
+
+    public MappedQuotaStore(final Path path, final QuotaLayout layout, final int capacity) throws IOException {
+        this(path, layout, capacity, DEFAULT_CLAIM_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param claimTimeoutMillis how long to wait for a record another thread or process is claiming.
+     */
+    public MappedQuotaStore(final Path path, final QuotaLayout layout, final int capacity, final long claimTimeoutMillis) throws IOException {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive.");
+        if (claimTimeoutMillis <= 0) throw new IllegalArgumentException("Claim timeout must be positive.");
+        this.path = path;
+        this.layout = layout;
+        this.capacity = capacity;
+        this.claimTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(claimTimeoutMillis);
+        this.recordSize = Long.BYTES * (1 + DIGEST_LONGS + layout.getSlotCount());
+
+        final long fileSize = HEADER_SIZE + (long) recordSize * capacity;
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Quota table of " + capacity + " principals does not fit a single mapping.");
+        }
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            try (final FileLock lock = channel.lock()) {
+                final boolean created = channel.size() == 0;
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+                buffer.order(ByteOrder.nativeOrder());
+                if (created) {
+                    writeHeader();
+                } else {
+                    verifyHeader();
+                }
+            }
+        }
+    }
+
+    private void writeHeader() {
+        buffer.putLong(SIGNATURE_OFFSET, layout.getSignature());
+        buffer.putLong(SLOT_COUNT_OFFSET, layout.getSlotCount());
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        buffer.putLong(VERSION_OFFSET, VERSION);
+        buffer.putLong(MAGIC_OFFSET, MAGIC);
+        buffer.force();
+    }
+
+    private void verifyHeader() {
+        if (buffer.getLong(MAGIC_OFFSET) != MAGIC) {
+            throw new IllegalArgumentException(path + " is not a Paniql quota store.");
+        }
+        if (buffer.getLong(VERSION_OFFSET) != VERSION) {
+            throw new IllegalArgumentException(path + " has unsupported version " + buffer.getLong(VERSION_OFFSET) + ".");
+        }
+        if ((buffer.getLong(SIGNATURE_OFFSET) != layout.getSignature()) || (buffer.getLong(SLOT_COUNT_OFFSET) != layout.getSlotCount())) {
+            throw new IllegalArgumentException(path + " was created for a different quota layout.");
+        }
+        if (buffer.getLong(CAPACITY_OFFSET) != capacity) {
+            throw new IllegalArgumentException(path + " was created with capacity " + buffer.getLong(CAPACITY_OFFSET) + ".");
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public QuotaLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public QuotaCounters getCounters(final Principal principal) {
+        final QuotaCounters existing = counters.get(principal);
+        if (existing != null) return existing;
+        return counters.computeIfAbsent(principal, p -> new RecordCounters(layout, findOrClaimRecord(p)));
+    }
+
+    private int findOrClaimRecord(final Principal principal) {
+        final long[] digest = digest(principal);
+        // The state word of a record is 0 when free, CLAIMING or the key once claimed.
+        final long key = ((digest[0] == 0L) || (digest[0] == CLAIMING)) ? 1L : digest[0];
+        int index = (int) Long.remainderUnsigned(digest[1], capacity);
+
+        for (int probes = 0; probes < capacity; probes++) {
+            final int recordOffset = HEADER_SIZE + index * recordSize;
+            long current = (long) LONGS.getVolatile(buffer, recordOffset);
+            if ((current == 0L) && LONGS.compareAndSet(buffer, recordOffset, 0L, CLAIMING)) {
+                for (int i = 0; i < DIGEST_LONGS; i++) {
+                    LONGS.setVolatile(buffer, recordOffset + (1 + i) * Long.BYTES, digest[i]);
+                }
+                LONGS.setVolatile(buffer, recordOffset, key);
+                return recordOffset;
+            }
+            if ((current == CLAIMING) || (current == 0L)) {
+                current = awaitClaim(recordOffset);
+            }
+            if ((current == key) && hasDigest(recordOffset, digest)) return recordOffset;
+            index = (index + 1 == capacity) ? 0 : index + 1;
+        }
+
+        throw new IllegalStateException("Quota store " + path + " is full (" + capacity + " principals).");
+    }
+
+    /**
+     * Waits for another thread or process to finish writing the digest of the record it claimed.
+     */
+    private long awaitClaim(final int recordOffset) {
+        final long start = System.nanoTime();
+        for (int spins = 0; ; spins++) {
+            final long current = (long) LONGS.getVolatile(buffer, recordOffset);
+            if ((current != CLAIMING) && (current != 0L)) return current;
+            if (System.nanoTime() - start > claimTimeoutNanos) {
+                throw new IllegalStateException("Record " + (recordOffset - HEADER_SIZE) / recordSize + " of quota store " + path
+                        + " is still being claimed, the claiming process may have died.");
+            }
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean hasDigest(final int recordOffset, final long[] digest) {
+        for (int i = 0; i < DIGEST_LONGS; i++) {
+            if ((long) LONGS.getVolatile(buffer, recordOffset + (1 + i) * Long.BYTES) != digest[i]) return false;
+        }
+        return true;
+    }
+
+    private static long[] digest(final Principal principal) {
+        final MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException x) {
+            throw new IllegalStateException("SHA-256 is not available.", x);
+        }
+        sha256.update((byte) principal.getKind().ordinal());
+        final ByteBuffer hash = ByteBuffer.wrap(sha256.digest(principal.getId().getBytes(StandardCharsets.UTF_8)));
+        final long[] digest = new long[DIGEST_LONGS];
+        for (int i = 0; i < DIGEST_LONGS; i++) {
+            digest[i] = hash.getLong();
+        }
+        return digest;
+    }
+
+    /**
+     * Returns the number of records claimed in the shared table, across all processes.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < capacity; i++) {
+            if ((long) LONGS.getVolatile(buffer, HEADER_SIZE + i * recordSize) != 0L) size++;
+        }
+        return size;
+    }
+
+    /**
+     * Flushes the mapped content to the underlying file. This is not needed for
+     * sharing between processes, only for surviving a host restart.
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        counters.clear();
+    }
+
+    private final class RecordCounters extends SlottedQuotaCounters {
+        private final int slotsOffset;
+
+        RecordCounters(final QuotaLayout layout, final int recordOffset) {
+            super(layout);
+            this.slotsOffset = recordOffset + (1 + DIGEST_LONGS) * Long.BYTES;
+        }
+
+        @Override
+        protected long getSlot(final int index) {
+            return (long) LONGS.getVolatile(buffer, slotsOffset + index * Long.BYTES);
+        }
+
+        @Override
+        protected boolean compareAndSetSlot(final int index, final long expected, final long updated) {
+            return LONGS.compareAndSet(buffer, slotsOffset + index * Long.BYTES, expected, updated);
+        }
+    }
+}
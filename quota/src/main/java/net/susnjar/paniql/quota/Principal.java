@@ -0,0 +1,94 @@
+package net.susnjar.paniql.quota;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Identifies who or what quotas are tracked for, e.g. a specific user,
+ * client application, network location or the path a request took.
+ */
+public final class Principal {
+    public enum Kind {
+        USER,
+        CLIENT,
+        NETWORK,
+        PATH
+    }
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Kind kind;
+    private final String id;
+    private final long fingerprint;
+
+    private Principal(final Kind kind, final String id) {
+        if (kind == null) throw new IllegalArgumentException("Principal kind must be specified.");
+        if (id == null) throw new IllegalArgumentException("Principal id must be specified.");
+        this.kind = kind;
+        this.id = id;
+        this.fingerprint = computeFingerprint(kind, id);
+    }
+
+    public static Principal of(final Kind kind, final String id) {
+        return new Principal(kind, id);
+    }
+
+    public static Principal user(final String id) {
+        return new Principal(Kind.USER, id);
+    }
+
+    public static Principal client(final String id) {
+        return new Principal(Kind.CLIENT, id);
+    }
+
+    public static Principal network(final String id) {
+        return new Principal(Kind.NETWORK, id);
+    }
+
+    public static Principal path(final String id) {
+        return new Principal(Kind.PATH, id);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the kind and id that is stable across
+     * processes and JVM versions, unlike {@link #hashCode()}.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    private static long computeFingerprint(final Kind kind, final String id) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ kind.ordinal()) * FNV_PRIME;
+        for (final byte b: id.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Principal that = (Principal) o;
+        return kind == that.kind && id.equals(that.id);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(fingerprint);
+    }
+
+    @Override
+    public String toString() {
+        return kind.name().toLowerCase() + ":" + id;
+    }
+}
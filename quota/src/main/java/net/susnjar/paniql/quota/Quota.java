@@ -0,0 +1,48 @@
+package net.susnjar.paniql.quota;
+
+/**
+ * Limit on the quantity of a {@link QuotaMetric} that each principal of a given
+ * {@link Principal.Kind} may consume within a sliding {@link Window}.
+ */
+public final class Quota {
+    private final Principal.Kind kind;
+    private final QuotaMetric metric;
+    private final Window window;
+    private final double limit;
+
+    private Quota(final Principal.Kind kind, final QuotaMetric metric, final Window window, final double limit) {
+        if (kind == null) throw new IllegalArgumentException("Principal kind must be specified.");
+        if (metric == null) throw new IllegalArgumentException("Metric must be specified.");
+        if (window == null) throw new IllegalArgumentException("Window must be specified.");
+        if (limit < 0.0d) throw new IllegalArgumentException("Limit must not be negative.");
+        this.kind = kind;
+        this.metric = metric;
+        this.window = window;
+        this.limit = limit;
+    }
+
+    public static Quota of(final Principal.Kind kind, final QuotaMetric metric, final Window window, final double limit) {
+        return new Quota(kind, metric, window, limit);
+    }
+
+    public Principal.Kind getKind() {
+        return kind;
+    }
+
+    public QuotaMetric getMetric() {
+        return metric;
+    }
+
+    public Window getWindow() {
+        return window;
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    @Override
+    public String toString() {
+        return kind.name().toLowerCase() + " " + metric + " <= " + limit + " per " + window.getId();
+    }
+}
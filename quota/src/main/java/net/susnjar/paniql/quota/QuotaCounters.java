@@ -0,0 +1,110 @@
+package net.susnjar.paniql.quota;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Sliding window counters of a single principal, laid out as described by a
+ * {@link QuotaLayout}. All operations are lock-free.
+ *
+ * <p>Stores that forget idle principals {@link #retire(long) retire} their
+ * counters first. Additions in progress are counted so that retiring never
+ * races with them, and additions to retired counters are refused so that
+ * callers can repeat them on the principal's current counters.</p>
+ */
+public abstract class QuotaCounters {
+    private static final int RETIRING = -1;
+    private static final int RETIRED = -2;
+    private static final AtomicIntegerFieldUpdater<QuotaCounters> WRITERS =
+            AtomicIntegerFieldUpdater.newUpdater(QuotaCounters.class, "writers");
+
+    private final QuotaLayout layout;
+
+    /**
+     * Number of additions in progress, or {@link #RETIRING}/{@link #RETIRED}.
+     */
+    private volatile int writers = 0;
+
+    protected QuotaCounters(final QuotaLayout layout) {
+        this.layout = layout;
+    }
+
+    public QuotaLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Adds the specified fixed-point quantity to the counter slot covering the
+     * specified time. Quantities added for times that already slid out of the
+     * window are dropped.
+     *
+     * @return {@code false}, without adding anything, if the counters were retired.
+     */
+    public boolean add(final int counter, final long timeMillis, final long units) {
+        if (!beginUpdate()) return false;
+        try {
+            addUnits(counter, timeMillis, units);
+        } finally {
+            endUpdate();
+        }
+        return true;
+    }
+
+    /**
+     * Registers an update in progress, which must be ended by {@link #endUpdate()},
+     * unless the counters were retired.
+     */
+    protected final boolean beginUpdate() {
+        while (true) {
+            final int current = writers;
+            if (current == RETIRED) return false;
+            if (current == RETIRING) {
+                Thread.onSpinWait();
+            } else if (WRITERS.compareAndSet(this, current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    protected final void endUpdate() {
+        WRITERS.decrementAndGet(this);
+    }
+
+    /**
+     * Adds the quantity once the counters are known not to be retired.
+     */
+    protected abstract void addUnits(int counter, long timeMillis, long units);
+
+    /**
+     * Returns the fixed-point sum of the counter over its window ending at the specified time.
+     */
+    public abstract long sum(int counter, long timeMillis);
+
+    /**
+     * Returns true if no counter holds a non-zero value within its window at the specified time.
+     */
+    public boolean isIdle(final long timeMillis) {
+        for (int counter = 0; counter < layout.getCounterCount(); counter++) {
+            if (sum(counter, timeMillis) != 0L) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Permanently retires the counters if they are idle at the specified time
+     * and no addition is in progress. Retired counters refuse further additions.
+     */
+    public boolean retire(final long timeMillis) {
+        if (!isIdle(timeMillis) || !WRITERS.compareAndSet(this, 0, RETIRING)) return false;
+        // Additions that completed after the first check are visible now.
+        if (isIdle(timeMillis)) {
+            writers = RETIRED;
+            return true;
+        }
+        writers = 0;
+        return false;
+    }
+
+    public boolean isRetired() {
+        return writers == RETIRED;
+    }
+}
@@ -0,0 +1,67 @@
+package net.susnjar.paniql.quota;
+
+/**
+ * Outcome of checking an invoice against quotas. Denials identify the first
+ * quota found to be exceeded and the principal it was exceeded for.
+ */
+public final class QuotaDecision {
+    public static final QuotaDecision ADMITTED = new QuotaDecision(null, null, 0.0d, 0.0d);
+
+    private final Quota quota;
+    private final Principal principal;
+    private final double consumed;
+    private final double requested;
+
+    private QuotaDecision(final Quota quota, final Principal principal, final double consumed, final double requested) {
+        this.quota = quota;
+        this.principal = principal;
+        this.consumed = consumed;
+        this.requested = requested;
+    }
+
+    static QuotaDecision denied(final Quota quota, final Principal principal, final long consumedUnits, final long requestedUnits) {
+        return new QuotaDecision(
+                quota,
+                principal,
+                QuotaLayout.toQuantity(consumedUnits),
+                QuotaLayout.toQuantity(requestedUnits)
+        );
+    }
+
+    public boolean isAdmitted() {
+        return quota == null;
+    }
+
+    /**
+     * Returns the exceeded quota or {@code null} if admitted.
+     */
+    public Quota getQuota() {
+        return quota;
+    }
+
+    /**
+     * Returns the principal whose quota would be exceeded or {@code null} if admitted.
+     */
+    public Principal getPrincipal() {
+        return principal;
+    }
+
+    /**
+     * Quantity already consumed within the window of the exceeded quota.
+     */
+    public double getConsumed() {
+        return consumed;
+    }
+
+    /**
+     * Quantity the denied invoice would have added to the exceeded quota.
+     */
+    public double getRequested() {
+        return requested;
+    }
+
+    @Override
+    public String toString() {
+        return isAdmitted() ? "admitted" : ("denied: " + principal + " " + quota + " (consumed " + consumed + ", requested " + requested + ")");
+    }
+}
@@ -0,0 +1,145 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.pricing.Invoice;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Admits or denies {@link Invoice invoices} against sliding window quotas of
+ * the principals a request is attributed to.
+ *
+ * <p>Each decision measures the plan's metrics once and then performs a fixed
+ * number of counter reads and lock-free increments per principal, independent
+ * of how many principals are tracked. Checks and increments are not a single
+ * transaction: concurrent admissions for the same principal may overshoot a
+ * limit by at most what is in flight at that moment.</p>
+ *
+ * Example:
+ *
+ * <code>
+ *     final QuotaPlan plan = new QuotaPlan(List.of(
+ *         Quota.of(Principal.Kind.USER, QuotaMetric.total(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM), Window.MINUTE, 1000)
+ *     ));
+ *     final QuotaEngine engine = new QuotaEngine(plan);
+ *     final QuotaDecision decision = engine.admit(invoice, Principal.user("jane"), Principal.client("mobile"));
+ * </code>
+ */
+public class QuotaEngine {
+    private final QuotaPlan plan;
+    private final QuotaStore store;
+    private final LongSupplier clock;
+
+    public QuotaEngine(final QuotaPlan plan) {
+        this(plan, new LocalQuotaStore(plan.getLayout()));
+    }
+
+    public QuotaEngine(final QuotaPlan plan, final QuotaStore store) {
+        this(plan, store, System::currentTimeMillis);
+    }
+
+    public QuotaEngine(final QuotaPlan plan, final QuotaStore store, final LongSupplier clock) {
+        if (!plan.getLayout().equals(store.getLayout())) {
+            throw new IllegalArgumentException("Store layout does not match the quota plan.");
+        }
+        this.plan = plan;
+        this.store = store;
+        this.clock = clock;
+    }
+
+    public QuotaPlan getPlan() {
+        return plan;
+    }
+
+    public QuotaStore getStore() {
+        return store;
+    }
+
+    public long currentTimeMillis() {
+        return clock.getAsLong();
+    }
+
+    /**
+     * Checks the invoice against the quotas of all specified principals and,
+     * if none would be exceeded, charges it to all of them.
+     */
+    public QuotaDecision admit(final Invoice invoice, final Principal... principals) {
+        final long[] units = new long[plan.getMetricCount()];
+        plan.measure(invoice, units);
+        return admit(units, clock.getAsLong(), principals);
+    }
+
+    QuotaDecision admit(final long[] units, final long now, final Principal... principals) {
+        final QuotaCounters[] counters = new QuotaCounters[principals.length];
+
+        for (int p = 0; p < principals.length; p++) {
+            final Principal principal = principals[p];
+            final int[] kindCounters = plan.getCounters(principal.getKind());
+            if (kindCounters.length == 0) continue;
+
+            final long[] limits = plan.getLimits(principal.getKind());
+            final QuotaCounters principalCounters = store.getCounters(principal);
+            counters[p] = principalCounters;
+
+            for (int i = 0; i < kindCounters.length; i++) {
+                final int counter = kindCounters[i];
+                final long requested = units[plan.getCounterMetric(counter)];
+                if (requested <= 0L) continue;
+
+                final long consumed = principalCounters.sum(counter, now);
+                if (consumed + requested > limits[i]) {
+                    return QuotaDecision.denied(plan.getQuotas(principal.getKind())[i], principal, consumed, requested);
+                }
+            }
+        }
+
+        charge(units, now, principals, counters, 1L);
+        return QuotaDecision.ADMITTED;
+    }
+
+    /**
+     * Unconditionally charges the invoice to the specified principals, e.g. to
+     * account for work that was performed regardless of a decision.
+     */
+    public void charge(final Invoice invoice, final Principal... principals) {
+        final long[] units = new long[plan.getMetricCount()];
+        plan.measure(invoice, units);
+        charge(units, clock.getAsLong(), principals, new QuotaCounters[principals.length], 1L);
+    }
+
+    void charge(final long[] units, final long time, final Principal[] principals, final QuotaCounters[] counters, final long sign) {
+        for (int p = 0; p < principals.length; p++) {
+            final Principal principal = principals[p];
+            final int[] kindCounters = plan.getCounters(principal.getKind());
+            if (kindCounters.length == 0) continue;
+
+            QuotaCounters principalCounters = counters[p];
+            if (principalCounters == null) {
+                principalCounters = store.getCounters(principal);
+            }
+
+            for (final int counter: kindCounters) {
+                final long amount = units[plan.getCounterMetric(counter)];
+                if (amount == 0L) continue;
+                while (!principalCounters.add(counter, time, sign * amount)) {
+                    // Evicted meanwhile, charge the principal's new counters.
+                    principalCounters = store.getCounters(principal);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how much of the specified quota the principal consumed within its window.
+     */
+    public double getConsumed(final Principal principal, final Quota quota) {
+        final int[] kindCounters = plan.getCounters(principal.getKind());
+        final Quota[] kindQuotas = plan.getQuotas(principal.getKind());
+        for (int i = 0; i < kindCounters.length; i++) {
+            final Quota candidate = kindQuotas[i];
+            if ((candidate.getMetric().equals(quota.getMetric())) && (candidate.getWindow() == quota.getWindow())) {
+                return QuotaLayout.toQuantity(store.getCounters(principal).sum(kindCounters[i], clock.getAsLong()));
+            }
+        }
+        return 0.0d;
+    }
+}
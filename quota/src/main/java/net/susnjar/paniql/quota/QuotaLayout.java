@@ -0,0 +1,150 @@
+package net.susnjar.paniql.quota;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes how window counters are laid out in the flat array of slots kept
+ * for each principal: counter {@code c} occupies {@link Window#getSlotCount()}
+ * consecutive slots starting at {@link #getOffset(int)}.
+ *
+ * <p>Each slot packs the tick it was last written for (its tag) together with a
+ * signed fixed-point quantity so that a slot can be read, recycled and
+ * incremented with a single compare-and-set.</p>
+ */
+public final class QuotaLayout {
+    /**
+     * Fixed-point scale used to store fractional quantities in slots. Quantities
+     * are rounded up to the nearest unit so that they are never under-counted.
+     */
+    public static final double UNITS_PER_QUANTITY = 64.0d;
+
+    /**
+     * Ticks are truncated to this many bits when tagging slots. Even for the
+     * shortest window this only wraps around after several months.
+     */
+    static final int TAG_BITS = 28;
+    static final int VALUE_BITS = Long.SIZE - TAG_BITS;
+    static final long TAG_MASK = (1L << TAG_BITS) - 1L;
+    static final long VALUE_MASK = (1L << VALUE_BITS) - 1L;
+    static final long MAX_VALUE = (1L << (VALUE_BITS - 1)) - 1L;
+    static final long MIN_VALUE = -(1L << (VALUE_BITS - 1));
+
+    private final Window[] windows;
+    private final String[] metricIds;
+    private final int[] offsets;
+    private final int slotCount;
+
+    /**
+     * @param counterMetrics metric counted by each counter, in the same order as the windows.
+     */
+    public QuotaLayout(final List<Window> counterWindows, final List<QuotaMetric> counterMetrics) {
+        if (counterWindows.size() != counterMetrics.size()) {
+            throw new IllegalArgumentException("Each counter needs both a window and a metric.");
+        }
+        this.windows = counterWindows.toArray(new Window[0]);
+        this.metricIds = counterMetrics.stream().map(QuotaMetric::getId).toArray(String[]::new);
+        this.offsets = new int[windows.length];
+        int offset = 0;
+        for (int i = 0; i < windows.length; i++) {
+            offsets[i] = offset;
+            offset += windows[i].getSlotCount();
+        }
+        this.slotCount = offset;
+    }
+
+    public int getCounterCount() {
+        return windows.length;
+    }
+
+    public Window getWindow(final int counter) {
+        return windows[counter];
+    }
+
+    public int getOffset(final int counter) {
+        return offsets[counter];
+    }
+
+    /**
+     * Total number of slots, across all counters, kept for each principal.
+     */
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Returns the {@link QuotaMetric#getId() id} of the metric the counter counts.
+     */
+    public String getMetricId(final int counter) {
+        return metricIds[counter];
+    }
+
+    /**
+     * Returns a hash of the counter windows and metrics that is stable across
+     * processes, used to verify that shared state was created for a compatible layout.
+     */
+    public long getSignature() {
+        long hash = 0xcbf29ce484222325L;
+        for (int counter = 0; counter < windows.length; counter++) {
+            hash = (hash ^ (windows[counter].ordinal() + 1)) * 0x100000001b3L;
+            for (final byte b: metricIds[counter].getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            // Separates the metric from the next counter's window.
+            hash = (hash ^ 0xff) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public static long toUnits(final double quantity) {
+        final double units = Math.ceil(quantity * UNITS_PER_QUANTITY);
+        if (units >= MAX_VALUE) return MAX_VALUE;
+        if (units <= MIN_VALUE) return MIN_VALUE;
+        return (long) units;
+    }
+
+    public static double toQuantity(final long units) {
+        return units / UNITS_PER_QUANTITY;
+    }
+
+    static long pack(final long tick, final long value) {
+        return ((tick & TAG_MASK) << VALUE_BITS) | (value & VALUE_MASK);
+    }
+
+    static long tag(final long slot) {
+        return slot >>> VALUE_BITS;
+    }
+
+    static long value(final long slot) {
+        return (slot << TAG_BITS) >> TAG_BITS;
+    }
+
+    /**
+     * Returns how many ticks a slot tagged with {@code slotTag} lags behind {@code tick},
+     * accounting for tag wrap-around.
+     */
+    static long age(final long tick, final long slotTag) {
+        return (tick - slotTag) & TAG_MASK;
+    }
+
+    static long saturatedAdd(final long a, final long b) {
+        final long sum = a + b;
+        if (sum > MAX_VALUE) return MAX_VALUE;
+        if (sum < MIN_VALUE) return MIN_VALUE;
+        return sum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        QuotaLayout that = (QuotaLayout) o;
+        return Arrays.equals(windows, that.windows) && Arrays.equals(metricIds, that.metricIds);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(windows) + Arrays.hashCode(metricIds);
+    }
+}
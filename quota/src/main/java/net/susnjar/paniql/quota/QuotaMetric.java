@@ -0,0 +1,129 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.models.ElementModel;
+import net.susnjar.paniql.models.FieldDefModel;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A single quantity measured from each {@link Invoice}: one {@link Bound} of one
+ * {@link WorkType} for a specific type, a specific field or, when no element is
+ * specified, the grand total of the invoice.
+ */
+public final class QuotaMetric {
+    private final ElementModel<?> element;
+    private final WorkType workType;
+    private final Bound bound;
+
+    private QuotaMetric(final ElementModel<?> element, final WorkType workType, final Bound bound) {
+        if (workType == null) throw new IllegalArgumentException("Work type must be specified.");
+        if (bound == null) throw new IllegalArgumentException("Bound must be specified.");
+        this.element = element;
+        this.workType = workType;
+        this.bound = bound;
+    }
+
+    public static QuotaMetric of(final OutputTypeModel<?, ?> type, final WorkType workType, final Bound bound) {
+        return new QuotaMetric(type, workType, bound);
+    }
+
+    public static QuotaMetric of(final FieldDefModel field, final WorkType workType, final Bound bound) {
+        return new QuotaMetric(field, workType, bound);
+    }
+
+    public static QuotaMetric total(final WorkType workType, final Bound bound) {
+        return new QuotaMetric(null, workType, bound);
+    }
+
+    /**
+     * Returns the type or field measured or {@code null} if this is a grand total metric.
+     */
+    public ElementModel<?> getElement() {
+        return element;
+    }
+
+    public WorkType getWorkType() {
+        return workType;
+    }
+
+    public Bound getBound() {
+        return bound;
+    }
+
+    public boolean isTotal() {
+        return element == null;
+    }
+
+    /**
+     * Returns the name of the element, work type and bound, identifying the
+     * metric across environments built from the same schema.
+     */
+    public String getId() {
+        final String elementName = (element == null) ? "*" : element.getFullyQualifiedName();
+        return elementName + "/" + workType.getId() + "/" + bound.getId();
+    }
+
+    public double measure(final Invoice invoice) {
+        return measure(invoice, bound);
+    }
+
+    /**
+     * Measures the invoice using the specified bound instead of this metric's own,
+     * e.g. to reserve the maximum against a quota on averages.
+     */
+    public double measure(final Invoice invoice, final Bound measuredBound) {
+        if (element == null) {
+            return sum(invoice.getResourceCosts(), measuredBound)
+                    + sum(invoice.getPartCosts(), measuredBound)
+                    + sum(invoice.getFieldCosts(), measuredBound);
+        }
+
+        final Price price;
+        if (element instanceof FieldDefModel) {
+            price = invoice.getFieldCosts().get(element);
+        } else {
+            final Price resourcePrice = invoice.getResourceCosts().get(element);
+            price = (resourcePrice != null) ? resourcePrice : invoice.getPartCosts().get(element);
+        }
+        return (price == null) ? 0.0d : measuredBound.get(price.get(workType));
+    }
+
+    /**
+     * Measures actual consumption reported after execution. Bounds do not apply to actuals.
+     */
+    public double measure(final Consumption consumption) {
+        return (element == null) ? consumption.getTotal(workType) : consumption.get(element, workType);
+    }
+
+    private double sum(final Map<?, Price> costs, final Bound measuredBound) {
+        double sum = 0.0d;
+        for (final Price price: costs.values()) {
+            sum += measuredBound.get(price.get(workType));
+        }
+        return sum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        QuotaMetric that = (QuotaMetric) o;
+        return element == that.element && workType == that.workType && bound == that.bound;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(System.identityHashCode(element), workType, bound);
+    }
+
+    @Override
+    public String toString() {
+        return getId();
+    }
+}
@@ -0,0 +1,170 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Set of {@link Quota quotas} compiled into dense arrays: distinct metrics are
+ * measured once per invoice, each distinct metric and window pair gets one
+ * counter and each principal kind gets its own list of counters to check,
+ * with duplicate quotas collapsed into the strictest limit.
+ */
+public final class QuotaPlan {
+    private static final int[] NO_COUNTERS = new int[0];
+    private static final long[] NO_LIMITS = new long[0];
+    private static final Quota[] NO_QUOTAS = new Quota[0];
+
+    private final List<Quota> quotas;
+    private final QuotaMetric[] metrics;
+    private final int[] counterMetrics;
+    private final QuotaLayout layout;
+
+    private final int[][] kindCounters = new int[Principal.Kind.values().length][];
+    private final long[][] kindLimits = new long[Principal.Kind.values().length][];
+    private final Quota[][] kindQuotas = new Quota[Principal.Kind.values().length][];
+
+    public QuotaPlan(final Collection<Quota> quotas) {
+        this.quotas = List.copyOf(quotas);
+
+        final HashMap<QuotaMetric, Integer> metricIndexes = new HashMap<>();
+        final HashMap<CounterKey, Integer> counterIndexes = new HashMap<>();
+        final List<QuotaMetric> metricList = new ArrayList<>();
+        final List<Window> counterWindows = new ArrayList<>();
+        final List<Integer> counterMetricList = new ArrayList<>();
+        final List<QuotaMetric> layoutMetrics = new ArrayList<>();
+        final EnumMap<Principal.Kind, Map<Integer, Quota>> strictest = new EnumMap<>(Principal.Kind.class);
+
+        for (final Quota quota: this.quotas) {
+            final int metric = metricIndexes.computeIfAbsent(quota.getMetric(), m -> {
+                metricList.add(m);
+                return metricList.size() - 1;
+            });
+            final int counter = counterIndexes.computeIfAbsent(new CounterKey(metric, quota.getWindow()), k -> {
+                counterWindows.add(k.window);
+                counterMetricList.add(k.metric);
+                layoutMetrics.add(metricList.get(k.metric));
+                return counterWindows.size() - 1;
+            });
+            strictest.computeIfAbsent(quota.getKind(), k -> new HashMap<>())
+                    .merge(counter, quota, (a, b) -> (a.getLimit() <= b.getLimit()) ? a : b);
+        }
+
+        this.metrics = metricList.toArray(new QuotaMetric[0]);
+        this.counterMetrics = counterMetricList.stream().mapToInt(Integer::intValue).toArray();
+        this.layout = new QuotaLayout(counterWindows, layoutMetrics);
+
+        for (final Principal.Kind kind: Principal.Kind.values()) {
+            final Map<Integer, Quota> kindQuotaMap = strictest.get(kind);
+            if (kindQuotaMap == null) {
+                kindCounters[kind.ordinal()] = NO_COUNTERS;
+                kindLimits[kind.ordinal()] = NO_LIMITS;
+                kindQuotas[kind.ordinal()] = NO_QUOTAS;
+            } else {
+                final int size = kindQuotaMap.size();
+                final int[] counters = new int[size];
+                final long[] limits = new long[size];
+                final Quota[] kindQuotaArray = new Quota[size];
+                int i = 0;
+                for (final Map.Entry<Integer, Quota> entry: kindQuotaMap.entrySet()) {
+                    counters[i] = entry.getKey();
+                    limits[i] = QuotaLayout.toUnits(entry.getValue().getLimit());
+                    kindQuotaArray[i] = entry.getValue();
+                    i++;
+                }
+                kindCounters[kind.ordinal()] = counters;
+                kindLimits[kind.ordinal()] = limits;
+                kindQuotas[kind.ordinal()] = kindQuotaArray;
+            }
+        }
+    }
+
+    public List<Quota> getQuotas() {
+        return quotas;
+    }
+
+    public QuotaLayout getLayout() {
+        return layout;
+    }
+
+    public int getMetricCount() {
+        return metrics.length;
+    }
+
+    public QuotaMetric getMetric(final int index) {
+        return metrics[index];
+    }
+
+    /**
+     * Measures all distinct metrics of the invoice, in fixed-point units, into the specified array.
+     */
+    public void measure(final Invoice invoice, final long[] units) {
+        for (int i = 0; i < metrics.length; i++) {
+            units[i] = QuotaLayout.toUnits(metrics[i].measure(invoice));
+        }
+    }
+
+    /**
+     * Measures all distinct metrics of the invoice using the specified bound instead of their own.
+     */
+    public void measure(final Invoice invoice, final Bound bound, final long[] units) {
+        for (int i = 0; i < metrics.length; i++) {
+            units[i] = QuotaLayout.toUnits(metrics[i].measure(invoice, bound));
+        }
+    }
+
+    /**
+     * Measures all distinct metrics of actual consumption.
+     */
+    public void measure(final Consumption consumption, final long[] units) {
+        for (int i = 0; i < metrics.length; i++) {
+            units[i] = QuotaLayout.toUnits(metrics[i].measure(consumption));
+        }
+    }
+
+    int getCounterMetric(final int counter) {
+        return counterMetrics[counter];
+    }
+
+    int[] getCounters(final Principal.Kind kind) {
+        return kindCounters[kind.ordinal()];
+    }
+
+    long[] getLimits(final Principal.Kind kind) {
+        return kindLimits[kind.ordinal()];
+    }
+
+    Quota[] getQuotas(final Principal.Kind kind) {
+        return kindQuotas[kind.ordinal()];
+    }
+
+    private static final class CounterKey {
+        private final int metric;
+        private final Window window;
+
+        CounterKey(final int metric, final Window window) {
+            this.metric = metric;
+            this.window = window;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CounterKey that = (CounterKey) o;
+            return metric == that.metric && window == that.window;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(metric, window);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Two-phase admission on top of a {@link QuotaEngine}: before execution the
+ * predicted cost (typically the 95% percentile or the maximum) is reserved
+ * against the quotas and after execution the reservation is reconciled with
+ * the actual {@link Consumption}. The difference is applied to the window
+ * slots the reservation was charged to, so unused capacity is released
+ * immediately and conservative predictions do not starve clients in bursts.
+ *
+ * <p>All operations are lock-free. Reservations not reconciled within the
+ * time-to-live expire and release what they held; pending reservations are
+ * expired as a side effect of new reservations or by calling {@link #expire()}.
+ * A reconciliation arriving after expiry still charges the actual consumption.</p>
+ *
+ * Example:
+ *
+ * <code>
+ *     final QuotaReservations reservations = new QuotaReservations(engine, Bound.PERCENTILE_95, 30_000L);
+ *     final Reservation reservation = reservations.reserve(invoice, Principal.user("jane"));
+ *     if (reservation.isAdmitted()) {
+ *         final Consumption actual = execute(request);
+ *         reservations.reconcile(reservation, actual);
+ *     }
+ * </code>
+ */
+public class QuotaReservations {
+    private final QuotaEngine engine;
+    private final QuotaPlan plan;
+    private final Bound reservedBound;
+    private final long timeToLiveMillis;
+    private final ConcurrentLinkedQueue<Reservation> pending = new ConcurrentLinkedQueue<>();
+
+    public QuotaReservations(final QuotaEngine engine, final Bound reservedBound, final long timeToLiveMillis) {
+        if (timeToLiveMillis <= 0L) throw new IllegalArgumentException("Time to live must be positive.");
+        this.engine = engine;
+        this.plan = engine.getPlan();
+        this.reservedBound = reservedBound;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    public Bound getReservedBound() {
+        return reservedBound;
+    }
+
+    /**
+     * Reserves the predicted cost of the invoice, measured at the reserved bound,
+     * if that does not exceed any quota of the specified principals.
+     */
+    public Reservation reserve(final Invoice predicted, final Principal... principals) {
+        final long now = engine.currentTimeMillis();
+        expire(now);
+
+        final long[] units = new long[plan.getMetricCount()];
+        plan.measure(predicted, reservedBound, units);
+
+        final QuotaDecision decision = engine.admit(units, now, principals);
+        final Reservation reservation = new Reservation(decision, principals.clone(), units, now, now + timeToLiveMillis);
+        if (decision.isAdmitted()) {
+            pending.add(reservation);
+        }
+        return reservation;
+    }
+
+    /**
+     * Replaces the reserved capacity with the actual consumption.
+     */
+    public void reconcile(final Reservation reservation, final Consumption actual) {
+        final long[] actualUnits = new long[plan.getMetricCount()];
+        plan.measure(actual, actualUnits);
+
+        if (reservation.transition(Reservation.State.PENDING, Reservation.State.SETTLED)) {
+            final long[] reserved = reservation.getReservedUnits();
+            for (int i = 0; i < actualUnits.length; i++) {
+                actualUnits[i] -= reserved[i];
+            }
+            charge(reservation, actualUnits, 1L);
+        } else if (reservation.getState() == Reservation.State.EXPIRED) {
+            charge(reservation, actualUnits, 1L);
+        }
+    }
+
+    /**
+     * Releases all reserved capacity, e.g. when the request was not executed after all.
+     */
+    public void release(final Reservation reservation) {
+        if (reservation.transition(Reservation.State.PENDING, Reservation.State.SETTLED)) {
+            charge(reservation, reservation.getReservedUnits(), -1L);
+        }
+    }
+
+    /**
+     * Expires pending reservations whose time to live has elapsed.
+     */
+    public void expire() {
+        expire(engine.currentTimeMillis());
+    }
+
+    private void expire(final long now) {
+        Reservation head;
+        while (((head = pending.peek()) != null) && ((head.getState() != Reservation.State.PENDING) || (head.getDeadlineMillis() <= now))) {
+            if (pending.remove(head) && head.transition(Reservation.State.PENDING, Reservation.State.EXPIRED)) {
+                charge(head, head.getReservedUnits(), -1L);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of reservations tracked for expiry, including recently settled ones.
+     */
+    public int getTrackedCount() {
+        return pending.size();
+    }
+
+    private void charge(final Reservation reservation, final long[] units, final long sign) {
+        final Principal[] principals = reservation.getPrincipals();
+        engine.charge(units, reservation.getTimeMillis(), principals, new QuotaCounters[principals.length], sign);
+    }
+}
@@ -0,0 +1,13 @@
+package net.susnjar.paniql.quota;
+
+/**
+ * Keeps {@link QuotaCounters} of all tracked principals.
+ */
+public interface QuotaStore {
+    QuotaLayout getLayout();
+
+    /**
+     * Returns the counters of the specified principal, creating them on first use.
+     */
+    QuotaCounters getCounters(Principal principal);
+}
@@ -0,0 +1,30 @@
+package net.susnjar.paniql.quota;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link ReplicatedQuotaStore} state deltas between cluster nodes.
+ * Delivery may be delayed, duplicated or reordered; the replicated state
+ * converges regardless. Lost messages are compensated by later deltas of
+ * the same principal and by periodic full state rounds.
+ */
+public interface QuotaTransport extends Closeable {
+    /**
+     * Returns the size of the largest message the transport can carry.
+     */
+    default int getMaxMessageSize() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Sends the message to all other nodes.
+     */
+    void publish(byte[] message) throws IOException;
+
+    /**
+     * Registers the consumer of messages published by other nodes.
+     */
+    void setReceiver(Consumer<byte[]> receiver);
+}
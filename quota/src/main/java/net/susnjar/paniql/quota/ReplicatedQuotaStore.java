@@ -0,0 +1,407 @@
+package net.susnjar.paniql.quota;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link QuotaStore} converging towards cluster-wide quotas. Every window slot
+ * is a PN-counter CRDT: each node only ever grows its own positive and
+ * negative (released) slot values and the slot value is the sum, across all
+ * nodes, of positive minus negative values.
+ *
+ * <p>Admission reads and writes only local memory, at the same speed as
+ * {@link LocalQuotaStore}. Principals changed since the last round are
+ * gossiped as state deltas through a {@link QuotaTransport} every gossip
+ * period, and the full state of all principals is gossiped every few rounds
+ * so that lost messages are eventually compensated. Remote consumption thus
+ * becomes visible within about one period plus transport latency, or one full
+ * state period if messages were lost. Merging is idempotent, commutative and
+ * associative, so duplicated, reordered or replayed messages are harmless.</p>
+ *
+ * <p>Messages are authenticated with an HMAC-SHA256 over a key shared by all
+ * nodes, and only messages from the configured peer nodes are merged, so
+ * remote state is bounded by the number of peers for each principal.
+ * Principals idle everywhere can be forgotten with {@link #evictIdle(long)}.</p>
+ */
+public class ReplicatedQuotaStore implements QuotaStore, Closeable {
+    private static final int MESSAGE_MAGIC = 0x50515244; // "PQRD"
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final int MAC_LENGTH = 32;
+    private static final int ENTRY_SIZE = 4 + 8 + 8;
+
+    /**
+     * Number of gossip rounds between full state rounds, unless specified otherwise.
+     */
+    public static final int DEFAULT_FULL_STATE_ROUNDS = 10;
+
+    private final String nodeId;
+    private final QuotaLayout layout;
+    private final QuotaTransport transport;
+    private final SecretKeySpec key;
+    private final Set<String> peerNodeIds;
+    private final ThreadLocal<Mac> macs;
+    private final ConcurrentHashMap<Principal, ReplicatedCounters> counters = new ConcurrentHashMap<>();
+    private final Set<ReplicatedCounters> dirty = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService gossipExecutor;
+
+    /**
+     * @param sharedKey   secret key shared by all nodes, used to authenticate messages.
+     * @param peerNodeIds ids of the other nodes whose messages are accepted.
+     */
+    public ReplicatedQuotaStore(
+            final String nodeId,
+            final QuotaLayout layout,
+            final QuotaTransport transport,
+            final byte[] sharedKey,
+            final Collection<String> peerNodeIds
+    ) {
+        if (sharedKey.length < MAC_LENGTH) {
+            throw new IllegalArgumentException("Shared key must have at least " + MAC_LENGTH + " bytes.");
+        }
+        this.nodeId = nodeId;
+        this.layout = layout;
+        this.transport = transport;
+        this.key = new SecretKeySpec(sharedKey, MAC_ALGORITHM);
+        this.peerNodeIds = Set.copyOf(peerNodeIds);
+        this.macs = ThreadLocal.withInitial(this::createMac);
+        // Fails fast rather than on the first message.
+        macs.get();
+        transport.setReceiver(this::receive);
+    }
+
+    private Mac createMac() {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException x) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available.", x);
+        }
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public QuotaLayout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public QuotaCounters getCounters(final Principal principal) {
+        return getReplicatedCounters(principal);
+    }
+
+    private ReplicatedCounters getReplicatedCounters(final Principal principal) {
+        final ReplicatedCounters existing = counters.get(principal);
+        if (existing != null) {
+            if (!existing.isRetired()) return existing;
+            counters.remove(principal, existing);
+        }
+        return counters.computeIfAbsent(principal, p -> new ReplicatedCounters(p, layout));
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    /**
+     * Forgets principals with nothing left in any window at the specified time,
+     * neither locally nor from any peer. Peers resend the state of principals
+     * that become active again with their next delta or full state round.
+     */
+    public void evictIdle(final long timeMillis) {
+        for (final Map.Entry<Principal, ReplicatedCounters> entry: counters.entrySet()) {
+            final ReplicatedCounters principalCounters = entry.getValue();
+            if (principalCounters.retire(timeMillis)) {
+                counters.remove(entry.getKey(), principalCounters);
+                dirty.remove(principalCounters);
+            }
+        }
+    }
+
+    /**
+     * Starts gossiping local changes every specified period on a daemon thread,
+     * with the full state gossiped every {@link #DEFAULT_FULL_STATE_ROUNDS} rounds.
+     */
+    public void startGossip(final long periodMillis) {
+        startGossip(periodMillis, DEFAULT_FULL_STATE_ROUNDS);
+    }
+
+    /**
+     * Starts gossiping local changes every specified period on a daemon thread,
+     * with the full state gossiped every specified number of rounds.
+     */
+    public synchronized void startGossip(final long periodMillis, final int fullStateRounds) {
+        if (fullStateRounds <= 0) throw new IllegalArgumentException("Full state rounds must be positive.");
+        if (gossipExecutor != null) throw new IllegalStateException("Gossip already started.");
+        gossipExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "paniql-quota-gossip-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        final int[] round = new int[1];
+        gossipExecutor.scheduleAtFixedRate(() -> {
+            try {
+                if (++round[0] % fullStateRounds == 0) {
+                    gossipFullState();
+                } else {
+                    gossip();
+                }
+            } catch (IOException | RuntimeException x) {
+                // Retried in the next round as principals stay dirty until sent.
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Publishes the local state of every principal changed since the last round.
+     * A failure to publish one principal does not prevent publishing the others;
+     * the first failure is thrown once all were attempted.
+     */
+    public void gossip() throws IOException {
+        final List<ReplicatedCounters> changed = new ArrayList<>();
+        final Iterator<ReplicatedCounters> iterator = dirty.iterator();
+        while (iterator.hasNext()) {
+            changed.add(iterator.next());
+            iterator.remove();
+        }
+        publish(changed);
+    }
+
+    /**
+     * Publishes the local state of all principals, compensating for messages
+     * that were lost in earlier rounds.
+     */
+    public void gossipFullState() throws IOException {
+        dirty.clear();
+        publish(new ArrayList<>(counters.values()));
+    }
+
+    private void publish(final Collection<ReplicatedCounters> principals) throws IOException {
+        Exception failure = null;
+        for (final ReplicatedCounters principalCounters: principals) {
+            try {
+                final List<byte[]> messages = encode(principalCounters);
+                for (final byte[] message: messages) {
+                    transport.publish(message);
+                }
+            } catch (IllegalArgumentException x) {
+                // Can never be sent, so it is not retried.
+                failure = addFailure(failure, x);
+            } catch (IOException | RuntimeException x) {
+                dirty.add(principalCounters);
+                failure = addFailure(failure, x);
+            }
+        }
+        if (failure instanceof IOException) throw (IOException) failure;
+        if (failure != null) throw (RuntimeException) failure;
+    }
+
+    private static Exception addFailure(final Exception first, final Exception failure) {
+        if (first == null) return failure;
+        first.addSuppressed(failure);
+        return first;
+    }
+
+    /**
+     * Encodes the non-zero local slots of the principal into as many messages
+     * as needed to stay within the transport's message size.
+     */
+    private List<byte[]> encode(final ReplicatedCounters changed) {
+        final byte[] node = nodeId.getBytes(StandardCharsets.UTF_8);
+        final byte[] principalId = changed.principal.getId().getBytes(StandardCharsets.UTF_8);
+        final int headerSize = 4 + 8 + 4 + node.length + 1 + 4 + principalId.length + 4;
+        final int maxEntries = (int) Math.min(
+                Integer.MAX_VALUE,
+                ((long) transport.getMaxMessageSize() - headerSize - MAC_LENGTH) / ENTRY_SIZE
+        );
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Quota state of " + changed.principal + " does not fit a message.");
+        }
+
+        final int slotCount = layout.getSlotCount();
+        final List<byte[]> messages = new ArrayList<>();
+        int slot = 0;
+        while (true) {
+            int entries = 0;
+            int end = slot;
+            while ((end < slotCount) && (entries < maxEntries)) {
+                if ((changed.positive.getSlot(end) != 0L) || (changed.negative.getSlot(end) != 0L)) entries++;
+                end++;
+            }
+            if (entries == 0) return messages;
+
+            final ByteBuffer buffer = ByteBuffer.allocate(headerSize + entries * ENTRY_SIZE + MAC_LENGTH);
+            buffer.putInt(MESSAGE_MAGIC);
+            buffer.putLong(layout.getSignature());
+            buffer.putInt(node.length).put(node);
+            buffer.put((byte) changed.principal.getKind().ordinal());
+            buffer.putInt(principalId.length).put(principalId);
+            buffer.putInt(entries);
+            for (; (slot < end) && (entries > 0); slot++) {
+                final long p = changed.positive.getSlot(slot);
+                final long n = changed.negative.getSlot(slot);
+                if ((p != 0L) || (n != 0L)) {
+                    buffer.putInt(slot).putLong(p).putLong(n);
+                    entries--;
+                }
+            }
+            slot = end;
+
+            final Mac mac = macs.get();
+            mac.update(buffer.array(), 0, buffer.position());
+            buffer.put(mac.doFinal());
+            messages.add(buffer.array());
+        }
+    }
+
+    private void receive(final byte[] message) {
+        if (!isAuthentic(message)) return;
+
+        final ByteBuffer buffer = ByteBuffer.wrap(message, 0, message.length - MAC_LENGTH);
+        if (buffer.getInt() != MESSAGE_MAGIC) return;
+        if (buffer.getLong() != layout.getSignature()) return;
+
+        final String sender = readString(buffer);
+        if (!peerNodeIds.contains(sender) || sender.equals(nodeId)) return;
+
+        final int kind = buffer.get();
+        if ((kind < 0) || (kind >= Principal.Kind.values().length)) return;
+        final Principal principal = Principal.of(Principal.Kind.values()[kind], readString(buffer));
+
+        final int entries = buffer.getInt();
+        if ((entries < 0) || (entries > buffer.remaining() / ENTRY_SIZE)) return;
+        final int start = buffer.position();
+        for (int e = 0; e < entries; e++) {
+            final int index = buffer.getInt(start + e * ENTRY_SIZE);
+            if ((index < 0) || (index >= layout.getSlotCount())) return;
+        }
+
+        while (true) {
+            final ReplicatedCounters principalCounters = getReplicatedCounters(principal);
+            if (!principalCounters.beginUpdate()) continue;
+            try {
+                final RemoteCounters remote = principalCounters.getRemote(sender);
+                for (int e = 0; e < entries; e++) {
+                    final int index = buffer.getInt();
+                    remote.positive.merge(index, buffer.getLong());
+                    remote.negative.merge(index, buffer.getLong());
+                }
+            } finally {
+                principalCounters.endUpdate();
+            }
+            return;
+        }
+    }
+
+    private boolean isAuthentic(final byte[] message) {
+        if (message.length <= MAC_LENGTH) return false;
+        final Mac mac = macs.get();
+        mac.update(message, 0, message.length - MAC_LENGTH);
+        final byte[] expected = mac.doFinal();
+        final byte[] actual = new byte[MAC_LENGTH];
+        System.arraycopy(message, message.length - MAC_LENGTH, actual, 0, MAC_LENGTH);
+        return MessageDigest.isEqual(expected, actual);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if ((length < 0) || (length > buffer.remaining())) {
+            throw new IllegalArgumentException("Malformed quota message.");
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (gossipExecutor != null) {
+                gossipExecutor.shutdownNow();
+                gossipExecutor = null;
+            }
+        }
+        transport.close();
+    }
+
+    private static final class RemoteCounters {
+        private final HeapQuotaCounters positive;
+        private final HeapQuotaCounters negative;
+
+        RemoteCounters(final QuotaLayout layout) {
+            this.positive = new HeapQuotaCounters(layout);
+            this.negative = new HeapQuotaCounters(layout);
+        }
+    }
+
+    private final class ReplicatedCounters extends QuotaCounters {
+        private final Principal principal;
+        private final HeapQuotaCounters positive;
+        private final HeapQuotaCounters negative;
+        private final ConcurrentHashMap<String, RemoteCounters> remotes = new ConcurrentHashMap<>();
+
+        ReplicatedCounters(final Principal principal, final QuotaLayout layout) {
+            super(layout);
+            this.principal = principal;
+            this.positive = new HeapQuotaCounters(layout);
+            this.negative = new HeapQuotaCounters(layout);
+        }
+
+        RemoteCounters getRemote(final String node) {
+            final RemoteCounters existing = remotes.get(node);
+            if (existing != null) return existing;
+            return remotes.computeIfAbsent(node, n -> new RemoteCounters(getLayout()));
+        }
+
+        @Override
+        protected void addUnits(final int counter, final long timeMillis, final long units) {
+            if (units >= 0L) {
+                positive.addUnits(counter, timeMillis, units);
+            } else {
+                negative.addUnits(counter, timeMillis, -units);
+            }
+            dirty.add(this);
+        }
+
+        @Override
+        public long sum(final int counter, final long timeMillis) {
+            long sum = positive.sum(counter, timeMillis) - negative.sum(counter, timeMillis);
+            for (final RemoteCounters remote: remotes.values()) {
+                sum += remote.positive.sum(counter, timeMillis) - remote.negative.sum(counter, timeMillis);
+            }
+            return sum;
+        }
+
+        /**
+         * Positive and negative values are checked separately as values that
+         * cancel out still have to win merges against older values of peers.
+         */
+        @Override
+        public boolean isIdle(final long timeMillis) {
+            if (!positive.isIdle(timeMillis) || !negative.isIdle(timeMillis)) return false;
+            for (final RemoteCounters remote: remotes.values()) {
+                if (!remote.positive.isIdle(timeMillis) || !remote.negative.isIdle(timeMillis)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.susnjar.paniql.quota;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Capacity held against quotas for a request between admission and
+ * reconciliation, see {@link QuotaReservations}.
+ */
+public final class Reservation {
+    public enum State {
+        /**
+         * Admission was denied, nothing is held.
+         */
+        DENIED,
+        /**
+         * Predicted capacity is held, awaiting reconciliation.
+         */
+        PENDING,
+        /**
+         * Reconciled with actual consumption or explicitly released.
+         */
+        SETTLED,
+        /**
+         * Not reconciled in time, held capacity was released.
+         */
+        EXPIRED
+    }
+
+    private final QuotaDecision decision;
+    private final Principal[] principals;
+    private final long[] reservedUnits;
+    private final long timeMillis;
+    private final long deadlineMillis;
+    private final AtomicInteger state;
+
+    Reservation(
+            final QuotaDecision decision,
+            final Principal[] principals,
+            final long[] reservedUnits,
+            final long timeMillis,
+            final long deadlineMillis
+    ) {
+        this.decision = decision;
+        this.principals = principals;
+        this.reservedUnits = reservedUnits;
+        this.timeMillis = timeMillis;
+        this.deadlineMillis = deadlineMillis;
+        this.state = new AtomicInteger((decision.isAdmitted() ? State.PENDING : State.DENIED).ordinal());
+    }
+
+    public QuotaDecision getDecision() {
+        return decision;
+    }
+
+    public boolean isAdmitted() {
+        return decision.isAdmitted();
+    }
+
+    public State getState() {
+        return State.values()[state.get()];
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    Principal[] getPrincipals() {
+        return principals;
+    }
+
+    long[] getReservedUnits() {
+        return reservedUnits;
+    }
+
+    boolean transition(final State from, final State to) {
+        return state.compareAndSet(from.ordinal(), to.ordinal());
+    }
+
+    @Override
+    public String toString() {
+        return getState().name().toLowerCase() + ": " + decision;
+    }
+}
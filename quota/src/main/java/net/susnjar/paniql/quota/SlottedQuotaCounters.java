@@ -0,0 +1,59 @@
+package net.susnjar.paniql.quota;
+
+/**
+ * {@link QuotaCounters} kept in a flat array of packed slots. Implementations
+ * only need to provide atomic access to the individual slots.
+ */
+abstract class SlottedQuotaCounters extends QuotaCounters {
+    protected SlottedQuotaCounters(final QuotaLayout layout) {
+        super(layout);
+    }
+
+    protected abstract long getSlot(int index);
+
+    protected abstract boolean compareAndSetSlot(int index, long expected, long updated);
+
+    @Override
+    protected void addUnits(final int counter, final long timeMillis, final long units) {
+        final Window window = getLayout().getWindow(counter);
+        final long tick = window.getTick(timeMillis);
+        final long tag = tick & QuotaLayout.TAG_MASK;
+        final int index = getLayout().getOffset(counter) + (int) (tick % window.getSlotCount());
+
+        while (true) {
+            final long current = getSlot(index);
+            final long currentTag = QuotaLayout.tag(current);
+            final long updated;
+            if (current == 0L) {
+                // Never written.
+                updated = QuotaLayout.pack(tick, units);
+            } else if (currentTag == tag) {
+                updated = QuotaLayout.pack(tick, QuotaLayout.saturatedAdd(QuotaLayout.value(current), units));
+            } else if (QuotaLayout.age(tick, currentTag) < (QuotaLayout.TAG_MASK >>> 1)) {
+                // The slot holds an older tick, recycle it.
+                updated = QuotaLayout.pack(tick, units);
+            } else {
+                // The slot already moved on past the specified time.
+                return;
+            }
+            if (compareAndSetSlot(index, current, updated)) return;
+        }
+    }
+
+    @Override
+    public long sum(final int counter, final long timeMillis) {
+        final Window window = getLayout().getWindow(counter);
+        final long tick = window.getTick(timeMillis) & QuotaLayout.TAG_MASK;
+        final int offset = getLayout().getOffset(counter);
+        final int slotCount = window.getSlotCount();
+
+        long sum = 0L;
+        for (int i = 0; i < slotCount; i++) {
+            final long slot = getSlot(offset + i);
+            if (QuotaLayout.age(tick, QuotaLayout.tag(slot)) < slotCount) {
+                sum += QuotaLayout.value(slot);
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,92 @@
+package net.susnjar.paniql.quota;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * {@link QuotaTransport} sending each message as a UDP datagram to a fixed
+ * list of peers. A daemon thread delivers received datagrams to the receiver.
+ * UDP suits gossip of idempotent state deltas: a lost datagram only delays
+ * convergence until the next delta or full state round of the same principal.
+ */
+public class UdpQuotaTransport implements QuotaTransport {
+    /**
+     * Largest message accepted, the practical limit of a single UDP datagram.
+     */
+    public static final int MAX_MESSAGE_SIZE = 65507;
+
+    private final DatagramSocket socket;
+    private final List<SocketAddress> peers = new CopyOnWriteArrayList<>();
+    private final Thread receiverThread;
+    private volatile Consumer<byte[]> receiver;
+
+    public UdpQuotaTransport(final InetSocketAddress bindAddress, final Collection<? extends SocketAddress> peers) throws IOException {
+        this.socket = new DatagramSocket(bindAddress);
+        this.peers.addAll(peers);
+        this.receiverThread = new Thread(this::receive, "paniql-quota-udp-" + socket.getLocalPort());
+        this.receiverThread.setDaemon(true);
+        this.receiverThread.start();
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        return (InetSocketAddress) socket.getLocalSocketAddress();
+    }
+
+    public void addPeer(final SocketAddress peer) {
+        peers.add(peer);
+    }
+
+    @Override
+    public int getMaxMessageSize() {
+        return MAX_MESSAGE_SIZE;
+    }
+
+    @Override
+    public void publish(final byte[] message) throws IOException {
+        if (message.length > MAX_MESSAGE_SIZE) {
+            throw new IOException("Message of " + message.length + " bytes does not fit a datagram.");
+        }
+        for (final SocketAddress peer: peers) {
+            socket.send(new DatagramPacket(message, message.length, peer));
+        }
+    }
+
+    @Override
+    public void setReceiver(final Consumer<byte[]> receiver) {
+        this.receiver = receiver;
+    }
+
+    private void receive() {
+        final byte[] buffer = new byte[MAX_MESSAGE_SIZE];
+        while (!socket.isClosed()) {
+            final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException x) {
+                if (socket.isClosed()) return;
+                continue;
+            }
+            final Consumer<byte[]> currentReceiver = receiver;
+            if (currentReceiver != null) {
+                try {
+                    currentReceiver.accept(Arrays.copyOfRange(packet.getData(), packet.getOffset(), packet.getOffset() + packet.getLength()));
+                } catch (RuntimeException x) {
+                    // Malformed or incompatible message, ignore it.
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+}
@@ -0,0 +1,50 @@
+package net.susnjar.paniql.quota;
+
+/**
+ * Sliding time windows over which quotas are tracked. Each window is a ring
+ * of fixed-width slots so the window slides by one slot width at a time.
+ */
+public enum Window {
+    SECOND("1s", 100L, 10),
+    MINUTE("1m", 1_000L, 60),
+    FIFTEEN_MINUTES("15m", 15_000L, 60),
+    HOUR("1h", 60_000L, 60),
+    DAY("1d", 900_000L, 96);
+
+    private final String id;
+    private final long slotMillis;
+    private final int slotCount;
+
+    Window(final String id, final long slotMillis, final int slotCount) {
+        this.id = id;
+        this.slotMillis = slotMillis;
+        this.slotCount = slotCount;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSlotMillis() {
+        return slotMillis;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public long getDurationMillis() {
+        return slotMillis * slotCount;
+    }
+
+    public long getTick(final long timeMillis) {
+        return timeMillis / slotMillis;
+    }
+
+    public static Window fromId(final String id) {
+        for (final Window window: values()) {
+            if (window.id.equals(id)) return window;
+        }
+        throw new IllegalArgumentException("Unrecognized window: " + id);
+    }
+}
@@ -0,0 +1,94 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class MappedQuotaStoreTest {
+    @Test
+    void sharesCountersBetweenStoresMappingTheSameFile() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final QuotaMetric slowCalls = QuotaMetric.total(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM);
+        final Quota quota = Quota.of(Principal.Kind.USER, slowCalls, Window.HOUR, slowCalls.measure(invoice) * 2);
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final Principal jane = Principal.user("jane");
+
+        final File file = File.createTempFile("quota", ".bin");
+        file.delete();
+        try (
+                final MappedQuotaStore worker1 = new MappedQuotaStore(file.toPath(), plan.getLayout(), 1024);
+                final MappedQuotaStore worker2 = new MappedQuotaStore(file.toPath(), plan.getLayout(), 1024);
+        ) {
+            final QuotaEngine engine1 = new QuotaEngine(plan, worker1, () -> 7_200_000L);
+            final QuotaEngine engine2 = new QuotaEngine(plan, worker2, () -> 7_200_000L);
+
+            Assertions.assertTrue(engine1.admit(invoice, jane).isAdmitted());
+            Assertions.assertTrue(engine2.admit(invoice, jane).isAdmitted());
+            Assertions.assertFalse(engine1.admit(invoice, jane).isAdmitted());
+            Assertions.assertFalse(engine2.admit(invoice, jane).isAdmitted());
+            Assertions.assertEquals(slowCalls.measure(invoice) * 2, engine2.getConsumed(jane, quota), 1.0d);
+            Assertions.assertEquals(1, worker1.size());
+
+            Assertions.assertTrue(engine2.admit(invoice, Principal.user("john")).isAdmitted());
+            Assertions.assertEquals(2, worker1.size());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void failsInsteadOfWaitingForeverOnAbandonedClaims() throws IOException {
+        final QuotaMetric metric = QuotaMetric.total(WorkType.LOCAL_CALL, Bound.AVERAGE);
+        final QuotaPlan plan = new QuotaPlan(List.of(Quota.of(Principal.Kind.CLIENT, metric, Window.MINUTE, 10)));
+
+        final File file = File.createTempFile("quota", ".bin");
+        file.delete();
+        try (final MappedQuotaStore store = new MappedQuotaStore(file.toPath(), plan.getLayout(), 1, 50)) {
+            // Leaves the only record claimed, as a process killed while claiming it would.
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, 72);
+                header.order(ByteOrder.nativeOrder()).putLong(64, -1L);
+            }
+            final long start = System.nanoTime();
+            Assertions.assertThrows(IllegalStateException.class, () -> store.getCounters(Principal.client("web")));
+            Assertions.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 10_000);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    void rejectsFilesCreatedForAnotherLayout() throws IOException {
+        final QuotaMetric metric = QuotaMetric.total(WorkType.LOCAL_CALL, Bound.AVERAGE);
+        final QuotaPlan minutes = new QuotaPlan(List.of(Quota.of(Principal.Kind.CLIENT, metric, Window.MINUTE, 10)));
+        final QuotaPlan days = new QuotaPlan(List.of(Quota.of(Principal.Kind.CLIENT, metric, Window.DAY, 10)));
+        final QuotaMetric otherMetric = QuotaMetric.total(WorkType.LOCAL_CALL, Bound.MAXIMUM);
+        final QuotaPlan otherMinutes = new QuotaPlan(List.of(Quota.of(Principal.Kind.CLIENT, otherMetric, Window.MINUTE, 10)));
+        Assertions.assertNotEquals(minutes.getLayout(), otherMinutes.getLayout());
+
+        final File file = File.createTempFile("quota", ".bin");
+        file.delete();
+        try {
+            new MappedQuotaStore(file.toPath(), minutes.getLayout(), 16).close();
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new MappedQuotaStore(file.toPath(), days.getLayout(), 16));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new MappedQuotaStore(file.toPath(), otherMinutes.getLayout(), 16));
+            Assertions.assertThrows(IllegalArgumentException.class, () -> new QuotaEngine(otherMinutes, new LocalQuotaStore(minutes.getLayout())));
+        } finally {
+            file.delete();
+        }
+    }
+}
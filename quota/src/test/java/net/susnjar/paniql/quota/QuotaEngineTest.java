@@ -0,0 +1,139 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QuotaEngineTest {
+    @Test
+    void deniesOnceWindowIsExhaustedAndRecoversAfterItSlides() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final QuotaMetric slowCalls = QuotaMetric.total(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM);
+        final double perRequest = slowCalls.measure(invoice);
+        Assertions.assertTrue(perRequest > 0.0d);
+
+        final Quota quota = Quota.of(Principal.Kind.USER, slowCalls, Window.MINUTE, perRequest * 3);
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final AtomicLong clock = new AtomicLong(1_000_000L);
+        final QuotaEngine engine = new QuotaEngine(plan, new LocalQuotaStore(plan.getLayout()), clock::get);
+
+        final Principal jane = Principal.user("jane");
+        for (int i = 0; i < 3; i++) {
+            Assertions.assertTrue(engine.admit(invoice, jane).isAdmitted());
+            clock.addAndGet(1_000L);
+        }
+
+        final QuotaDecision denied = engine.admit(invoice, jane);
+        Assertions.assertFalse(denied.isAdmitted());
+        Assertions.assertSame(quota, denied.getQuota());
+        Assertions.assertEquals(jane, denied.getPrincipal());
+
+        Assertions.assertTrue(engine.admit(invoice, Principal.user("john")).isAdmitted());
+
+        clock.addAndGet(Window.MINUTE.getDurationMillis());
+        Assertions.assertTrue(engine.admit(invoice, jane).isAdmitted());
+    }
+
+    @Test
+    void appliesResourceQuotasPerPrincipalKind() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final OutputTypeModel<?, ?> file = environment.getOutputType("File");
+        final QuotaMetric fileAccesses = QuotaMetric.of(file, WorkType.INSTANCE_ACCESS, Bound.PERCENTILE_95);
+        final double perRequest = fileAccesses.measure(invoice);
+
+        final QuotaPlan plan = new QuotaPlan(List.of(
+                Quota.of(Principal.Kind.CLIENT, fileAccesses, Window.SECOND, perRequest * 10),
+                Quota.of(Principal.Kind.CLIENT, fileAccesses, Window.SECOND, perRequest),
+                Quota.of(Principal.Kind.NETWORK, fileAccesses, Window.DAY, perRequest * 100)
+        ));
+        final QuotaEngine engine = new QuotaEngine(plan);
+
+        Assertions.assertTrue(engine.admit(invoice, Principal.client("app"), Principal.network("10.0.0.1")).isAdmitted());
+        final QuotaDecision denied = engine.admit(invoice, Principal.client("app"), Principal.network("10.0.0.1"));
+        Assertions.assertFalse(denied.isAdmitted());
+        Assertions.assertEquals(Principal.Kind.CLIENT, denied.getPrincipal().getKind());
+        Assertions.assertEquals(perRequest, denied.getQuota().getLimit());
+    }
+
+    @Test
+    void concurrentAdmissionsStayWithinInFlightOvershoot() throws Exception {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final QuotaMetric access = QuotaMetric.total(WorkType.INSTANCE_ACCESS, Bound.MINIMUM);
+        final QuotaMetric slow = QuotaMetric.total(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM);
+        final double perRequest = slow.measure(invoice);
+        final int allowed = 1000;
+        final int threadCount = 8;
+
+        final QuotaPlan plan = new QuotaPlan(List.of(
+                Quota.of(Principal.Kind.USER, access, Window.HOUR, 1_000_000_000d),
+                Quota.of(Principal.Kind.USER, slow, Window.HOUR, perRequest * allowed)
+        ));
+        final QuotaEngine engine = new QuotaEngine(plan, new LocalQuotaStore(plan.getLayout()), () -> 5_000_000L);
+        final Principal principal = Principal.user("shared");
+        final AtomicInteger admitted = new AtomicInteger();
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            final Thread thread = new Thread(() -> {
+                for (int i = 0; i < allowed; i++) {
+                    if (engine.admit(invoice, principal).isAdmitted()) admitted.incrementAndGet();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread: threads) {
+            thread.join();
+        }
+
+        Assertions.assertTrue(admitted.get() >= allowed);
+        Assertions.assertTrue(admitted.get() <= allowed + threadCount);
+    }
+
+    @Test
+    void chargesRacingWithEvictionAreNotLost() throws Exception {
+        final Invoice invoice = TestSchema.createEnvironment().invoice(TestSchema.FOLDER_FILES);
+        final QuotaMetric slow = QuotaMetric.total(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM);
+        final Quota quota = Quota.of(Principal.Kind.USER, slow, Window.HOUR, 1_000_000_000d);
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final LocalQuotaStore store = new LocalQuotaStore(plan.getLayout());
+        final QuotaEngine engine = new QuotaEngine(plan, store, () -> 5_000_000L);
+        final int principalCount = 20_000;
+
+        final AtomicBoolean charging = new AtomicBoolean(true);
+        final Thread evictor = new Thread(() -> {
+            while (charging.get()) {
+                store.evictIdle(5_000_000L);
+            }
+        });
+        evictor.start();
+        try {
+            for (int i = 0; i < principalCount; i++) {
+                engine.charge(invoice, Principal.user("user-" + i));
+            }
+        } finally {
+            charging.set(false);
+            evictor.join();
+        }
+
+        Assertions.assertEquals(principalCount, store.size());
+        for (int i = 0; i < principalCount; i++) {
+            Assertions.assertEquals(slow.measure(invoice), engine.getConsumed(Principal.user("user-" + i), quota), 1.0d / QuotaLayout.UNITS_PER_QUANTITY);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.models.OutputTypeModel;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class QuotaReservationsTest {
+    @Test
+    void reconciliationReleasesUnusedCapacityImmediately() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final OutputTypeModel<?, ?> file = environment.getOutputType("File");
+        final QuotaMetric fileAccesses = QuotaMetric.of(file, WorkType.INSTANCE_ACCESS, Bound.AVERAGE);
+        final double reservedPerRequest = fileAccesses.measure(invoice, Bound.MAXIMUM);
+
+        final Quota quota = Quota.of(Principal.Kind.USER, fileAccesses, Window.MINUTE, reservedPerRequest * 1.5d);
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final AtomicLong clock = new AtomicLong(60_000L);
+        final QuotaEngine engine = new QuotaEngine(plan, new LocalQuotaStore(plan.getLayout()), clock::get);
+        final QuotaReservations reservations = new QuotaReservations(engine, Bound.MAXIMUM, 10_000L);
+        final Principal jane = Principal.user("jane");
+
+        final Reservation first = reservations.reserve(invoice, jane);
+        Assertions.assertEquals(Reservation.State.PENDING, first.getState());
+        Assertions.assertEquals(reservedPerRequest, engine.getConsumed(jane, quota), 0.1d);
+        Assertions.assertFalse(reservations.reserve(invoice, jane).isAdmitted());
+
+        clock.addAndGet(1_000L);
+        reservations.reconcile(first, new Consumption().add(file, WorkType.INSTANCE_ACCESS, 20.0d));
+        Assertions.assertEquals(Reservation.State.SETTLED, first.getState());
+        Assertions.assertEquals(20.0d, engine.getConsumed(jane, quota), 0.1d);
+
+        final Reservation second = reservations.reserve(invoice, jane);
+        Assertions.assertTrue(second.isAdmitted());
+        reservations.release(second);
+        Assertions.assertEquals(20.0d, engine.getConsumed(jane, quota), 0.1d);
+    }
+
+    @Test
+    void unreconciledReservationsExpire() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final QuotaMetric slowCalls = QuotaMetric.total(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.PERCENTILE_95);
+        final Quota quota = Quota.of(Principal.Kind.CLIENT, slowCalls, Window.HOUR, slowCalls.measure(invoice));
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final AtomicLong clock = new AtomicLong(3_600_000L);
+        final QuotaEngine engine = new QuotaEngine(plan, new LocalQuotaStore(plan.getLayout()), clock::get);
+        final QuotaReservations reservations = new QuotaReservations(engine, Bound.PERCENTILE_95, 5_000L);
+        final Principal client = Principal.client("batch");
+
+        final Reservation lost = reservations.reserve(invoice, client);
+        Assertions.assertTrue(lost.isAdmitted());
+        Assertions.assertFalse(reservations.reserve(invoice, client).isAdmitted());
+
+        clock.addAndGet(5_000L);
+        final Reservation next = reservations.reserve(invoice, client);
+        Assertions.assertEquals(Reservation.State.EXPIRED, lost.getState());
+        Assertions.assertTrue(next.isAdmitted());
+
+        reservations.reconcile(lost, new Consumption().add(environment.getOutputType("File"), WorkType.INEFFICIENT_REMOTE_API_CALL, 1.0d));
+        Assertions.assertEquals(slowCalls.measure(invoice) + 1.0d, engine.getConsumed(client, quota), 0.1d);
+    }
+}
@@ -0,0 +1,188 @@
+package net.susnjar.paniql.quota;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class ReplicatedQuotaStoreTest {
+    private static final long NOW = 3_600_000L;
+    private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    @Test
+    void convergesThroughLoopbackGossip() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice invoice = environment.invoice(TestSchema.FOLDER_FILES);
+        final QuotaMetric slowCalls = QuotaMetric.total(WorkType.INEFFICIENT_REMOTE_API_CALL, Bound.MAXIMUM);
+        final Quota quota = Quota.of(Principal.Kind.CLIENT, slowCalls, Window.MINUTE, slowCalls.measure(invoice) * 3);
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final Principal client = Principal.client("scraper");
+
+        final LoopbackQuotaTransport transportA = new LoopbackQuotaTransport();
+        final LoopbackQuotaTransport transportB = transportA.createPeer();
+        try (
+                final ReplicatedQuotaStore storeA = new ReplicatedQuotaStore("a", plan.getLayout(), transportA, KEY, List.of("b"));
+                final ReplicatedQuotaStore storeB = new ReplicatedQuotaStore("b", plan.getLayout(), transportB, KEY, List.of("a"));
+        ) {
+            final QuotaEngine nodeA = new QuotaEngine(plan, storeA, () -> NOW);
+            final QuotaEngine nodeB = new QuotaEngine(plan, storeB, () -> NOW);
+
+            Assertions.assertTrue(nodeA.admit(invoice, client).isAdmitted());
+            Assertions.assertTrue(nodeA.admit(invoice, client).isAdmitted());
+            Assertions.assertEquals(0.0d, nodeB.getConsumed(client, quota));
+
+            storeA.gossip();
+            storeA.gossip();
+            Assertions.assertEquals(nodeA.getConsumed(client, quota), nodeB.getConsumed(client, quota));
+
+            Assertions.assertTrue(nodeB.admit(invoice, client).isAdmitted());
+            Assertions.assertFalse(nodeB.admit(invoice, client).isAdmitted());
+
+            storeB.gossip();
+            Assertions.assertFalse(nodeA.admit(invoice, client).isAdmitted());
+
+            final int counter = plan.getCounters(Principal.Kind.CLIENT)[0];
+            storeB.getCounters(client).add(counter, NOW, -QuotaLayout.toUnits(slowCalls.measure(invoice)));
+            storeB.gossip();
+            Assertions.assertEquals(nodeA.getConsumed(client, quota), nodeB.getConsumed(client, quota));
+            Assertions.assertTrue(nodeA.admit(invoice, client).isAdmitted());
+        }
+    }
+
+    @Test
+    void convergesThroughUdpGossip() throws Exception {
+        final QuotaMetric metric = QuotaMetric.total(WorkType.LOCAL_CALL, Bound.MAXIMUM);
+        final Quota quota = Quota.of(Principal.Kind.NETWORK, metric, Window.HOUR, 100.0d);
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final Principal network = Principal.network("192.0.2.1");
+        final InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+        final UdpQuotaTransport transportA = new UdpQuotaTransport(loopback, List.of());
+        final UdpQuotaTransport transportB = new UdpQuotaTransport(loopback, List.of(transportA.getLocalAddress()));
+        transportA.addPeer(transportB.getLocalAddress());
+
+        try (
+                final ReplicatedQuotaStore storeA = new ReplicatedQuotaStore("a", plan.getLayout(), transportA, KEY, List.of("b"));
+                final ReplicatedQuotaStore storeB = new ReplicatedQuotaStore("b", plan.getLayout(), transportB, KEY, List.of("a"));
+        ) {
+            storeB.startGossip(10L);
+            final QuotaEngine nodeA = new QuotaEngine(plan, storeA, () -> NOW);
+            final QuotaEngine nodeB = new QuotaEngine(plan, storeB, () -> NOW);
+
+            final int counter = plan.getCounters(Principal.Kind.NETWORK)[0];
+            storeB.getCounters(network).add(counter, NOW, QuotaLayout.toUnits(42.0d));
+
+            final long deadline = System.currentTimeMillis() + 5_000L;
+            while ((nodeA.getConsumed(network, quota) != 42.0d) && (System.currentTimeMillis() < deadline)) {
+                Thread.sleep(10L);
+            }
+            Assertions.assertEquals(42.0d, nodeA.getConsumed(network, quota));
+            Assertions.assertEquals(42.0d, nodeB.getConsumed(network, quota));
+        }
+    }
+
+    @Test
+    void ignoresUnauthenticatedAndUnknownSenders() throws IOException {
+        final QuotaMetric metric = QuotaMetric.total(WorkType.LOCAL_CALL, Bound.MAXIMUM);
+        final Quota quota = Quota.of(Principal.Kind.USER, metric, Window.HOUR, 100.0d);
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final Principal user = Principal.user("jane");
+        final int counter = plan.getCounters(Principal.Kind.USER)[0];
+        final byte[] otherKey = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.US_ASCII);
+
+        final LoopbackQuotaTransport transportA = new LoopbackQuotaTransport();
+        try (
+                final ReplicatedQuotaStore storeA = new ReplicatedQuotaStore("a", plan.getLayout(), transportA, KEY, List.of("b"));
+                final ReplicatedQuotaStore forged = new ReplicatedQuotaStore("b", plan.getLayout(), transportA.createPeer(), otherKey, List.of("a"));
+                final ReplicatedQuotaStore stranger = new ReplicatedQuotaStore("c", plan.getLayout(), transportA.createPeer(), KEY, List.of("a"));
+        ) {
+            forged.getCounters(user).add(counter, NOW, -QuotaLayout.toUnits(50.0d));
+            forged.gossip();
+            stranger.getCounters(user).add(counter, NOW, QuotaLayout.toUnits(50.0d));
+            stranger.gossip();
+
+            Assertions.assertEquals(0, storeA.size());
+            Assertions.assertEquals(0.0d, new QuotaEngine(plan, storeA, () -> NOW).getConsumed(user, quota));
+        }
+    }
+
+    @Test
+    void splitsLargeStatesAndResendsLostMessages() throws IOException {
+        final QuotaMetric metric = QuotaMetric.total(WorkType.LOCAL_CALL, Bound.MAXIMUM);
+        final Quota quota = Quota.of(Principal.Kind.USER, metric, Window.DAY, 1_000_000.0d);
+        final QuotaPlan plan = new QuotaPlan(List.of(quota));
+        final int counter = plan.getCounters(Principal.Kind.USER)[0];
+        final Principal user = Principal.user("jane");
+        final long now = 10 * Window.DAY.getDurationMillis();
+
+        final List<byte[]> sent = new ArrayList<>();
+        final LoopbackQuotaTransport transportB = new LoopbackQuotaTransport();
+        final QuotaTransport lossy = new QuotaTransport() {
+            private final LoopbackQuotaTransport delegate = transportB.createPeer();
+            private boolean losing = true;
+
+            @Override
+            public int getMaxMessageSize() {
+                return 256;
+            }
+
+            @Override
+            public void publish(final byte[] message) throws IOException {
+                Assertions.assertTrue(message.length <= getMaxMessageSize());
+                sent.add(message);
+                if (!losing) delegate.publish(message);
+                losing = false;
+            }
+
+            @Override
+            public void setReceiver(final Consumer<byte[]> receiver) {
+                delegate.setReceiver(receiver);
+            }
+
+            @Override
+            public void close() {
+                delegate.close();
+            }
+        };
+
+        try (
+                final ReplicatedQuotaStore storeA = new ReplicatedQuotaStore("a", plan.getLayout(), lossy, KEY, List.of("b"));
+                final ReplicatedQuotaStore storeB = new ReplicatedQuotaStore("b", plan.getLayout(), transportB, KEY, List.of("a"));
+        ) {
+            final QuotaEngine nodeA = new QuotaEngine(plan, storeA, () -> now);
+            final QuotaEngine nodeB = new QuotaEngine(plan, storeB, () -> now);
+            // Spreads consumption over the slots of the whole day.
+            for (long time = now - Window.DAY.getDurationMillis() + 1; time <= now; time += 60_000L) {
+                storeA.getCounters(user).add(counter, time, QuotaLayout.toUnits(1.0d));
+            }
+
+            storeA.gossip();
+            Assertions.assertTrue(sent.size() > 1);
+            Assertions.assertTrue(nodeB.getConsumed(user, quota) < nodeA.getConsumed(user, quota));
+
+            storeA.gossip();
+            Assertions.assertTrue(nodeB.getConsumed(user, quota) < nodeA.getConsumed(user, quota));
+
+            storeA.gossipFullState();
+            Assertions.assertEquals(nodeA.getConsumed(user, quota), nodeB.getConsumed(user, quota));
+
+            storeA.evictIdle(now);
+            Assertions.assertEquals(1, storeA.size());
+            storeA.evictIdle(now + 2 * Window.DAY.getDurationMillis());
+            storeB.evictIdle(now + 2 * Window.DAY.getDurationMillis());
+            Assertions.assertEquals(0, storeA.size());
+            Assertions.assertEquals(0, storeB.size());
+        }
+    }
+}
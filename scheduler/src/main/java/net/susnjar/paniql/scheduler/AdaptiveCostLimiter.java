@@ -0,0 +1,252 @@
+package net.susnjar.paniql.scheduler;
+
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Load shedding limiter that adapts to observed backend latency, in the style
+ * of gradient concurrency limiters, but limits the total predicted
+ * {@linkplain InvoiceCost cost} in flight instead of the number of requests.
+ *
+ * <p>For each {@link WorkType} class the limiter tracks a fast and a slow moving
+ * average of latency. When the fast average rises above the slow baseline
+ * (beyond the tolerance) the admissible cost envelope shrinks proportionally,
+ * and when latency recovers it grows back additively. A request is admitted
+ * only if its predicted cost fits the room left in its class envelope, so as
+ * the room shrinks the most expensive requests are rejected first while
+ * cheap requests keep being admitted. When nothing of its class is in flight
+ * a request is always admitted, so a class never locks up entirely; a request
+ * costlier than the whole envelope is only admitted then, and is shed for as
+ * long as other requests of its class keep it busy.</p>
+ *
+ * <p>Admission and release are lock-free; latency samples of a class are
+ * applied under that class's monitor.</p>
+ *
+ * Example:
+ *
+ * <code>
+ *     final AdaptiveCostLimiter.Permit permit = limiter.tryAcquire(invoice);
+ *     if (permit == null) {
+ *         return overloaded();
+ *     }
+ *     try {
+ *         return execute(request);
+ *     } finally {
+ *         permit.release();
+ *     }
+ * </code>
+ */
+public class AdaptiveCostLimiter {
+    private static final double UNITS_PER_COST = 1024.0d;
+
+    private final InvoiceCost cost;
+    private final WorkClasses classes;
+    private final LongSupplier nanoClock;
+    private final WorkClassLimit[] limits = new WorkClassLimit[WorkType.values().length];
+
+    private volatile double tolerance = 1.5d;
+    private volatile double fastSmoothing = 0.2d;
+    private volatile double slowSmoothing = 0.01d;
+    private volatile double minimumGradient = 0.5d;
+
+    public AdaptiveCostLimiter(
+            final InvoiceCost cost,
+            final Collection<WorkType> workClasses,
+            final double initialEnvelope,
+            final double minimumEnvelope,
+            final double maximumEnvelope
+    ) {
+        this(cost, workClasses, initialEnvelope, minimumEnvelope, maximumEnvelope, System::nanoTime);
+    }
+
+    public AdaptiveCostLimiter(
+            final InvoiceCost cost,
+            final Collection<WorkType> workClasses,
+            final double initialEnvelope,
+            final double minimumEnvelope,
+            final double maximumEnvelope,
+            final LongSupplier nanoClock
+    ) {
+        if ((minimumEnvelope <= 0.0d) || (initialEnvelope < minimumEnvelope) || (maximumEnvelope < initialEnvelope)) {
+            throw new IllegalArgumentException("Envelopes must satisfy 0 < minimum <= initial <= maximum.");
+        }
+        this.cost = cost;
+        this.classes = new WorkClasses(workClasses);
+        this.nanoClock = nanoClock;
+        for (final WorkType workType: workClasses) {
+            limits[workType.ordinal()] = new WorkClassLimit(initialEnvelope, minimumEnvelope, maximumEnvelope);
+        }
+    }
+
+    /**
+     * Sets how much the fast latency average may exceed the slow baseline before
+     * the envelope shrinks, e.g. 1.5 for 50%.
+     */
+    public void setTolerance(final double tolerance) {
+        if (tolerance < 1.0d) throw new IllegalArgumentException("Tolerance must be at least 1.");
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Sets the smoothing factors of the fast and slow latency averages.
+     */
+    public void setSmoothing(final double fast, final double slow) {
+        if ((fast <= 0.0d) || (fast > 1.0d) || (slow <= 0.0d) || (slow > fast)) {
+            throw new IllegalArgumentException("Smoothing factors must satisfy 0 < slow <= fast <= 1.");
+        }
+        this.fastSmoothing = fast;
+        this.slowSmoothing = slow;
+    }
+
+    /**
+     * Sets the largest fraction the envelope may shrink to in a single update.
+     */
+    public void setMinimumGradient(final double minimumGradient) {
+        if ((minimumGradient <= 0.0d) || (minimumGradient > 1.0d)) {
+            throw new IllegalArgumentException("Minimum gradient must be in (0, 1].");
+        }
+        this.minimumGradient = minimumGradient;
+    }
+
+    /**
+     * Admits the request if its predicted cost fits its class envelope.
+     *
+     * @return the permit to release once the request completes or {@code null} if the request should be shed.
+     */
+    public Permit tryAcquire(final Invoice invoice) {
+        final double[] totals = InvoiceCost.totals(invoice, cost.getBound());
+        final WorkType workClass = classes.classify(totals);
+        final long units = toUnits(CostAwareScheduler.BASE_COST + cost.of(totals));
+        final WorkClassLimit limit = limits[workClass.ordinal()];
+        return limit.tryAcquire(units) ? new Permit(limit, units, nanoClock.getAsLong()) : null;
+    }
+
+    public WorkType classify(final Invoice invoice) {
+        return classes.classify(InvoiceCost.totals(invoice, cost.getBound()));
+    }
+
+    public double getEnvelope(final WorkType workClass) {
+        return getLimit(workClass).envelope;
+    }
+
+    public double getInFlightCost(final WorkType workClass) {
+        return getLimit(workClass).inFlightUnits.get() / UNITS_PER_COST;
+    }
+
+    /**
+     * Feeds a latency observation made outside of the permit life-cycle, e.g. from a health probe.
+     */
+    public void observe(final WorkType workClass, final long latencyNanos) {
+        getLimit(workClass).observe(latencyNanos);
+    }
+
+    private WorkClassLimit getLimit(final WorkType workClass) {
+        final WorkClassLimit limit = limits[workClass.ordinal()];
+        if (limit == null) throw new IllegalArgumentException("No limit configured for " + workClass);
+        return limit;
+    }
+
+    private static long toUnits(final double cost) {
+        return Math.max(1L, (long) Math.ceil(cost * UNITS_PER_COST));
+    }
+
+    /**
+     * Admission of a single request. Only its first release counts, even if several threads race to release it.
+     */
+    public final class Permit {
+        private final WorkClassLimit limit;
+        private final long units;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(final WorkClassLimit limit, final long units, final long startNanos) {
+            this.limit = limit;
+            this.units = units;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Releases the permit and feeds the elapsed time into the latency averages.
+         */
+        public void release() {
+            if (!released.compareAndSet(false, true)) return;
+            limit.inFlightUnits.addAndGet(-units);
+            limit.observe(nanoClock.getAsLong() - startNanos);
+        }
+
+        /**
+         * Releases the permit without a latency observation, e.g. when the request failed fast.
+         */
+        public void releaseWithoutSample() {
+            if (!released.compareAndSet(false, true)) return;
+            limit.inFlightUnits.addAndGet(-units);
+        }
+
+        public double getCost() {
+            return units / UNITS_PER_COST;
+        }
+    }
+
+    private final class WorkClassLimit {
+        private final double minimumEnvelope;
+        private final double maximumEnvelope;
+        private final AtomicLong inFlightUnits = new AtomicLong();
+        private volatile double envelope;
+        private volatile long envelopeUnits;
+        private double fastLatency = Double.NaN;
+        private double slowLatency = Double.NaN;
+
+        WorkClassLimit(final double initialEnvelope, final double minimumEnvelope, final double maximumEnvelope) {
+            this.minimumEnvelope = minimumEnvelope;
+            this.maximumEnvelope = maximumEnvelope;
+            setEnvelope(initialEnvelope);
+        }
+
+        private void setEnvelope(final double value) {
+            envelope = value;
+            envelopeUnits = toUnits(value);
+        }
+
+        boolean tryAcquire(final long units) {
+            while (true) {
+                final long current = inFlightUnits.get();
+                if ((current > 0L) && (current + units > envelopeUnits)) return false;
+                if (inFlightUnits.compareAndSet(current, current + units)) return true;
+            }
+        }
+
+        synchronized void observe(final long latencyNanos) {
+            if (latencyNanos <= 0L) return;
+            final double latency = latencyNanos;
+
+            if (Double.isNaN(fastLatency)) {
+                fastLatency = latency;
+                slowLatency = latency;
+                return;
+            }
+
+            fastLatency += (latency - fastLatency) * fastSmoothing;
+            slowLatency += (latency - slowLatency) * slowSmoothing;
+
+            // Let the baseline follow quickly once latency drops well below it.
+            if (slowLatency > fastLatency * 2.0d) {
+                slowLatency = fastLatency * 2.0d;
+            }
+
+            final double gradient = Math.max(minimumGradient, Math.min(1.0d, tolerance * slowLatency / fastLatency));
+            final double current = envelope;
+            final double next;
+            if (gradient < 1.0d) {
+                next = current * gradient;
+            } else {
+                next = current + Math.sqrt(current);
+            }
+            setEnvelope(Math.max(minimumEnvelope, Math.min(maximumEnvelope, next)));
+        }
+    }
+}
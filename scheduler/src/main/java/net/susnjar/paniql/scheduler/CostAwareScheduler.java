@@ -0,0 +1,260 @@
+package net.susnjar.paniql.scheduler;
+
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Queues admitted requests per client and dispatches them to an {@link Executor}
+ * in weighted fair queueing order of their predicted {@linkplain InvoiceCost cost},
+ * rather than by request count, so a client sending expensive requests gets
+ * its fair share of backend work and not more.
+ *
+ * <p>Requests are assigned to per-{@link WorkType} pools, each with its own
+ * concurrency cap and its own fair queue: a request goes to the pool of the
+ * most expensive configured work type it is predicted to use. Slow remote
+ * work therefore queues separately from fast work and cannot occupy all
+ * execution slots. Pools are independent and have their own locks.</p>
+ *
+ * <p>The executor is expected to run tasks asynchronously, as completions
+ * dispatch queued work from the completing thread.</p>
+ *
+ * Example:
+ *
+ * <code>
+ *     final CostAwareScheduler scheduler = new CostAwareScheduler(
+ *         executor,
+ *         new InvoiceCost(Bound.AVERAGE),
+ *         Map.of(WorkType.EFFICIENT_REMOTE_API_CALL, 64, WorkType.INEFFICIENT_REMOTE_API_CALL, 8)
+ *     );
+ *     final CompletableFuture&lt;ExecutionResult&gt; result = scheduler.submit(clientId, invoice, () -&gt; execute(request));
+ * </code>
+ */
+public class CostAwareScheduler {
+    /**
+     * Cost added to every request so that requests predicted to be free are still counted.
+     */
+    public static final double BASE_COST = 1.0d;
+
+    private final Executor executor;
+    private final InvoiceCost cost;
+    private final Pool[] pools = new Pool[WorkType.values().length];
+    private final WorkClasses classes;
+    private final ConcurrentHashMap<String, Double> clientWeights = new ConcurrentHashMap<>();
+    private volatile int maxQueuedPerClient = Integer.MAX_VALUE;
+
+    public CostAwareScheduler(final Executor executor, final InvoiceCost cost, final Map<WorkType, Integer> poolConcurrency) {
+        this.executor = executor;
+        this.cost = cost;
+
+        for (final Map.Entry<WorkType, Integer> entry: poolConcurrency.entrySet()) {
+            if (entry.getValue() <= 0) throw new IllegalArgumentException("Pool concurrency must be positive.");
+            pools[entry.getKey().ordinal()] = new Pool(entry.getValue());
+        }
+        this.classes = new WorkClasses(poolConcurrency.keySet());
+    }
+
+    /**
+     * Sets the relative share of the specified client, 1.0 by default.
+     */
+    public void setClientWeight(final String client, final double weight) {
+        if (weight <= 0.0d) throw new IllegalArgumentException("Client weight must be positive.");
+        clientWeights.put(client, weight);
+    }
+
+    /**
+     * Sets the maximum number of requests a single client may have queued in a pool,
+     * beyond which submissions are rejected.
+     */
+    public void setMaxQueuedPerClient(final int maxQueuedPerClient) {
+        this.maxQueuedPerClient = maxQueuedPerClient;
+    }
+
+    /**
+     * Queues the task for execution and returns its eventual result.
+     *
+     * @throws RejectedExecutionException if the client has too many requests queued.
+     */
+    public <T> CompletableFuture<T> submit(final String client, final Invoice invoice, final Callable<T> task) {
+        final double[] totals = InvoiceCost.totals(invoice, cost.getBound());
+        final Pool pool = pools[classes.classify(totals).ordinal()];
+        final double weight = clientWeights.getOrDefault(client, 1.0d);
+        final Job<T> job = new Job<>(client, (BASE_COST + cost.of(totals)) / weight, task);
+        pool.enqueue(job);
+        pool.dispatch();
+        return job.future;
+    }
+
+    /**
+     * Returns the pool the invoice would be assigned to.
+     */
+    public WorkType classify(final Invoice invoice) {
+        return classes.classify(InvoiceCost.totals(invoice, cost.getBound()));
+    }
+
+    public int getInFlight(final WorkType pool) {
+        return getPool(pool).getInFlight();
+    }
+
+    public int getQueued(final WorkType pool) {
+        return getPool(pool).getQueued();
+    }
+
+    private Pool getPool(final WorkType workType) {
+        final Pool pool = pools[workType.ordinal()];
+        if (pool == null) throw new IllegalArgumentException("No pool configured for " + workType);
+        return pool;
+    }
+
+    private static final class Job<T> {
+        private final String client;
+        private final double cost;
+        private final Callable<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private double startTag;
+        private double finishTag;
+        private long sequence;
+
+        Job(final String client, final double cost, final Callable<T> task) {
+            this.client = client;
+            this.cost = cost;
+            this.task = task;
+        }
+
+        void run() {
+            if (future.isDone()) return;
+            try {
+                future.complete(task.call());
+            } catch (Throwable x) {
+                future.completeExceptionally(x);
+            }
+        }
+    }
+
+    private static final class Flow {
+        private final String client;
+        private final ArrayDeque<Job<?>> jobs = new ArrayDeque<>();
+        private double lastFinishTag;
+
+        Flow(final String client) {
+            this.client = client;
+        }
+
+        Job<?> head() {
+            return jobs.peekFirst();
+        }
+    }
+
+    private final class Pool {
+        private final int concurrency;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final HashMap<String, Flow> flows = new HashMap<>();
+        private final PriorityQueue<Flow> ready = new PriorityQueue<>((a, b) -> {
+            final int byFinish = Double.compare(a.head().finishTag, b.head().finishTag);
+            return (byFinish != 0) ? byFinish : Long.compare(a.head().sequence, b.head().sequence);
+        });
+        private double virtualTime = 0.0d;
+        private long sequence = 0L;
+        private int inFlight = 0;
+        private int queued = 0;
+
+        Pool(final int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        void enqueue(final Job<?> job) {
+            lock.lock();
+            try {
+                final Flow flow = flows.computeIfAbsent(job.client, Flow::new);
+                if (flow.jobs.size() >= maxQueuedPerClient) {
+                    throw new RejectedExecutionException("Too many queued requests for client " + job.client);
+                }
+                job.startTag = Math.max(virtualTime, flow.lastFinishTag);
+                job.finishTag = job.startTag + job.cost;
+                job.sequence = sequence++;
+                flow.lastFinishTag = job.finishTag;
+
+                final boolean wasIdle = flow.jobs.isEmpty();
+                flow.jobs.addLast(job);
+                queued++;
+                if (wasIdle) ready.add(flow);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void dispatch() {
+            while (true) {
+                final Job<?> job;
+                lock.lock();
+                try {
+                    if ((inFlight >= concurrency) || ready.isEmpty()) return;
+                    final Flow flow = ready.poll();
+                    job = flow.jobs.pollFirst();
+                    queued--;
+                    inFlight++;
+                    virtualTime = Math.max(virtualTime, job.startTag);
+                    if (!flow.jobs.isEmpty()) {
+                        ready.add(flow);
+                    } else {
+                        // Forget idle clients, at most one request worth of history is lost.
+                        flows.remove(flow.client);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    executor.execute(() -> {
+                        try {
+                            job.run();
+                        } finally {
+                            complete();
+                        }
+                    });
+                } catch (RejectedExecutionException x) {
+                    job.future.completeExceptionally(x);
+                    complete();
+                }
+            }
+        }
+
+        private void complete() {
+            lock.lock();
+            try {
+                inFlight--;
+            } finally {
+                lock.unlock();
+            }
+            dispatch();
+        }
+
+        int getInFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int getQueued() {
+            lock.lock();
+            try {
+                return queued;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
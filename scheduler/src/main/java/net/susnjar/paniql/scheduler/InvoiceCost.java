@@ -0,0 +1,78 @@
+package net.susnjar.paniql.scheduler;
+
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.Price;
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.Map;
+
+/**
+ * Collapses an {@link Invoice} into a single scheduling cost: a weighted sum of
+ * the invoice grand totals of selected {@link WorkType work types} at one
+ * {@link Bound}. This is only meant for relative ordering of work, not as an
+ * absolute measure.
+ */
+public class InvoiceCost {
+    private final double[] weights = new double[WorkType.values().length];
+    private final Bound bound;
+
+    /**
+     * Weighs remote work only: bulk joins 1, efficient remote calls 2 and inefficient remote calls 10.
+     */
+    public InvoiceCost(final Bound bound) {
+        this.bound = bound;
+        weights[WorkType.BULK_JOIN.ordinal()] = 1.0d;
+        weights[WorkType.EFFICIENT_REMOTE_API_CALL.ordinal()] = 2.0d;
+        weights[WorkType.INEFFICIENT_REMOTE_API_CALL.ordinal()] = 10.0d;
+    }
+
+    public InvoiceCost(final Bound bound, final Map<WorkType, Double> weights) {
+        this.bound = bound;
+        for (final Map.Entry<WorkType, Double> entry: weights.entrySet()) {
+            this.weights[entry.getKey().ordinal()] = entry.getValue();
+        }
+    }
+
+    public Bound getBound() {
+        return bound;
+    }
+
+    public double getWeight(final WorkType workType) {
+        return weights[workType.ordinal()];
+    }
+
+    public double of(final Invoice invoice) {
+        return of(totals(invoice, bound));
+    }
+
+    /**
+     * Returns the cost of precomputed {@linkplain #totals(Invoice, Bound) grand totals}.
+     */
+    public double of(final double[] totals) {
+        double cost = 0.0d;
+        for (int i = 0; i < totals.length; i++) {
+            cost += weights[i] * totals[i];
+        }
+        return cost;
+    }
+
+    /**
+     * Returns the invoice grand total of each work type at the specified bound, indexed by ordinal.
+     */
+    public static double[] totals(final Invoice invoice, final Bound bound) {
+        final double[] totals = new double[WorkType.values().length];
+        addTotals(totals, invoice.getResourceCosts(), bound);
+        addTotals(totals, invoice.getPartCosts(), bound);
+        addTotals(totals, invoice.getFieldCosts(), bound);
+        return totals;
+    }
+
+    private static void addTotals(final double[] totals, final Map<?, Price> costs, final Bound bound) {
+        for (final Price price: costs.values()) {
+            for (final WorkType workType: WorkType.values()) {
+                totals[workType.ordinal()] += bound.get(price.get(workType));
+            }
+        }
+    }
+}
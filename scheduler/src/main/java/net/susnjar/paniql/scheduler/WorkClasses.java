@@ -0,0 +1,34 @@
+package net.susnjar.paniql.scheduler;
+
+import net.susnjar.paniql.pricing.WorkType;
+
+import java.util.Collection;
+
+/**
+ * Assigns requests to one of the configured {@link WorkType} classes: the most
+ * expensive configured work type a request is predicted to use, or the
+ * cheapest configured one if it uses none of them.
+ */
+final class WorkClasses {
+    private final boolean[] configured = new boolean[WorkType.values().length];
+    private final WorkType fallback;
+
+    WorkClasses(final Collection<WorkType> workTypes) {
+        if (workTypes.isEmpty()) throw new IllegalArgumentException("At least one work type class must be configured.");
+        WorkType cheapest = null;
+        for (final WorkType workType: workTypes) {
+            configured[workType.ordinal()] = true;
+            if ((cheapest == null) || (workType.ordinal() < cheapest.ordinal())) {
+                cheapest = workType;
+            }
+        }
+        this.fallback = cheapest;
+    }
+
+    WorkType classify(final double[] totals) {
+        for (int i = totals.length - 1; i >= 0; i--) {
+            if (configured[i] && (totals[i] > 0.0d)) return WorkType.values()[i];
+        }
+        return fallback;
+    }
+}
@@ -0,0 +1,131 @@
+package net.susnjar.paniql.scheduler;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AdaptiveCostLimiterTest {
+    private static final String REST_HEAVY = "{ top { sub { folder(id: 1) { files { fromREST } } } } }";
+    private static final String REST_LIGHT = "{ top { sub { file(id: 1) { fromREST } } } }";
+
+    @Test
+    void shrinksWhenLatencyRisesAndShedsExpensiveRequestsFirst() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice heavy = environment.invoice(REST_HEAVY);
+        final Invoice light = environment.invoice(REST_LIGHT);
+        final InvoiceCost cost = new InvoiceCost(Bound.AVERAGE);
+        final double heavyCost = cost.of(heavy);
+        final double lightCost = cost.of(light) + CostAwareScheduler.BASE_COST;
+        Assertions.assertTrue(lightCost * 3 < heavyCost);
+        final AtomicLong nanos = new AtomicLong();
+
+        final AdaptiveCostLimiter limiter = new AdaptiveCostLimiter(
+                cost,
+                List.of(WorkType.INEFFICIENT_REMOTE_API_CALL),
+                heavyCost * 4,
+                lightCost * 3,
+                heavyCost * 100,
+                nanos::get
+        );
+        final double initial = limiter.getEnvelope(WorkType.INEFFICIENT_REMOTE_API_CALL);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.observe(WorkType.INEFFICIENT_REMOTE_API_CALL, 1_000_000L);
+        }
+        final double grown = limiter.getEnvelope(WorkType.INEFFICIENT_REMOTE_API_CALL);
+        Assertions.assertTrue(grown > initial);
+
+        for (int i = 0; i < 50; i++) {
+            limiter.observe(WorkType.INEFFICIENT_REMOTE_API_CALL, 20_000_000L);
+        }
+        final double shrunk = limiter.getEnvelope(WorkType.INEFFICIENT_REMOTE_API_CALL);
+        Assertions.assertTrue(shrunk < grown);
+
+        Assertions.assertTrue(shrunk < heavyCost);
+
+        final List<AdaptiveCostLimiter.Permit> permits = new ArrayList<>();
+        permits.add(limiter.tryAcquire(light));
+        Assertions.assertNull(limiter.tryAcquire(heavy));
+        Assertions.assertNull(limiter.tryAcquire(heavy));
+        Assertions.assertFalse(permits.contains(null));
+
+        for (final AdaptiveCostLimiter.Permit permit: permits) {
+            permit.releaseWithoutSample();
+        }
+
+        final AdaptiveCostLimiter.Permit alone = limiter.tryAcquire(heavy);
+        Assertions.assertNotNull(alone, "One request is always admitted when nothing is in flight.");
+        alone.releaseWithoutSample();
+        Assertions.assertEquals(0.0d, limiter.getInFlightCost(WorkType.INEFFICIENT_REMOTE_API_CALL));
+    }
+
+    @Test
+    void permitsFeedLatencyBackIntoTheEnvelope() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final Invoice light = environment.invoice(REST_LIGHT);
+        final AtomicLong nanos = new AtomicLong();
+        final AdaptiveCostLimiter limiter = new AdaptiveCostLimiter(
+                new InvoiceCost(Bound.MAXIMUM),
+                List.of(WorkType.EFFICIENT_REMOTE_API_CALL, WorkType.INEFFICIENT_REMOTE_API_CALL),
+                100.0d,
+                10.0d,
+                1000.0d,
+                nanos::get
+        );
+        Assertions.assertEquals(WorkType.INEFFICIENT_REMOTE_API_CALL, limiter.classify(light));
+
+        for (int i = 0; i < 10; i++) {
+            final AdaptiveCostLimiter.Permit permit = limiter.tryAcquire(light);
+            nanos.addAndGet(2_000_000L);
+            permit.release();
+        }
+        Assertions.assertTrue(limiter.getEnvelope(WorkType.INEFFICIENT_REMOTE_API_CALL) > 100.0d);
+        Assertions.assertEquals(100.0d, limiter.getEnvelope(WorkType.EFFICIENT_REMOTE_API_CALL));
+    }
+
+    @Test
+    void racingReleasesCountOnce() throws Exception {
+        final Invoice light = TestSchema.createEnvironment().invoice(REST_LIGHT);
+        final AdaptiveCostLimiter limiter = new AdaptiveCostLimiter(
+                new InvoiceCost(Bound.MAXIMUM),
+                List.of(WorkType.INEFFICIENT_REMOTE_API_CALL),
+                1e6d,
+                10.0d,
+                1e7d
+        );
+        final AdaptiveCostLimiter.Permit held = limiter.tryAcquire(light);
+        for (int round = 0; round < 100; round++) {
+            final AdaptiveCostLimiter.Permit permit = limiter.tryAcquire(light);
+            final CountDownLatch start = new CountDownLatch(1);
+            final Thread timeout = new Thread(() -> {
+                awaitQuietly(start);
+                permit.releaseWithoutSample();
+            });
+            timeout.start();
+            start.countDown();
+            permit.release();
+            timeout.join();
+            Assertions.assertEquals(held.getCost(), limiter.getInFlightCost(WorkType.INEFFICIENT_REMOTE_API_CALL));
+        }
+        held.release();
+        Assertions.assertEquals(0.0d, limiter.getInFlightCost(WorkType.INEFFICIENT_REMOTE_API_CALL));
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package net.susnjar.paniql.scheduler;
+
+import net.susnjar.paniql.Environment;
+import net.susnjar.paniql.TestSchema;
+import net.susnjar.paniql.pricing.Bound;
+import net.susnjar.paniql.pricing.Invoice;
+import net.susnjar.paniql.pricing.WorkType;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+public class CostAwareSchedulerTest {
+    private static final String REST_HEAVY = "{ top { sub { folder(id: 1) { files { fromREST } } } } }";
+    private static final String REST_LIGHT = "{ top { sub { file(id: 1) { fromREST } } } }";
+    private static final String FAST = "{ top { sub { folder(id: 1) { container { id } } } } }";
+
+    /**
+     * Simulated backend: tasks only run when the test steps through them.
+     */
+    private static final class SimulatedBackend implements Executor {
+        private final ArrayDeque<Runnable> running = new ArrayDeque<>();
+
+        @Override
+        public void execute(final Runnable command) {
+            running.addLast(command);
+        }
+
+        boolean step() {
+            final Runnable next = running.pollFirst();
+            if (next == null) return false;
+            next.run();
+            return true;
+        }
+    }
+
+    @Test
+    void separatesSlowAndFastWorkIntoPools() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final SimulatedBackend backend = new SimulatedBackend();
+        final CostAwareScheduler scheduler = new CostAwareScheduler(
+                backend,
+                new InvoiceCost(Bound.AVERAGE),
+                Map.of(WorkType.EFFICIENT_REMOTE_API_CALL, 4, WorkType.INEFFICIENT_REMOTE_API_CALL, 1)
+        );
+
+        final Invoice heavy = environment.invoice(REST_HEAVY);
+        final Invoice fast = environment.invoice(FAST);
+        Assertions.assertEquals(WorkType.INEFFICIENT_REMOTE_API_CALL, scheduler.classify(heavy));
+        Assertions.assertEquals(WorkType.EFFICIENT_REMOTE_API_CALL, scheduler.classify(fast));
+
+        for (int i = 0; i < 20; i++) {
+            scheduler.submit("spammer", heavy, () -> "slow");
+        }
+        final CompletableFuture<String> normal = scheduler.submit("normal", fast, () -> "fast");
+
+        Assertions.assertEquals(1, scheduler.getInFlight(WorkType.INEFFICIENT_REMOTE_API_CALL));
+        Assertions.assertEquals(19, scheduler.getQueued(WorkType.INEFFICIENT_REMOTE_API_CALL));
+        Assertions.assertEquals(1, scheduler.getInFlight(WorkType.EFFICIENT_REMOTE_API_CALL));
+
+        backend.step();
+        backend.step();
+        Assertions.assertEquals("fast", normal.join());
+    }
+
+    @Test
+    void dispatchesByPredictedCostRatherThanRequestCount() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final SimulatedBackend backend = new SimulatedBackend();
+        final CostAwareScheduler scheduler = new CostAwareScheduler(
+                backend,
+                new InvoiceCost(Bound.AVERAGE),
+                Map.of(WorkType.INEFFICIENT_REMOTE_API_CALL, 1)
+        );
+
+        final Invoice heavy = environment.invoice(REST_HEAVY);
+        final Invoice light = environment.invoice(REST_LIGHT);
+        final List<String> completed = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit("spammer", heavy, () -> completed.add("spammer"));
+        }
+        for (int i = 0; i < 10; i++) {
+            scheduler.submit("normal", light, () -> completed.add("normal"));
+        }
+
+        while (backend.step()) {
+        }
+
+        Assertions.assertEquals(20, completed.size());
+        // The first spammer request was already in flight, all light requests go before the next heavy one.
+        Assertions.assertEquals(List.of("spammer"), completed.subList(0, 1));
+        Assertions.assertTrue(completed.subList(1, 11).stream().allMatch("normal"::equals), completed.toString());
+    }
+
+    @Test
+    void rejectsClientsExceedingTheirQueueLimit() throws IOException {
+        final Environment environment = TestSchema.createEnvironment();
+        final CostAwareScheduler scheduler = new CostAwareScheduler(
+                new SimulatedBackend(),
+                new InvoiceCost(Bound.MAXIMUM),
+                Map.of(WorkType.INEFFICIENT_REMOTE_API_CALL, 1)
+        );
+        scheduler.setMaxQueuedPerClient(2);
+        final Invoice heavy = environment.invoice(REST_HEAVY);
+
+        scheduler.submit("spammer", heavy, () -> null);
+        scheduler.submit("spammer", heavy, () -> null);
+        scheduler.submit("spammer", heavy, () -> null);
+        Assertions.assertThrows(RejectedExecutionException.class, () -> scheduler.submit("spammer", heavy, () -> null));
+        scheduler.submit("normal", heavy, () -> null);
+    }
+}